@@ -0,0 +1,136 @@
+package com.avast.syringe.benchmark;
+
+import com.avast.syringe.config.ConfigProperty;
+import com.avast.syringe.config.internal.ConfigInjector;
+import com.avast.syringe.config.internal.Property;
+import com.avast.syringe.config.internal.Value;
+import com.google.common.collect.Maps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the reflective injection with the injection through the generated bean access. The generated code
+ * can only reach the non-private fields, so the beans with private fields show the cost of the fallback.
+ * <p/>
+ * Run by {@code sbt benchmarks/jmh:run}; on Java 9 and later cglib needs
+ * {@code -jvmArgsAppend --add-opens=java.base/java.lang=ALL-UNNAMED} to define the generated classes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InjectionBenchmark {
+
+    private Map<String, Property> props;
+    private ConfigInjector<PackagePrivateBean> reflectiveInjector;
+    private ConfigInjector<PackagePrivateBean> generatedInjector;
+    private ConfigInjector<PrivateBean> reflectivePrivateInjector;
+    private ConfigInjector<PrivateBean> generatedPrivateInjector;
+
+    @Setup
+    public void setUp() {
+        props = Maps.newHashMap();
+        props.put("port", new Property("port", new Value("8080")));
+        props.put("host", new Property("host", new Value("localhost")));
+        props.put("timeout", new Property("timeout", new Value("1000")));
+        props.put("counter", new Property("counter", new Value("42")));
+        props.put("list", new Property("list", new Value("1"), new Value("2"), new Value("3")));
+
+        reflectiveInjector = ConfigInjector.forClass(PackagePrivateBean.class, null, false);
+        generatedInjector = ConfigInjector.forClass(PackagePrivateBean.class, null, true);
+        reflectivePrivateInjector = ConfigInjector.forClass(PrivateBean.class, null, false);
+        generatedPrivateInjector = ConfigInjector.forClass(PrivateBean.class, null, true);
+    }
+
+    @Benchmark
+    public Object reflective() throws Exception {
+        return inject(reflectiveInjector);
+    }
+
+    @Benchmark
+    public Object generated() throws Exception {
+        return inject(generatedInjector);
+    }
+
+    @Benchmark
+    public Object reflectivePrivateFields() throws Exception {
+        return inject(reflectivePrivateInjector);
+    }
+
+    @Benchmark
+    public Object generatedPrivateFields() throws Exception {
+        return inject(generatedPrivateInjector);
+    }
+
+    private <T> T inject(ConfigInjector<T> injector) throws Exception {
+        T bean = injector.inject(props);
+        injector.notifyPostConstruct(bean);
+        return bean;
+    }
+
+    public static class PackagePrivateBean {
+
+        @ConfigProperty
+        int port;
+
+        @ConfigProperty
+        String host;
+
+        @ConfigProperty
+        long timeout;
+
+        @ConfigProperty
+        final AtomicLong counter = new AtomicLong();
+
+        @ConfigProperty
+        List<Integer> list;
+
+        boolean initialized;
+
+        @PostConstruct
+        public void init() {
+            initialized = true;
+        }
+    }
+
+    public static class PrivateBean {
+
+        @ConfigProperty
+        private int port;
+
+        @ConfigProperty
+        private String host;
+
+        @ConfigProperty
+        private long timeout;
+
+        @ConfigProperty
+        private final AtomicLong counter = new AtomicLong();
+
+        @ConfigProperty
+        private List<Integer> list;
+
+        private boolean initialized;
+
+        @PostConstruct
+        public void init() {
+            initialized = true;
+        }
+    }
+}
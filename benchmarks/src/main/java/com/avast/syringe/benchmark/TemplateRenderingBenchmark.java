@@ -0,0 +1,161 @@
+package com.avast.syringe.benchmark;
+
+import com.avast.syringe.config.fm.TemplateRenderer;
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.SimpleHash;
+import freemarker.template.Template;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways of passing the output of a config template to the parser: rendering on the calling thread
+ * into an unsynchronized buffer read by a {@link StringReader} (as {@link TemplateRenderer} does), streaming through
+ * a pipe from a renderer thread, and rendering into a {@link StringWriter}. The output cached by the renderer
+ * is measured too.
+ * <p/>
+ * Run by {@code sbt benchmarks/jmh:run TemplateRenderingBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TemplateRenderingBenchmark {
+
+    private static final String TEMPLATE_NAME = "Sample.ftl";
+
+    /**
+     * The number of the list values in the rendered config
+     */
+    @Param({"10", "1000"})
+    public int size;
+
+    private File configDir;
+    private File templateFile;
+    private TemplateRenderer renderer;
+    private Template template;
+    private SimpleHash model;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() throws Exception {
+        configDir = Files.createTempDir();
+        Files.write("host=localhost\nport=8080\n", new File(configDir, "application.properties"), Charsets.UTF_8);
+        templateFile = new File(configDir, TEMPLATE_NAME);
+        Files.write("<config xmlns=\"http://www.avast.com/schemas/com/avast/Sample\">\n" +
+                "<host>${host}</host>\n<list>\n" +
+                "<#list 1.." + size + " as i><value>${host}:${port}/${i}</value>\n</#list>" +
+                "</list>\n</config>\n", templateFile, Charsets.UTF_8);
+        renderer = TemplateRenderer.getInstance(configDir, new File(configDir, "application.properties"));
+
+        Configuration fmCfg = new Configuration();
+        fmCfg.setDirectoryForTemplateLoading(configDir);
+        fmCfg.setObjectWrapper(new DefaultObjectWrapper());
+        template = fmCfg.getTemplate(TEMPLATE_NAME);
+        model = new SimpleHash(fmCfg.getObjectWrapper());
+        model.put("host", "localhost");
+        model.put("port", "8080");
+
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        TemplateRenderer.invalidateAll();
+        for (File file : configDir.listFiles()) {
+            file.delete();
+        }
+        configDir.delete();
+    }
+
+    @Benchmark
+    public String callingThreadBuffer() throws Exception {
+        final StringBuilder output = new StringBuilder(4096);
+        template.process(model, new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                output.append(cbuf, off, len);
+            }
+
+            @Override
+            public void write(String str, int off, int len) {
+                output.append(str, off, off + len);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return drain(new StringReader(output.toString()));
+    }
+
+    @Benchmark
+    public String cachedOutput() throws Exception {
+        return drain(renderer.render(TEMPLATE_NAME, templateFile));
+    }
+
+    @Benchmark
+    public String pipedFromRendererThread() throws Exception {
+        PipedReader reader = new PipedReader(64 * 1024);
+        final PipedWriter writer = new PipedWriter(reader);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    template.process(model, writer);
+                    writer.close();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        return drain(reader);
+    }
+
+    @Benchmark
+    public String stringWriter() throws Exception {
+        StringWriter writer = new StringWriter();
+        template.process(model, writer);
+        return writer.toString();
+    }
+
+    private static String drain(Reader reader) throws IOException {
+        try {
+            return CharStreams.toString(reader);
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -1,12 +1,14 @@
 package com.avast.syringe;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -51,10 +53,18 @@ public class SingletonProviderFactory {
         }
     }
 
+    /**
+     * Notified when the singleton provider creates its instance.
+     */
+    public interface InstanceListener<T> {
+        void instanceCreated(T instance);
+    }
+
     public static class SingletonProviderInvocationHandler<T> implements InvocationHandler {
 
         private final Provider<T> provider;
         private volatile T instance = null;
+        private final List<InstanceListener<? super T>> listeners = Lists.newArrayList();
 
         private SingletonProviderInvocationHandler(Provider<T> provider) {
             this.provider = provider;
@@ -78,9 +88,27 @@ public class SingletonProviderFactory {
             return method.invoke(provider, args);
         }
 
+        /**
+         * Adds the listener notified when the instance is created. If the instance already exists the listener
+         * is notified immediately.
+         */
+        public synchronized void addInstanceListener(InstanceListener<? super T> listener) {
+            if (instance != null) {
+                listener.instanceCreated(instance);
+            } else {
+                listeners.add(listener);
+            }
+        }
+
         private synchronized T getInstanceInternal() throws Exception {
             if (instance == null) {
                 instance = provider.getInstance();
+                if (instance != null) {
+                    for (InstanceListener<? super T> listener : listeners) {
+                        listener.instanceCreated(instance);
+                    }
+                    listeners.clear();
+                }
             }
             return instance;
         }
@@ -0,0 +1,61 @@
+package com.avast.syringe.aop.cglib;
+
+import com.avast.syringe.Provider;
+import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.Factory;
+import net.sf.cglib.proxy.LazyLoader;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+
+/**
+ * Creates proxies that obtain their target from a {@link Provider} on the first method call and delegate
+ * all calls to it. The target is obtained only once, even if the first calls come from several threads.
+ * <p/>
+ * Interfaces are proxied directly. Classes are proxied by a subclass, so they must be non-final and have
+ * a non-private no-arg constructor; note that the constructor is run for the proxy itself.
+ */
+public final class LazyProxyFactory {
+
+    private LazyProxyFactory() {
+    }
+
+    public static boolean canCreate(Class<?> type) {
+        if (type.isInterface()) {
+            return true;
+        }
+        if (type.isPrimitive() || type.isArray() || Modifier.isFinal(type.getModifiers())) {
+            return false;
+        }
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            return !Modifier.isPrivate(constructor.getModifiers());
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public static <T> T createProxy(Class<T> type, final Provider<?> targetProvider) {
+        Enhancer enhancer = new Enhancer();
+        if (type.isInterface()) {
+            enhancer.setInterfaces(new Class<?>[]{type});
+        } else {
+            enhancer.setSuperclass(type);
+        }
+        enhancer.setCallback(new LazyLoader() {
+            @Override
+            public Object loadObject() throws Exception {
+                return targetProvider.getInstance();
+            }
+        });
+        return type.cast(enhancer.create());
+    }
+
+    /**
+     * @return true if the object is a proxy created by this factory
+     */
+    public static boolean isLazyProxy(Object object) {
+        return object != null && Enhancer.isEnhanced(object.getClass()) &&
+                ((Factory) object).getCallback(0) instanceof LazyLoader;
+    }
+}
@@ -21,4 +21,10 @@ public @interface ConfigBean {
     String value() default "";
 
     Class<?> extend() default Module.class;
+
+    /**
+     * @return true if the instances are created by the constructor annotated with {@link javax.inject.Inject}
+     * even though the class has a no-arg constructor
+     */
+    boolean injectConstructor() default false;
 }
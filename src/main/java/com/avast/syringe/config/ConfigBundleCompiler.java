@@ -0,0 +1,140 @@
+package com.avast.syringe.config;
+
+import com.avast.syringe.config.internal.ConfigBundle;
+import com.avast.syringe.config.internal.XmlConfig;
+import com.avast.syringe.config.internal.XmlConfigParser;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXParseException;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles all configs in a config directory into a {@link ConfigBundle}. The FreeMarker templates are rendered,
+ * the XML files are validated against their schemas and the config classes are resolved from the namespace URIs
+ * once, ahead of time. {@link ConfigurationLoader} then uses the bundle found in the config directory
+ * for all configs whose sources have not changed since the compilation.
+ * <p/>
+ * Can be used via a {@link #compile(File) Java API} and it also provides a {@link #main(String...)} method.
+ */
+public class ConfigBundleCompiler {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ConfigBundleCompiler.class);
+
+    private final File configDir;
+    private final ConfigurationLoader loader;
+
+    public static void main(String... args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java " + ConfigBundleCompiler.class + " <config-dir> [<bundle-file>] " +
+                    "[<freemarker-properties-file>]");
+            System.exit(1);
+        }
+
+        File configDir = new File(args[0]);
+        File bundleFile = args.length < 2 ? new File(configDir, ConfigBundle.DEFAULT_FILE_NAME) : new File(args[1]);
+        File fmPropertiesFile = args.length < 3 ? null : new File(args[2]);
+
+        Set<String> compiled = new ConfigBundleCompiler(configDir, fmPropertiesFile).compile(bundleFile);
+        System.out.println("Compiled " + compiled.size() + " configs into " + bundleFile.getAbsolutePath());
+    }
+
+    public ConfigBundleCompiler(File configDir) throws Exception {
+        this(configDir, null);
+    }
+
+    public ConfigBundleCompiler(File configDir, @Nullable File fmPropertiesFile) throws Exception {
+        Preconditions.checkNotNull(configDir, "configDir");
+        Preconditions.checkArgument(configDir.isDirectory(), "%s is not a directory", configDir);
+        this.configDir = configDir;
+        this.loader = new ConfigurationLoader(configDir, fmPropertiesFile);
+        // the bundled configs are not validated at runtime
+        this.loader.setValidation(XmlConfigParser.Validation.STRICT);
+    }
+
+    /**
+     * Compiles all {@code .xml} and {@code .ftl} files in the config directory and its subdirectories. Files that
+     * are not configs, i.e. have no schema, are skipped.
+     *
+     * @return the paths of the compiled configs relative to the config directory
+     * @throws IllegalArgumentException if a config is not valid against its schema; no bundle is written then
+     */
+    public Set<String> compile(File bundleFile) throws Exception {
+        Map<String, XmlConfig> configs = Maps.newTreeMap();
+        Map<String, HashCode> hashes = Maps.newHashMap();
+        Map<String, List<String>> dependencies = Maps.newHashMap();
+        Map<String, String> invalidConfigs = Maps.newTreeMap();
+        compileDir(configDir, configs, hashes, dependencies, invalidConfigs);
+        Preconditions.checkArgument(invalidConfigs.isEmpty(), "Invalid configs in %s: %s", configDir,
+                invalidConfigs);
+
+        ConfigBundle.write(bundleFile, configs, hashes, dependencies);
+        return configs.keySet();
+    }
+
+    private void compileDir(File dir, Map<String, XmlConfig> configs, Map<String, HashCode> hashes,
+                            Map<String, List<String>> dependencies, Map<String, String> invalidConfigs) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                compileDir(file, configs, hashes, dependencies, invalidConfigs);
+            } else if (file.getName().endsWith(".xml") || file.getName().endsWith(".ftl")) {
+                String path = loader.getBundlePath(file);
+                try {
+                    // hash first, so that a concurrent change of the source invalidates the entry
+                    HashCode sourceHash = ConfigBundle.hashSource(file, loader.getAppPropsFile());
+                    List<File> templateDependencies = Lists.newArrayList();
+                    XmlConfig config = loader.parseConfig(path, file, templateDependencies);
+                    configs.put(path, config);
+                    hashes.put(path, ConfigBundle.hashEntry(sourceHash, templateDependencies,
+                            config.getNamespaceURI(), config.getClassName()));
+                    dependencies.put(path, getRelativePaths(file, templateDependencies));
+                } catch (Exception e) {
+                    SAXParseException validationError = findValidationError(e);
+                    if (validationError != null) {
+                        LOGGER.error("Invalid config {}: {}", path, validationError.getMessage());
+                        invalidConfigs.put(path, validationError.getMessage());
+                    } else {
+                        LOGGER.warn("Skipping {}: {}", path, e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private static SAXParseException findValidationError(Exception e) {
+        for (Throwable cause : Throwables.getCausalChain(e)) {
+            if (cause instanceof SAXParseException) {
+                return (SAXParseException) cause;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> getRelativePaths(File configFile, List<File> files) throws IOException {
+        Path base = configFile.getCanonicalFile().getParentFile().toPath();
+        List<String> paths = Lists.newArrayListWithCapacity(files.size());
+        for (File file : files) {
+            paths.add(base.relativize(file.getCanonicalFile().toPath()).toString().replace(File.separatorChar, '/'));
+        }
+        return paths;
+    }
+}
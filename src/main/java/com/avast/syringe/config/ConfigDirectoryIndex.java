@@ -0,0 +1,305 @@
+package com.avast.syringe.config;
+
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * In-memory index of the files in a config directory tree used by {@link ConfigurationLoader} in place of probing
+ * the file system for every config reference. The index is built by one walk of the tree and then kept up to date
+ * incrementally by a {@link WatchService}; the pending events are applied before every lookup.
+ * <p/>
+ * A path missing in the index is checked in the file system, since the watch service may deliver the events late
+ * or, on network file systems, not at all. Paths outside the tree, paths that may traverse a symbolic link
+ * by {@code ..} and all paths in case the watch service is not available or the index has been closed are resolved
+ * by the file system as before. Every loader owns its index and releases the watch service by {@link #close()}.
+ */
+final class ConfigDirectoryIndex {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ConfigDirectoryIndex.class);
+
+    private final File rootDir;
+    private final Path root;
+    private final WatchService watchService;
+
+    private final Map<Path, Entry> entries = Maps.newHashMap();
+    private final Map<WatchKey, Path> watchedDirs = Maps.newHashMap();
+    private boolean containsSymbolicLinks;
+    private boolean closed;
+
+    private ConfigDirectoryIndex(File rootDir, WatchService watchService) throws IOException {
+        this.rootDir = rootDir;
+        this.root = toPath(rootDir);
+        this.watchService = watchService;
+        if (watchService != null) {
+            rebuild();
+        }
+    }
+
+    static ConfigDirectoryIndex create(File configDir) throws IOException {
+        if (!configDir.isDirectory()) {
+            return new ConfigDirectoryIndex(configDir, null);
+        }
+
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (Exception e) {
+            LOGGER.warn("Cannot watch config directory {}, the configs will be looked up in the file system: {}",
+                    configDir, e.getMessage());
+            return new ConfigDirectoryIndex(configDir, null);
+        }
+        return new ConfigDirectoryIndex(configDir, watchService);
+    }
+
+    /**
+     * Equivalent to {@link File#exists()}, except that a file deleted on a file system not delivering the events
+     * may be still reported as existing. Such a file is to be {@link #invalidate(File) invalidated} by the caller.
+     */
+    synchronized boolean exists(File file) {
+        Path path = toPath(file);
+        if (!isIndexed(file, path)) {
+            return file.exists();
+        }
+        processEvents();
+        if (entries.containsKey(path)) {
+            return true;
+        }
+        if (!file.exists()) {
+            return false;
+        }
+        if (!isBehindSymbolicLink(path) && entries.containsKey(path.getParent())) {
+            // the creation event has not been delivered (yet)
+            addTree(path);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the file from the index after it has been found deleted.
+     */
+    synchronized void invalidate(File file) {
+        Path path = toPath(file);
+        if (isIndexed(file, path) && !file.exists()) {
+            removeTree(path);
+        }
+    }
+
+    /**
+     * Equivalent to {@link File#getCanonicalPath()}.
+     */
+    synchronized String getCanonicalPath(File file) throws IOException {
+        Path path = toPath(file);
+        if (!isIndexed(file, path)) {
+            return file.getCanonicalPath();
+        }
+        processEvents();
+
+        Entry entry = entries.get(path);
+        if (entry != null) {
+            return entry.canonicalPath;
+        }
+        Entry parent = path.getParent() == null ? null : entries.get(path.getParent());
+        if (parent != null && parent.directory) {
+            return parent.canonicalPath + File.separator + path.getFileName();
+        }
+        return file.getCanonicalPath();
+    }
+
+    /**
+     * The linked directories are not indexed.
+     */
+    private boolean isBehindSymbolicLink(Path path) {
+        if (!containsSymbolicLinks) {
+            return false;
+        }
+        for (Path each = path.getParent(); each != null && each.startsWith(root); each = each.getParent()) {
+            Entry entry = entries.get(each);
+            if (entry != null) {
+                return entry.symbolicLink;
+            }
+        }
+        return false;
+    }
+
+    private boolean isIndexed(File file, Path path) {
+        if (watchService == null || closed || !path.startsWith(root)) {
+            return false;
+        }
+        // normalizing 'link/..' is not the same as resolving it
+        return !containsSymbolicLinks || !file.getPath().contains("..");
+    }
+
+    private static Path toPath(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Called with the lock held by the lookups, so that they see the index with all the events applied.
+     */
+    private void processEvents() {
+        boolean overflow = false;
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+            Path dir = watchedDirs.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                } else if (dir != null) {
+                    Path child = dir.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        addTree(child);
+                    } else {
+                        removeTree(child);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                watchedDirs.remove(key);
+            }
+        }
+
+        if (overflow) {
+            LOGGER.debug("Some changes in {} have been lost, rebuilding the index", root);
+            rebuild();
+        }
+    }
+
+    private synchronized void rebuild() {
+        for (WatchKey key : watchedDirs.keySet()) {
+            key.cancel();
+        }
+        watchedDirs.clear();
+        entries.clear();
+        containsSymbolicLinks = false;
+
+        entries.put(root, new Entry(getCanonicalRoot(), true));
+        try {
+            Files.walkFileTree(root, new IndexingVisitor());
+        } catch (IOException e) {
+            LOGGER.warn("Cannot index config directory {}: {}", root, e.getMessage());
+        }
+    }
+
+    private String getCanonicalRoot() {
+        try {
+            return rootDir.getCanonicalPath();
+        } catch (IOException e) {
+            return root.toString();
+        }
+    }
+
+    private void addTree(Path path) {
+        try {
+            Files.walkFileTree(path, new IndexingVisitor());
+        } catch (NoSuchFileException e) {
+            // already deleted again, the deletion event follows
+        } catch (IOException e) {
+            LOGGER.warn("Cannot index {}: {}", path, e.getMessage());
+        }
+    }
+
+    private void removeTree(Path path) {
+        Iterator<Path> paths = entries.keySet().iterator();
+        while (paths.hasNext()) {
+            if (paths.next().startsWith(path)) {
+                paths.remove();
+            }
+        }
+    }
+
+    /**
+     * Releases the watch service. The lookups are then resolved by the file system.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        entries.clear();
+        watchedDirs.clear();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.debug("Cannot close the watch service", e);
+            }
+        }
+    }
+
+    private static final class Entry {
+        final String canonicalPath;
+        final boolean directory;
+        final boolean symbolicLink;
+
+        Entry(String canonicalPath, boolean directory) {
+            this(canonicalPath, directory, false);
+        }
+
+        Entry(String canonicalPath, boolean directory, boolean symbolicLink) {
+            this.canonicalPath = canonicalPath;
+            this.directory = directory;
+            this.symbolicLink = symbolicLink;
+        }
+    }
+
+    /**
+     * Registers the directories with the watch service before listing them, so that no file created meanwhile
+     * is missed. Symbolic links are indexed by their real paths but not followed.
+     */
+    private final class IndexingVisitor extends SimpleFileVisitor<Path> {
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+            watchedDirs.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE), dir);
+            if (!dir.equals(root)) {
+                entries.put(dir, new Entry(getChildCanonicalPath(dir), true));
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            if (attrs.isSymbolicLink()) {
+                containsSymbolicLinks = true;
+                entries.put(file, new Entry(file.toFile().getCanonicalPath(), false, true));
+            } else {
+                entries.put(file, new Entry(getChildCanonicalPath(file), false));
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+            if (e instanceof NoSuchFileException) {
+                return FileVisitResult.CONTINUE;
+            }
+            throw e;
+        }
+
+        private String getChildCanonicalPath(Path path) throws IOException {
+            Entry parent = entries.get(path.getParent());
+            if (parent == null) {
+                return path.toFile().getCanonicalPath();
+            }
+            return parent.canonicalPath + File.separator + path.getFileName();
+        }
+    }
+}
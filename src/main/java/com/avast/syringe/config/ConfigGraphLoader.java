@@ -0,0 +1,308 @@
+package com.avast.syringe.config;
+
+import com.avast.syringe.config.internal.ConfigClassAnalyzer;
+import com.avast.syringe.config.internal.InjectableProperty;
+import com.avast.syringe.config.internal.Injection;
+import com.avast.syringe.config.internal.Property;
+import com.avast.syringe.config.internal.Value;
+import com.avast.syringe.config.internal.XmlConfig;
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Loads the graph of configs reachable from a root config in two phases. First, all reachable configs are parsed
+ * (level by level, the configs of one level in parallel) and the reference graph is built from the
+ * reference-typed values and the decorators. Then the instances are created in the pool so that independent
+ * subgraphs are instantiated concurrently and every instance is created only after all its references are ready.
+ * <p/>
+ * The instances themselves are created by {@link ConfigurationLoader#loadInstance} exactly as in the serial mode,
+ * i.e. one instance per canonical path, with the decorators applied in order.
+ */
+final class ConfigGraphLoader {
+
+    private final ConfigurationLoader loader;
+    private final ForkJoinPool pool;
+    private final Injection.ContextualPropertyResolver customResolver;
+    private final PropertyValueConverter converter;
+    private final Function<Object, Object> enhancer;
+    private final ClassLoader classLoader;
+
+    private final Map<String, ConfigNode> nodes = Maps.newLinkedHashMap();
+    private final List<File> parsedFiles = Lists.newArrayList();
+
+    ConfigGraphLoader(ConfigurationLoader loader, ForkJoinPool pool,
+                      Injection.ContextualPropertyResolver customResolver, PropertyValueConverter converter,
+                      @Nullable Function<Object, Object> enhancer) {
+        this.loader = loader;
+        this.pool = pool;
+        this.customResolver = customResolver;
+        this.converter = converter;
+        this.enhancer = enhancer;
+        this.classLoader = Thread.currentThread().getContextClassLoader();
+    }
+
+    void load(String configFileName, @Nullable File contextDir) throws Exception {
+        String rootKey = loader.getInstanceKey(configFileName, contextDir);
+        ConfigNode root = new ConfigNode(rootKey, configFileName, contextDir);
+        nodes.put(rootKey, root);
+
+        try {
+            parseGraph(root);
+            List<ConfigNode> orderedNodes = sortTopologically();
+            instantiate(orderedNodes);
+        } finally {
+            for (File parsedFile : parsedFiles) {
+                loader.removePreparsedConfig(parsedFile);
+            }
+        }
+    }
+
+    private void parseGraph(ConfigNode root) throws Exception {
+        List<ConfigNode> frontier = Lists.newArrayList(root);
+        while (!frontier.isEmpty()) {
+            List<ForkJoinTask<ParsedConfig>> tasks = Lists.newArrayList();
+            for (final ConfigNode node : frontier) {
+                tasks.add(pool.submit(new Callable<ParsedConfig>() {
+                    @Override
+                    public ParsedConfig call() throws Exception {
+                        return withClassLoader(new Callable<ParsedConfig>() {
+                            @Override
+                            public ParsedConfig call() throws Exception {
+                                ParsedConfig parsed = new ParsedConfig();
+                                parse(node.configFileName, node.contextDir, parsed);
+                                return parsed;
+                            }
+                        });
+                    }
+                }));
+            }
+
+            List<ConfigNode> nextFrontier = Lists.newArrayList();
+            for (int i = 0; i < frontier.size(); i++) {
+                ConfigNode node = frontier.get(i);
+                ParsedConfig parsed = join(tasks.get(i));
+                parsedFiles.addAll(parsed.files);
+
+                for (ConfigReference reference : parsed.references) {
+                    String refKey = loader.getInstanceKey(reference.configFileName, reference.contextDir);
+                    if (loader.isLoaded(refKey)) {
+                        continue;
+                    }
+
+                    node.dependencies.add(refKey);
+                    if (!nodes.containsKey(refKey)) {
+                        ConfigNode refNode = new ConfigNode(refKey, reference.configFileName, reference.contextDir);
+                        nodes.put(refKey, refNode);
+                        nextFrontier.add(refNode);
+                    }
+                }
+            }
+            frontier = nextFrontier;
+        }
+    }
+
+    /**
+     * Parses the config and its decorators and collects the references made by them.
+     */
+    private void parse(String configFileName, @Nullable File contextDir, ParsedConfig parsed) throws Exception {
+        contextDir = contextDir == null ? loader.getConfigDir() : contextDir;
+        configFileName = loader.completeFileName(configFileName, contextDir);
+        File configFile = new File(contextDir, configFileName);
+
+        XmlConfig xmlConfig = loader.readConfig(configFileName, configFile);
+        loader.addPreparsedConfig(configFile, xmlConfig);
+        parsed.files.add(configFile);
+
+        collectReferences(xmlConfig, configFile.getParentFile(), parsed.references);
+
+        // The decorators are created together with the decorated instance, so their references must be ready
+        // before the decorated instance is created
+        for (XmlConfig.Decorator decorator : xmlConfig.getDecorators()) {
+            parse(decorator.getName(), configFile.getParentFile(), parsed);
+        }
+    }
+
+    /**
+     * Mirrors the way the references are resolved by the contextual resolver used in
+     * {@link ConfigurationLoader#load(String, File, Injection.ContextualPropertyResolver, PropertyValueConverter, Function)}.
+     */
+    private void collectReferences(XmlConfig xmlConfig, File contextDir, List<ConfigReference> references)
+            throws ClassNotFoundException {
+        Class<?> cls = classLoader.loadClass(xmlConfig.getClassName());
+        Map<String, Property> props = xmlConfig.getProperties();
+
+        for (InjectableProperty property : new ConfigClassAnalyzer(cls, converter).getConfigProperties()) {
+            Property prop = props.get(property.getName());
+            if (prop == null || prop.getValues().isEmpty() || loader.isLazyReference(property)) {
+                // the lazy references are loaded on the first use
+                continue;
+            }
+
+            if (property.isContextual() || property.isReference()) {
+                if (ConfigurationLoader.class.isAssignableFrom(property.getType()) ||
+                        ConfigurationLoader.CONFIG_FILE_NAME_PROP.equals(property.getName())) {
+                    continue;
+                }
+                addReference(prop.getValues().get(0).getValue(), contextDir, references);
+            } else {
+                for (Value value : prop.getValues()) {
+                    if (value.getRefType() != null) {
+                        addReference(value.getValue(), contextDir, references);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addReference(String configFileName, File contextDir, List<ConfigReference> references) {
+        if (configFileName != null) {
+            references.add(new ConfigReference(configFileName, contextDir));
+        }
+    }
+
+    /**
+     * @return the nodes ordered so that every node follows all its dependencies
+     * @throws IllegalArgumentException if the graph contains a cycle
+     */
+    private List<ConfigNode> sortTopologically() {
+        List<ConfigNode> ordered = Lists.newArrayListWithCapacity(nodes.size());
+        Set<String> visited = Sets.newHashSet();
+        List<String> path = Lists.newArrayList();
+        for (ConfigNode node : nodes.values()) {
+            visit(node, visited, path, ordered);
+        }
+        return ordered;
+    }
+
+    private void visit(ConfigNode node, Set<String> visited, List<String> path, List<ConfigNode> ordered) {
+        int pathIndex = path.indexOf(node.instanceKey);
+        if (pathIndex >= 0) {
+            List<String> cycle = Lists.newArrayList(path.subList(pathIndex, path.size()));
+            cycle.add(node.instanceKey);
+            throw new IllegalArgumentException("Circular reference between configs: " + Joiner.on(" -> ").join(cycle));
+        }
+
+        if (!visited.add(node.instanceKey)) {
+            return;
+        }
+
+        path.add(node.instanceKey);
+        for (String dependency : node.dependencies) {
+            visit(nodes.get(dependency), visited, path, ordered);
+        }
+        path.remove(path.size() - 1);
+
+        ordered.add(node);
+    }
+
+    private void instantiate(List<ConfigNode> orderedNodes) throws Exception {
+        for (final ConfigNode node : orderedNodes) {
+            CompletableFuture<?>[] dependencies = new CompletableFuture<?>[node.dependencies.size()];
+            int i = 0;
+            for (String dependency : node.dependencies) {
+                dependencies[i++] = nodes.get(dependency).future;
+            }
+
+            node.future = CompletableFuture.allOf(dependencies).thenRunAsync(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        withClassLoader(new Callable<Object>() {
+                            @Override
+                            public Object call() throws Exception {
+                                if (loader.isLoaded(node.instanceKey)) {
+                                    return null;
+                                }
+                                return loader.loadInstance(node.instanceKey, node.configFileName, node.contextDir,
+                                        customResolver, converter, enhancer);
+                            }
+                        });
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }
+            }, pool);
+        }
+
+        // The root node is the last one and it (transitively) depends on all other nodes
+        ConfigNode root = orderedNodes.get(orderedNodes.size() - 1);
+        try {
+            root.future.join();
+        } catch (CompletionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private <V> V withClassLoader(Callable<V> callable) throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader savedClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            return callable.call();
+        } finally {
+            thread.setContextClassLoader(savedClassLoader);
+        }
+    }
+
+    private static <V> V join(ForkJoinTask<V> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static Exception unwrap(Throwable cause) {
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return (Exception) cause;
+    }
+
+    private static final class ConfigNode {
+        final String instanceKey;
+        final String configFileName;
+        final File contextDir;
+        final Set<String> dependencies = Sets.newLinkedHashSet();
+        CompletableFuture<Void> future;
+
+        ConfigNode(String instanceKey, String configFileName, File contextDir) {
+            this.instanceKey = instanceKey;
+            this.configFileName = configFileName;
+            this.contextDir = contextDir;
+        }
+    }
+
+    private static final class ConfigReference {
+        final String configFileName;
+        final File contextDir;
+
+        ConfigReference(String configFileName, File contextDir) {
+            this.configFileName = configFileName;
+            this.contextDir = contextDir;
+        }
+    }
+
+    private static final class ParsedConfig {
+        final List<File> files = Lists.newArrayList();
+        final List<ConfigReference> references = Lists.newArrayList();
+    }
+}
@@ -41,4 +41,18 @@ public @interface ConfigProperty {
      * Use if you want to force different than automatically generated name.
      */
     String name() default "";
+
+    /**
+     * @return true if a reference should be injected as a proxy creating the referenced instance on the first
+     *         method call. Applies only to interface types and non-final classes with a no-arg constructor.
+     */
+    boolean lazy() default false;
+
+    /**
+     * @return true if a collection or map property should be injected as an immutable Guava collection
+     *         ({@code ImmutableList}, {@code ImmutableSet} or {@code ImmutableMap}), which takes less memory than
+     *         the mutable one. The elements of an initialized field are kept. The field type must be assignable
+     *         from the immutable collection and the elements must not be null.
+     */
+    boolean immutable() default false;
 }
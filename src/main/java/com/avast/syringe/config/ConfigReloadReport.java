@@ -0,0 +1,99 @@
+package com.avast.syringe.config;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The outcome of reloading the changed config files by {@link ConfigurationLoader#reloadChangedConfigs()}.
+ * The configs are identified by their instance keys, i.e. the canonical paths of the config files without
+ * the extension.
+ */
+public final class ConfigReloadReport {
+
+    /**
+     * Reported as the property requiring restart if the class of the config has changed
+     */
+    public static final String CLASS = "<class>";
+
+    /**
+     * Reported as the property requiring restart if the decorators of the config have changed
+     */
+    public static final String DECORATORS = "<decorators>";
+
+    public interface Listener {
+        void configsReloaded(ConfigReloadReport report);
+    }
+
+    private final SetMultimap<String, String> appliedProperties = LinkedHashMultimap.create();
+    private final SetMultimap<String, String> restartRequiredProperties = LinkedHashMultimap.create();
+    private final Set<String> replacedConfigs = Sets.newLinkedHashSet();
+    private final Map<String, Exception> failures = Maps.newLinkedHashMap();
+
+    void addAppliedProperty(String instanceKey, String propertyName) {
+        appliedProperties.put(instanceKey, propertyName);
+    }
+
+    void addRestartRequiredProperty(String instanceKey, String propertyName) {
+        restartRequiredProperties.put(instanceKey, propertyName);
+    }
+
+    void addReplacedConfig(String instanceKey) {
+        replacedConfigs.add(instanceKey);
+    }
+
+    void addFailure(String instanceKey, Exception failure) {
+        failures.put(instanceKey, failure);
+    }
+
+    /**
+     * @return the atomic properties updated in the live instances
+     */
+    public SetMultimap<String, String> getAppliedProperties() {
+        return ImmutableSetMultimap.copyOf(appliedProperties);
+    }
+
+    /**
+     * @return the changed properties that cannot be applied to the live instances, and the properties that
+     *         still refer to the old instances of the replaced configs
+     */
+    public SetMultimap<String, String> getRestartRequiredProperties() {
+        return ImmutableSetMultimap.copyOf(restartRequiredProperties);
+    }
+
+    /**
+     * @return the configs whose new instances have been swapped into the atomic references to them
+     */
+    public Set<String> getReplacedConfigs() {
+        return ImmutableSet.copyOf(replacedConfigs);
+    }
+
+    /**
+     * @return the configs that could not be reloaded; they are tried again after the next change
+     */
+    public Map<String, Exception> getFailures() {
+        return ImmutableMap.copyOf(failures);
+    }
+
+    public boolean isRestartRequired() {
+        return !restartRequiredProperties.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return appliedProperties.isEmpty() && restartRequiredProperties.isEmpty() && replacedConfigs.isEmpty() &&
+                failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConfigReloadReport[applied=%s, restartRequired=%s, replaced=%s, failures=%s]",
+                appliedProperties, restartRequiredProperties, replacedConfigs, failures.keySet());
+    }
+}
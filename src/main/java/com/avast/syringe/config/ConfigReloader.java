@@ -0,0 +1,286 @@
+package com.avast.syringe.config;
+
+import com.avast.syringe.config.internal.ConfigInjector;
+import com.avast.syringe.config.internal.InjectableProperty;
+import com.avast.syringe.config.internal.Injection;
+import com.avast.syringe.config.internal.Property;
+import com.avast.syringe.config.internal.StreamedValue;
+import com.avast.syringe.config.internal.XmlConfig;
+import com.google.common.base.Objects;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the changed config files into the live instances.
+ * <p/>
+ * The properties of a changed config are compared with the injected ones. The changed atomic properties
+ * ({@code AtomicInteger}, {@code AtomicLong}, {@code AtomicBoolean}, {@code AtomicReference} and
+ * {@link MutableReference} fields) are injected again, the other changes are reported as requiring restart.
+ * If a config with such changes is referenced through atomic references, a new instance is created and swapped
+ * into the references. The changes of the decorator configs are not tracked.
+ * <p/>
+ * The reloads are serialized. The watching thread uses a {@link WatchService} only as a trigger; the changed files
+ * are recognized by their modification time and length.
+ */
+final class ConfigReloader {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ConfigReloader.class);
+
+    private static final long DEBOUNCE_MILLIS = 100;
+
+    private final ConfigurationLoader loader;
+    private Thread watchingThread;
+    private WatchService watchService;
+
+    ConfigReloader(ConfigurationLoader loader) {
+        this.loader = loader;
+    }
+
+    synchronized ConfigReloadReport reloadChangedConfigs() {
+        ConfigReloadReport report = new ConfigReloadReport();
+
+        // the templates must be rendered with the current properties
+        IOException modelFailure = null;
+        try {
+            loader.refreshTemplateModel();
+        } catch (IOException e) {
+            modelFailure = e;
+        }
+
+        for (LoadedConfig loadedConfig : loader.getLoadedConfigs()) {
+            LoadedConfig.SourceStamp stamp = LoadedConfig.SourceStamp.of(loadedConfig.configFile,
+                    loader.getAppPropsFile());
+            if (stamp.equals(loadedConfig.stamp)) {
+                continue;
+            }
+
+            try {
+                if (modelFailure != null && loadedConfig.configFileName.endsWith(".ftl")) {
+                    throw modelFailure;
+                }
+                XmlConfig newConfig = loader.parseConfig(loadedConfig.configFileName, loadedConfig.configFile);
+                // a config failing to parse is retried
+                loadedConfig.stamp = stamp;
+                reload(loadedConfig, newConfig, report);
+            } catch (Exception e) {
+                LOGGER.warn("Cannot reload {}", loadedConfig.configFile, e);
+                report.addFailure(loadedConfig.instanceKey, e);
+            }
+        }
+
+        if (!report.isEmpty()) {
+            LOGGER.info("Configs reloaded: {}", report);
+        }
+        return report;
+    }
+
+    private void reload(LoadedConfig loadedConfig, XmlConfig newConfig, ConfigReloadReport report) throws Exception {
+        XmlConfig oldConfig = loadedConfig.xmlConfig;
+        loadedConfig.xmlConfig = newConfig;
+
+        List<String> restartRequired = Lists.newArrayList();
+        if (!Objects.equal(oldConfig.getClassName(), newConfig.getClassName())) {
+            restartRequired.add(ConfigReloadReport.CLASS);
+        } else {
+            if (!getDecoratorNames(oldConfig).equals(getDecoratorNames(newConfig))) {
+                restartRequired.add(ConfigReloadReport.DECORATORS);
+            }
+
+            Set<String> propertyNames = Sets.union(oldConfig.getProperties().keySet(),
+                    newConfig.getProperties().keySet());
+            for (String propertyName : propertyNames) {
+                Property oldProperty = oldConfig.getProperties().get(propertyName);
+                Property newProperty = newConfig.getProperties().get(propertyName);
+                if (oldProperty != null && newProperty != null &&
+                        (oldProperty.getValues().equals(newProperty.getValues()) ||
+                                StreamedValue.matches(oldProperty, newProperty))) {
+                    continue;
+                }
+
+                Injection injection = findInjection(loadedConfig, propertyName);
+                if (injection != null && injection.getProperty().isAtomic() && newProperty != null) {
+                    loadedConfig.clearReferences(propertyName);
+                    injection.apply(loadedConfig.rawInstance, newConfig.getProperties(), loadedConfig.resolver);
+                    report.addAppliedProperty(loadedConfig.instanceKey, propertyName);
+                } else {
+                    restartRequired.add(propertyName);
+                }
+            }
+        }
+
+        if (restartRequired.isEmpty()) {
+            return;
+        }
+
+        // the old instance is destroyed when replaced, so it must not stay referenced by any referrer
+        Map<LoadedConfig, Collection<InjectableProperty>> referrers = findReferrers(loadedConfig.instanceKey);
+        boolean referencedAtomically = !referrers.isEmpty();
+        for (Collection<InjectableProperty> properties : referrers.values()) {
+            for (InjectableProperty property : properties) {
+                referencedAtomically &= property.isAtomic();
+            }
+        }
+
+        if (!referencedAtomically) {
+            for (String propertyName : restartRequired) {
+                report.addRestartRequiredProperty(loadedConfig.instanceKey, propertyName);
+            }
+            return;
+        }
+
+        Object newInstance = loader.replaceInstance(loadedConfig, oldConfig.getClassName());
+        report.addReplacedConfig(loadedConfig.instanceKey);
+        for (Map.Entry<LoadedConfig, Collection<InjectableProperty>> referrer : referrers.entrySet()) {
+            for (InjectableProperty property : referrer.getValue()) {
+                property.setValue(referrer.getKey().rawInstance, newInstance);
+            }
+        }
+    }
+
+    private static List<String> getDecoratorNames(XmlConfig config) {
+        List<String> names = Lists.newArrayList();
+        for (XmlConfig.Decorator decorator : config.getDecorators()) {
+            names.add(decorator.getName());
+        }
+        return names;
+    }
+
+    @Nullable
+    private static Injection findInjection(LoadedConfig loadedConfig, String propertyName) {
+        ConfigInjector<?> configInjector = loadedConfig.configInjector;
+        for (Injection injection : Iterables.concat(configInjector.getConstructorInjections(),
+                configInjector.getInjections())) {
+            if (injection.getProperty().getName().equals(propertyName)) {
+                return injection;
+            }
+        }
+        return null;
+    }
+
+    private Map<LoadedConfig, Collection<InjectableProperty>> findReferrers(String instanceKey) {
+        Map<LoadedConfig, Collection<InjectableProperty>> referrers = Maps.newLinkedHashMap();
+        for (LoadedConfig loadedConfig : loader.getLoadedConfigs()) {
+            for (Map.Entry<String, String> reference : loadedConfig.getReferences().entries()) {
+                if (!reference.getValue().equals(instanceKey)) {
+                    continue;
+                }
+
+                Injection injection = findInjection(loadedConfig, reference.getKey());
+                if (injection == null) {
+                    continue;
+                }
+                Collection<InjectableProperty> properties = referrers.get(loadedConfig);
+                if (properties == null) {
+                    properties = Lists.newArrayList();
+                    referrers.put(loadedConfig, properties);
+                }
+                properties.add(injection.getProperty());
+            }
+        }
+        return referrers;
+    }
+
+    synchronized void startWatching(@Nullable final ConfigReloadReport.Listener listener) throws IOException {
+        if (watchingThread != null) {
+            return;
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        final WatchService service = watchService;
+        watchingThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch(service, listener);
+            }
+        }, "syringe-config-reloader");
+        watchingThread.setDaemon(true);
+        watchingThread.start();
+    }
+
+    synchronized void stopWatching() {
+        if (watchingThread == null) {
+            return;
+        }
+
+        watchingThread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.debug("Cannot close the watch service", e);
+        }
+        watchingThread = null;
+        watchService = null;
+    }
+
+    private void watch(WatchService service, @Nullable ConfigReloadReport.Listener listener) {
+        Set<Path> watchedDirs = Sets.newHashSet();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // the directories of the configs loaded meanwhile
+                registerDirs(service, watchedDirs);
+
+                WatchKey key = service.poll(1, TimeUnit.SECONDS);
+                if (key == null) {
+                    continue;
+                }
+
+                // let the editor finish writing
+                Thread.sleep(DEBOUNCE_MILLIS);
+                do {
+                    key.pollEvents();
+                    key.reset();
+                } while ((key = service.poll()) != null);
+
+                ConfigReloadReport report = reloadChangedConfigs();
+                if (listener != null && !report.isEmpty()) {
+                    listener.configsReloaded(report);
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        } catch (RuntimeException e) {
+            LOGGER.error("Watching the configs failed", e);
+        }
+    }
+
+    private void registerDirs(WatchService service, Set<Path> watchedDirs) {
+        Set<File> dirs = Sets.newHashSet();
+        dirs.add(loader.getAppPropsFile().getAbsoluteFile().getParentFile());
+        for (LoadedConfig loadedConfig : loader.getLoadedConfigs()) {
+            dirs.add(loadedConfig.configFile.getAbsoluteFile().getParentFile());
+        }
+
+        for (File dir : dirs) {
+            Path path = dir.toPath().normalize();
+            if (dir.isDirectory() && !watchedDirs.contains(path)) {
+                try {
+                    path.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    watchedDirs.add(path);
+                } catch (IOException e) {
+                    LOGGER.warn("Cannot watch {}: {}", dir, e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -1,19 +1,25 @@
 package com.avast.syringe.config;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.lang.management.ManagementFactory;
 import java.net.URL;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Nullable;
@@ -27,8 +33,12 @@ import javax.management.ObjectName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.avast.syringe.config.fm.PropertiesLoader;
+import com.avast.syringe.Provider;
+import com.avast.syringe.aop.cglib.LazyProxyFactory;
+import com.avast.syringe.config.fm.TemplateRenderer;
+import com.avast.syringe.config.internal.ConfigBundle;
 import com.avast.syringe.config.internal.ConfigInjector;
+import com.avast.syringe.config.internal.ConfigSink;
 import com.avast.syringe.config.internal.InjectableProperty;
 import com.avast.syringe.config.internal.Injection;
 import com.avast.syringe.config.internal.Property;
@@ -37,19 +47,21 @@ import com.avast.syringe.config.internal.XmlConfig;
 import com.avast.syringe.config.internal.XmlConfigParser;
 import com.avast.syringe.config.mbean.ConfigDynamicBean;
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
-import freemarker.template.Configuration;
-import freemarker.template.DefaultObjectWrapper;
-import freemarker.template.Template;
-import freemarker.template.TemplateException;
 
 /**
  * {@link #load(File, Class) Loads } the values of a configuration file into
  * an instance of the passed configuration bean class.
+ * <p/>
+ * The loader can be used from more threads at once. Concurrent requests for the same instance wait for
+ * a single creation of the instance.
  */
-public final class ConfigurationLoader implements InstanceManager {
+public final class ConfigurationLoader implements InstanceManager, Closeable {
 
     private static Logger LOGGER = LoggerFactory.getLogger(ConfigurationLoader.class);
 
@@ -59,30 +71,57 @@ public final class ConfigurationLoader implements InstanceManager {
     public static final String CONFIG_FILE_NAME_PROP = "_configFileName_";
 
     private final File configDir;
-    private final Map<String, Object> instanceCache = Maps.newHashMap();
+    private final Map<String, Object> instanceCache = new ConcurrentHashMap<String, Object>();
+    private final InstanceNameIndex instanceNames = new InstanceNameIndex();
+
+    /**
+     * Instances being created right now. Concurrent requests for the same instance wait for the single creation.
+     */
+    private final ConcurrentMap<String, InstanceCreation> instancesInCreation =
+            new ConcurrentHashMap<String, InstanceCreation>();
+
+    /**
+     * The creations the loading threads are waiting for. Used for detecting cycles spanning more threads.
+     */
+    private final ConcurrentMap<Thread, InstanceCreation> awaitedCreations =
+            new ConcurrentHashMap<Thread, InstanceCreation>();
+
+    /**
+     * Configs parsed in advance by {@link ConfigGraphLoader}, keyed by the canonical path of the config file.
+     */
+    private final Map<String, XmlConfig> preparsedConfigs = new ConcurrentHashMap<String, XmlConfig>();
+
+    /**
+     * The loaded configs tracked for reloading, keyed by the instance key
+     */
+    private final ConcurrentMap<String, LoadedConfig> loadedConfigs = new ConcurrentHashMap<String, LoadedConfig>();
+    private final ConfigReloader reloader = new ConfigReloader(this);
 
     private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
 
     /**
-     * The FreeMarker configuration object
+     * The FreeMarker template renderer shared by the loaders of the config directory
      */
     private final File fmPropertiesFile;
-    private final Configuration fmCfg;
-    private final Map fmGlobalProperties;
+    private final TemplateRenderer templateRenderer;
     private final String appPropsFileName = "application.properties";
+    private final ConfigBundle configBundle;
+    private final ConfigDirectoryIndex configDirIndex;
     private boolean registerMBeans = true;
+    private volatile ForkJoinPool loadingPool;
+    private volatile boolean lazyReferences;
+    private volatile boolean generatedInjectors;
+    private volatile boolean streamingInjection;
+    private volatile XmlConfigParser.Validation validation = XmlConfigParser.Validation.LENIENT;
 
     public ConfigurationLoader(File configDir) throws IOException {
         Preconditions.checkNotNull(configDir, "configDir");
         this.configDir = configDir;
         this.fmPropertiesFile = null;
 
-        // FreeMarker initialization
-        fmCfg = new Configuration();
-        fmCfg.setDirectoryForTemplateLoading(configDir);
-        fmCfg.setObjectWrapper(new DefaultObjectWrapper());
-
-        fmGlobalProperties = loadFreeMarkerGlobalProperties();
+        templateRenderer = TemplateRenderer.getInstance(configDir, getAppPropsFile());
+        configDirIndex = ConfigDirectoryIndex.create(configDir);
+        configBundle = openConfigBundle();
     }
     
     public ConfigurationLoader(File configDir, File fmPropertiesFile) throws IOException {
@@ -90,32 +129,38 @@ public final class ConfigurationLoader implements InstanceManager {
         this.configDir = configDir;
         this.fmPropertiesFile = fmPropertiesFile;
 
-        // FreeMarker initialization
-        fmCfg = new Configuration();
-        fmCfg.setDirectoryForTemplateLoading(configDir);
-        fmCfg.setObjectWrapper(new DefaultObjectWrapper());
-
-        fmGlobalProperties = loadFreeMarkerGlobalProperties();
+        templateRenderer = TemplateRenderer.getInstance(configDir, getAppPropsFile());
+        configDirIndex = ConfigDirectoryIndex.create(configDir);
+        configBundle = openConfigBundle();
     }
 
-    private Map loadFreeMarkerGlobalProperties() throws IOException {
-        String propFileName = appPropsFileName;
-        File appPropsFile = null;
+    File getAppPropsFile() {
         if (fmPropertiesFile != null) {
-            appPropsFile = fmPropertiesFile;
+            return fmPropertiesFile;
         } else {
-            appPropsFile = new File(configDir, propFileName);
+            return new File(configDir, appPropsFileName);
         }
+    }
 
-        if (!appPropsFile.exists()) {
-            LOGGER.warn("{} not found", appPropsFile.getAbsolutePath());
+    /**
+     * Opens the precompiled config bundle in the config directory, if any.
+     *
+     * @see ConfigBundleCompiler
+     */
+    private ConfigBundle openConfigBundle() {
+        File bundleFile = new File(configDir, ConfigBundle.DEFAULT_FILE_NAME);
+        if (!bundleFile.isFile()) {
             return null;
         }
 
-        Properties properties = new Properties();
-        properties.load(new FileReader(appPropsFile));
-
-        return PropertiesLoader.load(properties);
+        try {
+            ConfigBundle bundle = ConfigBundle.open(bundleFile);
+            LOGGER.info("Using config bundle {} with {} configs", bundleFile.getAbsolutePath(), bundle.getPaths().size());
+            return bundle;
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring config bundle " + bundleFile.getAbsolutePath(), e);
+            return null;
+        }
     }
 
     public <T> T load(Class<T> configClass) throws Exception {
@@ -134,10 +179,15 @@ public final class ConfigurationLoader implements InstanceManager {
 
     public <T> T load(String configFileName, File contextDir, final Injection.ContextualPropertyResolver customResolver,
                       final PropertyValueConverter converter, final @Nullable Function<Object, Object> enhancer) throws Exception {
+        return load(configFileName, contextDir, customResolver, converter, enhancer, true);
+    }
+
+    private <T> T load(String configFileName, File contextDir, Injection.ContextualPropertyResolver customResolver,
+                       PropertyValueConverter converter, @Nullable Function<Object, Object> enhancer,
+                       boolean allowParallel) throws Exception {
         Preconditions.checkNotNull(configFileName, "file");
 
-        File configFilePath = new File(contextDir, configFileName);
-        String instanceKey = stripExtension(configFilePath.getCanonicalPath());
+        String instanceKey = getInstanceKey(configFileName, contextDir);
 
         @SuppressWarnings("unchecked")
         T instance = (T) instanceCache.get(instanceKey);
@@ -145,16 +195,97 @@ public final class ConfigurationLoader implements InstanceManager {
             return instance;
         }
 
-        instance = createInstance(configFileName, contextDir, customResolver, converter, enhancer, registerMBeans, null);
+        ForkJoinPool pool = loadingPool;
+        if (allowParallel && pool != null) {
+            new ConfigGraphLoader(this, pool, customResolver, converter, enhancer).load(configFileName, contextDir);
+            @SuppressWarnings("unchecked")
+            T loaded = (T) instanceCache.get(instanceKey);
+            return loaded;
+        }
+
+        return loadInstance(instanceKey, configFileName, contextDir, customResolver, converter, enhancer);
+    }
 
-        instanceCache.put(instanceKey, instance);
+    @SuppressWarnings("unchecked")
+    <T> T loadInstance(String instanceKey, String configFileName, File contextDir,
+                       Injection.ContextualPropertyResolver customResolver, PropertyValueConverter converter,
+                       @Nullable Function<Object, Object> enhancer) throws Exception {
+        InstanceCreation creation = new InstanceCreation(instanceKey);
+        InstanceCreation existingCreation = instancesInCreation.putIfAbsent(instanceKey, creation);
+        if (existingCreation != null) {
+            return (T) awaitCreation(existingCreation);
+        }
 
-        return instance;
+        try {
+            // The instance could have been created after the caller looked into the cache
+            T instance = (T) instanceCache.get(instanceKey);
+            if (instance == null) {
+                instance = createInstance(instanceKey, configFileName, contextDir, customResolver, converter, enhancer,
+                        registerMBeans, null);
+                instanceCache.put(instanceKey, instance);
+            }
+
+            creation.complete(instance);
+            return instance;
+        } catch (Throwable e) {
+            creation.completeExceptionally(e);
+            Throwables.propagateIfPossible(e, Exception.class);
+            throw new AssertionError(e);
+        } finally {
+            instancesInCreation.remove(instanceKey, creation);
+        }
+    }
 
+    private Object awaitCreation(InstanceCreation creation) throws Exception {
+        Thread currentThread = Thread.currentThread();
+        // published before the check, so that of two threads awaiting each other at least one sees the cycle
+        awaitedCreations.put(currentThread, creation);
+        try {
+            checkCircularReference(creation, currentThread);
+            return creation.get();
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), Exception.class);
+            throw e;
+        } finally {
+            awaitedCreations.remove(currentThread);
+        }
+    }
+
+    /**
+     * Follows the chain of the threads creating the awaited instances. If the chain leads back to the current thread
+     * then waiting would never end.
+     */
+    private void checkCircularReference(InstanceCreation creation, Thread currentThread) {
+        List<String> chain = Lists.newArrayList();
+        Set<Thread> visitedThreads = Sets.newHashSet();
+        InstanceCreation each = creation;
+        while (each != null && !each.isDone()) {
+            chain.add(each.instanceKey);
+            if (each.owner == currentThread) {
+                throw new IllegalArgumentException("Circular reference to config " + creation.instanceKey +
+                        " (instances awaited by the loading threads: " + Joiner.on(" -> ").join(chain) + ")");
+            }
+            if (!visitedThreads.add(each.owner)) {
+                return;
+            }
+            each = awaitedCreations.get(each.owner);
+        }
+    }
+
+    String getInstanceKey(String configFileName, @Nullable File contextDir) throws IOException {
+        File configFilePath = new File(contextDir, configFileName);
+        return stripExtension(configDirIndex.getCanonicalPath(configFilePath));
+    }
 
+    boolean isLoaded(String instanceKey) {
+        return instanceCache.containsKey(instanceKey);
     }
 
-    private <T> T createInstance(String configFileName, File contextDir,
+    File getConfigDir() {
+        return configDir;
+    }
+
+    private <T> T createInstance(@Nullable String instanceKey, String configFileName, File contextDir,
                                  final Injection.ContextualPropertyResolver customResolver,
                                  final PropertyValueConverter converter,
                                  final Function<Object, Object> enhancer, boolean doRegisterMBeans,
@@ -166,36 +297,78 @@ public final class ConfigurationLoader implements InstanceManager {
         LOGGER.info("Loading XML configuration from {}", configFileName);
 
         T instance;
-        XmlConfigParser xmlConfigParser = new XmlConfigParser();
-        InputStream input;
         final File configFile = new File(contextDir, configFileName);
-        if (configFileName.endsWith(".ftl")) {
-            // the input file is a FreeMarker template, so process it
-            // TODO:could be used normalize from file
-            // configFileName can be in form ../configuration/Template.ftl, we have to remove ../ so fm can recognize path
-            String trimedConfigFileName = configFileName;
-            while(trimedConfigFileName.startsWith("../")) {
-                trimedConfigFileName = trimedConfigFileName.substring(3);
-            }
-            input = processFreeMarkerTemplate(trimedConfigFileName);
+        LoadedConfig.SourceStamp stamp = LoadedConfig.SourceStamp.of(configFile, getAppPropsFile());
+
+        LoadedConfig loadedConfig = null;
+        if (instanceKey != null) {
+            loadedConfig = new LoadedConfig(instanceKey, configFileName, contextDir, configFile, customResolver,
+                    converter, enhancer, stamp);
+        }
+
+        Injection.ContextualPropertyResolver resolver = createResolver(configFileName, configFile, customResolver,
+                converter, enhancer, loadedConfig);
+        StreamingTarget target = streamingInjection ? new StreamingTarget(converter, resolver) : null;
+        final XmlConfig xmlConfig = readConfig(configFileName, configFile, target);
+
+        ConfigInjector<?> configInjector;
+        if (target != null && target.instance != null) {
+            configInjector = target.injector;
+            instance = (T) target.inject(xmlConfig.getProperties());
         } else {
-            input = new FileInputStream(configFile);
+            Class<?> cls = Thread.currentThread().getContextClassLoader().loadClass(xmlConfig.getClassName());
+            configInjector = ConfigInjector.forClass(cls, converter, generatedInjectors);
+            instance = (T) configInjector.inject(xmlConfig.getProperties(), resolver);
         }
 
-        final XmlConfig xmlConfig;
-        try {
-            xmlConfig = xmlConfigParser.loadConfig(input);
-        } finally {
-            input.close();
+        T decoratedInstance = instance;
+        instance = decorateInstance(decoratedInstance, xmlConfig.getDecorators(), configFile.getParentFile(), customResolver,
+                converter, enhancer);
+
+        configInjector.notifyPostConstruct(decoratedInstance);
+
+        if (instanceKey != null) {
+            // registers the decorated instances too
+            instanceNames.register(instanceKey, instance);
         }
 
-        Class<?> cls = Thread.currentThread().getContextClassLoader().loadClass(xmlConfig.getClassName());
-        ConfigInjector<?> configInjector = ConfigInjector.forClass(cls, converter);
+        if (doRegisterMBeans) {
+            registerMBean(configFileName, instance, xmlConfig, configInjector);
+        }
+        if (loadedConfig != null) {
+            loadedConfig.decoratedInstance = instance;
+        }
+
+        if (enhancer != null) {
+            instance = (T) enhancer.apply(instance);
+            if (instanceKey != null) {
+                instanceNames.register(instanceKey, instance);
+            }
+        }
 
-        final String cfgFileName = configFileName;
-        instance = (T) configInjector.inject(xmlConfig.getProperties(), new Injection.ContextualPropertyResolver() {
+        if (configInjectorCallback != null) {
+            configInjectorCallback.apply(configInjector);
+        }
+
+        if (loadedConfig != null) {
+            loadedConfig.xmlConfig = xmlConfig;
+            loadedConfig.configInjector = configInjector;
+            loadedConfig.resolver = resolver;
+            loadedConfig.rawInstance = decoratedInstance;
+            loadedConfigs.put(instanceKey, loadedConfig);
+        }
+
+        return instance;
+    }
+
+    private Injection.ContextualPropertyResolver createResolver(final String cfgFileName, final File configFile,
+                                                                final Injection.ContextualPropertyResolver customResolver,
+                                                                final PropertyValueConverter converter,
+                                                                final Function<Object, Object> enhancer,
+                                                                @Nullable final LoadedConfig loadedConfig) {
+        return new Injection.ContextualValueResolver() {
             @Override
-            public Object getProperty(InjectableProperty property, Value configValue) throws Exception {
+            public Object resolve(InjectableProperty property, Value configValue) throws Exception {
                 // Allow injection of this configuration loader
                 if (ConfigurationLoader.class.isAssignableFrom(property.getType())) {
                     return ConfigurationLoader.this;
@@ -207,42 +380,205 @@ public final class ConfigurationLoader implements InstanceManager {
 
                 String refConfigFile = configValue != null ? configValue.getValue() : null;
                 if (refConfigFile != null) {
+                    if (loadedConfig != null) {
+                        loadedConfig.addReference(property.getName(),
+                                getInstanceKey(refConfigFile, configFile.getParentFile()));
+                    }
+                    if (isLazyReference(property)) {
+                        return createLazyReference(property, refConfigFile, configFile.getParentFile(),
+                                customResolver, converter, enhancer);
+                    }
                     return getReferencedObject(refConfigFile, configFile.getParentFile(), customResolver, converter,
                             enhancer);
                 }
 
                 if (customResolver != null) {
-                    try {
-                        return customResolver.getProperty(property, configValue);
-                    } catch (NoSuchFieldException e) {
-                        // ok
-                    }
+                    return Injection.resolve(customResolver, property, configValue);
                 }
 
-                throw new NoSuchFieldException(property.getName());
+                return Injection.NO_VALUE;
+            }
+        };
+    }
 
+    /**
+     * Reloads the model of the FreeMarker templates if the properties file has changed.
+     */
+    void refreshTemplateModel() throws IOException {
+        templateRenderer.refreshModel();
+    }
+
+    Collection<LoadedConfig> getLoadedConfigs() {
+        return loadedConfigs.values();
+    }
+
+    /**
+     * Creates a new instance of the loaded config and puts it into the instance cache and its MBean in place
+     * of the old one, which is destroyed. The old instance is left intact if the new one cannot be created.
+     */
+    Object replaceInstance(LoadedConfig loadedConfig, String oldClassName) throws Exception {
+        Object oldInstance = loadedConfig.rawInstance;
+        ConfigInjector<?> oldInjector = loadedConfig.configInjector;
+
+        // the old instance keeps its MBean until the new one is created
+        Object instance = createInstance(loadedConfig.instanceKey, loadedConfig.configFileName,
+                loadedConfig.contextDir, loadedConfig.customResolver, loadedConfig.converter, loadedConfig.enhancer,
+                false, null);
+        if (registerMBeans) {
+            ObjectName oldMBeanName = getMBeanName(oldClassName, loadedConfig.configFileName);
+            if (mBeanServer.isRegistered(oldMBeanName)) {
+                mBeanServer.unregisterMBean(oldMBeanName);
             }
-        });
+            LoadedConfig replacement = loadedConfigs.get(loadedConfig.instanceKey);
+            registerMBean(replacement.configFileName, replacement.decoratedInstance, replacement.xmlConfig,
+                    replacement.configInjector);
+        }
+        instanceCache.put(loadedConfig.instanceKey, instance);
 
-        T decoratedInstance = instance;
-        instance = decorateInstance(decoratedInstance, xmlConfig.getDecorators(), configFile.getParentFile(), customResolver,
-                converter, enhancer);
+        try {
+            oldInjector.notifyPreDestroy(oldInstance);
+        } catch (Exception e) {
+            LOGGER.warn("Cannot destroy the replaced instance of {}", loadedConfig.configFileName, e);
+        }
+        return instance;
+    }
 
-        configInjector.notifyPostConstruct(decoratedInstance);
+    /**
+     * Reloads the config files changed since they were loaded. The changed atomic properties are injected into
+     * the live instances. A config with other changes is instantiated again if it is referenced only atomically,
+     * and the new instance is set to the references; otherwise the changes require restart.
+     *
+     * @return what has been applied and what requires restart
+     */
+    public ConfigReloadReport reloadChangedConfigs() {
+        return reloader.reloadChangedConfigs();
+    }
 
-        if (doRegisterMBeans) {
-            registerMBean(configFileName, instance, xmlConfig, configInjector);
+    /**
+     * Starts a daemon thread reloading the changed config files as {@link #reloadChangedConfigs()} does.
+     *
+     * @param listener notified about every reload with a non-empty report
+     */
+    public void startWatching(@Nullable ConfigReloadReport.Listener listener) throws IOException {
+        reloader.startWatching(listener);
+    }
+
+    public void stopWatching() {
+        reloader.stopWatching();
+    }
+
+    /**
+     * Stops watching the config files and releases the index of the config directory. The loaded instances
+     * remain usable, and so does the loader, which then looks up the config files in the file system.
+     */
+    @Override
+    public void close() {
+        stopWatching();
+        configDirIndex.close();
+    }
+
+    /**
+     * Parses the config file, or returns the config already parsed by {@link ConfigGraphLoader}.
+     *
+     * @param configFileName the completed config file name relative to the context directory
+     * @param configFile     the config file
+     */
+    XmlConfig readConfig(String configFileName, File configFile) throws Exception {
+        return readConfig(configFileName, configFile, null);
+    }
+
+    /**
+     * @param sinkFactory the factory of the sink taking the values while the config file is parsed; not used
+     *                    if the config has been parsed already
+     */
+    private XmlConfig readConfig(String configFileName, File configFile, @Nullable ConfigSink.Factory sinkFactory)
+            throws Exception {
+        if (!preparsedConfigs.isEmpty()) {
+            XmlConfig preparsed = preparsedConfigs.get(configDirIndex.getCanonicalPath(configFile));
+            if (preparsed != null) {
+                return preparsed;
+            }
         }
 
-        if (enhancer != null) {
-            instance = (T) enhancer.apply(instance);
+        if (configBundle != null) {
+            String bundlePath = getBundlePath(configFile);
+            if (bundlePath != null) {
+                XmlConfig bundled = configBundle.getConfig(bundlePath, configFile, getAppPropsFile());
+                if (bundled != null) {
+                    return bundled;
+                }
+                LOGGER.debug("Config {} is not in the config bundle or it has changed", bundlePath);
+            }
         }
 
-        if (configInjectorCallback != null) {
-            configInjectorCallback.apply(configInjector);
+        return parseConfig(configFileName, configFile, sinkFactory, null);
+    }
+
+    /**
+     * @return the path of the config file relative to the config directory or null if the file lies outside
+     */
+    String getBundlePath(File configFile) {
+        Path base = configDir.toPath().toAbsolutePath().normalize();
+        Path path = configFile.toPath().toAbsolutePath().normalize();
+        if (!path.startsWith(base)) {
+            return null;
         }
+        return base.relativize(path).toString().replace(File.separatorChar, '/');
+    }
 
-        return instance;
+    /**
+     * Renders (if the config is a FreeMarker template), parses and validates the config file.
+     */
+    XmlConfig parseConfig(String configFileName, File configFile) throws Exception {
+        return parseConfig(configFileName, configFile, null, null);
+    }
+
+    /**
+     * @param templateDependencies takes the files of the templates included or imported by a FreeMarker template
+     */
+    XmlConfig parseConfig(String configFileName, File configFile, Collection<File> templateDependencies)
+            throws Exception {
+        return parseConfig(configFileName, configFile, null, templateDependencies);
+    }
+
+    private XmlConfig parseConfig(String configFileName, File configFile, @Nullable ConfigSink.Factory sinkFactory,
+                                  @Nullable Collection<File> templateDependencies) throws Exception {
+        XmlConfigParser xmlConfigParser = new XmlConfigParser();
+        xmlConfigParser.setBaseDirectory(configFile.getAbsoluteFile().getParentFile());
+        xmlConfigParser.setSinkFactory(sinkFactory);
+        xmlConfigParser.setValidation(validation);
+        if (configFileName.endsWith(".ftl")) {
+            // the input file is a FreeMarker template, so process it
+            // TODO:could be used normalize from file
+            // configFileName can be in form ../configuration/Template.ftl, we have to remove ../ so fm can recognize path
+            String trimedConfigFileName = configFileName;
+            while(trimedConfigFileName.startsWith("../")) {
+                trimedConfigFileName = trimedConfigFileName.substring(3);
+            }
+
+            // the output rendered into memory is parsed from characters, so no charset is involved
+            Reader input = templateRenderer.render(trimedConfigFileName, configFile, templateDependencies);
+            try {
+                return xmlConfigParser.loadConfig(input);
+            } finally {
+                input.close();
+            }
+        }
+
+        InputStream input = new FileInputStream(configFile);
+        try {
+            return xmlConfigParser.loadConfig(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    void addPreparsedConfig(File configFile, XmlConfig xmlConfig) throws IOException {
+        preparsedConfigs.put(configDirIndex.getCanonicalPath(configFile), xmlConfig);
+    }
+
+    void removePreparsedConfig(File configFile) throws IOException {
+        preparsedConfigs.remove(configDirIndex.getCanonicalPath(configFile));
     }
 
     private <T> T decorateInstance(T instance, List<XmlConfig.Decorator> decorators, File contextDir,
@@ -256,11 +592,22 @@ public final class ConfigurationLoader implements InstanceManager {
         XmlConfig.Decorator decoratorDesc = decorators.get(0);
         final AtomicReference<Injection> delegateInjectionRef = new AtomicReference<Injection>();
 
-        T decorator = createInstance(decoratorDesc.getName(), contextDir, customResolver, converter, enhancer, false,
+        T decorator = createInstance(null, decoratorDesc.getName(), contextDir, customResolver, converter, enhancer, false,
                 // this callback function looks for the delegate config property in the config injector
                 new Function<ConfigInjector, Void>() {
                     @Override
-                    public Void apply(@Nullable ConfigInjector configInjector) {
+                    public Void apply(@Nullable ConfigInjector rawInjector) {
+                        ConfigInjector<?> configInjector = rawInjector;
+
+                        // the delegate is set after the decorator is created, so it cannot be passed to the constructor
+                        List<Injection> constructorInjections = configInjector.getConstructorInjections();
+                        for (Injection injection : constructorInjections) {
+                            if (injection.getProperty().isDelegate()) {
+                                throw new ConfigException(injection.getProperty().getName(),
+                                        configInjector.getConfigClass().getName(),
+                                        "The delegate of a decorator cannot be a constructor parameter");
+                            }
+                        }
 
                         List<Injection> injections = configInjector.getInjections();
                         for (Injection injection : injections) {
@@ -282,6 +629,11 @@ public final class ConfigurationLoader implements InstanceManager {
                 });
 
 
+        if (delegateInjectionRef.get() == null) {
+            throw new IllegalArgumentException(String.format("Decorator class %s must contain exactly one " +
+                    "'delegate=true' config property", decorator.getClass().getName()));
+        }
+
         // Connect the decorator with the decorated instance
         delegateInjectionRef.get().getProperty().setValue(decorator, instance);
 
@@ -294,48 +646,57 @@ public final class ConfigurationLoader implements InstanceManager {
         ConfigDynamicBean configDynamicBean =
                 new ConfigDynamicBean(instance, xmlConfig.getClassName(), "", configInjector.getInjections(),
                         this);
-        ObjectName configMBeanName = new ObjectName("com.avast.syringe.instances:type=" + xmlConfig.getClassName()
-                + ",name=" + configFileName);
-        mBeanServer.registerMBean(configDynamicBean, configMBeanName);
+        mBeanServer.registerMBean(configDynamicBean, getMBeanName(xmlConfig.getClassName(), configFileName));
     }
 
-    private String completeFileName(String configFileName, File contextDir) throws FileNotFoundException {
-        try {
-            return completeFileName_(configFileName, contextDir);
-        } catch (FileNotFoundException e) {
-            return completeFileName_(configFileName, configDir);
+    private static ObjectName getMBeanName(String className, String configFileName)
+            throws MalformedObjectNameException {
+        return new ObjectName("com.avast.syringe.instances:type=" + className + ",name=" + configFileName);
+    }
+
+    String completeFileName(String configFileName, File contextDir) throws FileNotFoundException {
+        String completedFileName = completeFileName(configFileName, contextDir, true);
+        if (completedFileName != null) {
+            File completedFile = new File(contextDir, completedFileName);
+            if (!completedFile.exists() && !new File(configDir, completedFileName).exists()) {
+                // the index may not have been notified about the deletion
+                configDirIndex.invalidate(completedFile);
+                configDirIndex.invalidate(new File(configDir, completedFileName));
+                completedFileName = completeFileName(configFileName, contextDir, false);
+            }
         }
+        if (completedFileName == null) {
+            throw new FileNotFoundException("No config file " + configFileName);
+        }
+        return completedFileName;
+    }
+
+    private String completeFileName(String configFileName, File contextDir, boolean useIndex) {
+        String completedFileName = completeFileName_(configFileName, contextDir, useIndex);
+        if (completedFileName == null) {
+            completedFileName = completeFileName_(configFileName, configDir, useIndex);
+        }
+        return completedFileName;
     }
 
-    private String completeFileName_(String configFileName, File contextDir) throws FileNotFoundException {
-        File configFile = new File(contextDir, configFileName);
-        if (configFile.exists()) {
+    private String completeFileName_(String configFileName, File contextDir, boolean useIndex) {
+        if (exists(new File(contextDir, configFileName), useIndex)) {
             return configFileName;
         }
 
-        configFile = new File(contextDir, configFileName + ".xml");
-        if (configFile.exists()) {
+        if (exists(new File(contextDir, configFileName + ".xml"), useIndex)) {
             return configFileName + ".xml";
         }
 
-        configFile = new File(contextDir, configFileName + ".ftl");
-        if (configFile.exists()) {
+        if (exists(new File(contextDir, configFileName + ".ftl"), useIndex)) {
             return configFileName + ".ftl";
         }
 
-        throw new FileNotFoundException("No config file " + configFileName);
+        return null;
     }
 
-    private InputStream processFreeMarkerTemplate(String configFileTemplate) throws IOException, TemplateException {
-        Preconditions.checkNotNull(fmGlobalProperties, "No % file found in the config directory", appPropsFileName);
-
-        Template template = fmCfg.getTemplate(configFileTemplate);
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        OutputStreamWriter out = new OutputStreamWriter(bos);
-        template.process(fmGlobalProperties, out);
-        out.close();
-
-        return new ByteArrayInputStream(bos.toByteArray());
+    private boolean exists(File file, boolean useIndex) {
+        return useIndex ? configDirIndex.exists(file) : file.exists();
     }
 
     private Object getReferencedObject(String refConfigFile, File contextDir,
@@ -349,20 +710,54 @@ public final class ConfigurationLoader implements InstanceManager {
 //            return instance;
 //        }
 
-        return load(refConfigFile, contextDir, customResolver, converter, enhancer);
+        return load(refConfigFile, contextDir, customResolver, converter, enhancer, false);
     }
 
-    public String findRefName(Object ref) {
-        if (ref == null) {
-            return null;
+    /**
+     * @return true if the references held by the property are to be injected as lazy proxies
+     */
+    boolean isLazyReference(InjectableProperty property) {
+        return (lazyReferences || property.isLazy()) && !property.isDelegate() &&
+                LazyProxyFactory.canCreate(getReferenceType(property));
+    }
+
+    private static Class<?> getReferenceType(InjectableProperty property) {
+        if (property.isArray() || property.isCollection()) {
+            return property.getArrayOrCollectionComponentType();
+        } else if (property.isMap()) {
+            return property.getMapValueType();
+        } else {
+            return property.getType();
         }
+    }
 
-        for (Map.Entry<String, Object> instCacheEntry : instanceCache.entrySet()) {
-            if (ref.equals(instCacheEntry.getValue())) {
-                return instCacheEntry.getKey();
-            }
+    private Object createLazyReference(InjectableProperty property, final String refConfigFile, final File contextDir,
+                                       final Injection.ContextualPropertyResolver customResolver,
+                                       final PropertyValueConverter converter,
+                                       @Nullable final Function<Object, Object> enhancer) throws Exception {
+        String refInstanceKey = getInstanceKey(refConfigFile, contextDir);
+        Object loaded = instanceCache.get(refInstanceKey);
+        if (loaded != null) {
+            return loaded;
         }
-        return null;
+
+        final Class<?> type = getReferenceType(property);
+        Object proxy = LazyProxyFactory.createProxy(type, new Provider<Object>() {
+            @Override
+            public Object getInstance() throws Exception {
+                Object instance = getReferencedObject(refConfigFile, contextDir, customResolver, converter, enhancer);
+                if (instance instanceof Provider && !type.isInstance(instance)) {
+                    instance = ((Provider<?>) instance).getInstance();
+                }
+                return instance;
+            }
+        });
+        instanceNames.register(refInstanceKey, proxy);
+        return proxy;
+    }
+
+    public String findRefName(Object ref) {
+        return instanceNames.findName(ref);
     }
 
     private String stripExtension(String refConfigFile) {
@@ -377,19 +772,19 @@ public final class ConfigurationLoader implements InstanceManager {
         Preconditions.checkNotNull(configClass, "clazz");
         Preconditions.checkNotNull(configFileName, "file");
 
-        ConfigInjector<T> configInjector = ConfigInjector.forClass(configClass);
+        ConfigInjector<T> configInjector = ConfigInjector.forClass(configClass, null, generatedInjectors);
 
         File configFile = new File(configDir, configFileName);
         T configBean;
         if (!configFile.exists() && !configInjector.containsMandatory()) {
-            // the default config
-            configBean = configClass.newInstance();
+            // the default config, possibly created by its constructor
+            configBean = configInjector.inject(Collections.<String, Property>emptyMap());
         } else {
             URL schemaUrl = getSchemaUrl(configClass);
             Map<String, Property> props = new XmlConfigParser(schemaUrl).loadProperties(configFile);
-            configBean = configInjector.inject(props, new Injection.ContextualPropertyResolver() {
+            configBean = configInjector.inject(props, new Injection.ContextualValueResolver() {
                 @Override
-                public Object getProperty(InjectableProperty property, Value configValue) throws Exception {
+                public Object resolve(InjectableProperty property, Value configValue) {
                     // Allow injection of this configuration loader
                     if (ConfigurationLoader.class.isAssignableFrom(property.getType())) {
                         return ConfigurationLoader.this;
@@ -399,7 +794,7 @@ public final class ConfigurationLoader implements InstanceManager {
 //                        return findReference(property);
 //                    }
 
-                    throw new NoSuchFieldException(property.getName());
+                    return Injection.NO_VALUE;
                 }
             });
         }
@@ -414,7 +809,12 @@ public final class ConfigurationLoader implements InstanceManager {
     public static <T> T load(File file, Class<T> configClass) throws Exception {
         Preconditions.checkNotNull(file, "file");
         Preconditions.checkNotNull(configClass, "clazz");
-        return new ConfigurationLoader(file.getParentFile()).load(configClass, file.getName());
+        ConfigurationLoader loader = new ConfigurationLoader(file.getParentFile());
+        try {
+            return loader.load(configClass, file.getName());
+        } finally {
+            loader.close();
+        }
     }
 
     private static URL getSchemaUrl(Class<?> configClass) {
@@ -432,6 +832,51 @@ public final class ConfigurationLoader implements InstanceManager {
         return schemaUrl;
     }
 
+    /**
+     * Creates the instance when the parser finds the class of the config and streams the values into it
+     */
+    private final class StreamingTarget implements ConfigSink.Factory {
+        private final PropertyValueConverter converter;
+        private final Injection.ContextualPropertyResolver resolver;
+        private ConfigInjector<Object> injector;
+        private Object instance;
+
+        private StreamingTarget(PropertyValueConverter converter, Injection.ContextualPropertyResolver resolver) {
+            this.converter = converter;
+            this.resolver = resolver;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public ConfigSink create(String className) throws Exception {
+            Class<?> cls = Thread.currentThread().getContextClassLoader().loadClass(className);
+            ConfigInjector<Object> configInjector =
+                    (ConfigInjector<Object>) ConfigInjector.forClass(cls, converter, generatedInjectors);
+            if (!configInjector.isStreamable()) {
+                return null;
+            }
+            injector = configInjector;
+            instance = configInjector.newInstance();
+            return configInjector.newSink(instance, resolver);
+        }
+
+        /**
+         * Injects the properties that have not been streamed
+         */
+        Object inject(Map<String, Property> props) throws Exception {
+            return injector.inject(instance, props, resolver);
+        }
+    }
+
+    private static final class InstanceCreation extends CompletableFuture<Object> {
+        private final String instanceKey;
+        private final Thread owner = Thread.currentThread();
+
+        private InstanceCreation(String instanceKey) {
+            this.instanceKey = instanceKey;
+        }
+    }
+
     public void setRegisterMBeans(boolean register) {
         this.registerMBeans = register;
     }
@@ -439,4 +884,75 @@ public final class ConfigurationLoader implements InstanceManager {
     public boolean isRegisterMBeans() {
         return registerMBeans;
     }
+
+    /**
+     * Switches the loader to the parallel loading mode. In this mode the loader first parses all configs reachable
+     * from the requested one and then instantiates independent parts of the reference graph concurrently in the
+     * given pool. An instance is injected and post-constructed only after all instances it references are ready.
+     *
+     * @param pool the pool used for parsing and instantiating the configs, or null for the serial loading
+     */
+    public void setLoadingPool(@Nullable ForkJoinPool pool) {
+        this.loadingPool = pool;
+    }
+
+    public ForkJoinPool getLoadingPool() {
+        return loadingPool;
+    }
+
+    /**
+     * Switches the loader to the lazy reference mode. In this mode all references to interfaces and to non-final
+     * classes with a no-arg constructor are injected as proxies that load the referenced config on the first
+     * method call. Without this mode only the properties annotated by {@code @ConfigProperty(lazy = true)}
+     * are injected lazily.
+     */
+    public void setLazyReferences(boolean lazyReferences) {
+        this.lazyReferences = lazyReferences;
+    }
+
+    public boolean isLazyReferences() {
+        return lazyReferences;
+    }
+
+    /**
+     * Switches the loader to the injectors generated per config class, which create the instances and assign
+     * the non-private fields without reflection. See {@link com.avast.syringe.config.internal.BeanAccess}.
+     */
+    public void setGeneratedInjectors(boolean generatedInjectors) {
+        this.generatedInjectors = generatedInjectors;
+    }
+
+    public boolean isGeneratedInjectors() {
+        return generatedInjectors;
+    }
+
+    /**
+     * Switches the loader to the streaming injection. In this mode the instance is created as soon as the root
+     * element of the config is parsed and the scalar, collection and map values are converted and injected into it
+     * one by one while parsing, so the parsed values are not kept besides the injected ones. The references,
+     * arrays, primitive collections and the classes created by a constructor taking the properties are injected
+     * after parsing as usual. The configs parsed by the parallel loading or taken from the config bundle are not
+     * streamed.
+     */
+    public void setStreamingInjection(boolean streamingInjection) {
+        this.streamingInjection = streamingInjection;
+    }
+
+    public boolean isStreamingInjection() {
+        return streamingInjection;
+    }
+
+    /**
+     * Sets how the configs are validated against the schemas of their classes. The trusted configs, e.g. the ones
+     * validated by the build, are parsed by the properties of the config classes without the schemas; the strict
+     * validation fails on the first invalid config, e.g. to lint the configs in CI. By default the validation
+     * errors are logged only.
+     */
+    public void setValidation(XmlConfigParser.Validation validation) {
+        this.validation = Preconditions.checkNotNull(validation, "validation");
+    }
+
+    public XmlConfigParser.Validation getValidation() {
+        return validation;
+    }
 }
@@ -0,0 +1,88 @@
+package com.avast.syringe.config;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Locale;
+
+/**
+ * An amount of data, configured as a number of bytes with an optional binary unit: {@code 512}, {@code 4K},
+ * {@code 64KB}, {@code 10MiB}, {@code 2G} etc. The units are case-insensitive and all of them are the powers
+ * of 1024.
+ */
+public final class DataSize implements Comparable<DataSize> {
+
+    private static final String[] UNITS = {"B", "KB", "MB", "GB", "TB", "PB"};
+
+    private final long bytes;
+
+    private DataSize(long bytes) {
+        Preconditions.checkArgument(bytes >= 0, "Negative data size %s", bytes);
+        this.bytes = bytes;
+    }
+
+    public static DataSize ofBytes(long bytes) {
+        return new DataSize(bytes);
+    }
+
+    public static DataSize parse(String text) {
+        String value = text.trim().toUpperCase(Locale.ENGLISH);
+        int end = value.length();
+        while (end > 0 && !Character.isDigit(value.charAt(end - 1))) {
+            end--;
+        }
+        String unit = value.substring(end).trim();
+        long number;
+        try {
+            number = Long.parseLong(value.substring(0, end).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid data size: " + text);
+        }
+
+        if (unit.endsWith("IB")) {
+            unit = unit.substring(0, unit.length() - 2) + "B";
+        } else if (unit.length() == 1 && !unit.equals("B")) {
+            unit = unit + "B";
+        }
+        for (int i = 0; i < UNITS.length; i++) {
+            if (UNITS[i].equals(unit) || (i == 0 && unit.isEmpty())) {
+                long multiplier = 1L << (10 * i);
+                Preconditions.checkArgument(number <= Long.MAX_VALUE / multiplier, "Data size overflow: %s", text);
+                return new DataSize(number * multiplier);
+            }
+        }
+        throw new IllegalArgumentException("Invalid data size unit: " + text);
+    }
+
+    public long toBytes() {
+        return bytes;
+    }
+
+    @Override
+    public int compareTo(DataSize other) {
+        return bytes < other.bytes ? -1 : (bytes == other.bytes ? 0 : 1);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof DataSize && ((DataSize) obj).bytes == bytes;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (bytes ^ (bytes >>> 32));
+    }
+
+    /**
+     * @return the size in the largest unit expressing it exactly, parseable by {@link #parse(String)}
+     */
+    @Override
+    public String toString() {
+        int unit = 0;
+        long number = bytes;
+        while (number != 0 && number % 1024 == 0 && unit < UNITS.length - 1) {
+            number /= 1024;
+            unit++;
+        }
+        return number + UNITS[unit];
+    }
+}
@@ -0,0 +1,74 @@
+package com.avast.syringe.config;
+
+import com.avast.syringe.SingletonProviderFactory;
+import com.avast.syringe.config.internal.ConfigClassAnalyzer;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.MapMaker;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Identity-based reverse index of named instances used by {@link InstanceManager#findRefName(Object)}.
+ * <p/>
+ * Besides the registered instance itself, the index also contains all instances decorated by it and,
+ * for singleton providers created by {@link SingletonProviderFactory}, the wrapped provider and its product
+ * as soon as the product exists. The lookup never triggers creation of any instance.
+ */
+public final class InstanceNameIndex {
+
+    // weak keys are compared by identity
+    private final ConcurrentMap<Object, String> names = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * Registers the instance and the instances it decorates. An instance keeps the name it has been registered
+     * with first, e.g. a delegate shared by decorators of different configs keeps the name of its own config.
+     */
+    public void register(String name, Object instance) {
+        Preconditions.checkNotNull(name, "name");
+
+        Object each = instance;
+        // the instances decorated by a registered one are registered already
+        while (each != null && names.putIfAbsent(each, name) == null) {
+            if (Proxy.isProxyClass(each.getClass())) {
+                registerSingletonProduct(name, Proxy.getInvocationHandler(each));
+            }
+
+            Object inner = SingletonProviderFactory.unwrap(each);
+            if (inner == each) {
+                inner = ConfigClassAnalyzer.stripShallow(each);
+            }
+            if (inner == each) {
+                break;
+            }
+            each = inner;
+        }
+    }
+
+    private void registerSingletonProduct(final String name, InvocationHandler invocationHandler) {
+        if (invocationHandler instanceof SingletonProviderFactory.SingletonProviderInvocationHandler) {
+            ((SingletonProviderFactory.SingletonProviderInvocationHandler<?>) invocationHandler).addInstanceListener(
+                    new SingletonProviderFactory.InstanceListener<Object>() {
+                        @Override
+                        public void instanceCreated(Object product) {
+                            register(name, product);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * @return the name of the instance or null if the instance is not registered
+     */
+    public String findName(Object instance) {
+        if (instance == null) {
+            return null;
+        }
+        return names.get(instance);
+    }
+
+    public void clear() {
+        names.clear();
+    }
+}
@@ -0,0 +1,120 @@
+package com.avast.syringe.config;
+
+import com.avast.syringe.config.internal.ConfigInjector;
+import com.avast.syringe.config.internal.Injection;
+import com.avast.syringe.config.internal.XmlConfig;
+import com.google.common.base.Function;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.SetMultimap;
+
+import javax.annotation.Nullable;
+import java.io.File;
+
+/**
+ * Describes an instance loaded by {@link ConfigurationLoader} so that it can be updated by {@link ConfigReloader}
+ * when its config file changes.
+ */
+final class LoadedConfig {
+
+    final String instanceKey;
+    final String configFileName;
+    final File contextDir;
+    final File configFile;
+    final Injection.ContextualPropertyResolver customResolver;
+    final PropertyValueConverter converter;
+    final Function<Object, Object> enhancer;
+
+    volatile XmlConfig xmlConfig;
+    volatile SourceStamp stamp;
+    volatile ConfigInjector<?> configInjector;
+    volatile Injection.ContextualPropertyResolver resolver;
+
+    /**
+     * The instance the properties are injected into, i.e. the innermost decorated one
+     */
+    volatile Object rawInstance;
+
+    /**
+     * The instance with its decorators, not enhanced; the one exposed by the MBean
+     */
+    volatile Object decoratedInstance;
+
+    // property name -> instance keys of the referenced configs
+    private final SetMultimap<String, String> references = Multimaps.synchronizedSetMultimap(
+            HashMultimap.<String, String>create());
+
+    LoadedConfig(String instanceKey, String configFileName, File contextDir, File configFile,
+                 Injection.ContextualPropertyResolver customResolver, PropertyValueConverter converter,
+                 @Nullable Function<Object, Object> enhancer, SourceStamp stamp) {
+        this.instanceKey = instanceKey;
+        this.configFileName = configFileName;
+        this.contextDir = contextDir;
+        this.configFile = configFile;
+        this.customResolver = customResolver;
+        this.converter = converter;
+        this.enhancer = enhancer;
+        this.stamp = stamp;
+    }
+
+    void addReference(String propertyName, String refInstanceKey) {
+        references.put(propertyName, refInstanceKey);
+    }
+
+    void clearReferences(String propertyName) {
+        references.removeAll(propertyName);
+    }
+
+    SetMultimap<String, String> getReferences() {
+        synchronized (references) {
+            return ImmutableSetMultimap.copyOf(references);
+        }
+    }
+
+    /**
+     * The modification time and length of a config file and, for FreeMarker templates, of the properties file.
+     */
+    static final class SourceStamp {
+        private final long lastModified;
+        private final long length;
+        private final long modelLastModified;
+        private final long modelLength;
+
+        private SourceStamp(long lastModified, long length, long modelLastModified, long modelLength) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.modelLastModified = modelLastModified;
+            this.modelLength = modelLength;
+        }
+
+        static SourceStamp of(File configFile, File templateModelFile) {
+            if (configFile.getName().endsWith(".ftl")) {
+                return new SourceStamp(configFile.lastModified(), configFile.length(),
+                        templateModelFile.lastModified(), templateModelFile.length());
+            }
+            return new SourceStamp(configFile.lastModified(), configFile.length(), 0, 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SourceStamp)) {
+                return false;
+            }
+            SourceStamp that = (SourceStamp) o;
+            return lastModified == that.lastModified && length == that.length &&
+                    modelLastModified == that.modelLastModified && modelLength == that.modelLength;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (lastModified ^ (lastModified >>> 32));
+            result = 31 * result + (int) (length ^ (length >>> 32));
+            result = 31 * result + (int) (modelLastModified ^ (modelLastModified >>> 32));
+            return 31 * result + (int) (modelLength ^ (modelLength >>> 32));
+        }
+    }
+}
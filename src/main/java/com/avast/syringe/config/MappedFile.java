@@ -0,0 +1,94 @@
+package com.avast.syringe.config;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+
+/**
+ * An external data file injected as a read-only view of a collection or map property. The file is
+ * memory-mapped, so the entries are not materialized as objects when the file is loaded. In a config file
+ * the data file is given by the {@code file} and {@code format} attributes of the property element:
+ * <pre>
+ * &lt;blocklist file="hashes.bin" format="sorted-long"/&gt;
+ * </pre>
+ * A relative path is resolved against the directory of the config file. In the perspective modules, pass
+ * the {@code MappedFile} as the only value of the property.
+ */
+public final class MappedFile {
+
+    public enum Format {
+        /**
+         * Big-endian 64-bit integers sorted in ascending order; injected into {@code Set<Long>},
+         * {@code List<Long>} or {@code Collection<Long>}
+         */
+        SORTED_LONG("sorted-long"),
+        /**
+         * UTF-8 text, one entry per line; injected into {@code List<String>} or {@code Collection<String>}
+         */
+        LINES("lines"),
+        /**
+         * UTF-8 text, one entry per line, the lines sorted by their bytes (e.g. by {@code LC_ALL=C sort});
+         * injected into {@code Set<String>}
+         */
+        SORTED_LINES("sorted-lines"),
+        /**
+         * UTF-8 text, a {@code key<TAB>value} entry per line, the lines sorted by the bytes of the keys;
+         * injected into {@code Map<String, V>}, the values are converted when read
+         */
+        SORTED_TSV("sorted-tsv");
+
+        private final String name;
+
+        Format(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static Format forName(String name) {
+            for (Format format : values()) {
+                if (format.name.equals(name)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unknown data file format: " + name);
+        }
+    }
+
+    private final File file;
+    private final Format format;
+
+    public MappedFile(File file, Format format) {
+        this.file = Preconditions.checkNotNull(file, "file");
+        this.format = Preconditions.checkNotNull(format, "format");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof MappedFile)) {
+            return false;
+        }
+        MappedFile other = (MappedFile) obj;
+        return file.equals(other.file) && format == other.format;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * file.hashCode() + format.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return file + " (" + format.getName() + ")";
+    }
+}
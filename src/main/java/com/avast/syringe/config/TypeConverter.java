@@ -0,0 +1,35 @@
+package com.avast.syringe.config;
+
+/**
+ * Converts the text values of the config files to the values of a type. The converters are discovered by
+ * {@link java.util.ServiceLoader}: list the implementations in
+ * {@code META-INF/services/com.avast.syringe.config.TypeConverter}. A discovered converter takes precedence over
+ * the built-in one of the same type.
+ * <p/>
+ * A converter applies to the subtypes of its type too, unless there is a converter of the subtype. The types
+ * having a converter are injected as values, never as references to other config files.
+ *
+ * @see PropertyValueConverter for converting the values being injected
+ */
+public interface TypeConverter<T> {
+
+    /**
+     * @return the type of the converted values
+     */
+    Class<T> getType();
+
+    /**
+     * @param type the type of the property, i.e. {@link #getType()} or its subtype
+     */
+    T convert(String value, Class<? extends T> type) throws Exception;
+
+    String convertToString(T value) throws Exception;
+
+    String getXmlSchemaTypeName();
+
+    /**
+     * @return true if the converted values are immutable, so that a literal is converted only once and all
+     *         the properties configured with it share the value
+     */
+    boolean isShared();
+}
@@ -79,6 +79,8 @@ public class XmlInstanceGenerator {
                 addCollectionProperty(configEl, property);
             } else if (property.isMap()) {
                 addMapProperty(configEl, property);
+            } else if (property.isPrimitiveCollection() || property.isPrimitiveMap()) {
+                addPrimitiveCollectionProperty(configEl, property);
             } else if (property.isReference()) {
                 addReferenceProperty(configEl, property);
             } else {
@@ -163,6 +165,22 @@ public class XmlInstanceGenerator {
         }
     }
 
+    /**
+     * The primitive collections are opaque to the generator, so only a placeholder of the value is added.
+     */
+    private void addPrimitiveCollectionProperty(Element configEl, InjectableProperty property) {
+        Element valueEl = new Element(property.getName(), namespaceUri);
+        configEl.appendChild(valueEl);
+
+        if (property.isPrimitiveMap()) {
+            Element elementEl = new Element("entry", namespaceUri);
+            elementEl.addAttribute(new Attribute("key", ""));
+            valueEl.appendChild(elementEl);
+        } else {
+            valueEl.appendChild(new Element("value", namespaceUri));
+        }
+    }
+
     private void addMapProperty(Element configEl, InjectableProperty property) throws Exception {
         Element valueEl = new Element(property.getName(), namespaceUri);
         configEl.appendChild(valueEl);
@@ -2,6 +2,7 @@ package com.avast.syringe.config;
 
 import com.avast.syringe.config.internal.ConfigClassAnalyzer;
 import com.avast.syringe.config.internal.InjectableProperty;
+import com.avast.syringe.config.internal.MappedData;
 import com.avast.syringe.config.internal.ReflectionInjectableProperty;
 import com.avast.syringe.config.internal.TypeConversion;
 import com.google.common.base.Preconditions;
@@ -98,10 +99,10 @@ public class XmlSchemaGenerator {
             }
 
             String propTypeName;
-            if (property.isArray() || property.isCollection()) {
+            if (property.isArray() || property.isCollection() || property.isPrimitiveCollection()) {
                 propTypeName = property.getName() + "Type";
                 listProperties.add(property);
-            } else if (property.isMap()) {
+            } else if (property.isMap() || property.isPrimitiveMap()) {
                 propTypeName = property.getName() + "Type";
                 mapProperties.add(property);
             } else if (property.isReference()) {
@@ -145,6 +146,8 @@ public class XmlSchemaGenerator {
             elementEl.addAttribute(new Attribute("maxOccurs", "unbounded"));
             sequenceEl.appendChild(elementEl);
 
+            appendDataFileAttributes(property, complexTypeEl, sequenceEl);
+
             // Declare the reference type
             if (ReflectionInjectableProperty.isReference(componentType)) {
                 declareReferenceType(schemaEl, declaredRefTypes, componentTypeName);
@@ -190,6 +193,8 @@ public class XmlSchemaGenerator {
             attributeEl.addAttribute(new Attribute("use", "required"));
             extensionEl.appendChild(attributeEl);
 
+            appendDataFileAttributes(property, complexTypeEl, sequenceEl);
+
             // Declare the reference type
             if (ReflectionInjectableProperty.isReference(keyType)) {
                 declareReferenceType(schemaEl, declaredRefTypes, keyTypeName);
@@ -213,6 +218,38 @@ public class XmlSchemaGenerator {
         serializer.write(new Document(schemaEl));
     }
 
+    /**
+     * Allows the property to be given by a data file instead of the values, see {@link MappedFile}.
+     */
+    private void appendDataFileAttributes(InjectableProperty property, Element complexTypeEl, Element sequenceEl) {
+        if (property.isArray() || !MappedData.accepts(property)) {
+            return;
+        }
+        sequenceEl.addAttribute(new Attribute("minOccurs", "0"));
+
+        Element fileAttributeEl = new Element("xs:attribute", NS_SCHEMA);
+        fileAttributeEl.addAttribute(new Attribute("name", "file"));
+        fileAttributeEl.addAttribute(new Attribute("type", "xs:string"));
+        complexTypeEl.appendChild(fileAttributeEl);
+
+        Element formatAttributeEl = new Element("xs:attribute", NS_SCHEMA);
+        formatAttributeEl.addAttribute(new Attribute("name", "format"));
+        complexTypeEl.appendChild(formatAttributeEl);
+
+        Element simpleTypeEl = new Element("xs:simpleType", NS_SCHEMA);
+        formatAttributeEl.appendChild(simpleTypeEl);
+
+        Element restrictionEl = new Element("xs:restriction", NS_SCHEMA);
+        restrictionEl.addAttribute(new Attribute("base", "xs:string"));
+        simpleTypeEl.appendChild(restrictionEl);
+
+        for (MappedFile.Format format : MappedFile.Format.values()) {
+            Element enumerationEl = new Element("xs:enumeration", NS_SCHEMA);
+            enumerationEl.addAttribute(new Attribute("value", format.getName()));
+            restrictionEl.appendChild(enumerationEl);
+        }
+    }
+
     private void declareReferenceType(Element schemaEl, HashSet<String> declaredRefTypes, String typeName) {
         if (declaredRefTypes.contains(typeName)) {
             return;
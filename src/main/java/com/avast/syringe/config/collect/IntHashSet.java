@@ -0,0 +1,135 @@
+package com.avast.syringe.config.collect;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash set of ints. The elements are stored in a single {@code int[]} table, so
+ * a set of a million elements takes about 8 MB instead of the about 50 MB of a {@code HashSet<Integer>}.
+ * <p/>
+ * The set is not thread-safe, but it can be read concurrently once injected.
+ */
+public final class IntHashSet implements IntSet {
+
+    // zero marks the free slots, so it is held aside
+    private int[] table;
+    private boolean containsZero;
+    private int size;
+    private int threshold;
+
+    public IntHashSet() {
+        this(0);
+    }
+
+    public IntHashSet(int expectedSize) {
+        allocate(PrimitiveHashing.capacity(expectedSize));
+    }
+
+    /**
+     * @return a new set of the elements
+     */
+    public static IntHashSet of(int... elements) {
+        IntHashSet set = new IntHashSet(elements.length);
+        set.addAll(elements);
+        return set;
+    }
+
+    private void allocate(int capacity) {
+        table = new int[capacity];
+        threshold = (int) (capacity * PrimitiveHashing.LOAD_FACTOR);
+    }
+
+    /**
+     * @return true if the set did not contain the element
+     */
+    public boolean add(int value) {
+        if (value == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        int mask = table.length - 1;
+        int index = PrimitiveHashing.hash(value) & mask;
+        int current;
+        while ((current = table[index]) != 0) {
+            if (current == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        table[index] = value;
+        if (++size > threshold) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    public void addAll(int[] values) {
+        for (int value : values) {
+            add(value);
+        }
+    }
+
+    @Override
+    public boolean contains(int value) {
+        if (value == 0) {
+            return containsZero;
+        }
+
+        int mask = table.length - 1;
+        int index = PrimitiveHashing.hash(value) & mask;
+        int current;
+        while ((current = table[index]) != 0) {
+            if (current == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int[] toIntArray() {
+        int[] array = new int[size];
+        int i = 0;
+        if (containsZero) {
+            i++;
+        }
+        for (int value : table) {
+            if (value != 0) {
+                array[i++] = value;
+            }
+        }
+        return array;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldTable = table;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int value : oldTable) {
+            if (value != 0) {
+                int index = PrimitiveHashing.hash(value) & mask;
+                while (table[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = value;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        int[] array = toIntArray();
+        Arrays.sort(array);
+        return Arrays.toString(array);
+    }
+}
@@ -0,0 +1,18 @@
+package com.avast.syringe.config.collect;
+
+/**
+ * A set of ints not boxing its elements. A property of this type is configured as a list of values.
+ *
+ * @see IntHashSet
+ */
+public interface IntSet {
+
+    boolean contains(int value);
+
+    int size();
+
+    /**
+     * @return a new array of the elements in no particular order
+     */
+    int[] toIntArray();
+}
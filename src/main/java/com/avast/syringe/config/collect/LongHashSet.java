@@ -0,0 +1,135 @@
+package com.avast.syringe.config.collect;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash set of longs. The elements are stored in a single {@code long[]} table, so
+ * a set of a million elements takes about 16 MB instead of the about 50 MB of a {@code HashSet<Long>}.
+ * <p/>
+ * The set is not thread-safe, but it can be read concurrently once injected.
+ */
+public final class LongHashSet implements LongSet {
+
+    // zero marks the free slots, so it is held aside
+    private long[] table;
+    private boolean containsZero;
+    private int size;
+    private int threshold;
+
+    public LongHashSet() {
+        this(0);
+    }
+
+    public LongHashSet(int expectedSize) {
+        allocate(PrimitiveHashing.capacity(expectedSize));
+    }
+
+    /**
+     * @return a new set of the elements
+     */
+    public static LongHashSet of(long... elements) {
+        LongHashSet set = new LongHashSet(elements.length);
+        set.addAll(elements);
+        return set;
+    }
+
+    private void allocate(int capacity) {
+        table = new long[capacity];
+        threshold = (int) (capacity * PrimitiveHashing.LOAD_FACTOR);
+    }
+
+    /**
+     * @return true if the set did not contain the element
+     */
+    public boolean add(long value) {
+        if (value == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        int mask = table.length - 1;
+        int index = PrimitiveHashing.hash(value) & mask;
+        long current;
+        while ((current = table[index]) != 0) {
+            if (current == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        table[index] = value;
+        if (++size > threshold) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    public void addAll(long[] values) {
+        for (long value : values) {
+            add(value);
+        }
+    }
+
+    @Override
+    public boolean contains(long value) {
+        if (value == 0) {
+            return containsZero;
+        }
+
+        int mask = table.length - 1;
+        int index = PrimitiveHashing.hash(value) & mask;
+        long current;
+        while ((current = table[index]) != 0) {
+            if (current == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long[] toLongArray() {
+        long[] array = new long[size];
+        int i = 0;
+        if (containsZero) {
+            i++;
+        }
+        for (long value : table) {
+            if (value != 0) {
+                array[i++] = value;
+            }
+        }
+        return array;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldTable = table;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (long value : oldTable) {
+            if (value != 0) {
+                int index = PrimitiveHashing.hash(value) & mask;
+                while (table[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = value;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        long[] array = toLongArray();
+        Arrays.sort(array);
+        return Arrays.toString(array);
+    }
+}
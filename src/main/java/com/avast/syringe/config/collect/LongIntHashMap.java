@@ -0,0 +1,145 @@
+package com.avast.syringe.config.collect;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map of longs to ints. The keys and values are stored in two parallel tables, so
+ * a map of a million entries takes about 24 MB instead of the about 100 MB of a {@code HashMap<Long, Integer>}.
+ * <p/>
+ * The map is not thread-safe, but it can be read concurrently once injected.
+ */
+public final class LongIntHashMap implements LongIntMap {
+
+    // zero marks the free slots, so its entry is held aside
+    private long[] keys;
+    private int[] values;
+    private boolean containsZeroKey;
+    private int zeroKeyValue;
+    private int size;
+    private int threshold;
+
+    public LongIntHashMap() {
+        this(0);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        allocate(PrimitiveHashing.capacity(expectedSize));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        threshold = (int) (capacity * PrimitiveHashing.LOAD_FACTOR);
+    }
+
+    /**
+     * Maps the key to the value, replacing its previous value.
+     */
+    public void put(long key, int value) {
+        if (key == 0) {
+            if (!containsZeroKey) {
+                containsZeroKey = true;
+                size++;
+            }
+            zeroKeyValue = value;
+            return;
+        }
+
+        int index = indexOf(key);
+        if (keys[index] == key) {
+            values[index] = value;
+            return;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > threshold) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * Puts the entries given by the parallel arrays.
+     */
+    public void putAll(long[] keys, int[] values) {
+        for (int i = 0; i < keys.length; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
+    @Override
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return containsZeroKey;
+        }
+        return keys[indexOf(key)] == key;
+    }
+
+    @Override
+    public int get(long key, int defaultValue) {
+        if (key == 0) {
+            return containsZeroKey ? zeroKeyValue : defaultValue;
+        }
+        int index = indexOf(key);
+        return keys[index] == key ? values[index] : defaultValue;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long[] keys() {
+        long[] array = new long[size];
+        int i = 0;
+        if (containsZeroKey) {
+            i++;
+        }
+        for (long key : keys) {
+            if (key != 0) {
+                array[i++] = key;
+            }
+        }
+        return array;
+    }
+
+    /**
+     * @return the slot of the non-zero key or the free slot the key would be put to
+     */
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int index = PrimitiveHashing.hash(key) & mask;
+        long current;
+        while ((current = keys[index]) != 0 && current != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        long[] array = keys();
+        Arrays.sort(array);
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < array.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(array[i]).append('=').append(get(array[i], 0));
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,23 @@
+package com.avast.syringe.config.collect;
+
+/**
+ * A map of longs to ints not boxing its keys and values. A property of this type is configured as a map.
+ *
+ * @see LongIntHashMap
+ */
+public interface LongIntMap {
+
+    boolean containsKey(long key);
+
+    /**
+     * @return the value of the key or the default value if the map does not contain the key
+     */
+    int get(long key, int defaultValue);
+
+    int size();
+
+    /**
+     * @return a new array of the keys in no particular order
+     */
+    long[] keys();
+}
@@ -0,0 +1,18 @@
+package com.avast.syringe.config.collect;
+
+/**
+ * A set of longs not boxing its elements. A property of this type is configured as a list of values.
+ *
+ * @see LongHashSet
+ */
+public interface LongSet {
+
+    boolean contains(long value);
+
+    int size();
+
+    /**
+     * @return a new array of the elements in no particular order
+     */
+    long[] toLongArray();
+}
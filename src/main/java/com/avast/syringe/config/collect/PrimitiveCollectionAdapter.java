@@ -0,0 +1,43 @@
+package com.avast.syringe.config.collect;
+
+import javax.annotation.Nullable;
+
+/**
+ * Makes a primitive-specialized collection type injectable, such as a set of longs or a map of longs to ints
+ * of a third-party library. The configured values are converted into primitive arrays in one pass and
+ * handed over to the adapter, so no element is boxed.
+ * <p/>
+ * The adapters are discovered by {@link java.util.ServiceLoader}: list the implementations in
+ * {@code META-INF/services/com.avast.syringe.config.collect.PrimitiveCollectionAdapter}. A discovered adapter
+ * takes precedence over the built-in one of the same type. The built-in adapters inject {@link IntSet},
+ * {@link LongSet} and {@link LongIntMap}.
+ */
+public interface PrimitiveCollectionAdapter<C> {
+
+    /**
+     * @return the type of the property; the adapter applies to this very type, not to its subtypes
+     */
+    Class<C> getType();
+
+    /**
+     * @return the type of the elements or of the map keys; {@code int}, {@code long}, {@code boolean}
+     *         or {@code double}
+     */
+    Class<?> getElementType();
+
+    /**
+     * @return the type of the map values as {@link #getElementType()}, or null if the type is a set-like
+     *         collection configured as a list of values
+     */
+    @Nullable
+    Class<?> getValueType();
+
+    /**
+     * @param elements the array of the elements or of the map keys
+     * @param values   the array of the map values, or null for a set-like collection
+     * @param existing the current value of the property, e.g. the initial value of the field; its content
+     *                 should precede the configured one
+     * @return the value of the property
+     */
+    C create(Object elements, @Nullable Object values, @Nullable C existing);
+}
@@ -0,0 +1,37 @@
+package com.avast.syringe.config.collect;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The table sizing and hashing shared by the open-addressing collections. The tables are probed linearly,
+ * so the hash spreads the keys to the high bits first.
+ */
+final class PrimitiveHashing {
+
+    static final float LOAD_FACTOR = 0.75f;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private PrimitiveHashing() {
+    }
+
+    /**
+     * @return the power of two capacity holding the elements under the load factor
+     */
+    static int capacity(int expectedSize) {
+        Preconditions.checkArgument(expectedSize >= 0, "Negative expected size %s", expectedSize);
+        long minCapacity = (long) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR);
+        Preconditions.checkArgument(minCapacity <= MAX_CAPACITY, "Too many elements: %s", expectedSize);
+        return Math.max(2, Integer.highestOneBit((int) minCapacity - 1) << 1);
+    }
+
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
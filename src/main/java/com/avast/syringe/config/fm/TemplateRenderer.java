@@ -0,0 +1,397 @@
+package com.avast.syringe.config.fm;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import freemarker.cache.FileTemplateLoader;
+import freemarker.cache.TemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.ObjectWrapper;
+import freemarker.template.SimpleHash;
+import freemarker.template.SimpleSequence;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModelException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Renders FreeMarker config templates using the global properties as the model.
+ * <p/>
+ * One renderer (and so one FreeMarker {@link Configuration} and one wrapped model) is shared by all loaders
+ * of the same config directory and properties file, see {@link #getInstance(File, File)}. The renderer is released
+ * together with the last loader referencing it.
+ * <p/>
+ * The template is rendered on the calling thread into an unsynchronized buffer, which is then read without
+ * copying. Outputs up to {@link #MAX_CACHED_LENGTH} characters are cached until the template or one
+ * of the templates it includes or imports (their last modification times or lengths) or the content
+ * of the properties file changes.
+ */
+public final class TemplateRenderer {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(TemplateRenderer.class);
+
+    /**
+     * The maximum length of an output that is cached
+     */
+    public static final int MAX_CACHED_LENGTH = 1024 * 1024;
+
+    private static final long MAX_CACHE_WEIGHT = 16 * MAX_CACHED_LENGTH;
+
+    private static final ConcurrentMap<String, TemplateRenderer> renderers = new MapMaker().weakValues().makeMap();
+
+    private final File propertiesFile;
+    private final Configuration fmCfg;
+    private final RecordingTemplateLoader templateLoader;
+    private final Cache<String, RenderedTemplate> renderedTemplates;
+    private volatile Model model;
+
+    private TemplateRenderer(File configDir, File propertiesFile) throws IOException {
+        this.propertiesFile = propertiesFile;
+
+        fmCfg = new Configuration();
+        templateLoader = new RecordingTemplateLoader(new FileTemplateLoader(configDir));
+        fmCfg.setTemplateLoader(templateLoader);
+        fmCfg.setObjectWrapper(new DefaultObjectWrapper());
+        // the cached outputs are validated against the template files, so FreeMarker must not serve a stale template;
+        // it also makes FreeMarker look up the included templates on every rendering, so that they are recorded
+        fmCfg.setTemplateUpdateDelay(0);
+
+        renderedTemplates = CacheBuilder.newBuilder()
+                .maximumWeight(MAX_CACHE_WEIGHT)
+                .weigher(new Weigher<String, RenderedTemplate>() {
+                    @Override
+                    public int weigh(String key, RenderedTemplate value) {
+                        return value.output.length();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Returns the renderer shared by all loaders of the config directory. The model is reloaded if the content
+     * of the properties file has changed since the last call.
+     *
+     * @param configDir      the directory the templates are loaded from
+     * @param propertiesFile the file containing the global properties
+     */
+    public static TemplateRenderer getInstance(File configDir, File propertiesFile) throws IOException {
+        String key = configDir.getCanonicalPath() + File.pathSeparator + propertiesFile.getCanonicalPath();
+        TemplateRenderer renderer = renderers.get(key);
+        if (renderer == null) {
+            TemplateRenderer newRenderer = new TemplateRenderer(configDir, propertiesFile);
+            renderer = renderers.putIfAbsent(key, newRenderer);
+            if (renderer == null) {
+                renderer = newRenderer;
+            }
+        }
+        renderer.refreshModel();
+        return renderer;
+    }
+
+    /**
+     * Drops all shared renderers and their cached outputs.
+     */
+    public static void invalidateAll() {
+        renderers.clear();
+    }
+
+    /**
+     * Reloads the model if the content of the properties file has changed since the last refresh. The outputs
+     * rendered with the previous model are not served any more.
+     */
+    public synchronized void refreshModel() throws IOException {
+        if (!propertiesFile.exists()) {
+            LOGGER.warn("{} not found", propertiesFile.getAbsolutePath());
+            model = null;
+            return;
+        }
+
+        HashCode hash = Files.hash(propertiesFile, Hashing.murmur3_128());
+        if (model != null && model.hash.equals(hash)) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        FileReader reader = new FileReader(propertiesFile);
+        try {
+            properties.load(reader);
+        } finally {
+            reader.close();
+        }
+
+        try {
+            model = new Model(wrapModel(PropertiesLoader.load(properties), fmCfg.getObjectWrapper()), hash);
+        } catch (TemplateModelException e) {
+            throw new IOException("Cannot wrap properties from " + propertiesFile, e);
+        }
+    }
+
+    /**
+     * Wraps the whole model eagerly. The lazily wrapping FreeMarker models modify themselves when read, which
+     * would not be safe for a model shared by concurrent renderings.
+     */
+    private static TemplateHashModel wrapModel(Map<?, ?> properties, ObjectWrapper wrapper)
+            throws TemplateModelException {
+        SimpleHash hash = new SimpleHash(wrapper);
+        for (Map.Entry<?, ?> property : properties.entrySet()) {
+            Object value = property.getValue();
+            if (value instanceof Object[]) {
+                SimpleSequence sequence = new SimpleSequence(wrapper);
+                for (Object element : (Object[]) value) {
+                    sequence.add(wrapper.wrap(element));
+                }
+                hash.put((String) property.getKey(), sequence);
+            } else {
+                hash.put((String) property.getKey(), wrapper.wrap(value));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Renders the template.
+     *
+     * @param templateName the name of the template relative to the config directory
+     * @param templateFile the template file
+     * @return the reader of the output; it must be closed by the caller
+     */
+    public Reader render(String templateName, File templateFile) throws IOException {
+        return render(templateName, templateFile, null);
+    }
+
+    /**
+     * Renders the template and collects the files of the templates it includes or imports.
+     *
+     * @param templateName the name of the template relative to the config directory
+     * @param templateFile the template file
+     * @param dependencies takes the files of the included and imported templates
+     * @return the reader of the output; it must be closed by the caller
+     */
+    public Reader render(String templateName, File templateFile, @Nullable Collection<File> dependencies)
+            throws IOException {
+        Model currentModel = model;
+        Preconditions.checkNotNull(currentModel, "No %s file found", propertiesFile);
+
+        RenderedTemplate rendered = renderedTemplates.getIfPresent(templateName);
+        if (rendered != null && rendered.isValid(currentModel.hash)) {
+            addDependencies(rendered.sources, dependencies);
+            return new StringReader(rendered.output);
+        }
+
+        // stamped before rendering, so that a concurrent change invalidates the output
+        Map<File, FileStamp> sources = Maps.newLinkedHashMap();
+        sources.put(templateFile.getAbsoluteFile(), new FileStamp(templateFile.getAbsoluteFile()));
+        Template template = fmCfg.getTemplate(templateName);
+        OutputWriter out = new OutputWriter();
+        templateLoader.recorded.set(sources);
+        try {
+            template.process(currentModel.model, out);
+        } catch (TemplateException e) {
+            throw new IOException("Cannot render the template " + templateName, e);
+        } finally {
+            templateLoader.recorded.remove();
+        }
+
+        List<FileStamp> sourceList = ImmutableList.copyOf(sources.values());
+        addDependencies(sourceList, dependencies);
+        if (out.output.length() > MAX_CACHED_LENGTH) {
+            return new OutputReader(out.output);
+        }
+        String output = out.toString();
+        renderedTemplates.put(templateName, new RenderedTemplate(sourceList, currentModel.hash, output));
+        return new StringReader(output);
+    }
+
+    /**
+     * @param sources the rendered template followed by the templates it includes or imports
+     */
+    private static void addDependencies(List<FileStamp> sources, @Nullable Collection<File> dependencies) {
+        if (dependencies != null) {
+            for (FileStamp source : sources.subList(1, sources.size())) {
+                dependencies.add(source.file);
+            }
+        }
+    }
+
+    private static final class Model {
+        final TemplateHashModel model;
+        final HashCode hash;
+
+        Model(TemplateHashModel model, HashCode hash) {
+            this.model = model;
+            this.hash = hash;
+        }
+    }
+
+    private static final class RenderedTemplate {
+        final List<FileStamp> sources;
+        final HashCode modelHash;
+        final String output;
+
+        RenderedTemplate(List<FileStamp> sources, HashCode modelHash, String output) {
+            this.sources = sources;
+            this.modelHash = modelHash;
+            this.output = output;
+        }
+
+        boolean isValid(HashCode modelHash) {
+            if (!this.modelHash.equals(modelHash)) {
+                return false;
+            }
+            for (FileStamp source : sources) {
+                if (!source.isCurrent()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The last modification time and length of a template file
+     */
+    private static final class FileStamp {
+        final File file;
+        final long lastModified;
+        final long length;
+
+        FileStamp(File file) {
+            this.file = file;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+
+        boolean isCurrent() {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+    }
+
+    /**
+     * Records the template files found while rendering on the current thread
+     */
+    private static final class RecordingTemplateLoader implements TemplateLoader {
+        private final FileTemplateLoader loader;
+        final ThreadLocal<Map<File, FileStamp>> recorded = new ThreadLocal<Map<File, FileStamp>>();
+
+        RecordingTemplateLoader(FileTemplateLoader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public Object findTemplateSource(String name) throws IOException {
+            Object source = loader.findTemplateSource(name);
+            Map<File, FileStamp> sources = recorded.get();
+            if (source instanceof File && sources != null) {
+                File file = ((File) source).getAbsoluteFile();
+                if (!sources.containsKey(file)) {
+                    sources.put(file, new FileStamp(file));
+                }
+            }
+            return source;
+        }
+
+        @Override
+        public long getLastModified(Object templateSource) {
+            return loader.getLastModified(templateSource);
+        }
+
+        @Override
+        public Reader getReader(Object templateSource, String encoding) throws IOException {
+            return loader.getReader(templateSource, encoding);
+        }
+
+        @Override
+        public void closeTemplateSource(Object templateSource) throws IOException {
+            loader.closeTemplateSource(templateSource);
+        }
+    }
+
+    /**
+     * Collects the output; unlike {@link java.io.StringWriter} it does not synchronize each write.
+     */
+    private static final class OutputWriter extends Writer {
+        final StringBuilder output = new StringBuilder(4096);
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            output.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            output.append(str, off, off + len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return output.toString();
+        }
+    }
+
+    /**
+     * Reads the output collected by {@link OutputWriter} without copying it into a string first.
+     */
+    private static final class OutputReader extends Reader {
+        private final StringBuilder output;
+        private int position;
+
+        OutputReader(StringBuilder output) {
+            this.output = output;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= output.length()) {
+                return -1;
+            }
+            int end = Math.min(output.length(), position + len);
+            output.getChars(position, end, cbuf, off);
+            int count = end - position;
+            position = end;
+            return count;
+        }
+
+        @Override
+        public int read() {
+            return position < output.length() ? output.charAt(position++) : -1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
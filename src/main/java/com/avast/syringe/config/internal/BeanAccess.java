@@ -0,0 +1,381 @@
+package com.avast.syringe.config.internal;
+
+import com.avast.syringe.config.ConfigProperty;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import net.sf.cglib.core.AbstractClassGenerator;
+import net.sf.cglib.core.ClassEmitter;
+import net.sf.cglib.core.CodeEmitter;
+import net.sf.cglib.core.Constants;
+import net.sf.cglib.core.EmitUtils;
+import net.sf.cglib.core.ProcessSwitchCallback;
+import net.sf.cglib.core.ReflectUtils;
+import net.sf.cglib.core.Signature;
+import net.sf.cglib.core.TypeUtils;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Instantiates a config class, assigns its property fields and calls its lifecycle methods without reflection.
+ * The implementation is either compiled by the {@code ConfigBeanProcessor} annotation processor (see
+ * {@link CompiledBeanAccess}), or it is a class generated by cglib once per config class and defined in the package
+ * and the class loader of the config class.
+ * <p/>
+ * The generated code is subject to the JVM access checks like any other code of the package, so it can only
+ * assign the fields that are not private (and not final, except for the atomic ones) and can only instantiate
+ * a class with a non-private no-arg constructor. The other fields are left to the reflective accessors,
+ * see {@link #isDirect(Field)}.
+ */
+public abstract class BeanAccess {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BeanAccess.class);
+
+    private static final Type BEAN_ACCESS = Type.getType(BeanAccess.class);
+    private static final Type ILLEGAL_ARGUMENT_EXCEPTION = Type.getType(IllegalArgumentException.class);
+    private static final Type UNSUPPORTED_OPERATION_EXCEPTION = Type.getType(UnsupportedOperationException.class);
+    private static final Signature NEW_INSTANCE = TypeUtils.parseSignature("Object newInstance()");
+    private static final Signature GET = TypeUtils.parseSignature("Object get(Object, int)");
+    private static final Signature SET = TypeUtils.parseSignature("void set(Object, int, Object)");
+    private static final Signature POST_CONSTRUCT = TypeUtils.parseSignature("void postConstruct(Object)");
+    private static final Signature PRE_DESTROY = TypeUtils.parseSignature("void preDestroy(Object)");
+
+    private static final ClassValue<BeanAccess> ACCESSES = new ClassValue<BeanAccess>() {
+        @Override
+        protected BeanAccess computeValue(Class<?> type) {
+            try {
+                Generator generator = new Generator();
+                generator.setType(type);
+                return generator.create();
+            } catch (RuntimeException e) {
+                LOGGER.debug("Cannot generate the bean access for {}, using reflection", type.getName(), e);
+                return null;
+            } catch (LinkageError e) {
+                LOGGER.debug("Cannot generate the bean access for {}, using reflection", type.getName(), e);
+                return null;
+            }
+        }
+    };
+
+    private List<Field> fields;
+    private List<Field> directFields;
+    private boolean instantiable;
+
+    protected BeanAccess() {
+    }
+
+    /**
+     * @return the compiled access if there is one, otherwise the generated access, or null if it cannot be
+     *         generated for the class, e.g. for a class of the bootstrap class loader
+     */
+    @Nullable
+    public static BeanAccess forClass(Class<?> type) {
+        BeanAccess compiled = CompiledBeanAccess.forClass(type);
+        return compiled != null ? compiled : ACCESSES.get(type);
+    }
+
+    void init(List<Field> fields, List<Field> directFields, boolean instantiable) {
+        this.fields = ImmutableList.copyOf(fields);
+        this.directFields = ImmutableList.copyOf(directFields);
+        this.instantiable = instantiable;
+    }
+
+    /**
+     * @return true if the class is instantiated by the generated code
+     */
+    public boolean isInstantiable() {
+        return instantiable;
+    }
+
+    /**
+     * @return true if the field is read and written by the generated code
+     */
+    public boolean isDirect(Field field) {
+        return directFields.contains(field);
+    }
+
+    /**
+     * @return the index of the field for {@link #get(Object, int)} and {@link #set(Object, int, Object)}
+     */
+    public int getIndex(Field field) {
+        return fields.indexOf(field);
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the class is not {@link #isInstantiable() instantiable}
+     */
+    public abstract Object newInstance() throws Exception;
+
+    /**
+     * @return the value of the field, unboxed from its atomic holder
+     */
+    public abstract Object get(Object bean, int index);
+
+    /**
+     * Assigns the field or sets the value into its atomic holder.
+     *
+     * @throws ClassCastException   if the value is not exactly of the field type or its wrapper
+     * @throws NullPointerException if the value is null and the field type is primitive
+     */
+    public abstract void set(Object bean, int index, Object value) throws Exception;
+
+    public abstract void postConstruct(Object bean) throws Exception;
+
+    public abstract void preDestroy(Object bean) throws Exception;
+
+    /**
+     * @return the injectable fields of the class in the order of {@link ConfigClassAnalyzer#getConfigProperties()}
+     */
+    static List<Field> getInjectableFields(Class<?> type) {
+        LinkedList<Class<?>> classes = Lists.newLinkedList();
+        for (Class<?> each = type; each != null; each = each.getSuperclass()) {
+            classes.addFirst(each);
+        }
+
+        List<Field> result = Lists.newArrayList();
+        for (Class<?> clazz : classes) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && (field.isAnnotationPresent(ConfigProperty.class) ||
+                        field.isAnnotationPresent(Inject.class))) {
+                    result.add(field);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isDirectlyAccessible(Class<?> type, Field field) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isPrivate(modifiers)) {
+            return false;
+        }
+        if (Modifier.isFinal(modifiers) && !ReflectionInjectableProperty.isAtomic(field.getType())) {
+            return false;
+        }
+        Class<?> owner = field.getDeclaringClass();
+        if (Modifier.isPublic(modifiers) && Modifier.isPublic(owner.getModifiers())) {
+            return true;
+        }
+        return owner.getClassLoader() == type.getClassLoader() &&
+                owner.getPackage() != null && owner.getPackage().equals(type.getPackage());
+    }
+
+    @Nullable
+    private static Constructor<?> findConstructor(Class<?> type) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            return Modifier.isPrivate(constructor.getModifiers()) ? null : constructor;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static class Generator extends AbstractClassGenerator {
+
+        private static final Source SOURCE = new Source(BeanAccess.class.getName());
+
+        private Class<?> type;
+        private List<Field> fields;
+        private List<Field> directFields;
+        private boolean instantiable;
+
+        public Generator() {
+            super(SOURCE);
+        }
+
+        public void setType(Class<?> type) {
+            this.type = type;
+        }
+
+        public BeanAccess create() {
+            fields = ImmutableList.copyOf(getInjectableFields(type));
+            List<Field> direct = Lists.newArrayList();
+            for (Field field : fields) {
+                if (isDirectlyAccessible(type, field)) {
+                    direct.add(field);
+                }
+            }
+            directFields = ImmutableList.copyOf(direct);
+            instantiable = findConstructor(type) != null;
+
+            setNamePrefix(type.getName());
+            return (BeanAccess) super.create(type.getName());
+        }
+
+        @Override
+        protected ClassLoader getDefaultClassLoader() {
+            return type.getClassLoader();
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes") // overrides the raw signature of cglib
+        protected Object firstInstance(Class type) throws Exception {
+            BeanAccess access = (BeanAccess) ReflectUtils.newInstance(type);
+            access.init(fields, directFields, instantiable);
+            return access;
+        }
+
+        @Override
+        protected Object nextInstance(Object instance) throws Exception {
+            return instance;
+        }
+
+        @Override
+        public void generateClass(ClassVisitor v) throws Exception {
+            ClassEmitter ce = new ClassEmitter(v);
+            ce.begin_class(Constants.V1_2, Constants.ACC_PUBLIC, getClassName(), BEAN_ACCESS, null,
+                    Constants.SOURCE_FILE);
+            EmitUtils.null_constructor(ce);
+            emitNewInstance(ce);
+            emitGet(ce);
+            emitSet(ce);
+            emitLifecycle(ce, POST_CONSTRUCT, ConfigClassAnalyzer.findAnnotatedMethod(PostConstruct.class, type));
+            emitLifecycle(ce, PRE_DESTROY, ConfigClassAnalyzer.findAnnotatedMethod(PreDestroy.class, type));
+            ce.end_class();
+        }
+
+        private void emitNewInstance(ClassEmitter ce) {
+            CodeEmitter e = ce.begin_method(Constants.ACC_PUBLIC, NEW_INSTANCE, null);
+            if (instantiable) {
+                Type beanType = Type.getType(type);
+                e.new_instance(beanType);
+                e.dup();
+                e.invoke_constructor(beanType);
+                e.return_value();
+            } else {
+                e.throw_exception(UNSUPPORTED_OPERATION_EXCEPTION, "No accessible no-arg constructor in " +
+                        type.getName());
+            }
+            e.end_method();
+        }
+
+        private void emitGet(ClassEmitter ce) {
+            final CodeEmitter e = ce.begin_method(Constants.ACC_PUBLIC, GET, null);
+            emitFieldSwitch(e, new FieldCallback() {
+                @Override
+                public void processField(Field field, Type owner, Type fieldType) throws Exception {
+                    e.load_arg(0);
+                    e.checkcast(owner);
+                    e.getfield(owner, field.getName(), fieldType);
+                    if (ReflectionInjectableProperty.isAtomic(field.getType())) {
+                        Method getter = field.getType().getMethod("get");
+                        e.invoke_virtual(fieldType, ReflectUtils.getSignature(getter));
+                        e.box(Type.getType(getter.getReturnType()));
+                    } else {
+                        e.box(fieldType);
+                    }
+                    e.return_value();
+                }
+            });
+            e.end_method();
+        }
+
+        private void emitSet(ClassEmitter ce) {
+            final CodeEmitter e = ce.begin_method(Constants.ACC_PUBLIC, SET, null);
+            emitFieldSwitch(e, new FieldCallback() {
+                @Override
+                public void processField(Field field, Type owner, Type fieldType) throws Exception {
+                    e.load_arg(0);
+                    e.checkcast(owner);
+                    if (ReflectionInjectableProperty.isAtomic(field.getType())) {
+                        e.getfield(owner, field.getName(), fieldType);
+                        Method setter = findAtomicSetter(field.getType());
+                        e.load_arg(2);
+                        unbox(e, Type.getType(setter.getParameterTypes()[0]));
+                        e.invoke_virtual(fieldType, ReflectUtils.getSignature(setter));
+                    } else {
+                        e.load_arg(2);
+                        unbox(e, fieldType);
+                        e.putfield(owner, field.getName(), fieldType);
+                    }
+                    e.return_value();
+                }
+            });
+            e.end_method();
+        }
+
+        private void emitLifecycle(ClassEmitter ce, Signature signature, @Nullable Method method) {
+            CodeEmitter e = ce.begin_method(Constants.ACC_PUBLIC, signature, new Type[]{Constants.TYPE_THROWABLE});
+            if (method != null) {
+                Type beanType = Type.getType(type);
+                e.load_arg(0);
+                e.checkcast(beanType);
+                e.invoke_virtual(beanType, ReflectUtils.getSignature(method));
+                Type returnType = Type.getType(method.getReturnType());
+                if (returnType.getSize() == 2) {
+                    e.pop2();
+                } else if (returnType.getSize() == 1) {
+                    e.pop();
+                }
+            }
+            e.return_value();
+            e.end_method();
+        }
+
+        /**
+         * Unboxes exactly, unlike {@link CodeEmitter#unbox(Type)} which takes any number for a numeric type,
+         * so that the conversions stay with {@link Field#set}.
+         */
+        private static void unbox(CodeEmitter e, Type type) {
+            if (TypeUtils.isPrimitive(type)) {
+                e.checkcast(TypeUtils.getBoxedType(type));
+            }
+            e.unbox(type);
+        }
+
+        private static Method findAtomicSetter(Class<?> atomicType) throws NoSuchMethodException {
+            for (Method method : atomicType.getMethods()) {
+                if (method.getName().equals("set") && method.getParameterTypes().length == 1 &&
+                        !Modifier.isStatic(method.getModifiers())) {
+                    return method;
+                }
+            }
+            throw new NoSuchMethodException(atomicType.getName() + ".set");
+        }
+
+        private void emitFieldSwitch(final CodeEmitter e, final FieldCallback callback) {
+            if (directFields.isEmpty()) {
+                e.throw_exception(ILLEGAL_ARGUMENT_EXCEPTION, "No direct access to the field");
+                return;
+            }
+
+            int[] keys = new int[directFields.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = fields.indexOf(directFields.get(i));
+            }
+            e.load_arg(1);
+            e.process_switch(keys, new ProcessSwitchCallback() {
+                @Override
+                public void processCase(int key, org.objectweb.asm.Label end) throws Exception {
+                    Field field = fields.get(key);
+                    callback.processField(field, Type.getType(field.getDeclaringClass()),
+                            Type.getType(field.getType()));
+                }
+
+                @Override
+                public void processDefault() {
+                    e.throw_exception(ILLEGAL_ARGUMENT_EXCEPTION, "No direct access to the field");
+                }
+            });
+        }
+
+        private interface FieldCallback {
+            void processField(Field field, Type owner, Type fieldType) throws Exception;
+        }
+    }
+}
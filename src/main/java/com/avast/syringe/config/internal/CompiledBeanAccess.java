@@ -0,0 +1,137 @@
+package com.avast.syringe.config.internal;
+
+import com.avast.syringe.config.ConfigProperty;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.util.List;
+
+/**
+ * The base class of the {@link BeanAccess} implementations compiled by the {@code ConfigBeanProcessor} annotation
+ * processor. Besides the access code, a compiled access carries the property table of the class, so that
+ * {@link ConfigClassAnalyzer} needs neither to walk the class hierarchy nor to read the annotations.
+ * <p/>
+ * The compiled accesses are found through the {@link ConfigClassIndex}; classes missing in the index are handled
+ * reflectively.
+ */
+public abstract class CompiledBeanAccess extends BeanAccess {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompiledBeanAccess.class);
+
+    private static final ClassValue<CompiledBeanAccess> ACCESSES = new ClassValue<CompiledBeanAccess>() {
+        @Override
+        protected CompiledBeanAccess computeValue(Class<?> type) {
+            ClassLoader classLoader = type.getClassLoader();
+            if (classLoader == null) {
+                return null;
+            }
+            String accessClassName = ConfigClassIndex.forClassLoader(classLoader).getAccessClassName(type.getName());
+            if (accessClassName == null) {
+                return null;
+            }
+            try {
+                return (CompiledBeanAccess) classLoader.loadClass(accessClassName).getDeclaredConstructor()
+                        .newInstance();
+            } catch (Exception e) {
+                LOGGER.warn("Cannot instantiate the compiled access {}, using reflection", accessClassName, e);
+                return null;
+            } catch (LinkageError e) {
+                LOGGER.warn("Cannot instantiate the compiled access {}, using reflection", accessClassName, e);
+                return null;
+            }
+        }
+    };
+
+    private final List<CompiledProperty> properties;
+
+    protected CompiledBeanAccess(boolean instantiable, CompiledProperty... properties) {
+        this.properties = ImmutableList.copyOf(properties);
+
+        List<Field> fields = Lists.newArrayListWithCapacity(properties.length);
+        List<Field> directFields = Lists.newArrayList();
+        for (CompiledProperty property : properties) {
+            fields.add(property.field);
+            if (property.direct) {
+                directFields.add(property.field);
+            }
+        }
+        init(fields, directFields, instantiable);
+    }
+
+    /**
+     * @return the compiled access of the class or null if the class has not been compiled by the processor
+     */
+    @Nullable
+    public static CompiledBeanAccess forClass(Class<?> type) {
+        return ACCESSES.get(type);
+    }
+
+    /**
+     * @return the properties of the class in the order of the reflective analysis
+     */
+    List<CompiledProperty> getProperties() {
+        return properties;
+    }
+
+    /**
+     * Refers to a superclass the compiled access cannot name, such as a package-private class of another package.
+     */
+    protected static Class<?> superclass(Class<?> type, int depth) {
+        Class<?> result = type;
+        for (int i = 0; i < depth; i++) {
+            result = result.getSuperclass();
+        }
+        return result;
+    }
+
+    @SuppressWarnings("deprecation")
+    protected static CompiledProperty property(Class<?> declaringClass, String fieldName, @Nullable String name,
+                                               boolean optional, ConfigProperty.Habitat habitat, boolean delegate,
+                                               boolean lazy, boolean direct) {
+        return property(declaringClass, fieldName, name, optional, habitat, delegate, lazy, false, direct);
+    }
+
+    @SuppressWarnings("deprecation")
+    protected static CompiledProperty property(Class<?> declaringClass, String fieldName, @Nullable String name,
+                                               boolean optional, ConfigProperty.Habitat habitat, boolean delegate,
+                                               boolean lazy, boolean immutable, boolean direct) {
+        try {
+            return new CompiledProperty(declaringClass.getDeclaredField(fieldName), name, optional, habitat,
+                    delegate, lazy, immutable, direct);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("The compiled access of " + declaringClass.getName() +
+                    " is out of date, recompile the class", e);
+        }
+    }
+
+    /**
+     * A row of the property table; the arguments of the {@link ReflectionInjectableProperty} constructor
+     */
+    @SuppressWarnings("deprecation")
+    protected static final class CompiledProperty {
+        final Field field;
+        final String name;
+        final boolean optional;
+        final ConfigProperty.Habitat habitat;
+        final boolean delegate;
+        final boolean lazy;
+        final boolean immutable;
+        final boolean direct;
+
+        private CompiledProperty(Field field, String name, boolean optional, ConfigProperty.Habitat habitat,
+                                 boolean delegate, boolean lazy, boolean immutable, boolean direct) {
+            this.field = field;
+            this.name = name;
+            this.optional = optional;
+            this.habitat = habitat;
+            this.delegate = delegate;
+            this.lazy = lazy;
+            this.immutable = immutable;
+            this.direct = direct;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.avast.syringe.config.internal;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A precompiled bundle of parsed and validated configs. The bundle maps the config file paths (relative to the
+ * config directory) to {@link XmlConfig} trees, so that unchanged configs need not be rendered, parsed and
+ * validated again.
+ * <p/>
+ * Every entry carries the hash of its source: the config file, for FreeMarker templates also the template model
+ * file and the templates included or imported while rendering, and the version of the schema and the class of the
+ * config (see {@link #hashEntry(HashCode, List, String, String)}). An entry is used only while the hash matches
+ * the current content of the source.
+ * <p/>
+ * The bundle file is memory-mapped and only its index is read when opened. The entries are decoded on demand.
+ */
+public final class ConfigBundle {
+
+    public static final String DEFAULT_FILE_NAME = "config.bundle";
+
+    private static final int MAGIC = 0x53594e42; // SYNB
+    private static final int VERSION = 3;
+
+    private static final byte VALUE = 0;
+    private static final byte MAP_ENTRY = 1;
+    private static final byte FILE = 2;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    /**
+     * The hashes of the schemas and the class files keyed by the namespace URIs and the class names. The classes
+     * do not change while the process runs, so they are hashed once.
+     */
+    private static final ConcurrentMap<String, HashCode> classpathVersions = new ConcurrentHashMap<String, HashCode>();
+
+    private final File bundleFile;
+    private final ByteBuffer buffer;
+    private final Map<String, Entry> entries;
+
+    private ConfigBundle(File bundleFile, ByteBuffer buffer, Map<String, Entry> entries) {
+        this.bundleFile = bundleFile;
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * Memory-maps the bundle file and reads its index.
+     *
+     * @throws IOException if the file cannot be read or it is not a valid bundle
+     */
+    public static ConfigBundle open(File bundleFile) throws IOException {
+        MappedByteBuffer buffer;
+        RandomAccessFile file = new RandomAccessFile(bundleFile, "r");
+        try {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } finally {
+            file.close();
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a config bundle: " + bundleFile);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of config bundle " + bundleFile);
+            }
+
+            int entryCount = buffer.getInt();
+            Map<String, Entry> entries = Maps.newHashMapWithExpectedSize(entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                String path = readString(buffer);
+                byte[] hash = new byte[buffer.getShort()];
+                buffer.get(hash);
+                String[] dependencies = new String[buffer.getInt()];
+                for (int j = 0; j < dependencies.length; j++) {
+                    dependencies[j] = readString(buffer);
+                }
+                int length = buffer.getInt();
+                entries.put(path, new Entry(hash, dependencies, buffer.position()));
+                buffer.position(buffer.position() + length);
+            }
+            return new ConfigBundle(bundleFile, buffer, entries);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted config bundle " + bundleFile, e);
+        }
+    }
+
+    /**
+     * @return the paths of the configs contained in the bundle
+     */
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * @param path               the path of the config file relative to the config directory (using '/' as separator)
+     * @param sourceFile         the current config file
+     * @param templateModelFile  the file containing the model for FreeMarker templates, if any
+     * @return the precompiled config or null if the bundle does not contain it or if the source has changed
+     */
+    public XmlConfig getConfig(String path, File sourceFile, @Nullable File templateModelFile) throws IOException {
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            return null;
+        }
+
+        if (!sourceFile.isFile()) {
+            return null;
+        }
+
+        File sourceDir = sourceFile.getCanonicalFile().getParentFile();
+        List<File> dependencies = Lists.newArrayListWithCapacity(entry.dependencies.length);
+        for (String dependency : entry.dependencies) {
+            File file = new File(sourceDir, dependency);
+            if (!file.isFile()) {
+                return null;
+            }
+            dependencies.add(file);
+        }
+
+        ByteBuffer entryBuffer = buffer.duplicate();
+        entryBuffer.position(entry.offset);
+        try {
+            // the namespace URI and the class name lead the entry
+            ByteBuffer header = entryBuffer.duplicate();
+            String namespaceURI = readString(header);
+            String className = readString(header);
+            HashCode hash = hashEntry(hashSource(sourceFile, templateModelFile), dependencies, namespaceURI, className);
+            if (!Arrays.equals(entry.hash, hash.asBytes())) {
+                return null;
+            }
+
+            return readConfig(entryBuffer, sourceFile.getAbsoluteFile().getParentFile());
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted entry " + path + " in config bundle " + bundleFile, e);
+        }
+    }
+
+    /**
+     * Computes the hash of the config source. The hash of a FreeMarker template includes also the content of
+     * the template model file.
+     */
+    public static HashCode hashSource(File sourceFile, @Nullable File templateModelFile) throws IOException {
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        hasher.putBytes(Files.toByteArray(sourceFile));
+        if (sourceFile.getName().endsWith(".ftl") && templateModelFile != null && templateModelFile.isFile()) {
+            hasher.putBytes(Files.toByteArray(templateModelFile));
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * Computes the hash of a bundle entry.
+     *
+     * @param sourceHash   the hash of the config source, see {@link #hashSource(File, File)}
+     * @param dependencies the templates included or imported by the source, in the order of their inclusion
+     * @param namespaceURI the namespace URI of the config, identifying its schema
+     * @param className    the class of the config
+     */
+    public static HashCode hashEntry(HashCode sourceHash, List<File> dependencies, @Nullable String namespaceURI,
+                                     @Nullable String className) throws IOException {
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        hasher.putBytes(sourceHash.asBytes());
+        for (File dependency : dependencies) {
+            hasher.putBytes(Files.toByteArray(dependency));
+        }
+        hasher.putBytes(getClasspathVersion(namespaceURI, className).asBytes());
+        return hasher.hash();
+    }
+
+    private static HashCode getClasspathVersion(@Nullable String namespaceURI, @Nullable String className)
+            throws IOException {
+        String key = namespaceURI + " " + className;
+        HashCode version = classpathVersions.get(key);
+        if (version != null) {
+            return version;
+        }
+
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        if (namespaceURI != null) {
+            try {
+                putResource(hasher, XmlConfigParser.findSchemaFromNamespaceURI(namespaceURI));
+            } catch (IllegalArgumentException e) {
+                // no schema
+                hasher.putInt(-1);
+            }
+        }
+        if (className != null) {
+            putResource(hasher, Thread.currentThread().getContextClassLoader()
+                    .getResourceAsStream(className.replace('.', '/') + ".class"));
+        }
+        version = hasher.hash();
+        classpathVersions.putIfAbsent(key, version);
+        return version;
+    }
+
+    private static void putResource(Hasher hasher, @Nullable InputStream resource) throws IOException {
+        if (resource == null) {
+            hasher.putInt(-1);
+            return;
+        }
+        try {
+            hasher.putBytes(ByteStreams.toByteArray(resource));
+        } finally {
+            resource.close();
+        }
+    }
+
+    /**
+     * Writes a new bundle file of configs including no templates.
+     *
+     * @see #write(File, Map, Map, Map)
+     */
+    public static void write(File bundleFile, Map<String, XmlConfig> configs, Map<String, HashCode> hashes)
+            throws IOException {
+        write(bundleFile, configs, hashes, Collections.<String, List<String>>emptyMap());
+    }
+
+    /**
+     * Writes a new bundle file.
+     *
+     * @param configs      the configs keyed by their paths relative to the config directory
+     * @param hashes       the hashes of the entries, see {@link #hashEntry(HashCode, List, String, String)}
+     * @param dependencies the paths of the templates included or imported by the configs, relative to the directory
+     *                     of the config (using '/' as separator); the configs including no templates may be missing
+     */
+    public static void write(File bundleFile, Map<String, XmlConfig> configs, Map<String, HashCode> hashes,
+                             Map<String, List<String>> dependencies) throws IOException {
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(bundleFile));
+        try {
+            DataOutputStream out = new DataOutputStream(output);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(configs.size());
+
+            for (Map.Entry<String, XmlConfig> config : configs.entrySet()) {
+                HashCode hash = hashes.get(config.getKey());
+                Preconditions.checkArgument(hash != null, "No hash for config %s", config.getKey());
+
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                writeConfig(new DataOutputStream(body), config.getValue());
+
+                writeString(out, config.getKey());
+                byte[] hashBytes = hash.asBytes();
+                out.writeShort(hashBytes.length);
+                out.write(hashBytes);
+                List<String> configDependencies = dependencies.get(config.getKey());
+                if (configDependencies == null) {
+                    configDependencies = Collections.emptyList();
+                }
+                out.writeInt(configDependencies.size());
+                for (String dependency : configDependencies) {
+                    writeString(out, dependency);
+                }
+                out.writeInt(body.size());
+                body.writeTo(out);
+            }
+            out.flush();
+        } finally {
+            output.close();
+        }
+    }
+
+    private static void writeConfig(DataOutputStream out, XmlConfig config) throws IOException {
+        writeString(out, config.getNamespaceURI());
+        writeString(out, config.getClassName());
+
+        List<XmlConfig.Decorator> decorators = config.getDecorators();
+        out.writeInt(decorators.size());
+        for (XmlConfig.Decorator decorator : decorators) {
+            writeString(out, decorator.getName());
+        }
+
+        Map<String, Property> properties = config.getProperties();
+        out.writeInt(properties.size());
+        for (Property property : properties.values()) {
+            writeString(out, property.getName());
+            out.writeInt(property.getValues().size());
+            for (Value value : property.getValues()) {
+                if (value instanceof FileValue) {
+                    out.writeByte(FILE);
+                    writeString(out, value.getValue());
+                    writeString(out, ((FileValue) value).getFormat());
+                    continue;
+                }
+                if (value instanceof MapEntry) {
+                    out.writeByte(MAP_ENTRY);
+                    writeString(out, ((MapEntry) value).getKey());
+                } else {
+                    out.writeByte(VALUE);
+                }
+                writeString(out, value.getValue());
+                writeString(out, value.getRefType());
+            }
+        }
+    }
+
+    /**
+     * @param baseDirectory the directory the relative paths of the data files are resolved against
+     */
+    private static XmlConfig readConfig(ByteBuffer buffer, File baseDirectory) {
+        String namespaceURI = readString(buffer);
+        String className = readString(buffer);
+
+        int decoratorCount = buffer.getInt();
+        List<XmlConfig.Decorator> decorators = Lists.newArrayListWithCapacity(decoratorCount);
+        for (int i = 0; i < decoratorCount; i++) {
+            decorators.add(new XmlConfig.Decorator(readString(buffer)));
+        }
+
+        int propertyCount = buffer.getInt();
+        Map<String, Property> properties = Maps.newHashMapWithExpectedSize(propertyCount);
+        for (int i = 0; i < propertyCount; i++) {
+            String name = readString(buffer);
+            int valueCount = buffer.getInt();
+            List<Value> values = Lists.newArrayListWithCapacity(valueCount);
+            for (int j = 0; j < valueCount; j++) {
+                switch (buffer.get()) {
+                    case MAP_ENTRY:
+                        String key = readString(buffer);
+                        values.add(new MapEntry(key, readString(buffer), readString(buffer)));
+                        break;
+                    case FILE:
+                        values.add(new FileValue(readString(buffer), readString(buffer), baseDirectory));
+                        break;
+                    default:
+                        values.add(Value.of(readString(buffer), readString(buffer)));
+                }
+            }
+            properties.put(name, new Property(name, values));
+        }
+
+        return new XmlConfig(properties, namespaceURI, className, decorators);
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(Charsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static final class Entry {
+        final byte[] hash;
+        final String[] dependencies;
+        final int offset;
+
+        Entry(byte[] hash, String[] dependencies, int offset) {
+            this.hash = hash;
+            this.dependencies = dependencies;
+            this.offset = offset;
+        }
+    }
+}
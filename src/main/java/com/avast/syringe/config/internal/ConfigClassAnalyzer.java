@@ -2,14 +2,19 @@ package com.avast.syringe.config.internal;
 
 import com.avast.syringe.config.PropertyValueConverter;
 import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -17,24 +22,62 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Finds the config properties and the lifecycle methods of a config class.
+ * <p/>
+ * The results are immutable and cached per class in a {@link ClassValue}, so that each class is analyzed once
+ * per JVM without preventing its class loader from being collected. The properties are cached separately for
+ * each {@link PropertyValueConverter} instance they are bound to, and for the access to the fields through
+ * the generated {@link BeanAccess}. With the generated access, the classes compiled by the {@code ConfigBeanProcessor}
+ * annotation processor take their properties from the compiled {@link CompiledBeanAccess} instead of analyzing
+ * the class.
+ */
 public class ConfigClassAnalyzer {
 
+    private static final ClassValue<ClassMetadata> METADATA = new ClassValue<ClassMetadata>() {
+        @Override
+        protected ClassMetadata computeValue(Class<?> type) {
+            return new ClassMetadata(type);
+        }
+    };
+
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+
     private final Class<?> configClass;
     private final PropertyValueConverter converter;
-    private final InjectablePropertyFactory factory;
+    private final boolean generatedAccess;
 
     public ConfigClassAnalyzer(Class<?> configClass) {
         this(configClass, null);
     }
 
     public ConfigClassAnalyzer(Class<?> configClass, @Nullable PropertyValueConverter converter) {
+        this(configClass, converter, false);
+    }
+
+    /**
+     * @param generatedAccess true if the properties should access their fields through the generated
+     *                        {@link BeanAccess} where possible
+     */
+    public ConfigClassAnalyzer(Class<?> configClass, @Nullable PropertyValueConverter converter,
+                               boolean generatedAccess) {
         this.configClass = configClass;
         this.converter = converter;
-        this.factory = new InjectablePropertyFactory(converter);
+        this.generatedAccess = generatedAccess;
     }
 
     public static Method findAnnotatedMethod(Class<? extends Annotation> annotationClass, Class cls) {
+        return METADATA.get(cls).getAnnotatedMethod(annotationClass);
+    }
+
+    private static Method scanAnnotatedMethod(Class<? extends Annotation> annotationClass, Class<?> cls) {
         Method[] methods = cls.getMethods();
         for (Method method : methods) {
             Annotation annotation = method.getAnnotation(annotationClass);
@@ -53,6 +96,17 @@ public class ConfigClassAnalyzer {
         return findAnnotatedMethod(PreDestroy.class, configClass);
     }
 
+    /**
+     * @return the constructor the config properties are passed to or null if the instances are created by
+     *         the no-arg constructor
+     * @throws IllegalArgumentException if the parameters of the constructor do not match the config properties
+     */
+    @Nullable
+    public ConfigConstructor getConfigConstructor() {
+        Constructor<?> constructor = METADATA.get(configClass).getConstructor();
+        return constructor != null ? new ConfigConstructor(constructor, getConfigProperties()) : null;
+    }
+
     public InjectableProperty getDelegateProperty() {
         List<InjectableProperty> configProperties = getConfigProperties();
         for (InjectableProperty configProperty : configProperties) {
@@ -96,6 +150,47 @@ public class ConfigClassAnalyzer {
     }
 
     public List<InjectableProperty> getConfigProperties() {
+        if (generatedAccess) {
+            return METADATA.get(configClass).getGeneratedAccessProperties(converter);
+        }
+        return METADATA.get(configClass).getConfigProperties(converter);
+    }
+
+    private static List<InjectableProperty> withGeneratedAccess(Class<?> configClass,
+                                                                List<InjectableProperty> properties) {
+        BeanAccess access = BeanAccess.forClass(configClass);
+        if (access == null) {
+            return properties;
+        }
+
+        List<InjectableProperty> result = Lists.newArrayListWithCapacity(properties.size());
+        for (InjectableProperty property : properties) {
+            if (property instanceof ReflectionInjectableProperty) {
+                result.add(((ReflectionInjectableProperty) property).withAccess(access));
+            } else {
+                result.add(property);
+            }
+        }
+        return ImmutableList.copyOf(result);
+    }
+
+    /**
+     * @return the property table and the access compiled by the annotation processor
+     */
+    private static List<InjectableProperty> getCompiledProperties(CompiledBeanAccess compiled,
+                                                                  @Nullable PropertyValueConverter converter) {
+        List<InjectableProperty> result = Lists.newArrayList();
+        for (CompiledBeanAccess.CompiledProperty property : compiled.getProperties()) {
+            result.add(new ReflectionInjectableProperty(property.field, property.optional, property.name,
+                    property.habitat, property.delegate, property.lazy, property.immutable, converter)
+                    .withAccess(compiled));
+        }
+        return ImmutableList.copyOf(result);
+    }
+
+    private static List<InjectableProperty> analyzeConfigProperties(Class<?> configClass,
+                                                                    @Nullable PropertyValueConverter converter) {
+        InjectablePropertyFactory factory = new InjectablePropertyFactory(converter);
         List<InjectableProperty> result = Lists.newArrayList();
 
         LinkedList<Class<?>> classes = Lists.newLinkedList();
@@ -125,8 +220,22 @@ public class ConfigClassAnalyzer {
         return ImmutableList.copyOf(result);
     }
 
+    /**
+     * @return the number of lookups of the config properties served from the cache
+     */
+    public static long getCacheHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of lookups of the config properties that had to analyze the class
+     */
+    public static long getCacheMissCount() {
+        return missCount.get();
+    }
+
     public static Map<String, InjectableProperty> toMap(Class cls) {
-        return toMap(new ConfigClassAnalyzer(cls).getConfigProperties());
+        return METADATA.get(cls).getConfigPropertyMap();
     }
 
     public static Map<String, InjectableProperty> toMap(List<InjectableProperty> properties) {
@@ -137,4 +246,115 @@ public class ConfigClassAnalyzer {
             }
         });
     }
+
+    /**
+     * The cached metadata of a class. The properties bound to a converter are held softly, since they refer
+     * to the converter, which is the weak key of the cache.
+     */
+    private static final class ClassMetadata {
+        private final Class<?> type;
+        private final PropertyVariants reflective = new PropertyVariants(false);
+        private final PropertyVariants generated = new PropertyVariants(true);
+        private volatile Map<String, InjectableProperty> propertyMap;
+        private volatile Optional<Constructor<?>> constructor;
+        private final ConcurrentMap<Class<? extends Annotation>, Optional<Method>> annotatedMethods =
+                new ConcurrentHashMap<Class<? extends Annotation>, Optional<Method>>(4);
+
+        ClassMetadata(Class<?> type) {
+            this.type = type;
+        }
+
+        List<InjectableProperty> getConfigProperties(@Nullable PropertyValueConverter converter) {
+            return reflective.get(converter);
+        }
+
+        List<InjectableProperty> getGeneratedAccessProperties(@Nullable PropertyValueConverter converter) {
+            return generated.get(converter);
+        }
+
+        Map<String, InjectableProperty> getConfigPropertyMap() {
+            Map<String, InjectableProperty> result = propertyMap;
+            if (result == null) {
+                result = toMap(getConfigProperties(null));
+                propertyMap = result;
+            }
+            return result;
+        }
+
+        Constructor<?> getConstructor() {
+            Optional<Constructor<?>> result = constructor;
+            if (result == null) {
+                result = Optional.<Constructor<?>>ofNullable(ConfigConstructor.findConstructor(type));
+                constructor = result;
+            }
+            return result.orElse(null);
+        }
+
+        Method getAnnotatedMethod(Class<? extends Annotation> annotationClass) {
+            Optional<Method> method = annotatedMethods.get(annotationClass);
+            if (method == null) {
+                method = Optional.ofNullable(scanAnnotatedMethod(annotationClass, type));
+                annotatedMethods.put(annotationClass, method);
+            }
+            return method.orElse(null);
+        }
+
+        private List<InjectableProperty> analyze(@Nullable PropertyValueConverter converter, boolean generatedAccess) {
+            missCount.incrementAndGet();
+            if (generatedAccess) {
+                CompiledBeanAccess compiled = CompiledBeanAccess.forClass(type);
+                if (compiled != null) {
+                    return getCompiledProperties(compiled, converter);
+                }
+                return withGeneratedAccess(type, reflective.get(converter));
+            }
+            return analyzeConfigProperties(type, converter);
+        }
+
+        /**
+         * The properties of the class for the converters
+         */
+        private final class PropertyVariants {
+            private final boolean generatedAccess;
+            private volatile List<InjectableProperty> properties;
+            private final Cache<PropertyValueConverter, List<InjectableProperty>> convertedProperties =
+                    CacheBuilder.newBuilder().weakKeys().softValues().build();
+
+            PropertyVariants(boolean generatedAccess) {
+                this.generatedAccess = generatedAccess;
+            }
+
+            List<InjectableProperty> get(@Nullable final PropertyValueConverter converter) {
+                if (converter != null) {
+                    List<InjectableProperty> result = convertedProperties.getIfPresent(converter);
+                    if (result != null) {
+                        hitCount.incrementAndGet();
+                        return result;
+                    }
+                    try {
+                        return convertedProperties.get(converter, new Callable<List<InjectableProperty>>() {
+                            @Override
+                            public List<InjectableProperty> call() {
+                                return analyze(converter, generatedAccess);
+                            }
+                        });
+                    } catch (ExecutionException e) {
+                        throw Throwables.propagate(e.getCause());
+                    } catch (UncheckedExecutionException e) {
+                        throw Throwables.propagate(e.getCause());
+                    }
+                }
+
+                List<InjectableProperty> result = properties;
+                if (result != null) {
+                    hitCount.incrementAndGet();
+                    return result;
+                }
+                // a race results in the same immutable metadata computed twice
+                result = analyze(null, generatedAccess);
+                properties = result;
+                return result;
+            }
+        }
+    }
 }
@@ -0,0 +1,101 @@
+package com.avast.syringe.config.internal;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Resources;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The index of the config classes compiled with the {@code ConfigBeanProcessor} annotation processor. Each jar or
+ * class directory processed by it contains the {@link #RESOURCE} file listing its config classes, one per line:
+ * <pre>
+ * &lt;class name&gt; &lt;namespace URI&gt; &lt;compiled access class name&gt;
+ * </pre>
+ * The index of a class loader merges all the files visible to it and is read only once.
+ */
+public final class ConfigClassIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigClassIndex.class);
+
+    public static final String RESOURCE = "META-INF/syringe/config-classes";
+
+    private static final Splitter COLUMNS = Splitter.on(' ').omitEmptyStrings().trimResults();
+
+    private static final Map<ClassLoader, ConfigClassIndex> indexes = new WeakHashMap<ClassLoader, ConfigClassIndex>();
+
+    private final Map<String, String> classNames;
+    private final Map<String, String> accessClassNames;
+
+    private ConfigClassIndex(Map<String, String> classNames, Map<String, String> accessClassNames) {
+        this.classNames = classNames;
+        this.accessClassNames = accessClassNames;
+    }
+
+    public static ConfigClassIndex forClassLoader(@Nullable ClassLoader classLoader) {
+        if (classLoader == null) {
+            classLoader = ClassLoader.getSystemClassLoader();
+        }
+        synchronized (indexes) {
+            ConfigClassIndex index = indexes.get(classLoader);
+            if (index == null) {
+                index = read(classLoader);
+                indexes.put(classLoader, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @return the name of the config class bound to the namespace or null if the namespace is not indexed
+     */
+    @Nullable
+    public String getClassName(String namespaceURI) {
+        return classNames.get(namespaceURI);
+    }
+
+    /**
+     * @return the name of the compiled {@link BeanAccess} of the config class or null if the class is not indexed
+     */
+    @Nullable
+    public String getAccessClassName(String className) {
+        return accessClassNames.get(className);
+    }
+
+    public boolean isEmpty() {
+        return accessClassNames.isEmpty();
+    }
+
+    private static ConfigClassIndex read(ClassLoader classLoader) {
+        Map<String, String> classNames = Maps.newHashMap();
+        Map<String, String> accessClassNames = Maps.newHashMap();
+        try {
+            Enumeration<URL> resources = classLoader.getResources(RESOURCE);
+            while (resources.hasMoreElements()) {
+                URL resource = resources.nextElement();
+                for (String line : Resources.readLines(resource, Charsets.UTF_8)) {
+                    List<String> entry = Lists.newArrayList(COLUMNS.split(line));
+                    if (entry.size() != 3) {
+                        continue;
+                    }
+                    classNames.put(entry.get(1), entry.get(0));
+                    accessClassNames.put(entry.get(0), entry.get(2));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read the config class index: {}", e.getMessage());
+        }
+        return new ConfigClassIndex(ImmutableMap.copyOf(classNames), ImmutableMap.copyOf(accessClassNames));
+    }
+}
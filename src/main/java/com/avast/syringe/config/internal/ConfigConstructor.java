@@ -0,0 +1,326 @@
+package com.avast.syringe.config.internal;
+
+import com.avast.syringe.config.ConfigBean;
+import com.google.common.base.Defaults;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Primitives;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The constructor the config properties are injected through: the constructor annotated with {@link Inject}, or
+ * the only constructor of a class having no no-arg constructor. A class having a no-arg constructor is created by it,
+ * unless it opts in to the annotated constructor by {@link ConfigBean#injectConstructor()}. Each parameter takes the config property named
+ * by its {@link Named} annotation or, if the class is compiled with {@code -parameters}, by the parameter name.
+ * The properties passed to the constructor are not assigned after the construction, so their fields can be final.
+ * <p/>
+ * The values are injected into {@link #newArguments() the array of the arguments} as into an instance, through
+ * the {@link #getParameterProperties() parameter properties}. A missing optional value is passed as null, or as
+ * zero to a primitive parameter. The value converter gets null as the instance of the parameter properties.
+ */
+public final class ConfigConstructor {
+
+    private final Constructor<?> constructor;
+    private final List<InjectableProperty> parameterProperties;
+    private final List<InjectableProperty> classProperties;
+
+    ConfigConstructor(Constructor<?> constructor, List<InjectableProperty> properties) {
+        this.constructor = constructor;
+        constructor.setAccessible(true);
+
+        Map<String, InjectableProperty> propertyMap = ConfigClassAnalyzer.toMap(properties);
+        Parameter[] parameters = constructor.getParameters();
+        List<InjectableProperty> parameterProperties = Lists.newArrayListWithCapacity(parameters.length);
+        List<InjectableProperty> classProperties = Lists.newArrayListWithCapacity(parameters.length);
+        for (int i = 0; i < parameters.length; i++) {
+            String name = getPropertyName(parameters[i]);
+            InjectableProperty property = propertyMap.get(name);
+            Preconditions.checkArgument(property instanceof ReflectionInjectableProperty,
+                    "No config property %s for parameter %s of %s", name, i, constructor);
+            Preconditions.checkArgument(!property.isAtomic() && !property.isContextual(),
+                    "Atomic or contextual property %s cannot be passed to %s", name, constructor);
+            Preconditions.checkArgument(Primitives.wrap(parameters[i].getType())
+                    .isAssignableFrom(Primitives.wrap(property.getType())),
+                    "Property %s of type %s cannot be passed to parameter %s of %s", name,
+                    property.getType().getName(), i, constructor);
+            Preconditions.checkArgument(!classProperties.contains(property),
+                    "Property %s is passed to %s twice", name, constructor);
+            classProperties.add(property);
+            parameterProperties.add(new ParameterProperty((ReflectionInjectableProperty) property, i));
+        }
+        this.parameterProperties = ImmutableList.copyOf(parameterProperties);
+        this.classProperties = ImmutableList.copyOf(classProperties);
+    }
+
+    /**
+     * @return the constructor to inject or null if the instances are created by the no-arg constructor
+     */
+    @Nullable
+    static Constructor<?> findConstructor(Class<?> type) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        Constructor<?>[] constructors = type.getDeclaredConstructors();
+        Constructor<?> annotated = null;
+        boolean noArg = false;
+        for (Constructor<?> constructor : constructors) {
+            noArg |= constructor.getParameterCount() == 0;
+            if (constructor.isAnnotationPresent(Inject.class)) {
+                Preconditions.checkArgument(annotated == null, "More than one constructor of %s is annotated with " +
+                        "@Inject", type.getName());
+                annotated = constructor;
+            }
+        }
+        if (annotated != null) {
+            ConfigBean configBean = type.getAnnotation(ConfigBean.class);
+            return !noArg || configBean != null && configBean.injectConstructor() ? annotated : null;
+        }
+        if (constructors.length == 1 && constructors[0].getParameterCount() > 0) {
+            return constructors[0];
+        }
+        return null;
+    }
+
+    private static String getPropertyName(Parameter parameter) {
+        Named named = parameter.getAnnotation(Named.class);
+        if (named != null) {
+            return named.value();
+        }
+        Preconditions.checkArgument(parameter.isNamePresent(), "Parameter %s of %s names no config property; " +
+                "annotate it with @Named or compile the class with -parameters",
+                parameter.getName(), parameter.getDeclaringExecutable());
+        return parameter.getName();
+    }
+
+    /**
+     * @return the properties of the parameters, in the order of the parameters
+     */
+    public List<InjectableProperty> getParameterProperties() {
+        return parameterProperties;
+    }
+
+    /**
+     * @param property a property of the class
+     * @return true if the property is passed to the constructor, i.e. it must not be injected into the instance
+     */
+    public boolean isParameter(InjectableProperty property) {
+        return classProperties.contains(property);
+    }
+
+    public Object[] newArguments() {
+        return new Object[parameterProperties.size()];
+    }
+
+    public Object newInstance(Object[] arguments) throws Exception {
+        Class<?>[] parameterTypes = constructor.getParameterTypes();
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] == null && parameterTypes[i].isPrimitive()) {
+                arguments[i] = Defaults.defaultValue(parameterTypes[i]);
+            }
+        }
+        try {
+            return constructor.newInstance(arguments);
+        } catch (InvocationTargetException e) {
+            Throwables.propagateIfPossible(e.getCause(), Exception.class);
+            throw e;
+        }
+    }
+
+    /**
+     * A property of the class taking its value to an argument of the constructor
+     */
+    private static final class ParameterProperty implements InjectableProperty {
+
+        private final ReflectionInjectableProperty property;
+        private final int index;
+
+        ParameterProperty(ReflectionInjectableProperty property, int index) {
+            this.property = property;
+            this.index = index;
+        }
+
+        @Override
+        public Object getValue(Object arguments) {
+            return ((Object[]) arguments)[index];
+        }
+
+        @Override
+        public void setValue(Object arguments, Object value) throws Exception {
+            ((Object[]) arguments)[index] = property.prepareValue(null, value);
+        }
+
+        @Override
+        public void putMapEntry(Object arguments, Object mapKey, Object mapValue) throws Exception {
+            List<Object> keys = Lists.newArrayList(mapKey);
+            List<Object> values = Lists.newArrayList(mapValue);
+            property.checkMapEntries(null, keys, values);
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> map = (Map<Object, Object>) getValue(arguments);
+            map.put(keys.get(0), values.get(0));
+        }
+
+        @Override
+        public void addCollectionElement(Object arguments, Object element) throws Exception {
+            List<Object> elements = Lists.newArrayList(element);
+            property.checkCollectionElements(null, elements);
+            @SuppressWarnings("unchecked")
+            Collection<Object> collection = (Collection<Object>) getValue(arguments);
+            collection.add(elements.get(0));
+        }
+
+        @Override
+        public void setArrayElement(Object arguments, int i, Object element) throws Exception {
+            List<Object> elements = Lists.newArrayList(element);
+            property.checkCollectionElements(null, elements);
+            Array.set(getValue(arguments), i, elements.get(0));
+        }
+
+        @Override
+        public void checkCollectionElements(Object arguments, List<Object> elements) throws Exception {
+            property.checkCollectionElements(null, elements);
+        }
+
+        @Override
+        public void checkMapEntries(Object arguments, List<Object> keys, List<Object> values) throws Exception {
+            property.checkMapEntries(null, keys, values);
+        }
+
+        @Override
+        public boolean setPrimitiveValue(Object arguments, String value) {
+            return false;
+        }
+
+        @Override
+        public boolean setPrimitiveArray(Object arguments, List<Value> values) {
+            return false;
+        }
+
+        @Override
+        public void setPrimitiveCollection(Object arguments, List<Value> values) throws Exception {
+            setValue(arguments, property.createPrimitiveCollection(values, getValue(arguments)));
+        }
+
+        @Override
+        public String getName() {
+            return property.getName();
+        }
+
+        @Override
+        public String getXmlSchemaTypeName() {
+            return property.getXmlSchemaTypeName();
+        }
+
+        @Override
+        public boolean isReference() {
+            return property.isReference();
+        }
+
+        @Override
+        public boolean isArray() {
+            return property.isArray();
+        }
+
+        @Override
+        public boolean isCollection() {
+            return property.isCollection();
+        }
+
+        @Override
+        public boolean isMap() {
+            return property.isMap();
+        }
+
+        @Override
+        public boolean isPrimitiveCollection() {
+            return property.isPrimitiveCollection();
+        }
+
+        @Override
+        public boolean isPrimitiveMap() {
+            return property.isPrimitiveMap();
+        }
+
+        @Override
+        public boolean isDelegate() {
+            return property.isDelegate();
+        }
+
+        @Override
+        public boolean isOptional() {
+            return property.isOptional();
+        }
+
+        @Override
+        public boolean isLazy() {
+            return property.isLazy();
+        }
+
+        @Override
+        public boolean isImmutable() {
+            return property.isImmutable();
+        }
+
+        @Override
+        public Class<?> getArrayOrCollectionComponentType() {
+            return property.getArrayOrCollectionComponentType();
+        }
+
+        @Override
+        public boolean isContextual() {
+            return property.isContextual();
+        }
+
+        @Override
+        public Class<?> getType() {
+            return property.getType();
+        }
+
+        @Override
+        public boolean isAtomic() {
+            return false;
+        }
+
+        @Override
+        public Class<?> getAtomicType() {
+            return null;
+        }
+
+        @Override
+        public Class<?> getMapKeyType() {
+            return property.getMapKeyType();
+        }
+
+        @Override
+        public Class<?> getMapValueType() {
+            return property.getMapValueType();
+        }
+
+        @Override
+        public boolean hasTag(String tag) {
+            return property.hasTag(tag);
+        }
+
+        @Override
+        public Class<?> getOwner() {
+            return property.getOwner();
+        }
+
+        @Override
+        public String toString() {
+            return property.getName() + " (parameter " + index + ")";
+        }
+    }
+}
@@ -2,39 +2,77 @@ package com.avast.syringe.config.internal;
 
 import com.avast.syringe.config.ConfigException;
 import com.avast.syringe.config.PropertyValueConverter;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import javax.annotation.Nullable;
 import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Creates config instances and injects the config properties into them.
+ * <p/>
+ * By default the instances are created and injected through reflection. The injector obtained by
+ * {@link #forClass(Class, PropertyValueConverter, boolean)} with {@code generatedAccess} set uses the
+ * {@link BeanAccess} generated for the class instead, as far as the JVM access rules allow it, and falls back to
+ * reflection for the rest. The access compiled by the {@code ConfigBeanProcessor} annotation processor is
+ * preferred to the generated one.
+ * <p/>
+ * The classes with a {@link ConfigConstructor} are created by passing the constructor properties to it; the rest
+ * of the properties is injected after the construction.
+ */
 public class ConfigInjector<T> {
 
     private final Class<T> configClass;
     private final List<Injection> injections;
     private final Method postConstruct;
     private final Method preDestroy;
+    private final BeanAccess access;
+    private final ConfigConstructor constructor;
+    private final List<Injection> constructorInjections;
 
     public static <T> ConfigInjector<T> forClass(Class<T> configClass) {
         return forClass(configClass, null);
     }
 
     public static <T> ConfigInjector<T> forClass(Class<T> configClass, @Nullable PropertyValueConverter converter) {
-        return new ConfigInjector<T>(configClass, converter);
+        return forClass(configClass, converter, false);
     }
 
-    private ConfigInjector(Class<T> configClass, PropertyValueConverter converter) {
+    /**
+     * @param generatedAccess true if the instances should be created and injected through the generated
+     *                        {@link BeanAccess}
+     */
+    public static <T> ConfigInjector<T> forClass(Class<T> configClass, @Nullable PropertyValueConverter converter,
+                                                 boolean generatedAccess) {
+        return new ConfigInjector<T>(configClass, converter, generatedAccess);
+    }
+
+    private ConfigInjector(Class<T> configClass, PropertyValueConverter converter, boolean generatedAccess) {
         this.configClass = configClass;
 
         injections = Lists.newArrayList();
-        ConfigClassAnalyzer configClassAnalyzer = new ConfigClassAnalyzer(configClass, converter);
+        ConfigClassAnalyzer configClassAnalyzer = new ConfigClassAnalyzer(configClass, converter, generatedAccess);
+        constructor = configClassAnalyzer.getConfigConstructor();
         for (InjectableProperty property : configClassAnalyzer.getConfigProperties()) {
-            injections.add(new Injection(property));
+            if (constructor == null || !constructor.isParameter(property)) {
+                injections.add(new Injection(property));
+            }
+        }
+
+        constructorInjections = Lists.newArrayList();
+        if (constructor != null) {
+            for (InjectableProperty property : constructor.getParameterProperties()) {
+                constructorInjections.add(new Injection(property));
+            }
         }
 
         postConstruct = configClassAnalyzer.findPostConstructMethod();
         preDestroy = configClassAnalyzer.findPreDestroyMethod();
+        access = generatedAccess ? BeanAccess.forClass(configClass) : null;
     }
 
     public Class<T> getConfigClass() {
@@ -46,7 +84,15 @@ public class ConfigInjector<T> {
     }
 
     public T inject(Map<String, Property> props, Injection.ContextualPropertyResolver resolver) throws Exception {
-            T bean = createInstance();
+        return inject(createInstance(props, resolver), props, resolver);
+    }
+
+    /**
+     * Injects the properties into the instance created by {@link #newInstance()}. The properties streamed by
+     * the {@link #newSink sink} are skipped.
+     */
+    public T inject(T bean, Map<String, Property> props, Injection.ContextualPropertyResolver resolver)
+            throws Exception {
             for (Injection injection : injections) {
                 try {
                     injection.apply(bean, props, resolver);
@@ -59,12 +105,95 @@ public class ConfigInjector<T> {
             return bean;
     }
 
+    /**
+     * @return true if the instances can be created before the properties are parsed, i.e. the class has no
+     *         {@link ConfigConstructor}
+     */
+    public boolean isStreamable() {
+        return constructor == null;
+    }
+
+    /**
+     * Creates the instance to be injected by {@link #newSink} and {@link #inject(Object, Map,
+     * Injection.ContextualPropertyResolver)}.
+     *
+     * @throws IllegalStateException if the class is not {@link #isStreamable() streamable}
+     */
+    public T newInstance() throws Exception {
+        Preconditions.checkState(constructor == null, "%s is created by its constructor", configClass.getName());
+        return createInstance(null, null);
+    }
+
+    /**
+     * @return the sink injecting the values of the properties into the instance as they are parsed
+     */
+    public ConfigSink newSink(final T bean, final Injection.ContextualPropertyResolver resolver) {
+        final Map<String, Injection> injectionMap = Maps.newHashMapWithExpectedSize(injections.size());
+        for (Injection injection : injections) {
+            injectionMap.put(injection.getProperty().getName(), injection);
+        }
+        return new ConfigSink() {
+            @Override
+            public PropertySink openProperty(final String name) throws Exception {
+                Injection injection = injectionMap.get(name);
+                if (injection == null) {
+                    return null;
+                }
+                final PropertySink sink;
+                try {
+                    sink = injection.openSink(bean, resolver);
+                } catch (Exception e) {
+                    throw toConfigException(name, e);
+                }
+                if (sink == null) {
+                    return null;
+                }
+                return new PropertySink() {
+                    @Override
+                    public void add(Value value) throws Exception {
+                        try {
+                            sink.add(value);
+                        } catch (Exception e) {
+                            throw toConfigException(name, e);
+                        }
+                    }
+
+                    @Override
+                    public void close() throws Exception {
+                        try {
+                            sink.close();
+                        } catch (Exception e) {
+                            throw toConfigException(name, e);
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    private ConfigException toConfigException(String propertyName, Exception e) {
+        if (e instanceof ConfigException) {
+            return (ConfigException) e;
+        }
+        return new ConfigException(propertyName, configClass.getName(), "", e);
+    }
+
+    /**
+     * @return the injections into the instances, i.e. without the ones into the constructor
+     */
     public List<Injection> getInjections() {
         return injections;
     }
 
+    /**
+     * @return the injections into the arguments of the {@link ConfigConstructor}
+     */
+    public List<Injection> getConstructorInjections() {
+        return constructorInjections;
+    }
+
     public boolean containsMandatory() {
-        for (Injection injection : injections) {
+        for (Injection injection : Iterables.concat(constructorInjections, injections)) {
             if (!injection.getProperty().isOptional()) {
                 return true;
             }
@@ -73,22 +202,43 @@ public class ConfigInjector<T> {
         return false;
     }
 
-    private T createInstance() throws Exception {
+    private T createInstance(Map<String, Property> props, Injection.ContextualPropertyResolver resolver)
+            throws Exception {
+        if (constructor != null) {
+            Object[] arguments = constructor.newArguments();
+            for (Injection injection : constructorInjections) {
+                try {
+                    injection.apply(arguments, props, resolver);
+                } catch (ConfigException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new ConfigException(injection.getProperty().getName(), configClass.getName(), "", e);
+                }
+            }
+            return configClass.cast(constructor.newInstance(arguments));
+        }
+        if (access != null && access.isInstantiable()) {
+            return configClass.cast(access.newInstance());
+        }
         return createInstance(configClass);
     }
 
     static <T> T createInstance(Class<T> clazz) throws Exception {
-            return clazz.newInstance();
+            return clazz.getDeclaredConstructor().newInstance();
     }
 
     public void notifyPostConstruct(Object instance) throws Exception {
-        if (postConstruct != null) {
+        if (access != null) {
+            access.postConstruct(instance);
+        } else if (postConstruct != null) {
             postConstruct.invoke(instance);
         }
     }
 
     public void notifyPreDestroy(Object instance) throws Exception {
-        if (preDestroy != null) {
+        if (access != null) {
+            access.preDestroy(instance);
+        } else if (preDestroy != null) {
             preDestroy.invoke(instance);
         }
     }
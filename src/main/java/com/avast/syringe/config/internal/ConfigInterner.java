@@ -0,0 +1,41 @@
+package com.avast.syringe.config.internal;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import javax.annotation.Nullable;
+
+/**
+ * Shares the strings and values repeated across the parsed configs. The names (property names, reference types,
+ * namespace URIs and class names) are always interned, since there are few of them. The literals, such as
+ * {@code true}, {@code 0} or host names, are shared only up to {@link #MAX_SHARED_LENGTH} characters, as the long
+ * ones rarely repeat. The shared instances are held weakly, so they are released with the last config using them.
+ */
+final class ConfigInterner {
+
+    static final int MAX_SHARED_LENGTH = 32;
+
+    private static final Interner<String> strings = Interners.newWeakInterner();
+    private static final Interner<Value> values = Interners.newWeakInterner();
+
+    private ConfigInterner() {
+    }
+
+    @Nullable
+    static String name(@Nullable String name) {
+        return name != null ? strings.intern(name) : null;
+    }
+
+    @Nullable
+    static String literal(@Nullable String literal) {
+        return literal != null && literal.length() <= MAX_SHARED_LENGTH ? strings.intern(literal) : literal;
+    }
+
+    /**
+     * @return the shared plain value if the literal is short, else a new value
+     */
+    static Value value(String literal) {
+        Value value = new Value(literal);
+        return literal != null && literal.length() <= MAX_SHARED_LENGTH ? values.intern(value) : value;
+    }
+}
@@ -0,0 +1,44 @@
+package com.avast.syringe.config.internal;
+
+import javax.annotation.Nullable;
+
+/**
+ * Takes the values of the config properties while the config is parsed, so that they need not be kept in
+ * the {@link XmlConfig}. See {@link XmlConfigParser#setSinkFactory}.
+ */
+public interface ConfigSink {
+
+    /**
+     * @return the sink of the values of the property or null if the values are to be kept in the {@link XmlConfig}
+     */
+    @Nullable
+    PropertySink openProperty(String name) throws Exception;
+
+    /**
+     * Receives the values of a property one by one, in the document order.
+     */
+    interface PropertySink {
+
+        /**
+         * @param value the scalar value, the list element or the {@link MapEntry}
+         */
+        void add(Value value) throws Exception;
+
+        /**
+         * Called after the last value of the property
+         */
+        void close() throws Exception;
+    }
+
+    interface Factory {
+
+        /**
+         * Called when the root element of the config is parsed.
+         *
+         * @param className the class configured by the config
+         * @return the sink of the config or null if all the values are to be kept in the {@link XmlConfig}
+         */
+        @Nullable
+        ConfigSink create(String className) throws Exception;
+    }
+}
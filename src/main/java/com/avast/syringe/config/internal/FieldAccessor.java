@@ -0,0 +1,162 @@
+package com.avast.syringe.config.internal;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Reads and writes a property field through method handles resolved once per field. Atomic fields
+ * ({@code AtomicInteger}, {@code MutableReference} etc.) are read and written through their {@code get}
+ * and {@code set} methods; the atomic holder itself is never replaced.
+ * <p/>
+ * The handles are adapted to {@code Object} arguments. A value the exact handle cannot take, such as a boxed
+ * {@code Integer} for a {@code long} field, is passed on to {@link Field#set}, which applies the widening
+ * conversions and reports the mismatches as before.
+ */
+class FieldAccessor {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Field field;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+    private final MethodHandle atomicGetter;
+    private final MethodHandle atomicSetter;
+    private final MethodHandle primitiveSetter;
+
+    /**
+     * @param atomicGetter the {@code get} method of the atomic field type or null if the field is not atomic
+     * @param atomicSetter the {@code set} method of the atomic field type or null if the field is not atomic
+     */
+    FieldAccessor(Field field, Method atomicGetter, Method atomicSetter) {
+        this.field = field;
+        field.setAccessible(true);
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+            if (atomicGetter != null) {
+                this.atomicGetter = lookup.unreflect(atomicGetter).asType(GETTER_TYPE);
+                this.atomicSetter = lookup.unreflect(atomicSetter).asType(SETTER_TYPE);
+                setter = null;
+            } else {
+                this.atomicGetter = null;
+                this.atomicSetter = null;
+                setter = unreflectSetter(lookup, field, SETTER_TYPE);
+            }
+            primitiveSetter = atomicGetter == null && field.getType().isPrimitive() ?
+                    unreflectSetter(lookup, field,
+                            MethodType.methodType(void.class, Object.class, field.getType())) : null;
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access " + field, e);
+        }
+    }
+
+    FieldAccessor(FieldAccessor accessor) {
+        field = accessor.field;
+        getter = accessor.getter;
+        setter = accessor.setter;
+        atomicGetter = accessor.atomicGetter;
+        atomicSetter = accessor.atomicSetter;
+        primitiveSetter = accessor.primitiveSetter;
+    }
+
+    private static MethodHandle unreflectSetter(MethodHandles.Lookup lookup, Field field, MethodType type)
+            throws IllegalAccessException {
+        try {
+            return lookup.unreflectSetter(field).asType(type);
+        } catch (IllegalAccessException e) {
+            // e.g. a final field; Field.set or Field.setInt etc. can still write it
+            String setterName = type.parameterType(1).isPrimitive() ?
+                    "set" + Character.toUpperCase(type.parameterType(1).getName().charAt(0)) +
+                            type.parameterType(1).getName().substring(1) : "set";
+            try {
+                return lookup.findVirtual(Field.class, setterName, type).bindTo(field);
+            } catch (NoSuchMethodException nsme) {
+                throw new AssertionError(nsme);
+            }
+        }
+    }
+
+    Object get(Object instance) throws Exception {
+        try {
+            Object value = (Object) getter.invokeExact(instance);
+            if (atomicGetter != null) {
+                Preconditions.checkNotNull(value, "Atomic field must be final and not null");
+                value = (Object) atomicGetter.invokeExact(value);
+            }
+            return value;
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    void set(Object instance, Object value) throws Exception {
+        try {
+            if (atomicSetter != null) {
+                // The field must be final, ie. it is assumed its value is not null
+                Object atomicValue = (Object) getter.invokeExact(instance);
+                Preconditions.checkNotNull(atomicValue, "Atomic field must be final and not null");
+                atomicSetter.invokeExact(atomicValue, value);
+            } else {
+                try {
+                    setter.invokeExact(instance, value);
+                } catch (ClassCastException e) {
+                    field.set(instance, value);
+                } catch (NullPointerException e) {
+                    // null for a primitive field
+                    field.set(instance, value);
+                }
+            }
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * The primitive setters write the primitive fields without boxing the value. They may be called only
+     * if the field is of the very primitive type and is not atomic.
+     */
+    void setInt(Object instance, int value) throws Exception {
+        try {
+            primitiveSetter.invokeExact(instance, value);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    void setLong(Object instance, long value) throws Exception {
+        try {
+            primitiveSetter.invokeExact(instance, value);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    void setBoolean(Object instance, boolean value) throws Exception {
+        try {
+            primitiveSetter.invokeExact(instance, value);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    void setDouble(Object instance, double value) throws Exception {
+        try {
+            primitiveSetter.invokeExact(instance, value);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    private static Exception propagate(Throwable t) throws Exception {
+        Throwables.propagateIfPossible(t, Exception.class);
+        throw new RuntimeException(t);
+    }
+}
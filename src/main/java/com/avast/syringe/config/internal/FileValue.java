@@ -0,0 +1,43 @@
+package com.avast.syringe.config.internal;
+
+import com.avast.syringe.config.MappedFile;
+
+import java.io.File;
+
+/**
+ * The value of a property given by an external data file. The value is the path of the file as written
+ * in the config; a relative path is resolved against the directory of the config file.
+ */
+public class FileValue extends Value {
+
+    private final String format;
+    private final File baseDirectory;
+
+    public FileValue(String path, String format, File baseDirectory) {
+        super(path);
+        this.format = format;
+        this.baseDirectory = baseDirectory;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public MappedFile toMappedFile() {
+        File file = new File(getValue());
+        if (!file.isAbsolute() && baseDirectory != null) {
+            file = new File(baseDirectory, getValue());
+        }
+        return new MappedFile(file, MappedFile.Format.forName(format));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + format.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return super.equals(obj) && format.equals(((FileValue) obj).format);
+    }
+}
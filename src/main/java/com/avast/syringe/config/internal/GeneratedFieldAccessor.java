@@ -0,0 +1,41 @@
+package com.avast.syringe.config.internal;
+
+/**
+ * Reads and writes a property field through the code generated by {@link BeanAccess}. The values the generated
+ * code cannot take as they are, such as a boxed {@code Integer} for a {@code long} field, are passed on to
+ * the reflective accessor. The setters of atomic references take any object, so their exceptions are never
+ * taken for a mismatch.
+ */
+final class GeneratedFieldAccessor extends FieldAccessor {
+
+    private final BeanAccess access;
+    private final int index;
+    private final boolean exact;
+
+    GeneratedFieldAccessor(FieldAccessor accessor, BeanAccess access, int index, boolean atomicReference) {
+        super(accessor);
+        this.access = access;
+        this.index = index;
+        this.exact = atomicReference;
+    }
+
+    @Override
+    Object get(Object instance) throws Exception {
+        return access.get(instance, index);
+    }
+
+    @Override
+    void set(Object instance, Object value) throws Exception {
+        if (exact) {
+            access.set(instance, index, value);
+            return;
+        }
+        try {
+            access.set(instance, index, value);
+        } catch (ClassCastException e) {
+            super.set(instance, value);
+        } catch (NullPointerException e) {
+            super.set(instance, value);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.avast.syringe.config.internal;
 
+import java.util.List;
+
 /**
  * Describes a property (broadly speaking: it could be a field or a Java Beans property)
  * that we can inject values into. It does not handle the actual injection,
@@ -20,10 +22,36 @@ public interface InjectableProperty extends GeneratedProperty {
 
     boolean isMap();
 
+    /**
+     * @return true if the property is a set-like primitive-specialized collection configured as a list of values;
+     *         its element type is the {@link #getArrayOrCollectionComponentType() component type}
+     * @see com.avast.syringe.config.collect.PrimitiveCollectionAdapter
+     */
+    boolean isPrimitiveCollection();
+
+    /**
+     * @return true if the property is a primitive-specialized map; its key and value types are
+     *         the {@link #getMapKeyType() map key} and {@link #getMapValueType() value} types
+     * @see com.avast.syringe.config.collect.PrimitiveCollectionAdapter
+     */
+    boolean isPrimitiveMap();
+
     boolean isDelegate();
 
     boolean isOptional();
 
+    /**
+     * @return true if the referenced instances should be created on the first use
+     * @see com.avast.syringe.config.ConfigProperty#lazy()
+     */
+    boolean isLazy();
+
+    /**
+     * @return true if a collection or map should be injected as an immutable one
+     * @see com.avast.syringe.config.ConfigProperty#immutable()
+     */
+    boolean isImmutable();
+
     Class<?> getArrayOrCollectionComponentType();
 
     boolean isContextual();
@@ -54,8 +82,50 @@ public interface InjectableProperty extends GeneratedProperty {
 
     void addCollectionElement(Object instance, Object element) throws Exception;
 
+    /**
+     * Applies the value converter to the collection elements in place and checks their types, so that
+     * the elements can be added to the collection at once.
+     *
+     * @throws IllegalArgumentException if an element is not of the component type
+     */
+    void checkCollectionElements(Object instance, List<Object> elements) throws Exception;
+
+    /**
+     * Applies the value converter to the map keys and values in place and checks their types, so that
+     * the entries can be put to the map at once.
+     *
+     * @throws IllegalArgumentException if a key or a value is not of the map key or value type
+     */
+    void checkMapEntries(Object instance, List<Object> keys, List<Object> values) throws Exception;
+
     void setArrayElement(Object instance, int i, Object element) throws Exception;
 
+    /**
+     * Converts the value straight into the primitive field, without boxing it.
+     *
+     * @return false if the property is not a primitive field or its values are converted by
+     *         a {@link com.avast.syringe.config.PropertyValueConverter}, i.e. the value must be set by
+     *         {@link #setValue(Object, Object)}
+     */
+    boolean setPrimitiveValue(Object instance, String value) throws Exception;
+
+    /**
+     * Converts the values into the primitive array at once, without boxing the elements. An existing array
+     * of the same length is filled, otherwise a new one is set.
+     *
+     * @return false if the property is not a primitive array or its values are converted by
+     *         a {@link com.avast.syringe.config.PropertyValueConverter}, i.e. the elements must be set by
+     *         {@link #setArrayElement(Object, int, Object)}
+     */
+    boolean setPrimitiveArray(Object instance, List<Value> values) throws Exception;
+
+    /**
+     * Converts the values (or the map entries) into primitive arrays at once and sets the collection created
+     * from them, without boxing the elements. Applies only to the {@link #isPrimitiveCollection() primitive
+     * collections} and {@link #isPrimitiveMap() maps}.
+     */
+    void setPrimitiveCollection(Object instance, List<Value> values) throws Exception;
+
     /**
      * @return true if the property is tagged with the tag
      * @see com.avast.syringe.config.ConfigProperty#tags()
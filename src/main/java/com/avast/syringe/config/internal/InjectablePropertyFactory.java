@@ -53,6 +53,8 @@ final class InjectablePropertyFactory {
                 annotation.name(),
                 annotation.habitat(),
                 annotation.delegate(),
+                annotation.lazy(),
+                annotation.immutable(),
                 converter
         );
     }
@@ -1,7 +1,15 @@
 package com.avast.syringe.config.internal;
 
 import com.avast.syringe.config.ConfigException;
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import javax.annotation.Nullable;
 import java.lang.reflect.Array;
 import java.util.*;
 
@@ -11,17 +19,73 @@ import java.util.*;
  */
 public class Injection {
 
+    /**
+     * Provides the values of the contextual and reference properties and of the properties missing in the config.
+     * Throws {@link NoSuchFieldException} if it has no value for the property; prefer
+     * {@link ContextualValueResolver} that returns {@link #NO_VALUE} instead.
+     */
     public interface ContextualPropertyResolver {
         Object getProperty(InjectableProperty property, Value configValue) throws Exception;
     }
 
-    public static final ContextualPropertyResolver DEFAULT_CONTEXTUAL_PROPERTY_RESOLVER = new ContextualPropertyResolver() {
+    /**
+     * The result of {@link ContextualValueResolver#resolve} if the resolver has no value for the property
+     */
+    public static final Object NO_VALUE = new Object() {
+        @Override
+        public String toString() {
+            return "NO_VALUE";
+        }
+    };
+
+    /**
+     * The resolver reporting a missing value by returning {@link #NO_VALUE}, so that the optional properties
+     * missing in the config cost no exception. It can be passed wherever a {@link ContextualPropertyResolver} is
+     * expected; {@link #getProperty} throws {@link NoSuchFieldException} for the legacy callers.
+     */
+    public abstract static class ContextualValueResolver implements ContextualPropertyResolver {
+
+        /**
+         * @param configValue the configured value, e.g. the reference, or null if the property is not configured
+         * @return the value of the property or {@link #NO_VALUE}
+         */
+        public abstract Object resolve(InjectableProperty property, @Nullable Value configValue) throws Exception;
+
+        @Override
+        public final Object getProperty(InjectableProperty property, Value configValue) throws Exception {
+            Object value = resolve(property, configValue);
+            if (value == NO_VALUE) {
+                throw new NoSuchFieldException(property.getName());
+            }
+            return value;
+        }
+    }
+
+    public static final ContextualPropertyResolver DEFAULT_CONTEXTUAL_PROPERTY_RESOLVER = new ContextualValueResolver() {
         @Override
-        public Object getProperty(InjectableProperty property, Value configValue) throws Exception {
-            throw new NoSuchFieldException(property.getName());
+        public Object resolve(InjectableProperty property, Value configValue) {
+            return NO_VALUE;
         }
     };
 
+    /**
+     * Resolves the value by any resolver; only a legacy {@link ContextualPropertyResolver} costs an exception
+     * when it has no value.
+     *
+     * @return the value of the property or {@link #NO_VALUE}
+     */
+    public static Object resolve(ContextualPropertyResolver resolver, InjectableProperty property,
+                                 @Nullable Value configValue) throws Exception {
+        if (resolver instanceof ContextualValueResolver) {
+            return ((ContextualValueResolver) resolver).resolve(property, configValue);
+        }
+        try {
+            return resolver.getProperty(property, configValue);
+        } catch (NoSuchFieldException e) {
+            return NO_VALUE;
+        }
+    }
+
     private final InjectableProperty property;
 
     public Injection(InjectableProperty property) {
@@ -43,20 +107,18 @@ public class Injection {
 
     private void applyContextual(Object instance, Map<String, Property> properties, ContextualPropertyResolver resolver) throws Exception {
         Value configValue = getConfigValue(properties);
-        Object propVal;
-        try {
-            propVal = resolver.getProperty(property, configValue);
-        } catch (NoSuchFieldException e) {
-            throwNotConfigured(e);
+        Object propVal = resolve(resolver, property, configValue);
+        if (propVal == NO_VALUE) {
+            throwNotConfigured();
             return;
         }
         property.setValue(instance, propVal);
     }
 
-    private void throwNotConfigured(NoSuchFieldException e) throws NoSuchFieldException {
+    private void throwNotConfigured() throws NoSuchFieldException {
         if (!property.isOptional()) {
             String message = String.format("Required property %s not configured", property.getName());
-            throw e == null ? new NoSuchFieldException(message) : e;
+            throw new NoSuchFieldException(message);
         }
     }
 
@@ -90,12 +152,23 @@ public class Injection {
                 applyContextual(instance, properties, resolver);
                 return;
             } else {
-                throwNotConfigured(null);
+                throwNotConfigured();
                 return;
             }
 
         }
 
+        if (StreamedValue.isStreamed(prop)) {
+            // injected by the sink while parsing
+            return;
+        }
+
+        if (prop.getValues().size() == 1 && prop.getValues().get(0) instanceof FileValue) {
+            FileValue fileValue = (FileValue) prop.getValues().get(0);
+            property.setValue(instance, MappedData.open(fileValue.toMappedFile(), property));
+            return;
+        }
+
         if (property.isArray()) {
             injectArray(instance, prop, resolver);
         } else if (property.isCollection()) {
@@ -109,11 +182,156 @@ public class Injection {
             }
         } else if (property.isMap()) {
             injectMap(instance, prop, resolver);
+        } else if (property.isPrimitiveCollection() || property.isPrimitiveMap()) {
+            injectPrimitiveCollection(instance, prop);
         } else {
             injectSimple(instance, prop, resolver);
         }
     }
 
+    /**
+     * Opens the injection of the values of the property one by one, as they are parsed. A collection or map
+     * element is converted and added to the collection or map of the instance at once, so the parsed values
+     * are not kept.
+     *
+     * @return the sink or null if the property takes all its values at once: the contextual, reference, atomic,
+     *         array and primitive collection properties
+     */
+    @Nullable
+    public ConfigSink.PropertySink openSink(final Object instance, final ContextualPropertyResolver resolver)
+            throws Exception {
+        if (property.isContextual() || property.isReference() || property.isAtomic() || property.isArray() ||
+                property.isPrimitiveCollection() || property.isPrimitiveMap()) {
+            return null;
+        }
+        if (property.isCollection()) {
+            return openCollectionSink(instance, resolver);
+        }
+        if (property.isMap()) {
+            return openMapSink(instance, resolver);
+        }
+        return new ConfigSink.PropertySink() {
+            private boolean injected;
+
+            @Override
+            public void add(Value value) throws Exception {
+                if (injected) {
+                    String message = String.format("Property %s takes a single value", property.getName());
+                    throw new ConfigException(property.getName(), instance.getClass().getName(), message);
+                }
+                injected = true;
+                injectSimple(instance, new Property(property.getName(), value), resolver);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ConfigSink.PropertySink openCollectionSink(final Object instance, final ContextualPropertyResolver resolver)
+            throws Exception {
+        final Class<?> componentType = property.getArrayOrCollectionComponentType();
+        final Collection<Object> collection = (Collection<Object>) property.getValue(instance);
+        if (property.isImmutable()) {
+            final ImmutableCollection.Builder<Object> builder = Set.class.isAssignableFrom(property.getType()) ?
+                    ImmutableSet.builder() : ImmutableList.builder();
+            if (collection != null) {
+                builder.addAll(collection);
+            }
+            return new ConfigSink.PropertySink() {
+                @Override
+                public void add(Value value) throws Exception {
+                    List<Object> elements = Lists.newArrayList(convert(value, componentType, resolver));
+                    property.checkCollectionElements(instance, elements);
+                    builder.addAll(elements);
+                }
+
+                @Override
+                public void close() throws Exception {
+                    property.setValue(instance, builder.build());
+                }
+            };
+        }
+
+        if (collection == null) {
+            Class<?> type = property.getType();
+            Collection<Object> newCollection;
+            if (List.class.isAssignableFrom(type)) {
+                newCollection = new ArrayList<Object>();
+            } else if (Set.class.isAssignableFrom(type)) {
+                newCollection = new HashSet<Object>();
+            } else {
+                String message = String.format("Cannot infer a collection implementation for property %s. Initialize it with a concrete empty collection",
+                        property.getName());
+                throw new ConfigException(property.getName(), instance.getClass().getName(), message);
+            }
+            property.setValue(instance, newCollection);
+        }
+        return new ConfigSink.PropertySink() {
+            @Override
+            public void add(Value value) throws Exception {
+                property.addCollectionElement(instance, convert(value, componentType, resolver));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private ConfigSink.PropertySink openMapSink(final Object instance, final ContextualPropertyResolver resolver)
+            throws Exception {
+        final Class<?> keyType = property.getMapKeyType();
+        final Class<?> valueType = property.getMapValueType();
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> map = (Map<Object, Object>) property.getValue(instance);
+        if (property.isImmutable()) {
+            // the later entries override the earlier ones as in a mutable map
+            final Map<Object, Object> entries = Maps.newLinkedHashMap();
+            if (map != null) {
+                entries.putAll(map);
+            }
+            return new ConfigSink.PropertySink() {
+                @Override
+                public void add(Value value) throws Exception {
+                    List<Object> keys = Lists.newArrayList(TypeConversion.convert(((MapEntry) value).getKey(), keyType));
+                    List<Object> values = Lists.newArrayList(convert(value, valueType, resolver));
+                    property.checkMapEntries(instance, keys, values);
+                    entries.put(keys.get(0), values.get(0));
+                }
+
+                @Override
+                public void close() throws Exception {
+                    property.setValue(instance, ImmutableMap.copyOf(entries));
+                }
+            };
+        }
+
+        if (map == null) {
+            property.setValue(instance, new HashMap<Object, Object>());
+        }
+        return new ConfigSink.PropertySink() {
+            @Override
+            public void add(Value value) throws Exception {
+                property.putMapEntry(instance, TypeConversion.convert(((MapEntry) value).getKey(), keyType),
+                        convert(value, valueType, resolver));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private Object convert(Value value, Class<?> type, ContextualPropertyResolver resolver) throws Exception {
+        if (value.getRefType() != null) {
+            return resolver.getProperty(property, value);
+        }
+        return TypeConversion.convert(value.getValue(), type);
+    }
+
     private void injectSimple(Object instance, Property prop, ContextualPropertyResolver resolver) throws Exception {
         List<Value> values = prop.getValues();
         if (values.size() > 1) {
@@ -126,6 +344,8 @@ public class Injection {
         String refType = value.getRefType();
         if (refType != null) {
             val = resolver.getProperty(property, value);
+        } else if (property.setPrimitiveValue(instance, value.getValue())) {
+            return;
         } else {
             val = TypeConversion.convert(value.getValue(), property.getType());
         }
@@ -141,8 +361,12 @@ public class Injection {
             throw new ConfigException(prop, instance.getClass(), message, null);
         }
 
+        if (!hasReferences(prop.getValues()) && property.setPrimitiveArray(instance, prop.getValues())) {
+            return;
+        }
+
         Object array = property.getValue(instance);
-        if (array == null) {
+        if (array == null || Array.getLength(array) != prop.getValues().size()) {
             array = Array.newInstance(componentType, prop.getValues().size());
             property.setValue(instance, array);
         }
@@ -160,22 +384,35 @@ public class Injection {
         }
     }
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
-    private void injectCollection(Object instance, Property prop, Class<? extends Collection> defaultCollectionClass,
-                                  ContextualPropertyResolver resolver) throws Exception {
-        Collection<Object> collection = (Collection<Object>) property.getValue(instance);
-        if (collection == null) {
-            if (defaultCollectionClass == null) {
-                String message = String.format("Cannot infer a collection implementation for property %s. Initialize it with a concrete empty collection",
-                        property.getName());
-                throw new ConfigException(prop, instance.getClass(), message, null);
+    private void injectPrimitiveCollection(Object instance, Property prop) throws Exception {
+        if (hasReferences(prop.getValues())) {
+            String message = String.format("Primitive collection property %s cannot hold references", property.getName());
+            throw new ConfigException(prop, instance.getClass(), message, null);
+        }
+        property.setPrimitiveCollection(instance, prop.getValues());
+    }
+
+    private static boolean hasReferences(List<Value> values) {
+        for (Value value : values) {
+            if (value.getRefType() != null) {
+                return true;
             }
-            collection = ConfigInjector.createInstance(defaultCollectionClass);
-            property.setValue(instance, collection);
         }
+        return false;
+    }
 
+    /**
+     * Converts all the elements first and adds them at once to a collection presized for them. An immutable
+     * property gets a new immutable collection with the elements of the initialized field followed by
+     * the configured ones.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void injectCollection(Object instance, Property prop, Class<? extends Collection> defaultCollectionClass,
+                                  ContextualPropertyResolver resolver) throws Exception {
+        List<Value> values = prop.getValues();
         Class<?> componentType = property.getArrayOrCollectionComponentType();
-        for (Value value : prop.getValues()) {
+        List<Object> elements = new ArrayList<Object>(values.size());
+        for (Value value : values) {
             Object element;
             String refType = value.getRefType();
             if (refType != null) {
@@ -183,23 +420,54 @@ public class Injection {
             } else {
                 element = TypeConversion.convert(value.getValue(), componentType);
             }
-            property.addCollectionElement(instance, element);
+            elements.add(element);
         }
+        property.checkCollectionElements(instance, elements);
+
+        Collection<Object> collection = (Collection<Object>) property.getValue(instance);
+        if (property.isImmutable()) {
+            ImmutableCollection.Builder<Object> builder = Set.class.isAssignableFrom(property.getType()) ?
+                    ImmutableSet.builder() : ImmutableList.builder();
+            if (collection != null) {
+                builder.addAll(collection);
+            }
+            property.setValue(instance, builder.addAll(elements).build());
+            return;
+        }
+
+        if (collection == null) {
+            if (defaultCollectionClass == ArrayList.class) {
+                collection = new ArrayList<Object>(elements.size());
+            } else if (defaultCollectionClass == HashSet.class) {
+                collection = Sets.newHashSetWithExpectedSize(elements.size());
+            } else if (defaultCollectionClass == null) {
+                String message = String.format("Cannot infer a collection implementation for property %s. Initialize it with a concrete empty collection",
+                        property.getName());
+                throw new ConfigException(prop, instance.getClass(), message, null);
+            } else {
+                collection = ConfigInjector.createInstance(defaultCollectionClass);
+            }
+            property.setValue(instance, collection);
+            // the converter may have replaced the collection
+            collection = (Collection<Object>) property.getValue(instance);
+        }
+        collection.addAll(elements);
     }
 
+    /**
+     * Converts all the entries first and puts them to a map presized for them. An immutable property gets
+     * a new immutable map with the entries of the initialized field followed by the configured ones.
+     */
     @SuppressWarnings({"unchecked"})
     private void injectMap(Object instance, Property prop, ContextualPropertyResolver resolver) throws Exception {
-        Map<Object, Object> map = (Map<Object, Object>) property.getValue(instance);
-        if (map == null) {
-            map = ConfigInjector.createInstance(HashMap.class);
-            property.setValue(instance, map);
-        }
-
+        List<Value> values = prop.getValues();
         Class<?> keyType = property.getMapKeyType();
         Class<?> valueType = property.getMapValueType();
-        for (Value value : prop.getValues()) {
+        List<Object> mapKeys = new ArrayList<Object>(values.size());
+        List<Object> mapValues = new ArrayList<Object>(values.size());
+        for (Value value : values) {
             MapEntry entry = (MapEntry) value;
-            Object mapKey = TypeConversion.convert(entry.getKey(), keyType);
+            mapKeys.add(TypeConversion.convert(entry.getKey(), keyType));
 
             Object mapValue;
             String refType = value.getRefType();
@@ -208,10 +476,37 @@ public class Injection {
             } else {
                 mapValue = TypeConversion.convert(value.getValue(), valueType);
             }
+            mapValues.add(mapValue);
+        }
+        property.checkMapEntries(instance, mapKeys, mapValues);
 
-            property.putMapEntry(instance, mapKey, mapValue);
+        Map<Object, Object> map = (Map<Object, Object>) property.getValue(instance);
+        if (property.isImmutable()) {
+            // the later entries override the earlier ones as in a mutable map
+            Map<Object, Object> entries = Maps.newLinkedHashMap();
+            if (map != null) {
+                entries.putAll(map);
+            }
+            putAll(entries, mapKeys, mapValues);
+            property.setValue(instance, ImmutableMap.copyOf(entries));
+            return;
+        }
+
+        if (map == null) {
+            map = Maps.newHashMapWithExpectedSize(mapKeys.size());
+            property.setValue(instance, map);
+            // the converter may have replaced the map
+            map = (Map<Object, Object>) property.getValue(instance);
+        }
+        putAll(map, mapKeys, mapValues);
+    }
+
+    private static void putAll(Map<Object, Object> map, List<Object> keys, List<Object> values) {
+        for (int i = 0; i < keys.size(); i++) {
+            map.put(keys.get(i), values.get(i));
         }
     }
+
     public static void inject(Object instance, String propertyName, Object value){
         InjectableProperty property = getInjectableProperty(instance.getClass(), propertyName);
         try {
@@ -221,11 +516,6 @@ public class Injection {
         }
     }
     private static InjectableProperty getInjectableProperty(Class cls, String propertyName){
-        ConfigClassAnalyzer configClassAnalyzer = new ConfigClassAnalyzer(cls);
-        for(InjectableProperty  property : configClassAnalyzer.getConfigProperties()){
-            if(property.getName().equals(propertyName))
-                return property;
-        }
-        return null;
+        return ConfigClassAnalyzer.toMap(cls).get(propertyName);
     }
 }
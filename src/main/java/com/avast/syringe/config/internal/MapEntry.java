@@ -10,7 +10,7 @@ public class MapEntry extends Value {
 
     public MapEntry(String key, String value, String refType) {
         super(value, refType);
-        this.key = key;
+        this.key = ConfigInterner.literal(key);
     }
 
     public String getKey() {
@@ -0,0 +1,362 @@
+package com.avast.syringe.config.internal;
+
+import com.avast.syringe.config.MappedFile;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.primitives.Ints;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Opens the read-only views of the {@link MappedFile}s injected into the collection and map properties.
+ * The views read the mapped file on every access. The text formats keep only the offsets of the lines on
+ * the heap.
+ */
+public final class MappedData {
+
+    private MappedData() {
+    }
+
+    /**
+     * @return true if the property can be given by a data file of some format
+     */
+    public static boolean accepts(InjectableProperty property) {
+        if (property.isPrimitiveCollection()) {
+            return property.getType().isAssignableFrom(MappedLongSet.class);
+        }
+        if (property.isCollection()) {
+            Class<?> componentType = property.getArrayOrCollectionComponentType();
+            return componentType.isAssignableFrom(Long.class) || componentType.isAssignableFrom(String.class);
+        }
+        return property.isMap() && property.getMapKeyType() == String.class &&
+                TypeConversion.isConvertible(property.getMapValueType());
+    }
+
+    /**
+     * @return the view of the file typed to the property
+     * @throws IllegalArgumentException if the format does not fit the property type
+     * @throws IOException              if the file cannot be mapped or its content does not match the format
+     */
+    public static Object open(MappedFile mappedFile, InjectableProperty property) throws IOException {
+        ByteBuffer buffer = map(mappedFile);
+        Class<?> type = property.getType();
+        switch (mappedFile.getFormat()) {
+            case SORTED_LONG: {
+                LongBuffer longs = mapLongs(buffer, mappedFile);
+                if (property.isPrimitiveCollection() && type.isAssignableFrom(MappedLongSet.class)) {
+                    return new MappedLongSet(longs);
+                }
+                checkElementType(property, Long.class, mappedFile);
+                if (type.isAssignableFrom(MappedLongSet.class)) {
+                    return new MappedLongSet(longs);
+                }
+                if (type.isAssignableFrom(LongList.class)) {
+                    return new LongList(longs);
+                }
+                break;
+            }
+            case LINES: {
+                checkElementType(property, String.class, mappedFile);
+                if (type.isAssignableFrom(Lines.class)) {
+                    return new Lines(buffer);
+                }
+                break;
+            }
+            case SORTED_LINES: {
+                checkElementType(property, String.class, mappedFile);
+                if (type.isAssignableFrom(LineSet.class)) {
+                    return new LineSet(new Lines(buffer));
+                }
+                break;
+            }
+            case SORTED_TSV: {
+                if (property.isMap() && property.getMapKeyType() == String.class &&
+                        TypeConversion.isConvertible(property.getMapValueType())) {
+                    return new LineMap(new Lines(buffer), property.getMapValueType());
+                }
+                break;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Data file %s cannot be injected into property %s of type %s",
+                mappedFile, property.getName(), type.getName()));
+    }
+
+    private static void checkElementType(InjectableProperty property, Class<?> elementType, MappedFile mappedFile) {
+        if (!property.isCollection() || !property.getArrayOrCollectionComponentType().isAssignableFrom(elementType)) {
+            throw new IllegalArgumentException(String.format("Data file %s cannot be injected into property %s " +
+                    "of type %s", mappedFile, property.getName(), property.getType().getName()));
+        }
+    }
+
+    /**
+     * Checks the file is a sequence of non-decreasing longs, as the binary searches of {@link MappedLongSet} expect
+     */
+    private static LongBuffer mapLongs(ByteBuffer buffer, MappedFile mappedFile) throws IOException {
+        if (buffer.limit() % 8 != 0) {
+            throw new IOException(String.format("Data file %s of %s bytes is not a sequence of 8-byte longs",
+                    mappedFile.getFile(), buffer.limit()));
+        }
+        LongBuffer longs = buffer.order(ByteOrder.BIG_ENDIAN).asLongBuffer();
+        for (int i = 1; i < longs.limit(); i++) {
+            if (longs.get(i - 1) > longs.get(i)) {
+                throw new IOException(String.format("Data file %s is not sorted, the value at %s is less than " +
+                        "the previous one", mappedFile.getFile(), i));
+            }
+        }
+        return longs;
+    }
+
+    private static MappedByteBuffer map(MappedFile mappedFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mappedFile.getFile(), "r");
+        try {
+            if (file.length() > Integer.MAX_VALUE) {
+                throw new IOException("Data file " + mappedFile.getFile() + " is larger than 2GB");
+            }
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } finally {
+            file.close();
+        }
+    }
+
+    private static final class LongList extends AbstractList<Long> implements RandomAccess {
+        private final LongBuffer buffer;
+
+        LongList(LongBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public Long get(int index) {
+            return buffer.get(index);
+        }
+
+        @Override
+        public int size() {
+            return buffer.limit();
+        }
+    }
+
+    /**
+     * The lines of a mapped UTF-8 file. A trailing {@code \r} is not part of a line.
+     */
+    private static final class Lines extends AbstractList<String> implements RandomAccess {
+        private final ByteBuffer buffer;
+        /**
+         * The start of the line i and the end (exclusive) of the line i - 1 are at {@code 2 * i} and
+         * {@code 2 * i - 1}
+         */
+        private final int[] bounds;
+
+        Lines(ByteBuffer buffer) {
+            this.buffer = buffer;
+
+            int[] bounds = new int[64];
+            int count = 0;
+            int start = 0;
+            int limit = buffer.limit();
+            for (int i = 0; i <= limit; i++) {
+                if (i == limit || buffer.get(i) == '\n') {
+                    int end = i > start && buffer.get(i - 1) == '\r' ? i - 1 : i;
+                    if (i < limit || end > start) {
+                        if (count + 2 > bounds.length) {
+                            bounds = Arrays.copyOf(bounds, Ints.checkedCast(bounds.length * 2L));
+                        }
+                        bounds[count++] = start;
+                        bounds[count++] = end;
+                    }
+                    start = i + 1;
+                }
+            }
+            this.bounds = Arrays.copyOf(bounds, count);
+        }
+
+        @Override
+        public String get(int index) {
+            return decode(bounds[2 * index], bounds[2 * index + 1]);
+        }
+
+        @Override
+        public int size() {
+            return bounds.length / 2;
+        }
+
+        String decode(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(start);
+            slice.get(bytes);
+            return new String(bytes, Charsets.UTF_8);
+        }
+
+        /**
+         * @return the index of the line starting with the key followed by the separator (or ending there
+         *         if the separator is -1) or -1 if there is no such line
+         */
+        int search(byte[] key, int separator) {
+            int low = 0;
+            int high = size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(mid, key, separator);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        private int compare(int line, byte[] key, int separator) {
+            int start = bounds[2 * line];
+            int end = keyEnd(line, separator);
+            int length = Math.min(end - start, key.length);
+            for (int i = 0; i < length; i++) {
+                int cmp = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return (end - start) - key.length;
+        }
+
+        int keyEnd(int line, int separator) {
+            int end = bounds[2 * line + 1];
+            if (separator >= 0) {
+                for (int i = bounds[2 * line]; i < end; i++) {
+                    if (buffer.get(i) == separator) {
+                        return i;
+                    }
+                }
+            }
+            return end;
+        }
+
+        int start(int line) {
+            return bounds[2 * line];
+        }
+
+        int end(int line) {
+            return bounds[2 * line + 1];
+        }
+    }
+
+    private static final class LineSet extends AbstractSet<String> {
+        private final Lines lines;
+
+        LineSet(Lines lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String && lines.search(((String) o).getBytes(Charsets.UTF_8), -1) >= 0;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return lines.iterator();
+        }
+
+        @Override
+        public int size() {
+            return lines.size();
+        }
+    }
+
+    private static final class LineMap extends AbstractMap<String, Object> {
+        private static final int SEPARATOR = '\t';
+
+        private final Lines lines;
+        private final Class<?> valueType;
+
+        LineMap(Lines lines, Class<?> valueType) {
+            this.lines = lines;
+            this.valueType = valueType;
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            int line = lines.search(((String) key).getBytes(Charsets.UTF_8), SEPARATOR);
+            return line >= 0 ? getValue(line) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && lines.search(((String) key).getBytes(Charsets.UTF_8), SEPARATOR) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return lines.size();
+        }
+
+        private Object getValue(int line) {
+            int keyEnd = lines.keyEnd(line, SEPARATOR);
+            int end = lines.end(line);
+            String value = keyEnd < end ? lines.decode(keyEnd + 1, end) : "";
+            try {
+                return TypeConversion.convert(value, valueType);
+            } catch (Exception e) {
+                throw Throwables.propagate(e);
+            }
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+                        private int line;
+
+                        @Override
+                        public boolean hasNext() {
+                            return line < lines.size();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            String key = lines.decode(lines.start(line), lines.keyEnd(line, SEPARATOR));
+                            Entry<String, Object> entry = new SimpleImmutableEntry<String, Object>(key, getValue(line));
+                            line++;
+                            return entry;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return lines.size();
+                }
+            };
+        }
+    }
+}
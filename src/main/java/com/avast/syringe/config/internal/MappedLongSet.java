@@ -0,0 +1,90 @@
+package com.avast.syringe.config.internal;
+
+import com.avast.syringe.config.collect.LongSet;
+
+import java.nio.LongBuffer;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only set of longs backed by a memory-mapped file of sorted big-endian longs. The lookups are
+ * binary searches in the mapped file; no element is materialized until it is iterated.
+ *
+ * @see com.avast.syringe.config.MappedFile.Format#SORTED_LONG
+ */
+public final class MappedLongSet extends AbstractSet<Long> implements LongSet {
+
+    private final LongBuffer buffer;
+
+    MappedLongSet(LongBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public boolean contains(long value) {
+        int low = 0;
+        int high = buffer.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midValue = buffer.get(mid);
+            if (midValue < value) {
+                low = mid + 1;
+            } else if (midValue > value) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains(((Long) o).longValue());
+    }
+
+    /**
+     * @return the index-th smallest value
+     */
+    public long get(int index) {
+        return buffer.get(index);
+    }
+
+    @Override
+    public int size() {
+        return buffer.limit();
+    }
+
+    @Override
+    public long[] toLongArray() {
+        long[] array = new long[buffer.limit()];
+        buffer.duplicate().get(array);
+        return array;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < buffer.limit();
+            }
+
+            @Override
+            public Long next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return buffer.get(index++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
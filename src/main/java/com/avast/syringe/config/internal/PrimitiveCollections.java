@@ -0,0 +1,171 @@
+package com.avast.syringe.config.internal;
+
+import com.avast.syringe.config.collect.IntHashSet;
+import com.avast.syringe.config.collect.IntSet;
+import com.avast.syringe.config.collect.LongHashSet;
+import com.avast.syringe.config.collect.LongIntHashMap;
+import com.avast.syringe.config.collect.LongIntMap;
+import com.avast.syringe.config.collect.LongSet;
+import com.avast.syringe.config.collect.PrimitiveCollectionAdapter;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * The registry of the {@link PrimitiveCollectionAdapter}s: the built-in ones, then the ones found by
+ * {@link ServiceLoader}.
+ */
+public final class PrimitiveCollections {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrimitiveCollections.class);
+
+    private static final Map<Class<?>, PrimitiveCollectionAdapter<?>> registry = Maps.newHashMap();
+
+    static {
+        register(new IntSetAdapter());
+        register(new LongSetAdapter());
+        register(new LongIntMapAdapter());
+
+        try {
+            for (PrimitiveCollectionAdapter<?> adapter : ServiceLoader.load(PrimitiveCollectionAdapter.class,
+                    PrimitiveCollections.class.getClassLoader())) {
+                register(adapter);
+            }
+        } catch (ServiceConfigurationError e) {
+            LOGGER.warn("Cannot load the primitive collection adapters: {}", e.getMessage());
+        }
+    }
+
+    private PrimitiveCollections() {
+    }
+
+    private static void register(PrimitiveCollectionAdapter<?> adapter) {
+        Class<?> valueType = adapter.getValueType();
+        if (!TypeConversion.isUnboxedType(adapter.getElementType()) ||
+                (valueType != null && !TypeConversion.isUnboxedType(valueType))) {
+            LOGGER.warn("Ignoring the primitive collection adapter {} of unsupported element types",
+                    adapter.getClass().getName());
+            return;
+        }
+        registry.put(adapter.getType(), adapter);
+    }
+
+    /**
+     * @return the adapter of the property type or null if the type is not a primitive collection
+     */
+    @Nullable
+    public static PrimitiveCollectionAdapter<?> getAdapter(Class<?> type) {
+        return registry.get(type);
+    }
+
+    /**
+     * Converts the values in one pass and creates the collection by the adapter.
+     *
+     * @param values the values, or the {@link MapEntry map entries} if the adapter has a value type
+     */
+    @SuppressWarnings("unchecked")
+    static Object create(PrimitiveCollectionAdapter<?> adapter, List<Value> values, @Nullable Object existing) {
+        Object elements;
+        Object mapValues;
+        if (adapter.getValueType() == null) {
+            elements = TypeConversion.convertPrimitiveArray(values, adapter.getElementType());
+            mapValues = null;
+        } else {
+            elements = TypeConversion.convertPrimitiveMapKeys(values, adapter.getElementType());
+            mapValues = TypeConversion.convertPrimitiveArray(values, adapter.getValueType());
+        }
+        return ((PrimitiveCollectionAdapter<Object>) adapter).create(elements, mapValues, existing);
+    }
+
+    private static final class IntSetAdapter implements PrimitiveCollectionAdapter<IntSet> {
+        @Override
+        public Class<IntSet> getType() {
+            return IntSet.class;
+        }
+
+        @Override
+        public Class<?> getElementType() {
+            return int.class;
+        }
+
+        @Override
+        public Class<?> getValueType() {
+            return null;
+        }
+
+        @Override
+        public IntSet create(Object elements, @Nullable Object values, @Nullable IntSet existing) {
+            int[] array = (int[]) elements;
+            IntHashSet set = new IntHashSet(array.length + (existing != null ? existing.size() : 0));
+            if (existing != null) {
+                set.addAll(existing.toIntArray());
+            }
+            set.addAll(array);
+            return set;
+        }
+    }
+
+    private static final class LongSetAdapter implements PrimitiveCollectionAdapter<LongSet> {
+        @Override
+        public Class<LongSet> getType() {
+            return LongSet.class;
+        }
+
+        @Override
+        public Class<?> getElementType() {
+            return long.class;
+        }
+
+        @Override
+        public Class<?> getValueType() {
+            return null;
+        }
+
+        @Override
+        public LongSet create(Object elements, @Nullable Object values, @Nullable LongSet existing) {
+            long[] array = (long[]) elements;
+            LongHashSet set = new LongHashSet(array.length + (existing != null ? existing.size() : 0));
+            if (existing != null) {
+                set.addAll(existing.toLongArray());
+            }
+            set.addAll(array);
+            return set;
+        }
+    }
+
+    private static final class LongIntMapAdapter implements PrimitiveCollectionAdapter<LongIntMap> {
+        @Override
+        public Class<LongIntMap> getType() {
+            return LongIntMap.class;
+        }
+
+        @Override
+        public Class<?> getElementType() {
+            return long.class;
+        }
+
+        @Override
+        public Class<?> getValueType() {
+            return int.class;
+        }
+
+        @Override
+        public LongIntMap create(Object elements, @Nullable Object values, @Nullable LongIntMap existing) {
+            long[] keys = (long[]) elements;
+            LongIntHashMap map = new LongIntHashMap(keys.length + (existing != null ? existing.size() : 0));
+            if (existing != null) {
+                for (long key : existing.keys()) {
+                    map.put(key, existing.get(key, 0));
+                }
+            }
+            map.putAll(keys, (int[]) values);
+            return map;
+        }
+    }
+}
@@ -4,28 +4,31 @@ import java.util.List;
 
 import com.google.common.collect.ImmutableList;
 
+/**
+ * A config property. The name is interned and the values are held in an immutable list sized exactly.
+ */
 public class Property {
 
     private final String name;
     private final List<Value> values;
 
     public Property(String name, List<Value> values) {
-        this.name = name;
+        this.name = ConfigInterner.name(name);
         this.values = ImmutableList.copyOf(values);
     }
 
     public Property(String name, Value... values) {
-        this.name = name;
+        this.name = ConfigInterner.name(name);
         this.values = ImmutableList.copyOf(values);
     }
 
     public Property(String name, Value value) {
-        this.name = name;
+        this.name = ConfigInterner.name(name);
         this.values = ImmutableList.of(value);
     }
 
     public Property(String name) {
-        this.name = name;
+        this.name = ConfigInterner.name(name);
         this.values = ImmutableList.of();
     }
 
@@ -4,13 +4,19 @@ import com.avast.syringe.Provider;
 import com.avast.syringe.config.ConfigProperty;
 import com.avast.syringe.config.MutableReference;
 import com.avast.syringe.config.PropertyValueConverter;
+import com.avast.syringe.config.collect.PrimitiveCollectionAdapter;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.Primitives;
 
 import javax.annotation.Nullable;
 import java.lang.reflect.*;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -25,45 +31,62 @@ public class ReflectionInjectableProperty implements InjectableProperty {
 
     // Right now we only support fields.
     private final Field field;
-    private final Method atomicSetter;
-    private final Method atomicGetter;
+    private final FieldAccessor accessor;
     private final boolean optional;
     private final String name;
     private final boolean delegate;
+    private final boolean lazy;
+    private final boolean immutable;
     private final ConfigProperty.Habitat habitat;
     private final PropertyValueConverter converter;
     private final Class referenceType;
 
+    // resolved once, the injection asks for them for every value
+    private final boolean atomic;
+    private final boolean atomicReference;
+    private final Class<?> type;
+    private final boolean array;
+    private final boolean collection;
+    private final boolean map;
+    private final PrimitiveCollectionAdapter<?> primitiveCollectionAdapter;
+    private final boolean reference;
+    private final Class<?> componentType;
+    private final Class<?> mapKeyType;
+    private final Class<?> mapValueType;
+
     public ReflectionInjectableProperty(Field field, boolean optional, String name, ConfigProperty.Habitat habitat,
                                         boolean delegate, @Nullable PropertyValueConverter converter) {
+        this(field, optional, name, habitat, delegate, false, converter);
+    }
+
+    @SuppressWarnings("deprecation")
+    public ReflectionInjectableProperty(Field field, boolean optional, String name, ConfigProperty.Habitat habitat,
+                                        boolean delegate, boolean lazy, @Nullable PropertyValueConverter converter) {
+        this(field, optional, name, habitat, delegate, lazy, false, converter);
+    }
+
+    @SuppressWarnings("deprecation")
+    public ReflectionInjectableProperty(Field field, boolean optional, String name, ConfigProperty.Habitat habitat,
+                                        boolean delegate, boolean lazy, boolean immutable,
+                                        @Nullable PropertyValueConverter converter) {
         this.field = field;
         this.optional = optional;
         this.name = name;
         this.habitat = habitat;
         this.converter = converter;
         this.delegate = delegate;
+        this.lazy = lazy;
+        this.immutable = immutable;
 
-        if (isAtomic()) {
-            Preconditions.checkArgument(Modifier.isFinal(field.getModifiers()), "Property %s in %s must be final",
-                    field.getName(), field.getDeclaringClass().getName());
-            try {
-                Class setterArgType = isAtomicReference() ? Object.class : getType();
-                atomicSetter = field.getType().getMethod("set", setterArgType);
-                atomicGetter = field.getType().getMethod("get");
-            } catch (NoSuchMethodException e) {
-                throw new IllegalArgumentException(e.getMessage(), e);
-            }
-        } else {
-            atomicSetter = null;
-            atomicGetter = null;
-        }
+        Class<?> fieldType = field.getType();
+        atomicReference = isAtomicReference(fieldType);
+        atomic = isAtomic(fieldType);
 
-        if (isAtomicReference()) {
+        if (atomicReference) {
             // Determine the reference type
             Type refType;
             try {
-                Class fieldClass = field.getType();
-                Method getRefTypeMethod = fieldClass.getMethod("getReferenceType", Field.class);
+                Method getRefTypeMethod = fieldType.getMethod("getReferenceType", Field.class);
                 refType = (Type) getRefTypeMethod.invoke(null, field);
             } catch (NoSuchMethodException e) {
                 refType = resolveRefType(field);
@@ -91,6 +114,95 @@ public class ReflectionInjectableProperty implements InjectableProperty {
         } else {
             referenceType = null;
         }
+
+        type = resolveType();
+        array = isArray(type);
+        collection = isCollection(type);
+        map = isMap(type);
+        primitiveCollectionAdapter = PrimitiveCollections.getAdapter(type);
+        reference = isReference(type);
+
+        if (atomic) {
+            Preconditions.checkArgument(Modifier.isFinal(field.getModifiers()), "Property %s in %s must be final",
+                    field.getName(), field.getDeclaringClass().getName());
+            try {
+                Class setterArgType = atomicReference ? Object.class : type;
+                accessor = new FieldAccessor(field, fieldType.getMethod("get"),
+                        fieldType.getMethod("set", setterArgType));
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+        } else {
+            accessor = new FieldAccessor(field, null, null);
+        }
+
+        if (immutable) {
+            Preconditions.checkArgument((collection || map) && type.isAssignableFrom(getImmutableType()),
+                    "Property %s in %s cannot be immutable", field.getName(), field.getDeclaringClass().getName());
+        }
+
+        if (isPrimitiveCollection()) {
+            componentType = primitiveCollectionAdapter.getElementType();
+            mapKeyType = null;
+            mapValueType = null;
+        } else if (isPrimitiveMap()) {
+            componentType = null;
+            mapKeyType = primitiveCollectionAdapter.getElementType();
+            mapValueType = primitiveCollectionAdapter.getValueType();
+        } else {
+            // Raw collection types are reported when the component type is needed
+            componentType = array || collection ? resolveQuietly(-1) : null;
+            mapKeyType = map ? resolveQuietly(0) : null;
+            mapValueType = map ? resolveQuietly(1) : null;
+        }
+    }
+
+    /**
+     * @param mapTypeIndex the index of the map type parameter or -1 for the array or collection component type
+     */
+    @Nullable
+    private Class<?> resolveQuietly(int mapTypeIndex) {
+        try {
+            return mapTypeIndex < 0 ? resolveArrayOrCollectionComponentType() : toClass(getMapTypes()[mapTypeIndex]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private ReflectionInjectableProperty(ReflectionInjectableProperty property, FieldAccessor accessor) {
+        this.field = property.field;
+        this.accessor = accessor;
+        this.optional = property.optional;
+        this.name = property.name;
+        this.delegate = property.delegate;
+        this.lazy = property.lazy;
+        this.immutable = property.immutable;
+        this.habitat = property.habitat;
+        this.converter = property.converter;
+        this.referenceType = property.referenceType;
+        this.atomic = property.atomic;
+        this.atomicReference = property.atomicReference;
+        this.type = property.type;
+        this.array = property.array;
+        this.collection = property.collection;
+        this.map = property.map;
+        this.primitiveCollectionAdapter = property.primitiveCollectionAdapter;
+        this.reference = property.reference;
+        this.componentType = property.componentType;
+        this.mapKeyType = property.mapKeyType;
+        this.mapValueType = property.mapValueType;
+    }
+
+    /**
+     * @return a copy of this property reading and writing its field through the generated access, or this property
+     *         if the generated access cannot reach the field
+     */
+    ReflectionInjectableProperty withAccess(BeanAccess access) {
+        if (!access.isDirect(field)) {
+            return this;
+        }
+        return new ReflectionInjectableProperty(this,
+                new GeneratedFieldAccessor(accessor, access, access.getIndex(field), atomicReference));
     }
 
     private Type resolveRefType(Field field) {
@@ -119,7 +231,9 @@ public class ReflectionInjectableProperty implements InjectableProperty {
                 Number.class.isAssignableFrom(type) ||
                 AtomicBoolean.class.isAssignableFrom(type) ||
                 Void.class == type ||
-                String.class == type) {
+                String.class == type ||
+                TypeConversion.isConvertible(type) ||
+                PrimitiveCollections.getAdapter(type) != null) {
             return false;
         }
         return true;
@@ -130,7 +244,7 @@ public class ReflectionInjectableProperty implements InjectableProperty {
     }
 
     public boolean isReference() {
-        return isReference(getType());
+        return reference;
     }
 
     public String getName() {
@@ -147,7 +261,11 @@ public class ReflectionInjectableProperty implements InjectableProperty {
     }
 
     public Class<?> getType() {
-        if (isAtomic()) {
+        return type;
+    }
+
+    private Class<?> resolveType() {
+        if (atomic) {
             if (AtomicBoolean.class.isAssignableFrom(field.getType())) {
                 return boolean.class;
             }
@@ -160,7 +278,7 @@ public class ReflectionInjectableProperty implements InjectableProperty {
                 return long.class;
             }
 
-            if (isAtomicReference()) {
+            if (atomicReference) {
                 return referenceType;
             }
 
@@ -170,33 +288,59 @@ public class ReflectionInjectableProperty implements InjectableProperty {
         }
     }
 
-
     public boolean isOptional() {
         return optional || delegate;
     }
 
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    @Override
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    private Class<?> getImmutableType() {
+        if (map) {
+            return ImmutableMap.class;
+        }
+        return Set.class.isAssignableFrom(type) ? ImmutableSet.class : ImmutableList.class;
+    }
+
     public static boolean isArray(Class type) {
         return type.isArray();
     }
 
     public boolean isArray() {
-        return isArray(getType());
+        return array;
     }
 
     public boolean isAtomic() {
-        return AtomicBoolean.class.isAssignableFrom(field.getType()) ||
-                AtomicInteger.class.isAssignableFrom(field.getType()) ||
-                AtomicLong.class.isAssignableFrom(field.getType()) ||
-                isAtomicReference();
+        return atomic;
+    }
+
+    /**
+     * @return true if a field of the type holds the property value in an atomic holder
+     */
+    public static boolean isAtomic(Class<?> fieldType) {
+        return AtomicBoolean.class.isAssignableFrom(fieldType) ||
+                AtomicInteger.class.isAssignableFrom(fieldType) ||
+                AtomicLong.class.isAssignableFrom(fieldType) ||
+                isAtomicReference(fieldType);
     }
 
     public boolean isAtomicReference() {
-        return AtomicReference.class.isAssignableFrom(field.getType()) ||
-                MutableReference.class.isAssignableFrom(field.getType());
+        return atomicReference;
+    }
+
+    public static boolean isAtomicReference(Class<?> fieldType) {
+        return AtomicReference.class.isAssignableFrom(fieldType) ||
+                MutableReference.class.isAssignableFrom(fieldType);
     }
 
     public Class getAtomicType() {
-        return isAtomic() ? field.getType() : null;
+        return atomic ? field.getType() : null;
     }
 
     public static boolean isCollection(Class type) {
@@ -204,7 +348,7 @@ public class ReflectionInjectableProperty implements InjectableProperty {
     }
 
     public boolean isCollection() {
-        return isCollection(getType());
+        return collection;
     }
 
     public static boolean isMap(Class type) {
@@ -212,7 +356,17 @@ public class ReflectionInjectableProperty implements InjectableProperty {
     }
 
     public boolean isMap() {
-        return isMap(getType());
+        return map;
+    }
+
+    @Override
+    public boolean isPrimitiveCollection() {
+        return primitiveCollectionAdapter != null && primitiveCollectionAdapter.getValueType() == null;
+    }
+
+    @Override
+    public boolean isPrimitiveMap() {
+        return primitiveCollectionAdapter != null && primitiveCollectionAdapter.getValueType() != null;
     }
 
     /**
@@ -220,6 +374,13 @@ public class ReflectionInjectableProperty implements InjectableProperty {
      * {@link #isCollection()} or {@link #isArray()} is {@code true}.
      */
     public Class<?> getArrayOrCollectionComponentType() {
+        if (componentType != null) {
+            return componentType;
+        }
+        return resolveArrayOrCollectionComponentType();
+    }
+
+    private Class<?> resolveArrayOrCollectionComponentType() {
         if (!isCollection() && !isArray()) {
             throw new IllegalStateException();
         }
@@ -243,6 +404,9 @@ public class ReflectionInjectableProperty implements InjectableProperty {
      * @return
      */
     public Class<?> getMapKeyType() {
+        if (mapKeyType != null) {
+            return mapKeyType;
+        }
         return toClass(getMapTypes()[0]);
     }
 
@@ -252,6 +416,9 @@ public class ReflectionInjectableProperty implements InjectableProperty {
      * @return
      */
     public Class<?> getMapValueType() {
+        if (mapValueType != null) {
+            return mapValueType;
+        }
         return toClass(getMapTypes()[1]);
     }
 
@@ -290,41 +457,72 @@ public class ReflectionInjectableProperty implements InjectableProperty {
     }
 
     public Object getValue(Object instance) throws Exception {
-        field.setAccessible(true);
-        if (isAtomic()) {
-            Object atomicValue = field.get(instance);
-            return atomicGetter.invoke(atomicValue);
-        } else {
-            return field.get(instance);
-        }
-
+        return accessor.get(instance);
     }
 
     public void setValue(Object instance, Object value) throws Exception {
-        value = getInstanceFromProvider(value, getType());
+        accessor.set(instance, prepareValue(instance, value));
+    }
+
+    /**
+     * @return the value to be assigned, i.e. the product of a provider converted by the value converter
+     */
+    Object prepareValue(@Nullable Object instance, Object value) throws Exception {
+        value = getInstanceFromProvider(value, type);
 
         if (converter != null) {
-            value = converter.convertTo(this, instance, getType(), value);
+            value = converter.convertTo(this, instance, type, value);
         }
 
-        field.setAccessible(true);
-        if (isAtomic()) {
-
-            if (isAtomicReference() && value != null) {
-                Preconditions.checkArgument(
-                        referenceType.isInstance(value), "Incompatible instance %s for reference %s",
-                        value.getClass(), field.getName());
-            }
+        if (atomicReference && value != null) {
+            Preconditions.checkArgument(
+                    referenceType.isInstance(value), "Incompatible instance %s for reference %s",
+                    value.getClass(), field.getName());
+        }
+        return value;
+    }
 
-            // The field must be final, ie. it is assumed its value is not null
-            Object atomicValue = field.get(instance);
-            Preconditions.checkNotNull(atomicValue, "Atomic field must be final and not null");
+    @Override
+    public boolean setPrimitiveValue(Object instance, String value) throws Exception {
+        if (converter != null || atomic || !TypeConversion.isUnboxedType(type)) {
+            return false;
+        }
+        if (type == int.class) {
+            accessor.setInt(instance, TypeConversion.convertInt(value));
+        } else if (type == long.class) {
+            accessor.setLong(instance, TypeConversion.convertLong(value));
+        } else if (type == boolean.class) {
+            accessor.setBoolean(instance, TypeConversion.convertBoolean(value));
+        } else {
+            accessor.setDouble(instance, TypeConversion.convertDouble(value));
+        }
+        return true;
+    }
 
-            atomicSetter.invoke(atomicValue, value);
+    @Override
+    public boolean setPrimitiveArray(Object instance, List<Value> values) throws Exception {
+        if (converter != null || !array || !TypeConversion.isUnboxedType(componentType)) {
+            return false;
+        }
+        Object converted = TypeConversion.convertPrimitiveArray(values, componentType);
+        Object existing = getValue(instance);
+        if (existing == null || Array.getLength(existing) != values.size()) {
+            accessor.set(instance, converted);
         } else {
-            field.set(instance, value);
+            System.arraycopy(converted, 0, existing, 0, values.size());
         }
+        return true;
+    }
 
+    @Override
+    public void setPrimitiveCollection(Object instance, List<Value> values) throws Exception {
+        Preconditions.checkState(primitiveCollectionAdapter != null, "Property %s is not a primitive collection",
+                getName());
+        setValue(instance, createPrimitiveCollection(values, getValue(instance)));
+    }
+
+    Object createPrimitiveCollection(List<Value> values, @Nullable Object existing) {
+        return PrimitiveCollections.create(primitiveCollectionAdapter, values, existing);
     }
 
     private Object getInstanceFromProvider(Object value, Class type) throws Exception {
@@ -369,6 +567,51 @@ public class ReflectionInjectableProperty implements InjectableProperty {
         ((Map) getValue(instance)).put(mapKey, mapValue);
     }
 
+    @Override
+    public void checkCollectionElements(Object instance, List<Object> elements) throws Exception {
+        Class<?> componentType = getArrayOrCollectionComponentType();
+        for (int i = 0; i < elements.size(); i++) {
+            Object element = elements.get(i);
+            if (converter != null) {
+                element = getInstanceFromProvider(element, componentType);
+                element = converter.convertTo(this, instance, componentType, element);
+                elements.set(i, element);
+            }
+
+            if (!isInstanceOf(componentType, element)) {
+                throw new IllegalArgumentException("Collection element type mismatch in property '" + getName() +
+                        "' of class " + field.getDeclaringClass() + ". Found: " + element + ", required:" + componentType);
+            }
+        }
+    }
+
+    @Override
+    public void checkMapEntries(Object instance, List<Object> keys, List<Object> values) throws Exception {
+        for (int i = 0; i < keys.size(); i++) {
+            Object mapKey = keys.get(i);
+            Object mapValue = values.get(i);
+            if (converter != null) {
+                mapKey = getInstanceFromProvider(mapKey, mapKeyType);
+                mapKey = converter.convertTo(this, instance, mapKeyType, mapKey);
+                keys.set(i, mapKey);
+
+                mapValue = getInstanceFromProvider(mapValue, mapValueType);
+                mapValue = converter.convertTo(this, instance, mapValueType, mapValue);
+                values.set(i, mapValue);
+            }
+
+            if (!isInstanceOf(mapKeyType, mapKey)) {
+                throw new IllegalArgumentException("key type mismatch in map property " + getName() +
+                        " of class " + field.getDeclaringClass().getName());
+            }
+
+            if (!isInstanceOf(mapValueType, mapValue)) {
+                throw new IllegalArgumentException("Value type mismatch in property '" + getName() +
+                        "' of class " + field.getDeclaringClass() + ". Found: " + mapValue + ", required:" + mapValueType);
+            }
+        }
+    }
+
     @Override
     public void addCollectionElement(Object instance, Object element) throws Exception {
         if (converter != null) {
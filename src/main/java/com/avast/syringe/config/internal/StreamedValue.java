@@ -0,0 +1,69 @@
+package com.avast.syringe.config.internal;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.util.List;
+
+/**
+ * Stands for the values of a property passed to a {@link ConfigSink} while the config was parsed. The value is
+ * the digest of the streamed values, so that a reloaded config tells whether the property has changed.
+ */
+public class StreamedValue extends Value {
+
+    private static final HashFunction DIGEST = Hashing.murmur3_128();
+
+    private StreamedValue(String digest) {
+        super(digest);
+    }
+
+    /**
+     * @return true if the property has been streamed, i.e. its values are not available
+     */
+    public static boolean isStreamed(Property property) {
+        List<Value> values = property.getValues();
+        return values.size() == 1 && values.get(0) instanceof StreamedValue;
+    }
+
+    /**
+     * @param property a property of the config
+     * @param parsed   the same property of the config parsed without the sink
+     * @return true if the property is streamed and it has the same values as the parsed one
+     */
+    public static boolean matches(Property property, Property parsed) {
+        if (!isStreamed(property)) {
+            return false;
+        }
+        Digest digest = new Digest();
+        for (Value value : parsed.getValues()) {
+            digest.add(value);
+        }
+        return property.getValues().get(0).equals(digest.toValue());
+    }
+
+    /**
+     * Computes the digest value incrementally
+     */
+    static final class Digest {
+        private final Hasher hasher = DIGEST.newHasher();
+
+        void add(Value value) {
+            putString(value instanceof MapEntry ? ((MapEntry) value).getKey() : null);
+            putString(value.getValue());
+            putString(value.getRefType());
+        }
+
+        private void putString(String s) {
+            if (s == null) {
+                hasher.putInt(-1);
+            } else {
+                hasher.putInt(s.length()).putString(s);
+            }
+        }
+
+        StreamedValue toValue() {
+            return new StreamedValue(hasher.hash().toString());
+        }
+    }
+}
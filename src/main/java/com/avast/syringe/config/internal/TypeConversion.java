@@ -1,167 +1,532 @@
 package com.avast.syringe.config.internal;
 
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-
-import com.avast.syringe.config.ConfigException;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import com.avast.syringe.config.DataSize;
+import com.avast.syringe.config.TypeConverter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.net.HostAndPort;
 import com.google.common.primitives.Primitives;
-
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts the text values of the config files by the built-in {@link TypeConverter}s and the ones discovered
+ * by {@link ServiceLoader}. The converter of a type is resolved once, on the first conversion to the type;
+ * a type without its own converter takes the converter of its nearest superclass or interface, so that e.g.
+ * all the enums share one converter.
+ */
 public class TypeConversion {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(TypeConversion.class);
+
     private static final Map<Class<?>, TypeConverter<?>> registry = Maps.newHashMap();
 
     static {
-        registry.put(String.class, new StringConverter());
-        registry.put(Boolean.class, new BooleanConverter());
-        registry.put(boolean.class, new BooleanConverter());
-        registry.put(Integer.class, new IntegerConverter());
-        registry.put(int.class, new IntegerConverter());
-        registry.put(Long.class, new LongConverter());
-        registry.put(long.class, new LongConverter());
-        registry.put(Class.class, new ClassConverter());
+        register(new StringConverter());
+        register(new BooleanConverter());
+        register(new IntegerConverter());
+        register(new LongConverter());
+        register(new DoubleConverter());
+        register(new FloatConverter());
+        register(new ShortConverter());
+        register(new ByteConverter());
+        register(new CharacterConverter());
+        register(new ClassConverter());
+        register(new EnumConverter());
+        register(new DurationConverter());
+        register(new DataSizeConverter());
+        register(new PatternConverter());
+        register(new URIConverter());
+        register(new InetSocketAddressConverter());
+
+        try {
+            for (TypeConverter<?> converter : ServiceLoader.load(TypeConverter.class,
+                    TypeConversion.class.getClassLoader())) {
+                register(converter);
+            }
+        } catch (ServiceConfigurationError e) {
+            LOGGER.warn("Cannot load the type converters: {}", e.getMessage());
+        }
     }
 
-    @SuppressWarnings("unchecked")
-    private static <T> TypeConverter<T> findConverter(Class<T> clazz) {
-        return (TypeConverter<T>) registry.get(clazz);
+    private static final ClassValue<Conversion> conversions = new ClassValue<Conversion>() {
+        @Override
+        protected Conversion computeValue(Class<?> type) {
+            Class<?> wrapped = Primitives.wrap(type);
+            TypeConverter<?> converter = resolveConverter(wrapped);
+            return converter != null ? new Conversion(converter, wrapped) : null;
+        }
+    };
+
+    private static void register(TypeConverter<?> converter) {
+        registry.put(converter.getType(), converter);
     }
 
-    private static <T> TypeConverter<T> getConverter(Class<T> clazz) {
-        TypeConverter<T> converter = findConverter(clazz);
-        if (converter == null) {
+    /**
+     * @return the converter of the type or of its nearest supertype, the superclasses first
+     */
+    private static TypeConverter<?> resolveConverter(Class<?> type) {
+        LinkedList<Class<?>> interfaces = Lists.newLinkedList();
+        for (Class<?> each = type; each != null && each != Object.class; each = each.getSuperclass()) {
+            TypeConverter<?> converter = registry.get(each);
+            if (converter != null) {
+                return converter;
+            }
+            interfaces.addAll(Arrays.asList(each.getInterfaces()));
+        }
+        while (!interfaces.isEmpty()) {
+            Class<?> each = interfaces.removeFirst();
+            TypeConverter<?> converter = registry.get(each);
+            if (converter != null) {
+                return converter;
+            }
+            interfaces.addAll(Arrays.asList(each.getInterfaces()));
+        }
+        return null;
+    }
+
+    private static Conversion getConversion(Class<?> clazz) {
+        Conversion conversion = conversions.get(clazz);
+        if (conversion == null) {
             String message = String.format("Conversion to class %s is not supported", clazz);
             throw new IllegalArgumentException(message);
         }
-        return converter;
+        return conversion;
+    }
+
+    /**
+     * @return true if the text values can be converted to the type
+     */
+    public static boolean isConvertible(Class<?> clazz) {
+        return conversions.get(clazz) != null;
     }
 
     public static <T> String convertToString(T value, Class<T> clazz) throws Exception {
-        TypeConverter<T> converter = getConverter(clazz);
+        TypeConverter<Object> converter = getConversion(clazz).converter;
         return converter.convertToString(value);
     }
 
+    @SuppressWarnings("unchecked")
     public static <T> T convert(String value, Class<T> clazz) throws Exception {
         if (clazz.isAssignableFrom(String.class)) {
             return clazz.cast(value);
         }
-        clazz = Primitives.wrap(clazz);
-        TypeConverter<T> converter = getConverter(clazz);
-        return converter.convert(value);
+        return (T) getConversion(clazz).convert(value);
+    }
+
+    /**
+     * @return true if the values of the type can be converted by {@link #convertPrimitiveArray(List, Class)}
+     *         and set without boxing
+     */
+    public static boolean isUnboxedType(Class<?> clazz) {
+        return clazz == int.class || clazz == long.class || clazz == boolean.class || clazz == double.class;
+    }
+
+    public static int convertInt(String value) {
+        return Integer.parseInt(value);
+    }
+
+    public static long convertLong(String value) {
+        return Long.parseLong(value);
+    }
+
+    public static boolean convertBoolean(String value) {
+        // Can't use Boolean.parseBoolean() because XML Schema also supports "0" and "1".
+        return value.equalsIgnoreCase("true") || value.equals("1");
+    }
+
+    public static double convertDouble(String value) {
+        return Double.parseDouble(value);
+    }
+
+    /**
+     * Converts the values into a new primitive array in one pass, without boxing the elements.
+     *
+     * @param componentType one of the {@link #isUnboxedType(Class) unboxed types}
+     */
+    public static Object convertPrimitiveArray(List<Value> values, Class<?> componentType) {
+        return convertPrimitiveArray(values, componentType, false);
+    }
+
+    /**
+     * Converts the keys of the map entries into a new primitive array as {@link #convertPrimitiveArray(List, Class)}.
+     */
+    public static Object convertPrimitiveMapKeys(List<Value> entries, Class<?> componentType) {
+        return convertPrimitiveArray(entries, componentType, true);
+    }
+
+    private static Object convertPrimitiveArray(List<Value> values, Class<?> componentType, boolean keys) {
+        int size = values.size();
+        if (componentType == int.class) {
+            int[] array = new int[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = convertInt(getText(values.get(i), keys));
+            }
+            return array;
+        } else if (componentType == long.class) {
+            long[] array = new long[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = convertLong(getText(values.get(i), keys));
+            }
+            return array;
+        } else if (componentType == boolean.class) {
+            boolean[] array = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = convertBoolean(getText(values.get(i), keys));
+            }
+            return array;
+        } else if (componentType == double.class) {
+            double[] array = new double[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = convertDouble(getText(values.get(i), keys));
+            }
+            return array;
+        }
+        throw new IllegalArgumentException(String.format("Conversion to array of %s is not supported", componentType));
+    }
+
+    private static String getText(Value value, boolean key) {
+        return key ? ((MapEntry) value).getKey() : value.getValue();
     }
 
     public static String getXmlSchemaTypeName(Class<?> clazz) {
         if (clazz == String.class) {
             return "xs:string";
         }
-        clazz = Primitives.wrap(clazz);
-        TypeConverter<?> converter = findConverter(clazz);
-        if (converter != null) {
-            return converter.getXmlSchemaTypeName();
+        Conversion conversion = conversions.get(clazz);
+        if (conversion != null) {
+            return conversion.converter.getXmlSchemaTypeName();
         } else {
-            return clazz.getName();
+            return Primitives.wrap(clazz).getName();
         }
     }
 
-    private static interface TypeConverter<T> {
+    /**
+     * The converter resolved for a type. The shared values are held weakly, as long as some property refers
+     * to them.
+     */
+    private static final class Conversion {
+        private final TypeConverter<Object> converter;
+        private final Class<Object> type;
+        private final ConcurrentMap<String, Object> sharedValues;
+
+        @SuppressWarnings("unchecked")
+        Conversion(TypeConverter<?> converter, Class<?> type) {
+            this.converter = (TypeConverter<Object>) converter;
+            this.type = (Class<Object>) type;
+            this.sharedValues = converter.isShared() ?
+                    CacheBuilder.newBuilder().weakValues().<String, Object>build().asMap() : null;
+        }
 
-        T convert(String value) throws Exception;
+        Object convert(String value) throws Exception {
+            if (sharedValues == null) {
+                return converter.convert(value, type);
+            }
+            Object result = sharedValues.get(value);
+            if (result == null) {
+                result = converter.convert(value, type);
+                Object existing = sharedValues.putIfAbsent(value, result);
+                if (existing != null) {
+                    result = existing;
+                }
+            }
+            return result;
+        }
+    }
 
-        String convertToString(T value) throws Exception;
+    private static abstract class BuiltInConverter<T> implements TypeConverter<T> {
 
-        // Sort of ugly to have this in a general-purpose TypeConverted interface,
-        // but good enough for now.
-        String getXmlSchemaTypeName();
-    }
+        private final Class<T> type;
+        private final String xmlSchemaTypeName;
+        private final boolean shared;
 
-    private static class BooleanConverter implements TypeConverter<Boolean> {
+        BuiltInConverter(Class<T> type, String xmlSchemaTypeName, boolean shared) {
+            this.type = type;
+            this.xmlSchemaTypeName = xmlSchemaTypeName;
+            this.shared = shared;
+        }
 
         @Override
-        public Boolean convert(String value) {
-            // Can't use Boolean.parseBoolean() because XML Schema also supports "0" and "1".
-            return value.equalsIgnoreCase("true") || value.equals("1");
+        public Class<T> getType() {
+            return type;
         }
 
         @Override
-        public String convertToString(Boolean value) {
+        public String convertToString(T value) throws Exception {
             return value.toString();
         }
 
         @Override
         public String getXmlSchemaTypeName() {
-            return "xs:boolean";
+            return xmlSchemaTypeName;
+        }
+
+        @Override
+        public boolean isShared() {
+            return shared;
         }
     }
 
-    private static class IntegerConverter implements TypeConverter<Integer> {
+    private static class BooleanConverter extends BuiltInConverter<Boolean> {
 
-        @Override
-        public Integer convert(String value) {
-            return Integer.parseInt(value);
+        BooleanConverter() {
+            super(Boolean.class, "xs:boolean", false);
         }
 
         @Override
-        public String convertToString(Integer value) {
-            return value.toString();
+        public Boolean convert(String value, Class<? extends Boolean> type) {
+            return convertBoolean(value);
+        }
+    }
+
+    private static class IntegerConverter extends BuiltInConverter<Integer> {
+
+        IntegerConverter() {
+            super(Integer.class, "xs:integer", false);
         }
 
         @Override
-        public String getXmlSchemaTypeName() {
-            return "xs:integer";
+        public Integer convert(String value, Class<? extends Integer> type) {
+            return convertInt(value);
         }
+    }
+
+    private static class LongConverter extends BuiltInConverter<Long> {
 
+        LongConverter() {
+            super(Long.class, "xs:integer", false);
+        }
+
+        @Override
+        public Long convert(String value, Class<? extends Long> type) {
+            return convertLong(value);
+        }
     }
 
-    private static class LongConverter implements TypeConverter<Long> {
+    private static class DoubleConverter extends BuiltInConverter<Double> {
+
+        DoubleConverter() {
+            super(Double.class, "xs:double", false);
+        }
 
         @Override
-        public Long convert(String value) {
-            return Long.parseLong(value);
+        public Double convert(String value, Class<? extends Double> type) {
+            return convertDouble(value);
+        }
+    }
+
+    private static class FloatConverter extends BuiltInConverter<Float> {
+
+        FloatConverter() {
+            super(Float.class, "xs:float", false);
         }
 
         @Override
-        public String convertToString(Long value) {
-            return value.toString();
+        public Float convert(String value, Class<? extends Float> type) {
+            return Float.parseFloat(value);
+        }
+    }
+
+    private static class ShortConverter extends BuiltInConverter<Short> {
+
+        ShortConverter() {
+            super(Short.class, "xs:short", false);
         }
 
         @Override
-        public String getXmlSchemaTypeName() {
-            return "xs:integer";
+        public Short convert(String value, Class<? extends Short> type) {
+            return Short.parseShort(value);
         }
     }
 
-    private static class StringConverter implements TypeConverter<String> {
+    private static class ByteConverter extends BuiltInConverter<Byte> {
+
+        ByteConverter() {
+            super(Byte.class, "xs:byte", false);
+        }
 
         @Override
-        public String convert(String value) {
-            return value;
+        public Byte convert(String value, Class<? extends Byte> type) {
+            return Byte.parseByte(value);
+        }
+    }
+
+    private static class CharacterConverter extends BuiltInConverter<Character> {
+
+        CharacterConverter() {
+            super(Character.class, "xs:string", false);
         }
 
         @Override
-        public String convertToString(String value) {
-            return value;
+        public Character convert(String value, Class<? extends Character> type) {
+            if (value.length() != 1) {
+                throw new IllegalArgumentException("Not a single character: " + value);
+            }
+            return value.charAt(0);
+        }
+    }
+
+    private static class StringConverter extends BuiltInConverter<String> {
+
+        StringConverter() {
+            super(String.class, "xs:string", false);
         }
 
         @Override
-        public String getXmlSchemaTypeName() {
-            return "xs:string";
+        public String convert(String value, Class<? extends String> type) {
+            return value;
         }
     }
 
-    private static class ClassConverter implements TypeConverter<Class<?>> {
+    @SuppressWarnings("rawtypes")
+    private static class ClassConverter extends BuiltInConverter<Class> {
+
+        ClassConverter() {
+            super(Class.class, "xs:string", false);
+        }
 
         @Override
-        public Class<?> convert(String value) throws ClassNotFoundException {
+        public Class convert(String value, Class<? extends Class> type) throws ClassNotFoundException {
             return TypeConversion.class.getClassLoader().loadClass(value);
         }
 
         @Override
-        public String convertToString(Class<?> value) {
+        public String convertToString(Class value) {
             return value.getName();
         }
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static class EnumConverter extends BuiltInConverter<Enum> {
+
+        EnumConverter() {
+            super(Enum.class, "xs:string", false);
+        }
 
         @Override
-        public String getXmlSchemaTypeName() {
-            return "xs:string";
+        public Enum convert(String value, Class<? extends Enum> type) {
+            return Enum.valueOf(type, value);
+        }
+
+        @Override
+        public String convertToString(Enum value) {
+            return value.name();
+        }
+    }
+
+    /**
+     * Takes the ISO-8601 durations, such as {@code PT1M30S}, and the numbers with the {@code ns}, {@code us},
+     * {@code ms}, {@code s}, {@code m}, {@code h} or {@code d} unit. A number without a unit means milliseconds.
+     */
+    private static class DurationConverter extends BuiltInConverter<Duration> {
+
+        DurationConverter() {
+            super(Duration.class, "xs:string", true);
+        }
+
+        @Override
+        public Duration convert(String value, Class<? extends Duration> type) {
+            if (value.startsWith("P") || value.startsWith("-P")) {
+                return Duration.parse(value);
+            }
+            int end = value.length();
+            while (end > 0 && !Character.isDigit(value.charAt(end - 1))) {
+                end--;
+            }
+            long amount = Long.parseLong(value.substring(0, end).trim());
+            String unit = value.substring(end).trim();
+            if (unit.isEmpty() || unit.equals("ms")) {
+                return Duration.ofMillis(amount);
+            } else if (unit.equals("ns")) {
+                return Duration.ofNanos(amount);
+            } else if (unit.equals("us")) {
+                return Duration.of(amount, ChronoUnit.MICROS);
+            } else if (unit.equals("s")) {
+                return Duration.ofSeconds(amount);
+            } else if (unit.equals("m")) {
+                return Duration.ofMinutes(amount);
+            } else if (unit.equals("h")) {
+                return Duration.ofHours(amount);
+            } else if (unit.equals("d")) {
+                return Duration.ofDays(amount);
+            }
+            throw new IllegalArgumentException("Invalid duration unit: " + value);
+        }
+    }
+
+    private static class DataSizeConverter extends BuiltInConverter<DataSize> {
+
+        DataSizeConverter() {
+            super(DataSize.class, "xs:string", true);
+        }
+
+        @Override
+        public DataSize convert(String value, Class<? extends DataSize> type) {
+            return DataSize.parse(value);
+        }
+    }
+
+    private static class PatternConverter extends BuiltInConverter<Pattern> {
+
+        PatternConverter() {
+            super(Pattern.class, "xs:string", true);
+        }
+
+        @Override
+        public Pattern convert(String value, Class<? extends Pattern> type) {
+            return Pattern.compile(value);
+        }
+
+        @Override
+        public String convertToString(Pattern value) {
+            return value.pattern();
+        }
+    }
+
+    private static class URIConverter extends BuiltInConverter<URI> {
+
+        URIConverter() {
+            super(URI.class, "xs:anyURI", true);
+        }
+
+        @Override
+        public URI convert(String value, Class<? extends URI> type) throws Exception {
+            return new URI(value);
+        }
+    }
+
+    /**
+     * Takes {@code host:port}, the IPv6 hosts in brackets. The host is resolved when converted.
+     */
+    private static class InetSocketAddressConverter extends BuiltInConverter<InetSocketAddress> {
+
+        InetSocketAddressConverter() {
+            super(InetSocketAddress.class, "xs:string", true);
+        }
+
+        @Override
+        public InetSocketAddress convert(String value, Class<? extends InetSocketAddress> type) {
+            HostAndPort hostAndPort = HostAndPort.fromString(value);
+            return new InetSocketAddress(hostAndPort.getHostText(), hostAndPort.getPort());
+        }
+
+        @Override
+        public String convertToString(InetSocketAddress value) {
+            return HostAndPort.fromParts(value.getHostString(), value.getPort()).toString();
         }
     }
 }
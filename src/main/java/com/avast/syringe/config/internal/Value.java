@@ -1,5 +1,11 @@
 package com.avast.syringe.config.internal;
 
+import javax.annotation.Nullable;
+
+/**
+ * A value of a config property. The short literals and the reference types are shared, see {@link ConfigInterner};
+ * {@link #of(String)} also shares the plain values themselves.
+ */
 public class Value {
 
     private final String value;
@@ -10,8 +16,22 @@ public class Value {
     }
 
     public Value(String value, String refType) {
-        this.value = value;
-        this.refType = refType;
+        this.value = ConfigInterner.literal(value);
+        this.refType = ConfigInterner.name(refType);
+    }
+
+    /**
+     * @return the plain value, shared with the equal values if it is short
+     */
+    public static Value of(String value) {
+        return ConfigInterner.value(value);
+    }
+
+    /**
+     * @return the plain value as by {@link #of(String)} or the reference value if the reference type is given
+     */
+    public static Value of(String value, @Nullable String refType) {
+        return refType == null ? of(value) : new Value(value, refType);
     }
 
     public String getValue() {
@@ -1,9 +1,8 @@
 package com.avast.syringe.config.internal;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
 
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -20,7 +19,7 @@ public class XmlConfig {
         private final String name;
 
         public Decorator(String name) {
-            this.name = name;
+            this.name = ConfigInterner.name(name);
         }
 
         public String getName() {
@@ -31,14 +30,14 @@ public class XmlConfig {
     private final Map<String, Property> propertyMap;
     private final String namespaceURI;
     private final String className;
-    private final List<Decorator> decorators = Lists.newArrayList();
+    private final List<Decorator> decorators;
 
     public XmlConfig(Map<String, Property> propertyMap, String namespaceURI, String className,
                      List<Decorator> decorators) {
         this.propertyMap = ImmutableMap.copyOf(propertyMap);
-        this.namespaceURI = namespaceURI;
-        this.className = className;
-        this.decorators.addAll(decorators);
+        this.namespaceURI = ConfigInterner.name(namespaceURI);
+        this.className = ConfigInterner.name(className);
+        this.decorators = ImmutableList.copyOf(decorators);
     }
 
     public String getClassName() {
@@ -54,6 +53,6 @@ public class XmlConfig {
     }
 
     public List<Decorator> getDecorators() {
-        return Collections.unmodifiableList(decorators);
+        return decorators;
     }
 }
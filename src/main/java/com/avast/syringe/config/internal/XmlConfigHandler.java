@@ -3,10 +3,16 @@ package com.avast.syringe.config.internal;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
 import org.apache.xerces.impl.xs.XSComplexTypeDecl;
 import org.apache.xerces.jaxp.DocumentBuilderFactoryImpl;
@@ -26,6 +32,7 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.validation.TypeInfoProvider;
+import java.io.File;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
@@ -38,6 +45,8 @@ import java.util.Stack;
 public class XmlConfigHandler extends DefaultHandler {
 
     private static final String DECORATORS = "decorators";
+    private static final String FILE = "file";
+    private static final String FORMAT = "format";
 
     private final List<XmlConfig.Decorator> decorators = Lists.newArrayList();
 
@@ -45,6 +54,22 @@ public class XmlConfigHandler extends DefaultHandler {
         return decorators;
     }
 
+    /**
+     * @param baseDirectory the directory the relative paths of the data files are resolved against
+     */
+    public void setBaseDirectory(@Nullable File baseDirectory) {
+        this.baseDirectory = baseDirectory;
+    }
+
+    /**
+     * @param sink the sink taking the values of the properties it accepts while the config is parsed; the values
+     *             of these properties are replaced by the {@link StreamedValue} in the {@link #getProperties()
+     *             properties}
+     */
+    public void setConfigSink(@Nullable ConfigSink sink) {
+        this.sink = sink;
+    }
+
     abstract class ScopeHandler extends DefaultHandler {
         int counter = 0;
         ScopeHandler parent;
@@ -82,9 +107,11 @@ public class XmlConfigHandler extends DefaultHandler {
         protected void endScope(String uri, String localName, String qName) throws SAXException {
         }
 
-        abstract protected ScopeHandler createScopeHandler(String uri, String localName, String qName, Attributes attributes);
+        abstract protected ScopeHandler createScopeHandler(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException;
 
-        abstract protected void useScopeHandler(String uri, String localName, String qName, ScopeHandler scopeHandler);
+        abstract protected void useScopeHandler(String uri, String localName, String qName, ScopeHandler scopeHandler)
+                throws SAXException;
 
     }
 
@@ -92,8 +119,24 @@ public class XmlConfigHandler extends DefaultHandler {
         final Map<String, Property> props = Maps.newHashMap();
 
         @Override
-        protected ScopeHandler createScopeHandler(String uri, String localName, String qName, Attributes attributes) {
-            return createValueScopeHandler();
+        protected ScopeHandler createScopeHandler(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            String file = attributes.getValue(FILE);
+            if (file != null) {
+                return new FileValueScopeHandler(file, attributes.getValue(FORMAT));
+            }
+            ValueScopeHandler valueScopeHandler = createPropertyScopeHandler(localName);
+            if (sink != null) {
+                try {
+                    ConfigSink.PropertySink propertySink = sink.openProperty(localName);
+                    if (propertySink != null) {
+                        valueScopeHandler.streamed = new StreamedProperty(propertySink);
+                    }
+                } catch (Exception e) {
+                    throw new SAXException(e);
+                }
+            }
+            return valueScopeHandler;
         }
 
         @Override
@@ -116,17 +159,66 @@ public class XmlConfigHandler extends DefaultHandler {
         }
 
         @Override
-        protected void useScopeHandler(String uri, String localName, String qName, ScopeHandler scopeHandler) {
-            List<Value> values = ((ValueScopeHandler) scopeHandler).getValues();
+        protected void useScopeHandler(String uri, String localName, String qName, ScopeHandler scopeHandler)
+                throws SAXException {
+            ValueScopeHandler valueScopeHandler = (ValueScopeHandler) scopeHandler;
+            List<Value> values = valueScopeHandler.getValues();
+            if (valueScopeHandler.streamed != null) {
+                // the list and map elements have been streamed already
+                for (Value value : values) {
+                    valueScopeHandler.streamed.add(value);
+                }
+                values = ImmutableList.<Value>of(valueScopeHandler.streamed.close());
+            }
             Property property = new Property(localName, values);
             props.put(property.getName(), property);
         }
     }
 
     abstract class ValueScopeHandler extends ScopeHandler {
+        /**
+         * The property of the element if the structure is given by the config class, else null
+         */
+        InjectableProperty property;
+
+        /**
+         * The sink of the property values or null if the values are kept
+         */
+        StreamedProperty streamed;
+
         abstract List<Value> getValues();
     }
 
+    /**
+     * Passes the values of a property to its sink and keeps only their digest
+     */
+    static final class StreamedProperty {
+        private final ConfigSink.PropertySink sink;
+        private final StreamedValue.Digest digest = new StreamedValue.Digest();
+
+        StreamedProperty(ConfigSink.PropertySink sink) {
+            this.sink = sink;
+        }
+
+        void add(Value value) throws SAXException {
+            digest.add(value);
+            try {
+                sink.add(value);
+            } catch (Exception e) {
+                throw new SAXException(e);
+            }
+        }
+
+        StreamedValue close() throws SAXException {
+            try {
+                sink.close();
+            } catch (Exception e) {
+                throw new SAXException(e);
+            }
+            return digest.toValue();
+        }
+    }
+
     class ScalarValueScopeHandler extends ValueScopeHandler {
 
         final StringBuilder stringBuilder = new StringBuilder();
@@ -148,7 +240,7 @@ public class XmlConfigHandler extends DefaultHandler {
 
         @Override
         List<Value> getValues() {
-            return ImmutableList.of(new Value(stringBuilder.toString()));
+            return ImmutableList.of(Value.of(stringBuilder.toString()));
         }
     }
 
@@ -158,13 +250,20 @@ public class XmlConfigHandler extends DefaultHandler {
 
         @Override
         protected ScopeHandler createScopeHandler(String uri, String localName, String qName, Attributes attributes) {
-            return createValueScopeHandler();
+            return createElementScopeHandler(property);
         }
 
         @Override
-        protected void useScopeHandler(String uri, String localName, String qName, ScopeHandler scopeHandler) {
+        protected void useScopeHandler(String uri, String localName, String qName, ScopeHandler scopeHandler)
+                throws SAXException {
             List<Value> vv = ((ValueScopeHandler) scopeHandler).getValues();
-            values.addAll(vv);
+            if (streamed != null) {
+                for (Value value : vv) {
+                    streamed.add(value);
+                }
+            } else {
+                values.addAll(vv);
+            }
         }
 
         @Override
@@ -182,14 +281,20 @@ public class XmlConfigHandler extends DefaultHandler {
         @Override
         protected ScopeHandler createScopeHandler(String uri, String localName, String qName, Attributes attributes) {
             key = attributes.getValue("key");
-            return createValueScopeHandler();
+            return createElementScopeHandler(property);
         }
 
         @Override
-        protected void useScopeHandler(String uri, String localName, String qName, ScopeHandler scopeHandler) {
+        protected void useScopeHandler(String uri, String localName, String qName, ScopeHandler scopeHandler)
+                throws SAXException {
             List<Value> vv = ((ValueScopeHandler) scopeHandler).getValues();
             for (Value value : vv) {
-                values.add(new MapEntry(key, value.getValue(), value.getRefType()));
+                MapEntry entry = new MapEntry(key, value.getValue(), value.getRefType());
+                if (streamed != null) {
+                    streamed.add(entry);
+                } else {
+                    values.add(entry);
+                }
             }
         }
 
@@ -200,6 +305,32 @@ public class XmlConfigHandler extends DefaultHandler {
 
     }
 
+    class FileValueScopeHandler extends ValueScopeHandler {
+
+        private final String path;
+        private final String format;
+
+        FileValueScopeHandler(String path, String format) {
+            this.path = path;
+            this.format = Preconditions.checkNotNull(format, "No format of the data file %s", path);
+        }
+
+        @Override
+        protected ScopeHandler createScopeHandler(String uri, String localName, String qName, Attributes attributes) {
+            throw new IllegalArgumentException("Property " + localName + " given by the data file " + path +
+                    " cannot have values");
+        }
+
+        @Override
+        protected void useScopeHandler(String uri, String localName, String qName, ScopeHandler scopeHandler) {
+        }
+
+        @Override
+        List<Value> getValues() {
+            return ImmutableList.<Value>of(new FileValue(path, format, baseDirectory));
+        }
+    }
+
     class ReferenceValueScopeHandler extends ScalarValueScopeHandler {
 
         final String typeName;
@@ -215,13 +346,28 @@ public class XmlConfigHandler extends DefaultHandler {
     }
 
     private final TypeInfoProvider typeInfoProvider;
+    private final Map<String, InjectableProperty> classProperties;
     private final Stack<ScopeHandler> contentHandler = new Stack<ScopeHandler>();
     private Map<String, Property> props;
+    private File baseDirectory;
+    private ConfigSink sink;
 
     private static final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactoryImpl.newInstance(); // Xerces
 
     public XmlConfigHandler(TypeInfoProvider typeInfoProvider) {
         this.typeInfoProvider = typeInfoProvider;
+        this.classProperties = null;
+    }
+
+    /**
+     * Creates the handler of a config that is not validated; the lists, maps and references are told apart by
+     * the properties of the config class instead of the schema types.
+     *
+     * @param configClass the class configured by the config
+     */
+    public XmlConfigHandler(Class<?> configClass) {
+        this.typeInfoProvider = null;
+        this.classProperties = ConfigClassAnalyzer.toMap(configClass);
     }
 
     @Override
@@ -257,14 +403,56 @@ public class XmlConfigHandler extends DefaultHandler {
         LIST, MAP, REF, SCALAR
     }
 
+    private ValueScopeHandler createPropertyScopeHandler(String name) {
+        if (classProperties == null) {
+            return createValueScopeHandler();
+        }
+        InjectableProperty property = classProperties.get(name);
+        if (property == null || property.isContextual()) {
+            // not injected
+            return new ScalarValueScopeHandler();
+        }
+        ValueScopeHandler valueScopeHandler;
+        if (property.isArray() || property.isCollection() || property.isPrimitiveCollection()) {
+            valueScopeHandler = new ListValueScopeHandler();
+        } else if (property.isMap() || property.isPrimitiveMap()) {
+            valueScopeHandler = new MapValueScopeHandler();
+        } else if (property.isReference()) {
+            valueScopeHandler = new ReferenceValueScopeHandler(property.getXmlSchemaTypeName());
+        } else {
+            valueScopeHandler = new ScalarValueScopeHandler();
+        }
+        valueScopeHandler.property = property;
+        return valueScopeHandler;
+    }
+
+    /**
+     * @param property the property of the list or map if the structure is given by the config class
+     */
+    private ValueScopeHandler createElementScopeHandler(@Nullable InjectableProperty property) {
+        if (classProperties == null) {
+            return createValueScopeHandler();
+        }
+        if (property == null) {
+            return new ScalarValueScopeHandler();
+        }
+        Class<?> elementType = property.isMap() || property.isPrimitiveMap() ? property.getMapValueType() :
+                property.getArrayOrCollectionComponentType();
+        if (ReflectionInjectableProperty.isReference(elementType)) {
+            return new ReferenceValueScopeHandler(TypeConversion.getXmlSchemaTypeName(elementType));
+        }
+        return new ScalarValueScopeHandler();
+    }
+
     private ValueScopeHandler createValueScopeHandler() {
-        switch (getValueScopeHandlerType(typeInfoProvider.getElementTypeInfo())) {
+        TypeInfo elementTypeInfo = typeInfoProvider.getElementTypeInfo();
+        switch (getValueScopeHandlerType(elementTypeInfo)) {
             case LIST:
                 return new ListValueScopeHandler();
             case MAP:
                 return new MapValueScopeHandler();
             case REF:
-                return new ReferenceValueScopeHandler(typeInfoProvider.getElementTypeInfo().getTypeName());
+                return new ReferenceValueScopeHandler(elementTypeInfo.getTypeName());
             case SCALAR:
                 return new ScalarValueScopeHandler();
             default:
@@ -272,7 +460,39 @@ public class XmlConfigHandler extends DefaultHandler {
         }
     }
 
+    /**
+     * The classification depends on the type definition only. The type definitions are owned by the compiled
+     * (and {@link XmlSchemaCache cached}) schema, so they are cached by identity and released together with
+     * the schema.
+     */
+    private static final LoadingCache<TypeInfo, ValueScopeHandlerType> valueScopeHandlerTypes = CacheBuilder.newBuilder()
+            .weakKeys()
+            .recordStats()
+            .build(new CacheLoader<TypeInfo, ValueScopeHandlerType>() {
+                @Override
+                public ValueScopeHandlerType load(TypeInfo elementTypeInfo) {
+                    return computeValueScopeHandlerType(elementTypeInfo);
+                }
+            });
+
+    static CacheStats getValueScopeHandlerTypeStats() {
+        return valueScopeHandlerTypes.stats();
+    }
+
     static ValueScopeHandlerType getValueScopeHandlerType(TypeInfo elementTypeInfo) {
+        if (elementTypeInfo == null) {
+            return ValueScopeHandlerType.SCALAR;
+        }
+
+        try {
+            return valueScopeHandlerTypes.getUnchecked(elementTypeInfo);
+        } catch (UncheckedExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw e;
+        }
+    }
+
+    private static ValueScopeHandlerType computeValueScopeHandlerType(TypeInfo elementTypeInfo) {
         PropertyTypeInfoAnnotation ta = null;
 
         if (elementTypeInfo instanceof XSComplexTypeDecl || elementTypeInfo instanceof XSSimpleTypeDecl) {
@@ -289,14 +509,15 @@ public class XmlConfigHandler extends DefaultHandler {
                 annotations = ((XSSimpleTypeDecl) elementTypeInfo).getAnnotations();
             }
 
-            for (int i = 0; i < annotations.getLength(); i++) {
+            // an undeclared element has xs:anyType, which has no annotations and is its own base type
+            for (int i = 0; annotations != null && i < annotations.getLength(); i++) {
                 ta = readTypeInfoAnnotation((XSAnnotation) annotations.item(i));
                 if (ta != null) {
                     break;
                 }
             }
 
-            if (ta == null && baseType != null) {
+            if (ta == null && baseType != null && baseType != elementTypeInfo) {
                 return getValueScopeHandlerType((TypeInfo) baseType);
             }
         }
@@ -4,30 +4,22 @@ import com.avast.syringe.config.ConfigException;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.io.Closeables;
-import org.apache.xerces.jaxp.DocumentBuilderFactoryImpl;
-import org.apache.xerces.jaxp.validation.XMLSchemaFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 import org.xml.sax.*;
-import org.xml.sax.helpers.XMLReaderFactory;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.annotation.Nullable;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.ValidatorHandler;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.net.URI;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -42,9 +34,35 @@ public class XmlConfigParser {
     public static final String SCHEMA_USER_DATA_KEY = "schema";
     public static final String SCHEMAS_PREFIX = "/schemas";
 
+    /**
+     * How the configs are validated against their schemas
+     */
+    public enum Validation {
+        /**
+         * The configs are not validated, e.g. because they have been validated when built. The lists, maps and
+         * references are told apart by the properties of the config class. A config of an unknown class is
+         * validated as {@link #LENIENT}.
+         */
+        TRUSTED,
+        /**
+         * The validation errors are logged only
+         */
+        LENIENT,
+        /**
+         * A validation error fails the parsing, e.g. to lint the configs
+         */
+        STRICT
+    }
+
     @Deprecated
     private final URL schemaUrl;
 
+    private Validation validation = Validation.LENIENT;
+
+    private File baseDirectory;
+
+    private ConfigSink.Factory sinkFactory;
+
     public XmlConfigParser() {
         // the schema url will be derived from the root element namespace
         schemaUrl = null;
@@ -59,14 +77,33 @@ public class XmlConfigParser {
         this.schemaUrl = schemaUrl;
     }
 
+    /**
+     * @param baseDirectory the directory the relative paths of the data files in the config are resolved against;
+     *                      typically the directory of the config file
+     */
+    public void setBaseDirectory(@Nullable File baseDirectory) {
+        this.baseDirectory = baseDirectory;
+    }
+
+    /**
+     * @param sinkFactory creates the sink taking the values of the properties as they are parsed; the values
+     *                    passed to the sink are not kept in the parsed {@link XmlConfig}, see {@link StreamedValue}
+     */
+    public void setSinkFactory(@Nullable ConfigSink.Factory sinkFactory) {
+        this.sinkFactory = sinkFactory;
+    }
+
+    public void setValidation(Validation validation) {
+        this.validation = Preconditions.checkNotNull(validation, "validation");
+    }
+
     public Map<String, Property> loadProperties(File file) {
         Preconditions.checkNotNull(file, "file");
 
-        Document document;
         try {
             InputStream input = new FileInputStream(file);
             try {
-                document = loadDocument(input, file.getAbsolutePath());
+                return parseProperties(input, file.getAbsolutePath());
             } finally {
                 input.close();
             }
@@ -77,12 +114,14 @@ public class XmlConfigParser {
             String message = String.format("Error while loading XML config file %s", file.getAbsolutePath());
             throw new IllegalArgumentException(message, e);
         }
-
-        return loadProperties(document);
     }
 
     public XmlConfig loadConfig(InputStream input) throws Exception {
-        return parseConfig(input);
+        return parseConfig(new InputSource(input));
+    }
+
+    public XmlConfig loadConfig(Reader input) throws Exception {
+        return parseConfig(new InputSource(input));
     }
 
     @Deprecated
@@ -90,81 +129,26 @@ public class XmlConfigParser {
         Preconditions.checkNotNull(input, "input");
 
         // We don't know the file name :-(
-        Document document = loadDocument(input, "");
-        return loadProperties(document);
+        return parseProperties(input, "");
     }
 
-
-    @Deprecated
-    private static Map<String, Property> loadProperties(Document document) {
-        Map<String, Property> props = Maps.newHashMap();
-
-        Node node = (Node) document.getDocumentElement().getFirstChild();
-        while (node != null) {
-            if (node.getNodeType() == Element.ELEMENT_NODE) {
-                Property prop = parsePropElement((Element) node);
-                props.put(prop.getName(), prop);
-            }
-            node = node.getNextSibling();
-        }
-
-        return props;
-    }
-
-    @Deprecated
-    private static Property parsePropElement(Element propElement) {
-        String propName = propElement.getLocalName();
-        Node child = propElement.getFirstChild();
-        while (child != null) {
-            switch (child.getNodeType()) {
-                case Element.CDATA_SECTION_NODE:
-                case Element.TEXT_NODE:
-                    String text = child.getTextContent();
-                    // While we're seeing whitespace only we don't know whether
-                    // propElement contains sub-elements or just text.
-                    if (!isWhitespace(text)) {
-                        String propValue = propElement.getTextContent();
-                        return new Property(propName, new Value(propValue));
-                    }
-                    break;
-                case Element.ELEMENT_NODE:
-                    return new Property(propName, parsePropChildElements((Element) child));
-            }
-            child = child.getNextSibling();
-        }
-        return new Property(propName);
-    }
-
-    @Deprecated
-    private static List<Value> parsePropChildElements(Element firstElement) {
-        List<Value> propValues = new ArrayList<Value>();
-        Node child = firstElement;
-        while (child != null) {
-            if (child.getNodeType() == Element.ELEMENT_NODE) {
-                propValues.add(parsePropChildElement((Element) child));
+    private XmlConfig parseConfig(InputSource xmlSource) throws Exception {
+        ConfigParserContentHandler handler = new ConfigParserContentHandler(baseDirectory, sinkFactory,
+                validation);
+        XMLReader parser = XmlReaderPool.acquire();
+        try {
+            parser.setContentHandler(handler);
+            parser.setErrorHandler(handler);
+            parser.parse(xmlSource);
+        } catch (SAXException e) {
+            // the failure of the sink
+            if (e.getException() instanceof ConfigException) {
+                throw e.getException();
             }
-            child = child.getNextSibling();
+            throw e;
+        } finally {
+            XmlReaderPool.release(parser);
         }
-        return propValues;
-    }
-
-    @Deprecated
-    private static Value parsePropChildElement(Element element) {
-        String nodeName = element.getLocalName();
-        if (nodeName.equals("value")) {
-            return new Value(element.getTextContent());
-        } else if (nodeName.equals("entry")) {
-            return new MapEntry(element.getAttribute("key"), element.getTextContent());
-        }
-        throw new AssertionError();
-    }
-
-    private XmlConfig parseConfig(InputStream xmlStream) throws Exception {
-        XMLReader parser = XMLReaderFactory.createXMLReader();
-        ConfigParserContentHandler handler = new ConfigParserContentHandler();
-        parser.setContentHandler(handler);
-        parser.setErrorHandler(handler);
-        parser.parse(new InputSource(xmlStream));
 
         String namespaceURI = handler.getNamespaceURI();
         List<XmlConfig.Decorator> decorators = handler.getDecorators();
@@ -177,11 +161,9 @@ public class XmlConfigParser {
     }
 
     @Deprecated
-    private Document loadDocument(InputStream input, String fileName) {
+    private Map<String, Property> parseProperties(InputStream input, String fileName) {
         try {
-            return loadDocumentImpl(input);
-        } catch (ParserConfigurationException e) {
-            throw new IllegalArgumentException(e.getMessage(), e);
+            return parsePropertiesImpl(input);
         } catch (SAXException e) {
             String message = String.format("Error while parsing XML config file %s", fileName);
             throw new IllegalArgumentException(message, e);
@@ -192,37 +174,35 @@ public class XmlConfigParser {
     }
 
     @Deprecated
-    private Document loadDocumentImpl(InputStream in) throws Exception {
-        if (schemaUrl != null) {
-            return loadDocumentWithExplicitSchema(in);
-        } else {
+    private Map<String, Property> parsePropertiesImpl(InputStream in) throws Exception {
+        if (schemaUrl == null) {
             throw new IllegalArgumentException("No explicit schema specified");
         }
-    }
 
-    @Deprecated
-    private Document loadDocumentWithExplicitSchema(InputStream in) throws IOException, ParserConfigurationException, SAXException {
-        InputStream schema = schemaUrl.openConnection().getInputStream();
+        ValidatorHandler vHandler = XmlSchemaCache.getSchema(schemaUrl).newValidatorHandler();
+        PropertiesContentHandler handler = new PropertiesContentHandler();
+        vHandler.setContentHandler(handler);
+        vHandler.setErrorHandler(new ErrorHandlerImplementation());
 
+        XMLReader parser = XmlReaderPool.acquire();
         try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            dbf.setValidating(true);
-            dbf.setAttribute(JAXP_SCHEMA_LANGUAGE, W3C_XML_SCHEMA);
-            dbf.setAttribute(JAXP_SCHEMA_SOURCE, schema);
-
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            db.setErrorHandler(new ErrorHandlerImplementation());
-            return db.parse(in);
+            parser.setContentHandler(vHandler);
+            parser.setErrorHandler(vHandler.getErrorHandler());
+            parser.parse(new InputSource(in));
         } finally {
-            Closeables.closeQuietly(schema);
+            XmlReaderPool.release(parser);
         }
+        return handler.getProperties();
     }
 
     private static String getClassNameForNamespaceURI(String namespaceURI) {
-        URI uri = URI.create(namespaceURI);
+        String indexedClassName = ConfigClassIndex.forClassLoader(Thread.currentThread().getContextClassLoader())
+                .getClassName(namespaceURI);
+        if (indexedClassName != null) {
+            return indexedClassName;
+        }
 
-        // todo: look into the predefined uris
+        URI uri = URI.create(namespaceURI);
 
         // Example: http://www.avast.com/schemas/com/avast/cloud/FileRepRequestHandler
         String path = uri.getPath();
@@ -235,7 +215,7 @@ public class XmlConfigParser {
         return null;
     }
 
-    private static InputStream findSchemaFromNamespaceURI(String namespaceURI) {
+    static InputStream findSchemaFromNamespaceURI(String namespaceURI) {
         URI uri = URI.create(namespaceURI);
         String path = uri.getPath() + ".xsd";
 
@@ -264,37 +244,44 @@ public class XmlConfigParser {
 
     private static class ConfigParserContentHandler implements ContentHandler, ErrorHandler {
 
-        private ValidatorHandler vHandler;
+        /**
+         * The validator handler or the config handler itself if the config is not validated; null before
+         * the root element
+         */
+        private ContentHandler target;
         private Locator locator;
         private String startedPrefix;
         private String starterUri;
-        private final DocumentBuilder db;
         private XmlConfigHandler configHandler;
         private String namespaceURI;
+        private final File baseDirectory;
+        private final ConfigSink.Factory sinkFactory;
+        private final Validation validation;
 
-        public ConfigParserContentHandler() throws Exception {
-            DocumentBuilderFactory dbf = DocumentBuilderFactoryImpl.newInstance(); // Xerces
-            db = dbf.newDocumentBuilder();
+        public ConfigParserContentHandler(File baseDirectory, ConfigSink.Factory sinkFactory, Validation validation) {
+            this.baseDirectory = baseDirectory;
+            this.sinkFactory = sinkFactory;
+            this.validation = validation;
         }
 
         @Override
         public void setDocumentLocator(Locator locator) {
             this.locator = locator;
 
-            if (vHandler == null) return;
-            vHandler.setDocumentLocator(locator);
+            if (target == null) return;
+            target.setDocumentLocator(locator);
         }
 
         @Override
         public void startDocument() throws SAXException {
-            if (vHandler == null) return;
-            vHandler.startDocument();
+            if (target == null) return;
+            target.startDocument();
         }
 
         @Override
         public void endDocument() throws SAXException {
-            if (vHandler == null) return;
-            vHandler.endDocument();
+            if (target == null) return;
+            target.endDocument();
         }
 
         @Override
@@ -302,67 +289,92 @@ public class XmlConfigParser {
             startedPrefix = prefix;
             starterUri = uri;
 
-            if (vHandler == null) return;
-            vHandler.startPrefixMapping(prefix, uri);
+            if (target == null) return;
+            target.startPrefixMapping(prefix, uri);
         }
 
         @Override
         public void endPrefixMapping(String prefix) throws SAXException {
-            if (vHandler == null) return;
-            vHandler.endPrefixMapping(prefix);
+            if (target == null) return;
+            target.endPrefixMapping(prefix);
         }
 
         @Override
         public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
-            if (vHandler == null) {
+            if (target == null) {
 
                 this.namespaceURI = uri;
-                InputStream schemaStream = findSchemaFromNamespaceURI(uri);
-                XMLSchemaFactory sf = new XMLSchemaFactory(); // Xerces
-                Schema schema = sf.newSchema(new StreamSource(schemaStream));
-                this.vHandler = schema.newValidatorHandler();
-
-                configHandler = new XmlConfigHandler(vHandler.getTypeInfoProvider());
-                vHandler.setContentHandler(configHandler);
-                vHandler.setErrorHandler(this);
+                String className = getClassNameForNamespaceURI(uri);
+                Class<?> configClass = validation == Validation.TRUSTED ? loadConfigClass(className) : null;
+                if (configClass != null) {
+                    configHandler = new XmlConfigHandler(configClass);
+                    target = configHandler;
+                } else {
+                    Schema schema = XmlSchemaCache.getSchema(uri);
+                    ValidatorHandler vHandler = schema.newValidatorHandler();
+                    configHandler = new XmlConfigHandler(vHandler.getTypeInfoProvider());
+                    vHandler.setContentHandler(configHandler);
+                    vHandler.setErrorHandler(this);
+                    target = vHandler;
+                }
+
+                configHandler.setBaseDirectory(baseDirectory);
+                if (sinkFactory != null && className != null) {
+                    try {
+                        configHandler.setConfigSink(sinkFactory.create(className));
+                    } catch (Exception e) {
+                        throw new SAXException(e);
+                    }
+                }
 
-                vHandler.setDocumentLocator(locator);
-                vHandler.startDocument();
+                target.setDocumentLocator(locator);
+                target.startDocument();
                 startPrefixMapping(startedPrefix, starterUri);
-                vHandler.startElement(uri, localName, qName, atts);
-            } else {
-                vHandler.startElement(uri, localName, qName, atts);
+            }
+            target.startElement(uri, localName, qName, atts);
+        }
+
+        @Nullable
+        private static Class<?> loadConfigClass(@Nullable String className) {
+            if (className == null) {
+                return null;
+            }
+            try {
+                return Class.forName(className, false, Thread.currentThread().getContextClassLoader());
+            } catch (ClassNotFoundException e) {
+                LOGGER.debug("Config class {} not found, validating the config", className);
+                return null;
             }
         }
 
         @Override
         public void endElement(String uri, String localName, String qName) throws SAXException {
-            if (vHandler == null) return;
-            vHandler.endElement(uri, localName, qName);
+            if (target == null) return;
+            target.endElement(uri, localName, qName);
         }
 
         @Override
         public void characters(char[] ch, int start, int length) throws SAXException {
-            if (vHandler == null) return;
-            vHandler.characters(ch, start, length);
+            if (target == null) return;
+            target.characters(ch, start, length);
         }
 
         @Override
         public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
-            if (vHandler == null) return;
-            vHandler.ignorableWhitespace(ch, start, length);
+            if (target == null) return;
+            target.ignorableWhitespace(ch, start, length);
         }
 
         @Override
         public void processingInstruction(String target, String data) throws SAXException {
-            if (vHandler == null) return;
-            vHandler.processingInstruction(target, data);
+            if (this.target == null) return;
+            this.target.processingInstruction(target, data);
         }
 
         @Override
         public void skippedEntity(String name) throws SAXException {
-            if (vHandler == null) return;
-            vHandler.skippedEntity(name);
+            if (target == null) return;
+            target.skippedEntity(name);
         }
 
         public String getNamespaceURI() {
@@ -382,11 +394,17 @@ public class XmlConfigParser {
 
         @Override
         public void error(SAXParseException exception) throws SAXException {
+            if (validation == Validation.STRICT) {
+                throw exception;
+            }
             LOGGER.error("Error when parsing document with namespace URI:" + this.getNamespaceURI(), exception);
         }
 
         @Override
         public void fatalError(SAXParseException exception) throws SAXException {
+            if (validation == Validation.STRICT) {
+                throw exception;
+            }
             LOGGER.error("Fatal error when parsing document with namespace URI:" + this.getNamespaceURI(), exception);
         }
 
@@ -395,6 +413,89 @@ public class XmlConfigParser {
         }
     }
 
+    /**
+     * Reads the properties as the child elements of the root element. A property is a single value if it has
+     * some text before its first child element, otherwise its child elements are its values or map entries.
+     */
+    @Deprecated
+    private static final class PropertiesContentHandler extends DefaultHandler {
+
+        private final Map<String, Property> properties = Maps.newHashMap();
+        private int depth;
+        private String propertyName;
+        private StringBuilder propertyText;
+        private boolean propertyValue;
+        private List<Value> propertyValues;
+        private String valueName;
+        private String valueKey;
+        private StringBuilder valueText;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            depth++;
+            if (depth == 2) {
+                propertyName = localName;
+                propertyText = new StringBuilder();
+                propertyValue = false;
+                propertyValues = null;
+            } else if (depth == 3 && !propertyValue) {
+                if (propertyValues == null) {
+                    propertyValues = Lists.newArrayList();
+                }
+                valueName = localName;
+                String key = atts.getValue("key");
+                valueKey = key != null ? key : "";
+                valueText = new StringBuilder();
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (depth < 2) {
+                return;
+            }
+            propertyText.append(ch, start, length);
+            if (depth == 2 && propertyValues == null && !isWhitespace(new String(ch, start, length))) {
+                propertyValue = true;
+            }
+            if (depth >= 3 && valueText != null) {
+                valueText.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (depth == 3 && valueText != null) {
+                propertyValues.add(createValue(valueName, valueKey, valueText.toString()));
+                valueText = null;
+            } else if (depth == 2) {
+                Property property;
+                if (propertyValue) {
+                    property = new Property(propertyName, Value.of(propertyText.toString()));
+                } else if (propertyValues != null) {
+                    property = new Property(propertyName, propertyValues);
+                } else {
+                    property = new Property(propertyName);
+                }
+                properties.put(propertyName, property);
+            }
+            depth--;
+        }
+
+        private static Value createValue(String name, String key, String text) {
+            if (name.equals("value")) {
+                return Value.of(text);
+            } else if (name.equals("entry")) {
+                return new MapEntry(key, text);
+            }
+            throw new AssertionError();
+        }
+
+        Map<String, Property> getProperties() {
+            return properties;
+        }
+    }
+
     @Deprecated
     private final class ErrorHandlerImplementation implements ErrorHandler {
 
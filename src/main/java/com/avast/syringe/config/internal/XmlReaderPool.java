@@ -0,0 +1,50 @@
+package com.avast.syringe.config.internal;
+
+import org.apache.xerces.parsers.SAXParser;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayDeque;
+
+/**
+ * Thread-confined pool of the SAX readers parsing the configs. A reader is created directly (Xerces), without
+ * the service lookup of {@code XMLReaderFactory}, and it is reused for the following documents parsed by the same
+ * thread. The reader is taken out of the pool while parsing, so a config parsed while parsing another one gets
+ * its own reader.
+ */
+final class XmlReaderPool {
+
+    private static final int MAX_IDLE_READERS = 4;
+
+    /**
+     * Replaces the handlers of a released reader, so that the pool does not hold the parsed config
+     */
+    private static final DefaultHandler NO_HANDLER = new DefaultHandler();
+
+    private static final ThreadLocal<ArrayDeque<XMLReader>> readers = new ThreadLocal<ArrayDeque<XMLReader>>() {
+        @Override
+        protected ArrayDeque<XMLReader> initialValue() {
+            return new ArrayDeque<XMLReader>(MAX_IDLE_READERS);
+        }
+    };
+
+    private XmlReaderPool() {
+    }
+
+    /**
+     * @return a namespace aware, non-validating reader; {@link #release(XMLReader) release} it after parsing
+     */
+    static XMLReader acquire() {
+        XMLReader reader = readers.get().poll();
+        return reader != null ? reader : new SAXParser(); // Xerces
+    }
+
+    static void release(XMLReader reader) {
+        reader.setContentHandler(NO_HANDLER);
+        reader.setErrorHandler(NO_HANDLER);
+        ArrayDeque<XMLReader> idle = readers.get();
+        if (idle.size() < MAX_IDLE_READERS) {
+            idle.push(reader);
+        }
+    }
+}
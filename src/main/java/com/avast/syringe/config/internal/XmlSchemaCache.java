@@ -0,0 +1,152 @@
+package com.avast.syringe.config.internal;
+
+import com.google.common.base.Preconditions;
+import org.apache.xerces.jaxp.validation.XMLSchemaFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of compiled XML schemas keyed by the namespace URI of the config root element.
+ * <p/>
+ * The compiled {@link Schema} objects are immutable and thread-safe, so a single instance is shared
+ * by all {@link XmlConfigParser parsers}. Namespaces whose schema could not be found are remembered too,
+ * so that the class loader is not probed again for them. The schemas given explicitly by their URLs are cached
+ * by the URLs.
+ */
+public final class XmlSchemaCache {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(XmlSchemaCache.class);
+
+    private static final ConcurrentMap<String, Schema> schemas = new ConcurrentHashMap<String, Schema>();
+    private static final ConcurrentMap<String, Schema> locatedSchemas = new ConcurrentHashMap<String, Schema>();
+    private static final ConcurrentMap<String, String> missingSchemas = new ConcurrentHashMap<String, String>();
+
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+
+    private XmlSchemaCache() {
+    }
+
+    /**
+     * @param namespaceURI the namespace URI of the config root element
+     * @return the compiled schema associated with the namespace
+     * @throws IllegalArgumentException if there is no schema associated with the namespace
+     * @throws SAXException if the schema cannot be compiled
+     */
+    public static Schema getSchema(String namespaceURI) throws SAXException {
+        Preconditions.checkNotNull(namespaceURI, "namespaceURI");
+
+        Schema schema = schemas.get(namespaceURI);
+        if (schema != null) {
+            hitCount.incrementAndGet();
+            return schema;
+        }
+
+        String missingMessage = missingSchemas.get(namespaceURI);
+        if (missingMessage != null) {
+            hitCount.incrementAndGet();
+            throw new IllegalArgumentException(missingMessage);
+        }
+
+        missCount.incrementAndGet();
+        return compileSchema(namespaceURI);
+    }
+
+    /**
+     * @param schemaUrl the location of the schema
+     * @return the compiled schema read from the URL
+     * @throws SAXException if the schema cannot be read or compiled
+     */
+    public static Schema getSchema(URL schemaUrl) throws SAXException {
+        Preconditions.checkNotNull(schemaUrl, "schemaUrl");
+
+        String location = schemaUrl.toExternalForm();
+        Schema schema = locatedSchemas.get(location);
+        if (schema != null) {
+            hitCount.incrementAndGet();
+            return schema;
+        }
+
+        missCount.incrementAndGet();
+        // The factory is not thread-safe, so use a new one for each compilation
+        XMLSchemaFactory sf = new XMLSchemaFactory(); // Xerces
+        schema = sf.newSchema(schemaUrl);
+        Schema existing = locatedSchemas.putIfAbsent(location, schema);
+        return existing != null ? existing : schema;
+    }
+
+    /**
+     * Compiles and caches the schemas for the given namespaces in advance.
+     *
+     * @throws IllegalArgumentException if there is no schema associated with one of the namespaces
+     * @throws SAXException if one of the schemas cannot be compiled
+     */
+    public static void preload(String... namespaceURIs) throws SAXException {
+        for (String namespaceURI : namespaceURIs) {
+            if (!schemas.containsKey(namespaceURI)) {
+                compileSchema(namespaceURI);
+            }
+        }
+    }
+
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of compiled schemas held by the cache
+     */
+    public static int size() {
+        return schemas.size() + locatedSchemas.size();
+    }
+
+    /**
+     * Discards all cached schemas (including the failed lookups) and resets the counters.
+     */
+    public static void invalidateAll() {
+        schemas.clear();
+        locatedSchemas.clear();
+        missingSchemas.clear();
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    private static Schema compileSchema(String namespaceURI) throws SAXException {
+        InputStream schemaStream;
+        try {
+            schemaStream = XmlConfigParser.findSchemaFromNamespaceURI(namespaceURI);
+        } catch (IllegalArgumentException e) {
+            missingSchemas.put(namespaceURI, e.getMessage());
+            throw e;
+        }
+
+        try {
+            // The factory is not thread-safe, so use a new one for each compilation
+            XMLSchemaFactory sf = new XMLSchemaFactory(); // Xerces
+            Schema schema = sf.newSchema(new StreamSource(schemaStream));
+            Schema existing = schemas.putIfAbsent(namespaceURI, schema);
+            return existing != null ? existing : schema;
+        } finally {
+            try {
+                schemaStream.close();
+            } catch (IOException e) {
+                // neither the compiled schema nor the compilation error is to be replaced by this one
+                LOGGER.warn("Cannot close the schema of " + namespaceURI, e);
+            }
+        }
+    }
+}
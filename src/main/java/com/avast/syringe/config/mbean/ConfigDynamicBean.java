@@ -1,12 +1,13 @@
 package com.avast.syringe.config.mbean;
 
 import com.avast.syringe.config.InstanceManager;
+import com.avast.syringe.config.internal.ConfigClassAnalyzer;
 import com.avast.syringe.config.internal.InjectableProperty;
 import com.avast.syringe.config.internal.Injection;
 import com.avast.syringe.config.internal.ReflectionInjectableProperty;
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,7 +25,7 @@ public class ConfigDynamicBean implements DynamicMBean {
 
     private final MBeanInfo mBeanInfo;
     private final Object instance;
-    private final Map<String, InjectableProperty> propertyMap = Maps.newHashMap();
+    private final Map<String, InjectableProperty> propertyMap;
     private final InstanceManager loader;
 
     public ConfigDynamicBean(Object instance, String className, String description, List<Injection> injections,
@@ -42,10 +43,7 @@ public class ConfigDynamicBean implements DynamicMBean {
         this.mBeanInfo = ConfigMBeanInfoFactory.getInfo(className, description, properties);
         this.instance = instance;
         this.loader = loader;
-
-        for (InjectableProperty property : properties) {
-            propertyMap.put(property.getName(), property);
-        }
+        this.propertyMap = ConfigClassAnalyzer.toMap(ImmutableList.copyOf(properties));
     }
 
     @Override
@@ -0,0 +1,46 @@
+package com.avast.syringe.config.perspective;
+
+import com.avast.syringe.config.internal.InjectableProperty;
+import com.avast.syringe.config.internal.Injection;
+
+/**
+ * The {@link PropertyResolver} looking up the value just once: {@link #resolve} returns {@link #NO_VALUE} instead
+ * of throwing if there is no value for the property.
+ */
+public abstract class PropertyValueResolver implements PropertyResolver {
+
+    /**
+     * The result of {@link #resolve} if the resolver has no value for the property
+     */
+    public static final Object NO_VALUE = Injection.NO_VALUE;
+
+    /**
+     * @param instance the owner instance of the property
+     * @param property the property
+     * @return the property value or {@link #NO_VALUE}
+     */
+    public abstract Object resolve(Object instance, InjectableProperty property);
+
+    @Override
+    public final Object getPropertyValue(Object instance, InjectableProperty property) throws NoSuchFieldException {
+        Object value = resolve(instance, property);
+        if (value == NO_VALUE) {
+            throw new NoSuchFieldException(property.getName());
+        }
+        return value;
+    }
+
+    /**
+     * Resolves the value by any resolver; a legacy {@link PropertyResolver} is asked by
+     * {@link PropertyResolver#hasPropertyValue} first.
+     *
+     * @return the property value or {@link #NO_VALUE}
+     */
+    public static Object resolve(PropertyResolver resolver, Object instance, InjectableProperty property)
+            throws NoSuchFieldException {
+        if (resolver instanceof PropertyValueResolver) {
+            return ((PropertyValueResolver) resolver).resolve(instance, property);
+        }
+        return resolver.hasPropertyValue(instance, property) ? resolver.getPropertyValue(instance, property) : NO_VALUE;
+    }
+}
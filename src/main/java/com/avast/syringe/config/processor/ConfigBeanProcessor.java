@@ -0,0 +1,498 @@
+package com.avast.syringe.config.processor;
+
+import com.avast.syringe.config.ConfigBean;
+import com.avast.syringe.config.ConfigProperty;
+import com.avast.syringe.config.XmlInstanceGenerator;
+import com.avast.syringe.config.internal.CompiledBeanAccess;
+import com.avast.syringe.config.internal.ConfigClassIndex;
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.CharStreams;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles the {@link CompiledBeanAccess} of every config class, i.e. a class annotated with {@link ConfigBean}
+ * or declaring a {@link ConfigProperty} field, and lists the classes in the {@link ConfigClassIndex}.
+ * <p/>
+ * The compiled access carries the property table of the class and reads and writes the non-private fields
+ * directly. Private fields are still accessed reflectively. Private, local and anonymous classes are skipped
+ * and handled reflectively at runtime.
+ * <p/>
+ * The processor is not registered as a service, so it does not run in the builds depending on syringe unless
+ * they opt in by the {@code -processor com.avast.syringe.config.processor.ConfigBeanProcessor} javac option.
+ * The compiled accesses are used only by the loaders and builders switched to the generated injection, see
+ * {@link com.avast.syringe.config.ConfigurationLoader#setGeneratedInjectors(boolean)}.
+ */
+public class ConfigBeanProcessor extends AbstractProcessor {
+
+    static final String ACCESS_SUFFIX = "$$SyringeAccess";
+
+    private static final String INJECT = "javax.inject.Inject";
+    private static final String POST_CONSTRUCT = "javax.annotation.PostConstruct";
+    private static final String PRE_DESTROY = "javax.annotation.PreDestroy";
+    private static final String MUTABLE_REFERENCE = "com.avast.syringe.config.MutableReference";
+
+    private static final Splitter COLUMNS = Splitter.on(' ').omitEmptyStrings().trimResults();
+
+    /**
+     * The index entries by the binary class names
+     */
+    private final Map<String, String> index = Maps.newTreeMap();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return ImmutableSet.of(ConfigBean.class.getName(), ConfigProperty.class.getName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+            return false;
+        }
+
+        Set<TypeElement> configClasses = Sets.newLinkedHashSet();
+        for (Element element : roundEnv.getElementsAnnotatedWith(ConfigBean.class)) {
+            if (element.getKind() == ElementKind.CLASS) {
+                configClasses.add((TypeElement) element);
+            }
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(ConfigProperty.class)) {
+            if (element.getKind() == ElementKind.FIELD && element.getEnclosingElement().getKind() == ElementKind.CLASS) {
+                configClasses.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+
+        for (TypeElement configClass : configClasses) {
+            if (!isCompilable(configClass)) {
+                continue;
+            }
+            try {
+                writeAccess(configClass);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "Cannot write the compiled access: " + e.getMessage(), configClass);
+            }
+        }
+
+        // the classes are not claimed, other processors may handle them too
+        return false;
+    }
+
+    private boolean isCompilable(TypeElement configClass) {
+        for (Element each = configClass; each.getKind() != ElementKind.PACKAGE; each = each.getEnclosingElement()) {
+            if (!each.getKind().isClass() && !each.getKind().isInterface()) {
+                return false;
+            }
+            TypeElement type = (TypeElement) each;
+            if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS ||
+                    type.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void writeAccess(TypeElement configClass) throws IOException {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(configClass);
+        String binaryName = processingEnv.getElementUtils().getBinaryName(configClass).toString();
+        String accessSimpleName = (pkg.isUnnamed() ? binaryName :
+                binaryName.substring(pkg.getQualifiedName().length() + 1)) + ACCESS_SUFFIX;
+        String accessBinaryName = pkg.isUnnamed() ? accessSimpleName :
+                pkg.getQualifiedName() + "." + accessSimpleName;
+        String className = rawName(configClass);
+
+        List<PropertyField> fields = getPropertyFields(configClass, pkg);
+
+        StringBuilder src = new StringBuilder();
+        if (!pkg.isUnnamed()) {
+            src.append("package ").append(pkg.getQualifiedName()).append(";\n\n");
+        }
+        src.append("@SuppressWarnings({\"deprecation\", \"unchecked\", \"rawtypes\"})\n");
+        src.append("public final class ").append(accessSimpleName).append(" extends ")
+                .append(CompiledBeanAccess.class.getName()).append(" {\n\n");
+
+        // the constructor with the property table
+        src.append("    public ").append(accessSimpleName).append("() {\n");
+        src.append("        super(").append(isInstantiable(configClass));
+        for (PropertyField field : fields) {
+            src.append(",\n                property(").append(field.declaringClass).append(", ")
+                    .append(quote(field.element.getSimpleName().toString())).append(", ")
+                    .append(field.name == null ? "null" : quote(field.name)).append(", ")
+                    .append(field.optional).append(", ")
+                    .append(ConfigProperty.Habitat.class.getCanonicalName()).append('.').append(field.habitat)
+                    .append(", ")
+                    .append(field.delegate).append(", ")
+                    .append(field.lazy).append(", ")
+                    .append(field.immutable).append(", ")
+                    .append(field.direct).append(")");
+        }
+        src.append(");\n    }\n\n");
+
+        src.append("    @Override\n");
+        src.append("    public java.lang.Object newInstance() {\n");
+        if (isInstantiable(configClass)) {
+            src.append("        return new ").append(className).append("();\n");
+        } else {
+            src.append("        throw new java.lang.UnsupportedOperationException(")
+                    .append(quote(binaryName + " cannot be instantiated")).append(");\n");
+        }
+        src.append("    }\n\n");
+
+        src.append("    @Override\n");
+        src.append("    public java.lang.Object get(java.lang.Object bean, int index) {\n");
+        src.append("        switch (index) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            PropertyField field = fields.get(i);
+            if (!field.direct) {
+                continue;
+            }
+            src.append("            case ").append(i).append(":\n");
+            src.append("                return ").append(field.access(className));
+            if (field.atomic) {
+                src.append(".get()");
+            }
+            src.append(";\n");
+        }
+        src.append("            default:\n");
+        src.append("                throw new java.lang.IllegalArgumentException(\"Not a direct field: \" + index);\n");
+        src.append("        }\n    }\n\n");
+
+        src.append("    @Override\n");
+        src.append("    public void set(java.lang.Object bean, int index, java.lang.Object value) throws java.lang.Exception {\n");
+        src.append("        switch (index) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            PropertyField field = fields.get(i);
+            if (!field.direct) {
+                continue;
+            }
+            src.append("            case ").append(i).append(":\n");
+            if (field.atomic) {
+                src.append("                ((").append(field.type).append(") ").append(field.access(className))
+                        .append(").set(")
+                        .append(field.valueType == null ? "" : "(" + field.valueType + ") ").append("value);\n");
+            } else {
+                src.append("                ").append(field.access(className)).append(" = (")
+                        .append(field.valueType).append(") value;\n");
+            }
+            src.append("                break;\n");
+        }
+        src.append("            default:\n");
+        src.append("                throw new java.lang.IllegalArgumentException(\"Not a direct field: \" + index);\n");
+        src.append("        }\n    }\n\n");
+
+        appendCallback(src, "postConstruct", findAnnotatedMethod(configClass, POST_CONSTRUCT), className);
+        src.append("\n");
+        appendCallback(src, "preDestroy", findAnnotatedMethod(configClass, PRE_DESTROY), className);
+        src.append("}\n");
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(accessBinaryName, configClass);
+        Writer writer = file.openWriter();
+        try {
+            writer.write(src.toString());
+        } finally {
+            writer.close();
+        }
+
+        index.put(binaryName, binaryName + " " + XmlInstanceGenerator.SCHEMAS_URL +
+                binaryName.replace('.', '/') + " " + accessBinaryName);
+    }
+
+    private static void appendCallback(StringBuilder src, String name, ExecutableElement method, String className) {
+        src.append("    @Override\n");
+        src.append("    public void ").append(name).append("(java.lang.Object bean) throws java.lang.Exception {\n");
+        if (method != null) {
+            src.append("        ((").append(className).append(") bean).").append(method.getSimpleName())
+                    .append("();\n");
+        }
+        src.append("    }\n");
+    }
+
+    /**
+     * @return the property fields in the order of the reflective analysis, i.e. the superclasses first
+     */
+    private List<PropertyField> getPropertyFields(TypeElement configClass, PackageElement pkg) {
+        LinkedList<TypeElement> classes = Lists.newLinkedList();
+        for (TypeElement each = configClass; each != null; each = superclass(each)) {
+            classes.addFirst(each);
+        }
+
+        List<PropertyField> result = Lists.newArrayList();
+        for (int depth = classes.size() - 1; depth >= 0; depth--) {
+            TypeElement clazz = classes.get(classes.size() - 1 - depth);
+            String declaringClass = isAccessible(clazz, pkg) ? rawName(clazz) + ".class" :
+                    "superclass(" + rawName(configClass) + ".class, " + depth + ")";
+            for (VariableElement field : ElementFilter.fieldsIn(clazz.getEnclosedElements())) {
+                if (field.getModifiers().contains(Modifier.STATIC)) {
+                    continue;
+                }
+                AnnotationMirror configProperty = findAnnotation(field, ConfigProperty.class.getName());
+                if (configProperty != null) {
+                    result.add(newField(field, clazz, declaringClass, pkg, configProperty));
+                } else if (findAnnotation(field, INJECT) != null) {
+                    result.add(newField(field, clazz, declaringClass, pkg, null));
+                }
+            }
+        }
+        return result;
+    }
+
+    private PropertyField newField(VariableElement element, TypeElement clazz, String declaringClass,
+                                   PackageElement pkg, AnnotationMirror configProperty) {
+        PropertyField field = new PropertyField(element, declaringClass);
+        if (configProperty != null) {
+            Map<String, Object> values = Maps.newHashMap();
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                    processingEnv.getElementUtils().getElementValuesWithDefaults(configProperty).entrySet()) {
+                values.put(entry.getKey().getSimpleName().toString(), entry.getValue().getValue());
+            }
+            field.name = (String) values.get("name");
+            field.optional = (Boolean) values.get("optional");
+            field.habitat = ((VariableElement) values.get("habitat")).getSimpleName().toString();
+            field.delegate = (Boolean) values.get("delegate");
+            field.lazy = (Boolean) values.get("lazy");
+            field.immutable = (Boolean) values.get("immutable");
+        }
+
+        TypeMirror type = processingEnv.getTypeUtils().erasure(element.asType());
+        String atomicValueType = getAtomicValueType(type);
+        field.type = type.toString();
+        field.atomic = atomicValueType != null;
+        field.valueType = field.atomic ? (atomicValueType.isEmpty() ? null : atomicValueType) : boxedName(type);
+
+        Set<Modifier> modifiers = element.getModifiers();
+        field.direct = !modifiers.contains(Modifier.PRIVATE) &&
+                (!modifiers.contains(Modifier.FINAL) || field.atomic) &&
+                isAccessible(clazz, pkg) && isAccessible(type, pkg) &&
+                (modifiers.contains(Modifier.PUBLIC) || processingEnv.getElementUtils().getPackageOf(clazz).equals(pkg));
+        return field;
+    }
+
+    /**
+     * @return the type of the value set into the atomic holder, an empty string for the atomic references
+     *         or null if the type is not atomic
+     */
+    private String getAtomicValueType(TypeMirror type) {
+        if (isSubtype(type, "java.util.concurrent.atomic.AtomicBoolean")) {
+            return "java.lang.Boolean";
+        }
+        if (isSubtype(type, "java.util.concurrent.atomic.AtomicInteger")) {
+            return "java.lang.Integer";
+        }
+        if (isSubtype(type, "java.util.concurrent.atomic.AtomicLong")) {
+            return "java.lang.Long";
+        }
+        if (isSubtype(type, "java.util.concurrent.atomic.AtomicReference") || isSubtype(type, MUTABLE_REFERENCE)) {
+            return "";
+        }
+        return null;
+    }
+
+    private boolean isSubtype(TypeMirror type, String className) {
+        TypeElement element = processingEnv.getElementUtils().getTypeElement(className);
+        return element != null && processingEnv.getTypeUtils().isSubtype(type,
+                processingEnv.getTypeUtils().erasure(element.asType()));
+    }
+
+    private String boxedName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    private boolean isAccessible(TypeMirror type, PackageElement pkg) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return isAccessible(((ArrayType) type).getComponentType(), pkg);
+        }
+        if (type.getKind() == TypeKind.DECLARED) {
+            return isAccessible((TypeElement) ((DeclaredType) type).asElement(), pkg);
+        }
+        return type.getKind().isPrimitive();
+    }
+
+    /**
+     * @return true if the type can be referred to by its name from the package
+     */
+    private boolean isAccessible(TypeElement type, PackageElement pkg) {
+        boolean samePackage = processingEnv.getElementUtils().getPackageOf(type).equals(pkg);
+        for (Element each = type; each.getKind() != ElementKind.PACKAGE; each = each.getEnclosingElement()) {
+            if (!each.getKind().isClass() && !each.getKind().isInterface()) {
+                return false;
+            }
+            Set<Modifier> modifiers = each.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || (!samePackage && !modifiers.contains(Modifier.PUBLIC))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isInstantiable(TypeElement configClass) {
+        if (configClass.getModifiers().contains(Modifier.ABSTRACT) ||
+                (configClass.getNestingKind() == NestingKind.MEMBER &&
+                        !configClass.getModifiers().contains(Modifier.STATIC))) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(configClass.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the public no-arg method found by {@link Class#getMethods()} in the reflective analysis
+     */
+    private ExecutableElement findAnnotatedMethod(TypeElement configClass, String annotation) {
+        for (ExecutableElement method : ElementFilter.methodsIn(
+                processingEnv.getElementUtils().getAllMembers(configClass))) {
+            if (method.getModifiers().contains(Modifier.PUBLIC) && !method.getModifiers().contains(Modifier.STATIC) &&
+                    method.getParameters().isEmpty() && findAnnotation(method, annotation) != null) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+
+    private static String rawName(TypeElement type) {
+        return type.getQualifiedName().toString();
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private void writeIndex() {
+        if (index.isEmpty()) {
+            return;
+        }
+        try {
+            // keep the entries of the classes compiled before, as in an incremental build
+            FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+                    ConfigClassIndex.RESOURCE);
+            Reader reader = new InputStreamReader(existing.openInputStream(), Charsets.UTF_8);
+            try {
+                for (String line : CharStreams.readLines(reader)) {
+                    List<String> entry = Lists.newArrayList(COLUMNS.split(line));
+                    if (entry.size() == 3 && !index.containsKey(entry.get(0)) &&
+                            processingEnv.getElementUtils().getTypeElement(entry.get(0).replace('$', '.')) != null) {
+                        index.put(entry.get(0), line.trim());
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // no index yet
+        } catch (IllegalArgumentException e) {
+            // no index yet
+        }
+
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                    ConfigClassIndex.RESOURCE);
+            Writer writer = file.openWriter();
+            try {
+                for (String line : index.values()) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Cannot write the config class index: " + e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static final class PropertyField {
+        final VariableElement element;
+        final String declaringClass;
+        String name;
+        boolean optional;
+        String habitat = ConfigProperty.Habitat.DEFAULT.name();
+        boolean delegate;
+        boolean lazy;
+        boolean immutable;
+        boolean atomic;
+        boolean direct;
+        /**
+         * The erased field type
+         */
+        String type;
+        /**
+         * The cast of the assigned value
+         */
+        String valueType;
+
+        PropertyField(VariableElement element, String declaringClass) {
+            this.element = element;
+            this.declaringClass = declaringClass;
+        }
+
+        String access(String className) {
+            String owner = declaringClass.endsWith(".class") ?
+                    declaringClass.substring(0, declaringClass.length() - ".class".length()) : className;
+            return "((" + owner + ") bean)." + element.getSimpleName();
+        }
+    }
+}
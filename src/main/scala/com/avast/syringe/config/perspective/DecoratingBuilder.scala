@@ -48,7 +48,7 @@ trait DecoratingBuilder[+T] extends Builder[T] {
     case None => {
       // Now we are in the first call
       try {
-        val inst = getInstanceClass.newInstance().asInstanceOf[T]
+        val inst = newInstance
         // store the unfinished instance for the possible second call to recognize the cycle
         workedOutInstance = Some(inst)
         initializeInstance(inst)
@@ -73,6 +73,8 @@ trait DecoratingBuilder[+T] extends Builder[T] {
     }
   }
 
+  protected def newInstance: T = getInstanceClass.newInstance().asInstanceOf[T]
+
   protected def decorateInstance[D >: T](firstDecorated: D): D = firstDecorated
 
   protected def delegateInstance[D >: T](origDelegated: D): D = origDelegated
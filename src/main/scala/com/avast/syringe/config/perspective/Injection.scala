@@ -1,6 +1,8 @@
 package com.avast.syringe.config.perspective
 
-import com.avast.syringe.config.internal.InjectableProperty
+import com.avast.syringe.aop.cglib.LazyProxyFactory
+import com.avast.syringe.config.MappedFile
+import com.avast.syringe.config.internal.{MappedData, InjectableProperty}
 
 /**
  * User: slajchrt
@@ -26,22 +28,48 @@ object Injection {
 abstract class Injection(prop: InjectableProperty,
                          resolvers: List[PropertyResolver]) {
 
-  def inject[T](instance: T, values: List[Any]): T
+  /**
+   * Injects the values. A single {@link MappedFile} value is injected as the read-only view of the data file.
+   */
+  def inject[T](instance: T, values: List[Any]): T = values match {
+    case List(data: MappedFile) if !prop.getType.isInstance(data) =>
+      prop.setValue(instance, MappedData.open(data, prop))
+      instance
+    case _ => injectValues(instance, values)
+  }
+
+  protected def injectValues[T](instance: T, values: List[Any]): T
+
+  /**
+   * The type of the values held by the property, i.e. the type of the lazy proxies
+   */
+  protected def valueType: Class[_] = prop.getType
 
-  protected def prepareValueForInjection(instance: Any): Any = {
+  protected def prepareValueForInjection(instance: Any, allowLazy: Boolean = true): Any = {
     instance match {
+      case builder: Builder[_] if allowLazy && prop.isLazy && LazyProxyFactory.canCreate(valueType) =>
+        createLazyProxy(builder)
       case builder: Builder[_] => builder.build
       case _ => instance
     }
   }
 
+  private def createLazyProxy(builder: Builder[_]): AnyRef = {
+    val proxyType = valueType.asInstanceOf[Class[AnyRef]]
+    LazyProxyFactory.createProxy(proxyType, new com.avast.syringe.Provider[Any] {
+      def getInstance: Any = builder.build[Any] match {
+        case provider: com.avast.syringe.Provider[_] if !proxyType.isInstance(provider) => provider.getInstance
+        case built => built
+      }
+    })
+  }
+
   protected def findAndSetContextualValue[T](instance: T, errorMessage: => String) {
-    resolvers.find(_.hasPropertyValue(instance, prop)) match {
+    val instanceRef = instance.asInstanceOf[AnyRef]
+    resolvers.iterator.map(PropertyValueResolver.resolve(_, instanceRef, prop))
+      .find(_ ne PropertyValueResolver.NO_VALUE) match {
       case None => if (errorMessage != null) assert(false, errorMessage)
-      case Some(resolver) => {
-        val ctxValue = resolver.getPropertyValue(instance, prop)
-        prop.setValue(instance, prepareValueForInjection(ctxValue))
-      }
+      case Some(ctxValue) => prop.setValue(instance, prepareValueForInjection(ctxValue))
     }
   }
 
@@ -49,7 +77,7 @@ abstract class Injection(prop: InjectableProperty,
 
 class ScalarInjection(prop: InjectableProperty,
                       resolvers: List[PropertyResolver]) extends Injection(prop, resolvers) {
-  def inject[T](instance: T, values: List[Any]) = {
+  protected def injectValues[T](instance: T, values: List[Any]) = {
     values.size match {
       case 0 => if (!prop.isOptional) {
         findAndSetContextualValue(instance, "Missing value for mandatory property " + prop.getName + " in " + instance)
@@ -71,7 +99,10 @@ class ScalarInjection(prop: InjectableProperty,
 
 class ArrayInjection(prop: InjectableProperty,
                      resolvers: List[PropertyResolver]) extends Injection(prop, resolvers) {
-  def inject[T](instance: T, values: List[Any]) = {
+
+  override protected def valueType = prop.getArrayOrCollectionComponentType
+
+  protected def injectValues[T](instance: T, values: List[Any]) = {
     val componentType = prop.getArrayOrCollectionComponentType
     assert(!componentType.isArray,
       String.format("Multi-dimensional array property %s is not supported. Only single-dimensional arrays are supported",
@@ -94,7 +125,9 @@ class ArrayInjection(prop: InjectableProperty,
 class CollectionInjection(prop: InjectableProperty,
                           resolvers: List[PropertyResolver]) extends Injection(prop, resolvers) {
 
-  def inject[T](instance: T, values: List[Any]) = {
+  override protected def valueType = prop.getArrayOrCollectionComponentType
+
+  protected def injectValues[T](instance: T, values: List[Any]) = {
 
     if (classOf[java.util.Set[_]].isAssignableFrom(prop.getType)) {
       injectCollection(classOf[java.util.HashSet[_]])
@@ -126,7 +159,9 @@ class CollectionInjection(prop: InjectableProperty,
 class MapInjection(prop: InjectableProperty,
                    resolvers: List[PropertyResolver]) extends Injection(prop, resolvers) {
 
-  def inject[T](instance: T, values: List[Any]) = {
+  override protected def valueType = prop.getMapValueType
+
+  protected def injectValues[T](instance: T, values: List[Any]) = {
     val pairs = values.asInstanceOf[List[(AnyRef, AnyRef)]]
     var map: Map[AnyRef, AnyRef] = Map.empty
     pairs.foreach(pair => {
@@ -144,7 +179,7 @@ class MapInjection(prop: InjectableProperty,
     }
 
     map.foreach(p => {
-      val k = prepareValueForInjection(p._1)
+      val k = prepareValueForInjection(p._1, allowLazy = false)
       val v = prepareValueForInjection(p._2)
 
       prop.putMapEntry(instance, k.asInstanceOf[AnyRef], v.asInstanceOf[AnyRef])
@@ -1,6 +1,6 @@
 package com.avast.syringe.config.perspective
 
-import com.avast.syringe.config.InstanceManager
+import com.avast.syringe.config.{InstanceNameIndex, InstanceManager}
 
 /**
  * User: slajchrt
@@ -37,12 +37,16 @@ trait Module extends InstanceManager {
 
   def load[T](instanceName: String) = sys.error("Not implemented")
 
-  def findRefName(ref: Any): String = {
-    getBuilders.find(p => {
-      p._2.isInstanceOf[SingletonBuilder[_]] && p._2.asInstanceOf[SingletonBuilder[_]].isLoaded
-    }) match {
-      case None => null
-      case Some((instName, builder)) => if (builder.build == ref) instName else null
-    }
+  private[this] val instanceNames = new InstanceNameIndex
+
+  /**
+   * Called by singleton builders when they create their instance
+   * @param instanceName the instance name
+   * @param instance the (decorated) instance
+   */
+  def registerInstance(instanceName: String, instance: Any) {
+    instanceNames.register(instanceName, instance)
   }
+
+  def findRefName(ref: Any): String = instanceNames.findName(ref)
 }
@@ -19,6 +19,10 @@ trait SingletonBuilder[T] extends DecoratingBuilder[T] {
     this.synchronized {
       if (instance.isEmpty) {
         instance ::= super.build
+        val module = getModule
+        if (module != null) {
+          module.registerInstance(getInstanceName, instance.head)
+        }
       }
       instance.head
     }
@@ -2,7 +2,7 @@ package com.avast.syringe.config.perspective
 
 import com.avast.syringe.config.PropertyValueConverter
 import javax.annotation.PostConstruct
-import com.avast.syringe.config.internal.{InjectableProperty, ConfigClassAnalyzer}
+import com.avast.syringe.config.internal.{BeanAccess, ConfigConstructor, InjectableProperty, ConfigClassAnalyzer}
 import com.google.common.collect.Lists
 import java.lang.reflect.{Proxy, InvocationHandler}
 import com.avast.syringe.aop.Interceptor
@@ -79,12 +79,14 @@ class SyringeModule extends Module {
     java.lang.reflect.Array.newInstance(property.getType, 0).asInstanceOf[Array[_]]
 
   private def installResolversToBuilder[T](builder: Builder[T]) {
-    builder.addPropertyResolver(new PropertyResolver {
-      def getPropertyValue(instance: Any, property: InjectableProperty) = {
+    builder.addPropertyResolver(new PropertyValueResolver {
+      def resolve(instance: Any, property: InjectableProperty) = {
         val combinedResolver: RF = combineResolvers(property)
         val dummyVal = createDummyVal(property)
-        val builder: Builder[_] = combinedResolver(dummyVal)
-        builder.build.asInstanceOf[AnyRef]
+        combinedResolver.lift(dummyVal) match {
+          case Some(builder) => builder.build.asInstanceOf[AnyRef]
+          case None => PropertyValueResolver.NO_VALUE
+        }
       }
 
       def hasPropertyValue(instance: Any, property: InjectableProperty) = {
@@ -151,6 +153,8 @@ class SyringeModule extends Module {
     private var resolvers = List[PropertyResolver]()
     private var converter: PropertyValueConverter = null
     private var multipleInjectionsAllowed = false
+    private var generatedAccess = false
+    private var constructing = false
 
     val creationStackStamp = new Exception()
 
@@ -311,23 +315,14 @@ class SyringeModule extends Module {
     override protected def initializeInstance[D >: T](instance: D): D = {
       builders += (instanceName -> this)
 
-      val propIter = new ConfigClassAnalyzer(instanceClass, converter).getConfigProperties.iterator()
+      val analyzer = new ConfigClassAnalyzer(instanceClass, converter, generatedAccess)
+      val constructor = analyzer.getConfigConstructor
+      val propIter = analyzer.getConfigProperties.iterator()
       while (propIter.hasNext) {
         val property = propIter.next()
-        val propValues = getPropertyValues(property.getName)
-
-        val injection: Injection = Injection(property, resolvers)
-        try {
-          injection.inject(instance, propValues)
-        }
-        catch {
-          case injErr: InjectionException => {
-            injErr.contexts ::=(getInstanceName, property.getName)
-            throw injErr
-          }
-          case err: Throwable => {
-            throw new InjectionException(creationStackStamp, (getInstanceName, property.getName), err)
-          }
+        // the properties passed to the constructor have been injected by newInstance
+        if (constructor == null || !constructor.isParameter(property)) {
+          injectProperty(instance, property)
         }
       }
 
@@ -336,6 +331,24 @@ class SyringeModule extends Module {
       instance
     }
 
+    private def injectProperty(instance: Any, property: InjectableProperty) {
+      val propValues = getPropertyValues(property.getName)
+
+      val injection: Injection = Injection(property, resolvers)
+      try {
+        injection.inject(instance, propValues)
+      }
+      catch {
+        case injErr: InjectionException => {
+          injErr.contexts ::=(getInstanceName, property.getName)
+          throw injErr
+        }
+        case err: Throwable => {
+          throw new InjectionException(creationStackStamp, (getInstanceName, property.getName), err)
+        }
+      }
+    }
+
     override def decorateInstance[D >: T](firstDecorated: D): D = {
       var decorated: D = SyringeModule.this.decorateInstance(this, super.decorateInstance(firstDecorated))
 
@@ -394,7 +407,56 @@ class SyringeModule extends Module {
       this
     }
 
+    /**
+     * Creates and injects the instance through the code generated for the instance class (see BeanAccess)
+     * instead of reflection.
+     */
+    def syringeGeneratedInjection: this.type = {
+      generatedAccess = true
+      this
+    }
+
+    private def beanAccess: BeanAccess =
+      if (generatedAccess) BeanAccess.forClass(instanceClass) else null
+
+    override protected def newInstance: T =
+      new ConfigClassAnalyzer(instanceClass, converter, generatedAccess).getConfigConstructor match {
+        case constructor: ConfigConstructor => construct(constructor)
+        case _ => beanAccess match {
+          case access: BeanAccess if access.isInstantiable => access.newInstance().asInstanceOf[T]
+          case _ => super.newInstance
+        }
+      }
+
+    /**
+     * Creates the instance by the constructor taking the config properties (see ConfigConstructor). Unlike
+     * a property of the instance, a constructor argument cannot refer back to the instance under construction
+     * unless the property is lazy.
+     */
+    private def construct(constructor: ConfigConstructor): T = {
+      if (constructing) {
+        throw new IllegalStateException("Circular reference to " + getInstanceName +
+          " through a parameter of its constructor")
+      }
+      constructing = true
+      try {
+        val args = constructor.newArguments()
+        val propIter = constructor.getParameterProperties.iterator()
+        while (propIter.hasNext) {
+          injectProperty(args, propIter.next())
+        }
+        constructor.newInstance(args).asInstanceOf[T]
+      } finally {
+        constructing = false
+      }
+    }
+
     private def notifyPostConstruct[D >: T](instance: D) {
+      val access = beanAccess
+      if (access != null) {
+        access.postConstruct(instance)
+        return
+      }
       val postConstMethod = ConfigClassAnalyzer.findAnnotatedMethod(classOf[PostConstruct], instanceClass)
       if (postConstMethod != null) {
         postConstMethod.invoke(instance)
@@ -415,14 +477,14 @@ class SyringeModule extends Module {
 
   }
 
-  class DecoratorResolver(decorated: AnyRef) extends PropertyResolver {
+  class DecoratorResolver(decorated: AnyRef) extends PropertyValueResolver {
     def hasPropertyValue(instance: Any, property: InjectableProperty) = property.isDelegate
 
-    def getPropertyValue(instance: Any, property: InjectableProperty) =
+    def resolve(instance: Any, property: InjectableProperty) =
       if (hasPropertyValue(instance, property))
         decorated
       else
-        new NoSuchFieldException(property.getName)
+        PropertyValueResolver.NO_VALUE
   }
 
   class ReferenceWrapper[T <: AnyRef](val ref: T) extends Builder[T](ref.getClass) {
@@ -0,0 +1,124 @@
+package com.avast.syringe.config;
+
+import com.avast.syringe.config.internal.ConfigBundle;
+import com.avast.syringe.config.internal.MapEntry;
+import com.avast.syringe.config.internal.Property;
+import com.avast.syringe.config.internal.XmlConfig;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Set;
+
+public class ConfigBundleCompilerTest {
+
+    private File tempDir;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDir();
+        copyFileToTemp("SampleA.xml");
+        copyFileToTemp("SampleB.xml");
+        copyFileToTemp("SampleC.xml");
+        Files.write("<not-a-config/>", new File(tempDir, "other.xml"), Charset.forName("utf-8"));
+    }
+
+    @Test
+    public void testCompile() throws Exception {
+        File bundleFile = new File(tempDir, ConfigBundle.DEFAULT_FILE_NAME);
+        Set<String> compiled = new ConfigBundleCompiler(tempDir).compile(bundleFile);
+        Assert.assertEquals(3, compiled.size());
+        Assert.assertTrue(compiled.contains("SampleA.xml"));
+
+        ConfigBundle bundle = ConfigBundle.open(bundleFile);
+        XmlConfig config = bundle.getConfig("SampleA.xml", new File(tempDir, "SampleA.xml"), null);
+        Assert.assertNotNull(config);
+        Assert.assertEquals(SampleA.class.getName(), config.getClassName());
+
+        Property mr = config.getProperties().get("mr");
+        Assert.assertEquals(2, mr.getValues().size());
+        Assert.assertEquals("1", ((MapEntry) mr.getValues().get(0)).getKey());
+        Assert.assertEquals("SampleC.xml", mr.getValues().get(0).getValue());
+        Assert.assertNotNull(mr.getValues().get(0).getRefType());
+        Assert.assertEquals("100", config.getProperties().get("i").getValues().get(0).getValue());
+    }
+
+    @Test
+    public void testChangedSourceIsNotUsed() throws Exception {
+        File bundleFile = new File(tempDir, ConfigBundle.DEFAULT_FILE_NAME);
+        new ConfigBundleCompiler(tempDir).compile(bundleFile);
+
+        String changed = "<config xmlns=\"http://www.avast.com/schemas/com/avast/syringe/config/SampleB\">" +
+                "<x>changed</x><sa>SampleA.xml</sa></config>";
+        File sampleB = new File(tempDir, "SampleB.xml");
+        Files.write(changed, sampleB, Charset.forName("utf-8"));
+
+        ConfigBundle bundle = ConfigBundle.open(bundleFile);
+        Assert.assertNull(bundle.getConfig("SampleB.xml", sampleB, null));
+
+        ConfigurationLoader configLoader = new ConfigurationLoader(tempDir);
+        configLoader.setRegisterMBeans(false);
+        SampleB b = configLoader.load("SampleB.xml", tempDir, null, null, null);
+        Assert.assertEquals("changed", b.getX());
+        Assert.assertEquals(100, b.getSa().getI());
+    }
+
+    @Test
+    public void testInvalidConfigFailsCompilation() throws Exception {
+        Files.write("<config xmlns=\"http://www.avast.com/schemas/com/avast/syringe/config/SampleB\">" +
+                "<x>xyz</x><unknown/><sa>SampleA.xml</sa></config>", new File(tempDir, "SampleB.xml"),
+                Charset.forName("utf-8"));
+
+        File bundleFile = new File(tempDir, ConfigBundle.DEFAULT_FILE_NAME);
+        try {
+            new ConfigBundleCompiler(tempDir).compile(bundleFile);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("SampleB.xml"));
+        }
+        Assert.assertFalse(bundleFile.exists());
+    }
+
+    @Test
+    public void testChangedIncludeIsNotUsed() throws Exception {
+        Files.write("x=fromModel", new File(tempDir, "application.properties"), Charset.forName("utf-8"));
+        File included = new File(tempDir, "inc/x.inc");
+        Files.createParentDirs(included);
+        Files.write("<x>${x}</x>", included, Charset.forName("utf-8"));
+        File template = new File(tempDir, "SampleT.ftl");
+        Files.write("<config xmlns=\"http://www.avast.com/schemas/com/avast/syringe/config/SampleB\">" +
+                "<#include \"inc/x.inc\"><sa>SampleA.xml</sa></config>", template, Charset.forName("utf-8"));
+
+        File bundleFile = new File(tempDir, ConfigBundle.DEFAULT_FILE_NAME);
+        Assert.assertTrue(new ConfigBundleCompiler(tempDir).compile(bundleFile).contains("SampleT.ftl"));
+        File appProps = new File(tempDir, "application.properties");
+        Assert.assertNotNull(ConfigBundle.open(bundleFile).getConfig("SampleT.ftl", template, appProps));
+
+        Files.write("<x>${x}-included</x>", included, Charset.forName("utf-8"));
+        included.setLastModified(included.lastModified() + 2000);
+        Assert.assertNull(ConfigBundle.open(bundleFile).getConfig("SampleT.ftl", template, appProps));
+
+        ConfigurationLoader configLoader = new ConfigurationLoader(tempDir);
+        configLoader.setRegisterMBeans(false);
+        SampleB b = configLoader.load("SampleT.ftl", tempDir, null, null, null);
+        Assert.assertEquals("fromModel-included", b.getX());
+    }
+
+    private void copyFileToTemp(String fileName) throws IOException {
+        InputStream inputStream = ConfigBundleCompilerTest.class.getResourceAsStream(fileName);
+        FileOutputStream outputStream = new FileOutputStream(new File(tempDir, fileName));
+        try {
+            ByteStreams.copy(inputStream, outputStream);
+        } finally {
+            inputStream.close();
+            outputStream.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.avast.syringe.config;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ConfigDirectoryIndexTest {
+
+    private static final long TIMEOUT = 10000;
+
+    private File tempDir;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDir();
+        new File(tempDir, "sub").mkdir();
+        Files.write("a", new File(tempDir, "A.xml"), Charsets.UTF_8);
+        Files.write("b", new File(tempDir, "sub/B.ftl"), Charsets.UTF_8);
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        ConfigDirectoryIndex index = ConfigDirectoryIndex.create(new File(tempDir, "sub/.."));
+
+        Assert.assertTrue(index.exists(new File(tempDir, "A.xml")));
+        Assert.assertTrue(index.exists(new File(tempDir, "sub/B.ftl")));
+        Assert.assertTrue(index.exists(new File(new File(tempDir, "sub"), "../A.xml")));
+        Assert.assertFalse(index.exists(new File(tempDir, "A")));
+        Assert.assertFalse(index.exists(new File(tempDir, "sub/A.xml")));
+
+        assertCanonicalPath(index, new File(tempDir, "A.xml"));
+        assertCanonicalPath(index, new File(tempDir, "A"));
+        assertCanonicalPath(index, new File(new File(tempDir, "sub"), "../sub/B"));
+        assertCanonicalPath(index, new File(tempDir, "missing/C"));
+        index.close();
+    }
+
+    @Test
+    public void testChanges() throws Exception {
+        ConfigDirectoryIndex index = ConfigDirectoryIndex.create(tempDir);
+
+        File c = new File(tempDir, "sub/new/C.xml");
+        c.getParentFile().mkdir();
+        Files.write("c", c, Charsets.UTF_8);
+        awaitExists(index, c, true);
+        assertCanonicalPath(index, c);
+
+        new File(tempDir, "A.xml").delete();
+        awaitExists(index, new File(tempDir, "A.xml"), false);
+        Assert.assertTrue(index.exists(new File(tempDir, "sub/B.ftl")));
+        index.close();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        ConfigDirectoryIndex index = ConfigDirectoryIndex.create(tempDir);
+        index.close();
+
+        // resolved by the file system
+        File c = new File(tempDir, "sub/C.xml");
+        Files.write("c", c, Charsets.UTF_8);
+        Assert.assertTrue(index.exists(c));
+        assertCanonicalPath(index, c);
+        new File(tempDir, "A.xml").delete();
+        Assert.assertFalse(index.exists(new File(tempDir, "A.xml")));
+    }
+
+    @Test
+    public void testCompleteFileName() throws Exception {
+        File sub = new File(tempDir, "sub");
+        Files.write("e", new File(sub, "E.xml"), Charsets.UTF_8);
+        Files.write("e", new File(sub, "E.ftl"), Charsets.UTF_8);
+
+        ConfigurationLoader configLoader = new ConfigurationLoader(tempDir);
+        try {
+            Assert.assertEquals("B.ftl", configLoader.completeFileName("B", sub));
+            Assert.assertEquals("A.xml", configLoader.completeFileName("A", sub));
+            Assert.assertEquals("A.xml", configLoader.completeFileName("A.xml", tempDir));
+            Assert.assertEquals("E.xml", configLoader.completeFileName("E", sub));
+
+            // found even before the index is notified, as on file systems that do not notify at all
+            Files.write("d", new File(sub, "D.xml"), Charsets.UTF_8);
+            Assert.assertEquals("D.xml", configLoader.completeFileName("D", sub));
+            Files.write("b", new File(sub, "B.xml"), Charsets.UTF_8);
+            Assert.assertEquals("B.xml", configLoader.completeFileName("B", sub));
+            new File(sub, "E.xml").delete();
+            Assert.assertEquals("E.ftl", configLoader.completeFileName("E", sub));
+        } finally {
+            configLoader.close();
+        }
+    }
+
+    private static void assertCanonicalPath(ConfigDirectoryIndex index, File file) throws IOException {
+        Assert.assertEquals(file.getCanonicalPath(), index.getCanonicalPath(file));
+    }
+
+    private static void awaitExists(ConfigDirectoryIndex index, File file, boolean exists) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (index.exists(file) != exists && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(exists, index.exists(file));
+    }
+}
@@ -0,0 +1,210 @@
+package com.avast.syringe.config;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+
+public class ConfigReloaderTest {
+
+    private File tempDir;
+    private ConfigurationLoader configLoader;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDir();
+        copyFileToTemp("SampleA.xml");
+        copyFileToTemp("SampleB.xml");
+        copyFileToTemp("SampleC.xml");
+
+        configLoader = new ConfigurationLoader(tempDir);
+        configLoader.setRegisterMBeans(false);
+    }
+
+    @Test
+    public void testApplyAtomicProperty() throws Exception {
+        writeSampleR(1, "a", "");
+        SampleR r = configLoader.load("SampleR.xml", tempDir, null, null, null);
+        Assert.assertEquals(1, r.getCount());
+
+        Assert.assertTrue(configLoader.reloadChangedConfigs().isEmpty());
+
+        writeSampleR(2, "b", "");
+        ConfigReloadReport report = configLoader.reloadChangedConfigs();
+        Assert.assertEquals(2, r.getCount());
+        Assert.assertEquals("a", r.getS());
+        Assert.assertTrue(report.getAppliedProperties().containsEntry(getKey("SampleR"), "count"));
+        Assert.assertTrue(report.getRestartRequiredProperties().containsEntry(getKey("SampleR"), "s"));
+        Assert.assertTrue(report.getReplacedConfigs().isEmpty());
+
+        // reported only once
+        Assert.assertTrue(configLoader.reloadChangedConfigs().isEmpty());
+    }
+
+    @Test
+    public void testChangedTemplateModel() throws Exception {
+        write("application.properties", "count=1");
+        write("SampleR.ftl", "<config xmlns=\"http://www.avast.com/schemas/com/avast/syringe/config/SampleR\">" +
+                "<count>${count}</count><s>a</s><b>SampleB.xml</b></config>");
+        configLoader = new ConfigurationLoader(tempDir);
+        configLoader.setRegisterMBeans(false);
+        SampleR r = configLoader.load("SampleR.ftl", tempDir, null, null, null);
+        Assert.assertEquals(1, r.getCount());
+
+        write("application.properties", "count=2");
+        ConfigReloadReport report = configLoader.reloadChangedConfigs();
+        Assert.assertEquals(2, r.getCount());
+        Assert.assertTrue(report.getAppliedProperties().containsEntry(getKey("SampleR"), "count"));
+    }
+
+    @Test
+    public void testStreamedProperty() throws Exception {
+        configLoader.setStreamingInjection(true);
+        writeSampleR(1, "a", "");
+        SampleR r = configLoader.load("SampleR.xml", tempDir, null, null, null);
+        Assert.assertEquals("a", r.getS());
+
+        // the same values, only the streamed digest is compared
+        writeSampleR(1, "a", "");
+        Assert.assertTrue(configLoader.reloadChangedConfigs().isEmpty());
+
+        writeSampleR(1, "b", "");
+        ConfigReloadReport report = configLoader.reloadChangedConfigs();
+        Assert.assertTrue(report.getRestartRequiredProperties().containsEntry(getKey("SampleR"), "s"));
+    }
+
+    @Test
+    public void testReplaceReferencedConfig() throws Exception {
+        writeSampleR(1, "a", "");
+        SampleR r = configLoader.load("SampleR.xml", tempDir, null, null, null);
+        SampleB oldB = r.getB();
+        Assert.assertEquals("xyz", oldB.getX());
+
+        write("SampleB.xml", "<config xmlns=\"http://www.avast.com/schemas/com/avast/syringe/config/SampleB\">" +
+                "<x>changed</x><sa>SampleA.xml</sa></config>");
+        ConfigReloadReport report = configLoader.reloadChangedConfigs();
+
+        Assert.assertEquals("changed", r.getB().getX());
+        Assert.assertSame(r.getB(), configLoader.load("SampleB.xml", tempDir, null, null, null));
+        Assert.assertSame(oldB.getSa(), r.getB().getSa());
+        Assert.assertTrue(oldB.isDestroyed());
+        Assert.assertFalse(r.getB().isDestroyed());
+
+        Assert.assertTrue(report.getReplacedConfigs().contains(getKey("SampleB")));
+        Assert.assertFalse(report.getRestartRequiredProperties().containsKey(getKey("SampleB")));
+    }
+
+    @Test
+    public void testReplaceMBean() throws Exception {
+        copyFileToTemp("SampleB.xml", "SampleB-jmx.xml");
+        write("SampleR.xml", "<config xmlns=\"http://www.avast.com/schemas/com/avast/syringe/config/SampleR\">" +
+                "<count>1</count><s>a</s><b>SampleB-jmx.xml</b></config>");
+        configLoader = new ConfigurationLoader(tempDir);
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        unregisterInstanceMBeans(mBeanServer);
+        ObjectName bName = new ObjectName("com.avast.syringe.instances:type=" + SampleB.class.getName() +
+                ",name=SampleB-jmx.xml");
+        try {
+            configLoader.load("SampleR.xml", tempDir, null, null, null);
+            Assert.assertEquals("xyz", mBeanServer.getAttribute(bName, "x"));
+
+            write("SampleB-jmx.xml", "<config xmlns=\"http://www.avast.com/schemas/com/avast/syringe/config/SampleB\">" +
+                    "<x>changed</x><sa>SampleA.xml</sa></config>");
+            ConfigReloadReport report = configLoader.reloadChangedConfigs();
+            Assert.assertTrue(report.getReplacedConfigs().contains(getKey("SampleB-jmx")));
+            Assert.assertEquals("changed", mBeanServer.getAttribute(bName, "x"));
+        } finally {
+            unregisterInstanceMBeans(mBeanServer);
+        }
+    }
+
+    @Test
+    public void testKeepConfigReferencedNonAtomically() throws Exception {
+        writeSampleR(1, "a", "<fixedB>SampleB.xml</fixedB>");
+        SampleR r = configLoader.load("SampleR.xml", tempDir, null, null, null);
+        SampleB oldB = r.getB();
+
+        write("SampleB.xml", "<config xmlns=\"http://www.avast.com/schemas/com/avast/syringe/config/SampleB\">" +
+                "<x>changed</x><sa>SampleA.xml</sa></config>");
+        ConfigReloadReport report = configLoader.reloadChangedConfigs();
+
+        // the fixed reference cannot be swapped, so the old instance stays alive
+        Assert.assertSame(oldB, r.getB());
+        Assert.assertSame(oldB, r.getFixedB());
+        Assert.assertFalse(oldB.isDestroyed());
+        Assert.assertSame(oldB, configLoader.load("SampleB.xml", tempDir, null, null, null));
+
+        Assert.assertTrue(report.getReplacedConfigs().isEmpty());
+        Assert.assertTrue(report.getRestartRequiredProperties().containsEntry(getKey("SampleB"), "x"));
+    }
+
+    @Test
+    public void testChangedReference() throws Exception {
+        copyFileToTemp("SampleB.xml", "SampleB2.xml");
+        writeSampleR(1, "a", "");
+        SampleR r = configLoader.load("SampleR.xml", tempDir, null, null, null);
+        SampleB oldB = r.getB();
+
+        write("SampleR.xml", "<config xmlns=\"http://www.avast.com/schemas/com/avast/syringe/config/SampleR\">" +
+                "<count>1</count><s>a</s><b>SampleB2.xml</b></config>");
+        ConfigReloadReport report = configLoader.reloadChangedConfigs();
+        Assert.assertTrue(report.getAppliedProperties().containsEntry(getKey("SampleR"), "b"));
+        Assert.assertNotSame(oldB, r.getB());
+
+        // the old config is no longer referenced by SampleR
+        write("SampleB.xml", "<config xmlns=\"http://www.avast.com/schemas/com/avast/syringe/config/SampleB\">" +
+                "<x>changed</x><sa>SampleA.xml</sa></config>");
+        report = configLoader.reloadChangedConfigs();
+        Assert.assertTrue(report.getReplacedConfigs().isEmpty());
+        Assert.assertTrue(report.getRestartRequiredProperties().containsEntry(getKey("SampleB"), "x"));
+    }
+
+    private static void unregisterInstanceMBeans(MBeanServer mBeanServer) throws Exception {
+        for (ObjectName name : mBeanServer.queryNames(new ObjectName("com.avast.syringe.instances:*"), null)) {
+            mBeanServer.unregisterMBean(name);
+        }
+    }
+
+    private String getKey(String name) throws IOException {
+        return new File(tempDir, name).getCanonicalPath();
+    }
+
+    private void writeSampleR(int count, String s, String more) throws IOException {
+        write("SampleR.xml", "<config xmlns=\"http://www.avast.com/schemas/com/avast/syringe/config/SampleR\">" +
+                "<count>" + count + "</count><s>" + s + "</s><b>SampleB.xml</b>" + more + "</config>");
+    }
+
+    private void write(String fileName, String content) throws IOException {
+        File file = new File(tempDir, fileName);
+        long lastModified = file.lastModified();
+        Files.write(content, file, Charsets.UTF_8);
+        // make the change visible even on file systems with a coarse modification time
+        file.setLastModified(Math.max(lastModified + 2000, file.lastModified()));
+    }
+
+    private void copyFileToTemp(String fileName) throws IOException {
+        copyFileToTemp(fileName, fileName);
+    }
+
+    private void copyFileToTemp(String fileName, String targetFileName) throws IOException {
+        InputStream inputStream = ConfigReloaderTest.class.getResourceAsStream(fileName);
+        FileOutputStream outputStream = new FileOutputStream(new File(tempDir, targetFileName));
+        try {
+            ByteStreams.copy(inputStream, outputStream);
+        } finally {
+            inputStream.close();
+            outputStream.close();
+        }
+    }
+}
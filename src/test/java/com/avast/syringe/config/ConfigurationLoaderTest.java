@@ -2,10 +2,23 @@ package com.avast.syringe.config;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import com.avast.syringe.aop.cglib.LazyProxyFactory;
 import com.avast.syringe.config.internal.TestConfigWithContextProperty;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteStreams;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -55,6 +68,17 @@ public class ConfigurationLoaderTest {
         Assert.assertEquals(42, map.get("key").longValue());
     }
 
+    @Test
+    public void testDefaultConfigCreatedByConstructor() throws Exception {
+        ConfigurationLoader configLoader = new ConfigurationLoader(Files.createTempDir());
+        try {
+            ConstructorConfig config = configLoader.load(ConstructorConfig.class, "Missing.xml");
+            Assert.assertEquals(0, config.port);
+        } finally {
+            configLoader.close();
+        }
+    }
+
     private <T> T load(String xml, Class<T> beanClass) throws Exception {
         File file = new File(tempDir, "config.xml");
         Files.write(xml, file, Charset.forName("utf-8"));
@@ -109,6 +133,175 @@ public class ConfigurationLoaderTest {
 
     }
 
+    @Test
+    public void testWiredParallel() throws Exception {
+        copyFileToTemp("SampleA.xml");
+        copyFileToTemp("SampleB.xml");
+        copyFileToTemp("SampleC.xml");
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ConfigurationLoader configLoader = new ConfigurationLoader(tempDir);
+            configLoader.setRegisterMBeans(false);
+            configLoader.setLoadingPool(pool);
+
+            SampleB b = configLoader.load("SampleB.xml");
+            Assert.assertEquals("xyz", b.getX());
+            SampleA sa = b.getSa();
+            Assert.assertNotNull(sa);
+            Assert.assertEquals(100, sa.getI());
+            Assert.assertNotNull(sa.getR1());
+            Assert.assertSame(sa.getR2(), sa.getR1());
+            Assert.assertSame(sa.getR1(), sa.getR3());
+            Assert.assertSame(sa.getR1(), sa.getLr().get(0));
+            Assert.assertSame(sa.getR1(), sa.getMr().get(2));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testGeneratedInjectors() throws Exception {
+        copyFileToTemp("SampleA.xml");
+        copyFileToTemp("SampleB.xml");
+        copyFileToTemp("SampleC.xml");
+
+        ConfigurationLoader configLoader = new ConfigurationLoader(tempDir);
+        configLoader.setRegisterMBeans(false);
+        configLoader.setGeneratedInjectors(true);
+
+        SampleB b = configLoader.load("SampleB.xml", tempDir, null, null, null);
+        Assert.assertEquals("xyz", b.getX());
+        Assert.assertEquals(100, b.getSa().getI());
+        Assert.assertSame(b.getSa().getR1(), b.getSa().getR2());
+    }
+
+    @Test
+    public void testStreamingInjection() throws Exception {
+        copyFileToTemp("SampleA.xml");
+        copyFileToTemp("SampleB.xml");
+        copyFileToTemp("SampleC.xml");
+
+        ConfigurationLoader configLoader = new ConfigurationLoader(tempDir);
+        configLoader.setRegisterMBeans(false);
+        configLoader.setStreamingInjection(true);
+
+        SampleB b = configLoader.load("SampleB.xml", tempDir, null, null, null);
+        Assert.assertEquals("xyz", b.getX());
+        SampleA sa = b.getSa();
+        Assert.assertEquals(100, sa.getI());
+        Assert.assertEquals("hello", sa.getS());
+        // the streamed elements are added to the initialized list
+        Assert.assertEquals(ImmutableList.of("abc", "xyz", "aaa", "bbb"), sa.getL());
+        Assert.assertEquals(ImmutableMap.of(1, "xxx", 2, "yyy"), sa.getM());
+        // the references are injected after parsing
+        Assert.assertSame(sa.getR1(), sa.getR2());
+        Assert.assertSame(sa.getR1(), sa.getLr().get(0));
+        Assert.assertSame(sa.getR1(), sa.getMr().get(2));
+    }
+
+    @Test
+    public void testLazyReferences() throws Exception {
+        copyFileToTemp("SampleA.xml");
+        copyFileToTemp("SampleC.xml");
+
+        ConfigurationLoader configLoader = new ConfigurationLoader(tempDir);
+        configLoader.setRegisterMBeans(false);
+        configLoader.setLazyReferences(true);
+
+        SampleA sa = configLoader.load("SampleA.xml", tempDir, null, null, null);
+        String sampleCKey = configLoader.getInstanceKey("SampleC.xml", tempDir);
+        Assert.assertFalse(configLoader.isLoaded(sampleCKey));
+        Assert.assertTrue(LazyProxyFactory.isLazyProxy(sa.getR1()));
+        Assert.assertTrue(LazyProxyFactory.isLazyProxy(sa.getR3()));
+        Assert.assertTrue(LazyProxyFactory.isLazyProxy(sa.getLr().get(0)));
+
+        sa.getR1().run();
+        Assert.assertTrue(configLoader.isLoaded(sampleCKey));
+        Assert.assertEquals(configLoader.findRefName(configLoader.load("SampleC.xml", tempDir, null, null, null)),
+                configLoader.findRefName(sa.getR1()));
+    }
+
+    @Test
+    public void testTwoDecoratorsParallel() throws Exception {
+        copyFileToTemp("SampleC-decor2.xml");
+        copyFileToTemp("SampleD.xml");
+        copyFileToTemp("SampleE.xml");
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ConfigurationLoader configLoader = new ConfigurationLoader(tempDir);
+            configLoader.setRegisterMBeans(false);
+            configLoader.setLoadingPool(pool);
+
+            Runnable c = configLoader.load("SampleC-decor2.xml");
+            Assert.assertTrue(c instanceof Decorator1);
+            Decorator1 d1 = (Decorator1) c;
+            Assert.assertTrue(d1.getDelegate() instanceof Decorator1);
+
+            Decorator1 d2 = (Decorator1) d1.getDelegate();
+            Assert.assertTrue(d2.getDelegate() instanceof SampleC);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentLoadCreatesSingleInstance() throws Exception {
+        copyFileToTemp("SampleA.xml");
+        copyFileToTemp("SampleC.xml");
+
+        final ConfigurationLoader configLoader = new ConfigurationLoader(tempDir);
+        configLoader.setRegisterMBeans(false);
+
+        int threadCount = 8;
+        final CountDownLatch startGate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<SampleA>> futures = new ArrayList<Future<SampleA>>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(new Callable<SampleA>() {
+                    @Override
+                    public SampleA call() throws Exception {
+                        startGate.await();
+                        return configLoader.load("SampleA.xml", tempDir, null, null, null);
+                    }
+                }));
+            }
+            startGate.countDown();
+
+            SampleA first = futures.get(0).get();
+            for (Future<SampleA> future : futures) {
+                Assert.assertSame(first, future.get());
+                Assert.assertSame(first.getR1(), future.get().getR1());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCircularReference() throws Exception {
+        String ns = "http://www.avast.com/schemas/com/avast/syringe/config/Decorator1";
+        Files.write("<config xmlns='" + ns + "'><delegate>CycleY.xml</delegate><a>x</a></config>",
+                new File(tempDir, "CycleX.xml"), Charset.forName("utf-8"));
+        Files.write("<config xmlns='" + ns + "'><delegate>CycleX.xml</delegate><a>y</a></config>",
+                new File(tempDir, "CycleY.xml"), Charset.forName("utf-8"));
+
+        ConfigurationLoader configLoader = new ConfigurationLoader(tempDir);
+        configLoader.setRegisterMBeans(false);
+        try {
+            configLoader.load("CycleX.xml", tempDir, null, null, null);
+            Assert.fail();
+        } catch (Exception e) {
+            Throwable cause = e;
+            while (cause.getCause() != null && !(cause instanceof IllegalArgumentException)) {
+                cause = cause.getCause();
+            }
+            Assert.assertTrue(cause.getMessage().startsWith("Circular reference"));
+        }
+    }
+
     @Test
     public void testOneDecorator() throws Exception {
         copyFileToTemp("SampleC-decor.xml");
@@ -155,4 +348,15 @@ public class ConfigurationLoaderTest {
             outputStream.close();
         }
     }
+
+    static class ConstructorConfig {
+
+        @ConfigProperty(optional = true)
+        final int port;
+
+        @Inject
+        ConstructorConfig(@Named("port") int port) {
+            this.port = port;
+        }
+    }
 }
@@ -0,0 +1,56 @@
+package com.avast.syringe.config;
+
+import com.avast.syringe.Provider;
+import com.avast.syringe.SingletonProviderFactory;
+import com.avast.syringe.SingletonProviderFactoryTest;
+import com.avast.syringe.config.internal.Injection;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InstanceNameIndexTest {
+
+    @Test
+    public void testDecoratedInstance() throws Exception {
+        SampleC sampleC = new SampleC();
+        Decorator1 decorator = new Decorator1();
+        Injection.inject(decorator, "delegate", sampleC);
+
+        InstanceNameIndex index = new InstanceNameIndex();
+        index.register("c", decorator);
+
+        Assert.assertEquals("c", index.findName(decorator));
+        Assert.assertEquals("c", index.findName(sampleC));
+        Assert.assertNull(index.findName(new SampleC()));
+        Assert.assertNull(index.findName(null));
+    }
+
+    @Test
+    public void testSharedDelegate() throws Exception {
+        SampleC sampleC = new SampleC();
+        Decorator1 decorator = new Decorator1();
+        Injection.inject(decorator, "delegate", sampleC);
+
+        InstanceNameIndex index = new InstanceNameIndex();
+        index.register("c", sampleC);
+        index.register("d", decorator);
+
+        Assert.assertEquals("d", index.findName(decorator));
+        Assert.assertEquals("c", index.findName(sampleC));
+    }
+
+    @Test
+    public void testSingletonProvider() throws Exception {
+        SingletonProviderFactoryTest.P1 provider = new SingletonProviderFactoryTest.P1();
+        Provider<String> singletonProvider = SingletonProviderFactory.createSingletonProvider(provider);
+
+        InstanceNameIndex index = new InstanceNameIndex();
+        index.register("p", singletonProvider);
+
+        Assert.assertEquals("p", index.findName(singletonProvider));
+        Assert.assertEquals("p", index.findName(provider));
+
+        String product = singletonProvider.getInstance();
+        Assert.assertEquals("p", index.findName(product));
+        Assert.assertNull(index.findName(new String(product)));
+    }
+}
@@ -1,5 +1,7 @@
 package com.avast.syringe.config;
 
+import javax.annotation.PreDestroy;
+
 /**
  * User: slajchrt
  * Date: 3/13/12
@@ -13,6 +15,8 @@ public class SampleB {
     @ConfigProperty
     private SampleA sa;
 
+    private boolean destroyed;
+
     public String getX() {
         return x;
     }
@@ -20,4 +24,13 @@ public class SampleB {
     public SampleA getSa() {
         return sa;
     }
+
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        destroyed = true;
+    }
 }
@@ -0,0 +1,34 @@
+package com.avast.syringe.config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SampleR {
+
+    @ConfigProperty
+    private final AtomicInteger count = new AtomicInteger();
+
+    @ConfigProperty
+    private String s;
+
+    @ConfigProperty
+    private final MutableReference<SampleB> b = new MutableReference<SampleB>();
+
+    @ConfigProperty(optional = true)
+    private SampleB fixedB;
+
+    public int getCount() {
+        return count.get();
+    }
+
+    public String getS() {
+        return s;
+    }
+
+    public SampleB getB() {
+        return b.get();
+    }
+
+    public SampleB getFixedB() {
+        return fixedB;
+    }
+}
@@ -0,0 +1,46 @@
+package com.avast.syringe.config.collect;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class LongHashSetTest {
+
+    @Test
+    public void testAddAndContains() throws Exception {
+        LongHashSet set = new LongHashSet();
+        for (long i = -1000; i <= 1000; i++) {
+            Assert.assertTrue(set.add(i * 31));
+        }
+        Assert.assertFalse(set.add(0));
+        Assert.assertFalse(set.add(31));
+        Assert.assertEquals(2001, set.size());
+
+        for (long i = -1000; i <= 1000; i++) {
+            Assert.assertTrue(set.contains(i * 31));
+            Assert.assertFalse(set.contains(i * 31 + 1));
+        }
+
+        long[] array = set.toLongArray();
+        Arrays.sort(array);
+        Assert.assertEquals(-31000, array[0]);
+        Assert.assertEquals(0, array[1000]);
+        Assert.assertEquals(31000, array[2000]);
+    }
+
+    @Test
+    public void testLongIntMap() throws Exception {
+        LongIntHashMap map = new LongIntHashMap(1);
+        for (int i = 0; i < 1000; i++) {
+            map.put(i << 20, i);
+        }
+        map.put(0, -1);
+        Assert.assertEquals(1000, map.size());
+        Assert.assertEquals(-1, map.get(0, 42));
+        Assert.assertEquals(999, map.get(999L << 20, 42));
+        Assert.assertEquals(42, map.get(1, 42));
+        Assert.assertFalse(map.containsKey(1000L << 20));
+        Assert.assertEquals(1000, map.keys().length);
+    }
+}
@@ -0,0 +1,118 @@
+package com.avast.syringe.config.fm;
+
+import com.avast.syringe.config.ConfigurationLoader;
+import com.avast.syringe.config.SampleB;
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+
+public class TemplateRendererTest {
+
+    private File tempDir;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDir();
+        write("application.properties", "name=abc\nitems[0]=x\nitems[1]=y\n");
+        write("List.ftl", "<#list items as item>${item}</#list>-${name}");
+    }
+
+    @After
+    public void tearDown() {
+        TemplateRenderer.invalidateAll();
+    }
+
+    @Test
+    public void testRender() throws Exception {
+        TemplateRenderer renderer = getRenderer();
+        Assert.assertEquals("xy-abc", render(renderer, "List.ftl"));
+        // cached output
+        Assert.assertEquals("xy-abc", render(renderer, "List.ftl"));
+        Assert.assertSame(renderer, getRenderer());
+    }
+
+    @Test
+    public void testChangedTemplate() throws Exception {
+        TemplateRenderer renderer = getRenderer();
+        Assert.assertEquals("xy-abc", render(renderer, "List.ftl"));
+
+        write("List.ftl", "<#list items as item>${item}</#list>+${name}");
+        Assert.assertEquals("xy+abc", render(renderer, "List.ftl"));
+    }
+
+    @Test
+    public void testChangedProperties() throws Exception {
+        Assert.assertEquals("xy-abc", render(getRenderer(), "List.ftl"));
+
+        write("application.properties", "name=def\nitems[0]=z\n");
+        Assert.assertEquals("z-def", render(getRenderer(), "List.ftl"));
+    }
+
+    @Test
+    public void testLargeOutput() throws Exception {
+        int count = TemplateRenderer.MAX_CACHED_LENGTH / 4 + 1;
+        write("Large.ftl", "<#list 1.." + count + " as i>${name}-</#list>");
+        String output = render(getRenderer(), "Large.ftl");
+        Assert.assertEquals(count * 4, output.length());
+        Assert.assertTrue(output.startsWith("abc-abc-"));
+        Assert.assertTrue(output.endsWith("abc-abc-"));
+        // rendered again, the output is too long to be cached
+        Assert.assertEquals(output, render(getRenderer(), "Large.ftl"));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        write("Broken.ftl", "${undefined}");
+        try {
+            render(getRenderer(), "Broken.ftl");
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertNotNull(e.getCause());
+        }
+    }
+
+    @Test
+    public void testLoadTemplateConfig() throws Exception {
+        Files.copy(new File(ConfigurationLoader.class.getResource("SampleA.xml").toURI()),
+                new File(tempDir, "SampleA.xml"));
+        Files.copy(new File(ConfigurationLoader.class.getResource("SampleC.xml").toURI()),
+                new File(tempDir, "SampleC.xml"));
+        write("SampleB.ftl", "<config xmlns=\"http://www.avast.com/schemas/com/avast/syringe/config/SampleB\">" +
+                "<x>${name}</x><sa>SampleA.xml</sa></config>");
+
+        ConfigurationLoader configLoader = new ConfigurationLoader(tempDir);
+        configLoader.setRegisterMBeans(false);
+        SampleB b = configLoader.load("SampleB.ftl", tempDir, null, null, null);
+        Assert.assertEquals("abc", b.getX());
+        Assert.assertEquals(100, b.getSa().getI());
+    }
+
+    private TemplateRenderer getRenderer() throws IOException {
+        return TemplateRenderer.getInstance(tempDir, new File(tempDir, "application.properties"));
+    }
+
+    private String render(TemplateRenderer renderer, String templateName) throws IOException {
+        Reader reader = renderer.render(templateName, new File(tempDir, templateName));
+        try {
+            return CharStreams.toString(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void write(String fileName, String content) throws IOException {
+        File file = new File(tempDir, fileName);
+        long lastModified = file.lastModified();
+        Files.write(content, file, Charsets.UTF_8);
+        // make the change visible even on file systems with a coarse modification time
+        file.setLastModified(Math.max(lastModified + 2000, file.lastModified()));
+    }
+}
@@ -0,0 +1,95 @@
+package com.avast.syringe.config.internal;
+
+import com.avast.syringe.config.ConfigProperty;
+import com.google.common.collect.Maps;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.PostConstruct;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BeanAccessTest {
+
+    @Test
+    public void testGeneratedAccess() throws Exception {
+        BeanAccess access = BeanAccess.forClass(Bean.class);
+        Assert.assertNotNull(access);
+        Assert.assertSame(access, BeanAccess.forClass(Bean.class));
+        Assert.assertTrue(access.isInstantiable());
+
+        Field port = Bean.class.getDeclaredField("port");
+        Field count = Bean.class.getDeclaredField("count");
+        Field secret = Bean.class.getDeclaredField("secret");
+        Assert.assertTrue(access.isDirect(port));
+        Assert.assertTrue(access.isDirect(count));
+        Assert.assertFalse(access.isDirect(secret));
+
+        Bean bean = (Bean) access.newInstance();
+        access.set(bean, access.getIndex(port), 8080);
+        access.set(bean, access.getIndex(count), 3);
+        Assert.assertEquals(8080, bean.port);
+        Assert.assertEquals(3, bean.count.get());
+        Assert.assertEquals(3, access.get(bean, access.getIndex(count)));
+
+        try {
+            // no widening in the generated code
+            access.set(bean, access.getIndex(Bean.class.getDeclaredField("size")), 1);
+            Assert.fail();
+        } catch (ClassCastException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testGeneratedInjector() throws Exception {
+        ConfigInjector<Bean> injector = ConfigInjector.forClass(Bean.class, null, true);
+
+        Map<String, Property> props = Maps.newHashMap();
+        props.put("port", new Property("port", new Value("8080")));
+        props.put("count", new Property("count", new Value("3")));
+        props.put("secret", new Property("secret", new Value("abc")));
+        props.put("list", new Property("list", new Value("1"), new Value("2")));
+        Bean bean = injector.inject(props);
+        injector.notifyPostConstruct(bean);
+
+        Assert.assertEquals(8080, bean.port);
+        Assert.assertEquals(3, bean.count.get());
+        Assert.assertEquals("abc", bean.secret);
+        Assert.assertEquals(2, bean.list.size());
+        Assert.assertTrue(bean.initialized);
+
+        InjectableProperty size = ConfigClassAnalyzer.toMap(
+                new ConfigClassAnalyzer(Bean.class, null, true).getConfigProperties()).get("size");
+        // widened by the reflective fallback
+        size.setValue(bean, 42);
+        Assert.assertEquals(42L, bean.size);
+    }
+
+    static class Bean {
+
+        @ConfigProperty
+        int port;
+
+        @ConfigProperty(optional = true)
+        long size;
+
+        @ConfigProperty
+        final AtomicInteger count = new AtomicInteger();
+
+        @ConfigProperty
+        private String secret;
+
+        @ConfigProperty(optional = true)
+        List<Integer> list;
+
+        boolean initialized;
+
+        @PostConstruct
+        public void init() {
+            initialized = true;
+        }
+    }
+}
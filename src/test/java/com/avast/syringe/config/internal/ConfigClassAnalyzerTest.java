@@ -1,8 +1,11 @@
 package com.avast.syringe.config.internal;
 
 import com.avast.syringe.config.ConfigProperty;
+import com.avast.syringe.config.PropertyValueConverter;
 import junit.framework.TestCase;
 
+import java.util.List;
+
 /**
  * User: zslajchrt
  * Date: 4/25/13
@@ -44,4 +47,28 @@ public class ConfigClassAnalyzerTest extends TestCase {
         stripped = ConfigClassAnalyzer.stripDeep(b1);
         assertSame(a, stripped);
     }
+
+    public void testMetadataCached() {
+        long misses = ConfigClassAnalyzer.getCacheMissCount();
+        long hits = ConfigClassAnalyzer.getCacheHitCount();
+
+        List<InjectableProperty> properties = new ConfigClassAnalyzer(B.class).getConfigProperties();
+        assertEquals(1, properties.size());
+        assertSame(properties, new ConfigClassAnalyzer(B.class).getConfigProperties());
+        assertSame(ConfigClassAnalyzer.toMap(B.class), ConfigClassAnalyzer.toMap(B.class));
+
+        PropertyValueConverter converter = new PropertyValueConverter() {
+            @Override
+            public <T> T convertTo(InjectableProperty property, Object instance, Class<T> targetPropertyClass,
+                                   Object sourceValue) {
+                return targetPropertyClass.cast(sourceValue);
+            }
+        };
+        List<InjectableProperty> converted = new ConfigClassAnalyzer(B.class, converter).getConfigProperties();
+        assertNotSame(properties, converted);
+        assertSame(converted, new ConfigClassAnalyzer(B.class, converter).getConfigProperties());
+
+        assertTrue(ConfigClassAnalyzer.getCacheMissCount() - misses <= 2);
+        assertTrue(ConfigClassAnalyzer.getCacheHitCount() - hits >= 3);
+    }
 }
@@ -1,5 +1,9 @@
 package com.avast.syringe.config.internal;
 
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -12,12 +16,25 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.inject.Inject;
+import javax.inject.Named;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.avast.syringe.config.ConfigBean;
 import com.avast.syringe.config.ConfigException;
 import com.avast.syringe.config.ConfigProperty;
+import com.avast.syringe.config.collect.IntSet;
+import com.avast.syringe.config.collect.LongHashSet;
+import com.avast.syringe.config.collect.LongIntMap;
+import com.avast.syringe.config.collect.LongSet;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.io.Files;
 
 public class ConfigInjectorTest {
 
@@ -66,6 +83,37 @@ public class ConfigInjectorTest {
         Assert.assertEquals(1234, inject.port);
     }
 
+    @Test
+    public void testContextualValueResolver() throws Exception {
+        ConfigInjector<TwoProperties> injector = ConfigInjector.forClass(TwoProperties.class);
+        Map<String, Property> props = props(new Property("port", new Value("8080")));
+
+        TwoProperties config = injector.inject(props, new Injection.ContextualValueResolver() {
+            @Override
+            public Object resolve(InjectableProperty property, Value configValue) {
+                return "host".equals(property.getName()) ? "localhost" : Injection.NO_VALUE;
+            }
+        });
+        Assert.assertEquals("localhost", config.host);
+        Assert.assertEquals(8080, config.port);
+
+        // the legacy resolvers signal the missing value by the exception
+        Injection.ContextualPropertyResolver legacy = new Injection.ContextualPropertyResolver() {
+            @Override
+            public Object getProperty(InjectableProperty property, Value configValue) throws Exception {
+                throw new NoSuchFieldException(property.getName());
+            }
+        };
+        Assert.assertSame(Injection.NO_VALUE, Injection.resolve(legacy,
+                injector.getInjections().get(0).getProperty(), null));
+        try {
+            injector.inject(props, legacy);
+            Assert.fail();
+        } catch (ConfigException e) {
+            Assert.assertTrue(e.getCause() instanceof NoSuchFieldException);
+        }
+    }
+
     @Test
     public void testNotParamPropertyNotInjected() throws Exception {
         ConfigInjector<NotParamProperty> injector = ConfigInjector.forClass(NotParamProperty.class);
@@ -89,6 +137,50 @@ public class ConfigInjectorTest {
         Assert.assertEquals(8080, config.ports[0]);
     }
 
+    @Test
+    public void testPrimitiveInjection() throws Exception {
+        ConfigInjector<PrimitiveProperties> injector = ConfigInjector.forClass(PrimitiveProperties.class);
+
+        Map<String, Property> props = props(
+                new Property("port", new Value("8080")),
+                new Property("size", new Value("10000000000")),
+                new Property("enabled", new Value("1")),
+                new Property("ratio", new Value("0.5")),
+                new Property("ids", new Value("3"), new Value("1"), new Value("2")),
+                new Property("bounds", new Value("1.5"), new Value("2.5")),
+                new Property("flags", new Value("true"), new Value("false")));
+        PrimitiveProperties config = injector.inject(props);
+
+        Assert.assertEquals(8080, config.port);
+        Assert.assertEquals(10000000000L, config.size);
+        Assert.assertTrue(config.enabled);
+        Assert.assertEquals(0.5, config.ratio, 0);
+        Assert.assertArrayEquals(new long[]{3, 1, 2}, config.ids);
+        Assert.assertArrayEquals(new double[]{1.5, 2.5}, config.bounds, 0);
+        Assert.assertEquals(2, config.flags.length);
+        Assert.assertTrue(config.flags[0]);
+        Assert.assertFalse(config.flags[1]);
+    }
+
+    @Test
+    public void testPrimitiveArrayDefaults() throws Exception {
+        ConfigInjector<PrimitiveArrayDefaults> injector = ConfigInjector.forClass(PrimitiveArrayDefaults.class);
+
+        Map<String, Property> props = props(
+                new Property("shorter", new Value("4"), new Value("5")),
+                new Property("longer", new Value("4"), new Value("5"), new Value("6")),
+                new Property("same", new Value("4"), new Value("5")),
+                new Property("names", new Value("d")));
+        PrimitiveArrayDefaults config = injector.inject(props);
+
+        Assert.assertArrayEquals(new int[]{4, 5}, config.shorter);
+        Assert.assertArrayEquals(new int[]{4, 5, 6}, config.longer);
+        Assert.assertArrayEquals(new int[]{4, 5}, config.same);
+        Assert.assertArrayEquals(new String[]{"d"}, config.names);
+        // an existing array of the same length is filled
+        Assert.assertSame(PrimitiveArrayDefaults.SAME, config.same);
+    }
+
     @Test
     public void testListInjection() throws Exception {
         ConfigInjector<ListProperty> injector = ConfigInjector.forClass(ListProperty.class);
@@ -166,6 +258,153 @@ public class ConfigInjectorTest {
         Assert.assertSame(InitializedMapProperty.staticPorts, config.ports);
     }
 
+    @Test
+    public void testImmutableInjection() throws Exception {
+        ConfigInjector<ImmutableProperties> injector = ConfigInjector.forClass(ImmutableProperties.class);
+
+        Map<String, Property> props = props(
+                new Property("list", new Value("1"), new Value("2")),
+                new Property("set", new Value("a"), new Value("b"), new Value("a")),
+                new Property("map", new MapEntry("first", "1"), new MapEntry("second", "2"),
+                        new MapEntry("first", "3")));
+        ImmutableProperties config = injector.inject(props);
+
+        Assert.assertEquals(ImmutableList.of(0, 1, 2), config.list);
+        Assert.assertTrue(config.list instanceof ImmutableList);
+        Assert.assertEquals(ImmutableSet.of("a", "b"), config.set);
+        Assert.assertTrue(config.set instanceof ImmutableSet);
+        Assert.assertEquals(ImmutableMap.of("first", 3, "second", 2), config.map);
+        Assert.assertTrue(config.map instanceof ImmutableMap);
+    }
+
+    @Test
+    public void testImmutableRequiresAssignableType() throws Exception {
+        try {
+            ConfigInjector.forClass(InvalidImmutableProperty.class);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testPrimitiveCollectionInjection() throws Exception {
+        ConfigInjector<PrimitiveCollectionProperties> injector =
+                ConfigInjector.forClass(PrimitiveCollectionProperties.class);
+
+        Map<String, Property> props = props(
+                new Property("ints", new Value("1"), new Value("-2"), new Value("1")),
+                new Property("longs", new Value("0"), new Value("" + Long.MAX_VALUE)),
+                new Property("counts", new MapEntry("0", "1"), new MapEntry("42", "2"), new MapEntry("0", "3")));
+        PrimitiveCollectionProperties config = injector.inject(props);
+
+        Assert.assertEquals(2, config.ints.size());
+        Assert.assertTrue(config.ints.contains(-2));
+        Assert.assertFalse(config.ints.contains(2));
+        // the initial elements are kept
+        Assert.assertEquals(3, config.longs.size());
+        Assert.assertTrue(config.longs.contains(7));
+        Assert.assertTrue(config.longs.contains(0));
+        Assert.assertTrue(config.longs.contains(Long.MAX_VALUE));
+        Assert.assertEquals(2, config.counts.size());
+        Assert.assertEquals(3, config.counts.get(0, -1));
+        Assert.assertEquals(2, config.counts.get(42, -1));
+        Assert.assertEquals(-1, config.counts.get(1, -1));
+
+        Assert.assertFalse(injector.getInjections().get(0).getProperty().isReference());
+    }
+
+    @Test
+    public void testMappedDataInjection() throws Exception {
+        File dir = Files.createTempDir();
+        try {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(dir, "ids.bin")));
+            try {
+                for (long id : new long[]{-5, 3, 1L << 40}) {
+                    out.writeLong(id);
+                }
+            } finally {
+                out.close();
+            }
+            Files.write("first\r\nsecond\n\nfourth", new File(dir, "lines.txt"), Charsets.UTF_8);
+            Files.write("alpha\nbeta\n\u010daj\n", new File(dir, "sorted.txt"), Charsets.UTF_8);
+            Files.write("a\t1\nab\t2\nb\t3\n", new File(dir, "map.tsv"), Charsets.UTF_8);
+
+            ConfigInjector<MappedProperties> injector = ConfigInjector.forClass(MappedProperties.class);
+            Map<String, Property> props = props(
+                    new Property("ids", new FileValue("ids.bin", "sorted-long", dir)),
+                    new Property("idSet", new FileValue("ids.bin", "sorted-long", dir)),
+                    new Property("idList", new FileValue(new File(dir, "ids.bin").getAbsolutePath(), "sorted-long", null)),
+                    new Property("lines", new FileValue("lines.txt", "lines", dir)),
+                    new Property("sorted", new FileValue("sorted.txt", "sorted-lines", dir)),
+                    new Property("map", new FileValue("map.tsv", "sorted-tsv", dir)));
+            MappedProperties config = injector.inject(props);
+
+            Assert.assertEquals(3, config.ids.size());
+            Assert.assertTrue(config.ids.contains(-5L));
+            Assert.assertTrue(config.ids.contains(1L << 40));
+            Assert.assertFalse(config.ids.contains(4L));
+            Assert.assertTrue(config.idSet.contains(3));
+            Assert.assertEquals(ImmutableList.of(-5L, 3L, 1L << 40), config.idList);
+            Assert.assertEquals(ImmutableList.of("first", "second", "", "fourth"), config.lines);
+            Assert.assertTrue(config.sorted.contains("\u010daj"));
+            Assert.assertFalse(config.sorted.contains("gamma"));
+            Assert.assertEquals(3, config.sorted.size());
+            Assert.assertEquals(Integer.valueOf(2), config.map.get("ab"));
+            Assert.assertNull(config.map.get("c"));
+            Assert.assertEquals(ImmutableMap.of("a", 1, "ab", 2, "b", 3), ImmutableMap.copyOf(config.map));
+
+            try {
+                injector.inject(props(new Property("ids", new FileValue("lines.txt", "lines", dir))));
+                Assert.fail();
+            } catch (ConfigException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testInvalidSortedLongFile() throws Exception {
+        File dir = Files.createTempDir();
+        try {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(dir, "truncated.bin")));
+            try {
+                out.writeLong(1);
+                out.writeInt(2);
+            } finally {
+                out.close();
+            }
+            out = new DataOutputStream(new FileOutputStream(new File(dir, "unsorted.bin")));
+            try {
+                for (long id : new long[]{1, 1, 3, 2}) {
+                    out.writeLong(id);
+                }
+            } finally {
+                out.close();
+            }
+
+            ConfigInjector<MappedProperties> injector = ConfigInjector.forClass(MappedProperties.class);
+            for (String fileName : new String[]{"truncated.bin", "unsorted.bin"}) {
+                try {
+                    injector.inject(props(new Property("ids", new FileValue(fileName, "sorted-long", dir))));
+                    Assert.fail(fileName);
+                } catch (ConfigException e) {
+                    Assert.assertTrue(e.getCause() instanceof IOException);
+                }
+            }
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
     @Test
     public void testRawListInjectionThrowsException() throws Exception {
         ConfigInjector<RawListProperty> injector = ConfigInjector.forClass(RawListProperty.class);
@@ -232,6 +471,78 @@ public class ConfigInjectorTest {
         }
     }
 
+    @Test
+    public void testPropertyAccess() throws Exception {
+        Map<String, InjectableProperty> properties = ConfigClassAnalyzer.toMap(AccessedProperties.class);
+        AccessedProperties config = new AccessedProperties();
+
+        // widened by the reflective fallback
+        properties.get("count").setValue(config, 42);
+        Assert.assertEquals(42L, config.count);
+        Assert.assertEquals(42L, properties.get("count").getValue(config));
+
+        properties.get("port").setValue(config, 8080);
+        Assert.assertEquals(8080, properties.get("port").getValue(config));
+
+        properties.get("name").setValue(config, null);
+        Assert.assertNull(config.name);
+
+        try {
+            properties.get("count").setValue(config, null);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testConstructorInjection() throws Exception {
+        ConfigInjector<ConstructorProperties> injector = ConfigInjector.forClass(ConstructorProperties.class);
+        Assert.assertEquals(1, injector.getInjections().size());
+        Assert.assertEquals(3, injector.getConstructorInjections().size());
+
+        Map<String, Property> props = props(new Property("host", new Value("localhost")),
+                new Property("ports", new Value("8080"), new Value("8081")),
+                new Property("name", new Value("server")));
+        ConstructorProperties config = injector.inject(props);
+
+        Assert.assertEquals("localhost", config.host);
+        // the missing optional primitive is passed as zero
+        Assert.assertEquals(0, config.port);
+        Assert.assertEquals(ImmutableList.of(8080, 8081), config.ports);
+        Assert.assertEquals("server", config.name);
+
+        try {
+            injector.inject(props(new Property("port", new Value("80"))));
+            Assert.fail();
+        } catch (ConfigException e) {
+            // ok, the host is mandatory
+        }
+    }
+
+    @Test
+    public void testNoArgConstructorIsPreferred() throws Exception {
+        ConfigInjector<NoArgConstructor> injector = ConfigInjector.forClass(NoArgConstructor.class);
+        Assert.assertEquals(1, injector.getInjections().size());
+        Assert.assertTrue(injector.getConstructorInjections().isEmpty());
+        Assert.assertEquals("localhost", injector.inject(props(new Property("host", new Value("localhost")))).host);
+
+        ConfigInjector<InjectConstructor> optedIn = ConfigInjector.forClass(InjectConstructor.class);
+        Assert.assertTrue(optedIn.getInjections().isEmpty());
+        Assert.assertEquals(1, optedIn.getConstructorInjections().size());
+        Assert.assertEquals("localhost", optedIn.inject(props(new Property("host", new Value("localhost")))).host);
+    }
+
+    @Test
+    public void testUnnamedConstructorParameter() throws Exception {
+        try {
+            ConfigInjector.forClass(UnnamedConstructorProperty.class);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
     private Map<String, Property> props(Property... props) {
         Map<String, Property> result = Maps.newHashMap();
         for (Property prop : props) {
@@ -281,6 +592,160 @@ public class ConfigInjectorTest {
         int[] ports;
     }
 
+    static class PrimitiveProperties {
+
+        @ConfigProperty
+        int port;
+
+        @ConfigProperty
+        long size;
+
+        @ConfigProperty
+        boolean enabled;
+
+        @ConfigProperty
+        double ratio;
+
+        @ConfigProperty
+        long[] ids;
+
+        @ConfigProperty
+        double[] bounds;
+
+        @ConfigProperty
+        final boolean[] flags = new boolean[3];
+    }
+
+    static class PrimitiveArrayDefaults {
+
+        static final int[] SAME = {1, 2};
+
+        @ConfigProperty
+        int[] shorter = {1, 2, 3};
+
+        @ConfigProperty
+        int[] longer = {1};
+
+        @ConfigProperty
+        int[] same = SAME;
+
+        @ConfigProperty
+        String[] names = {"a", "b", "c"};
+    }
+
+    static class ImmutableProperties {
+
+        @ConfigProperty(immutable = true)
+        List<Integer> list = new ArrayList<Integer>(ImmutableList.of(0));
+
+        @ConfigProperty(immutable = true)
+        Set<String> set;
+
+        @ConfigProperty(immutable = true)
+        Map<String, Integer> map;
+    }
+
+    static class PrimitiveCollectionProperties {
+
+        @ConfigProperty
+        IntSet ints;
+
+        @ConfigProperty
+        LongSet longs = LongHashSet.of(7);
+
+        @ConfigProperty
+        LongIntMap counts;
+    }
+
+    static class MappedProperties {
+
+        @ConfigProperty(optional = true)
+        Set<Long> ids;
+
+        @ConfigProperty(optional = true)
+        LongSet idSet;
+
+        @ConfigProperty(optional = true)
+        List<Long> idList;
+
+        @ConfigProperty(optional = true)
+        List<String> lines;
+
+        @ConfigProperty(optional = true)
+        Set<String> sorted;
+
+        @ConfigProperty(optional = true)
+        Map<String, Integer> map;
+    }
+
+    static class ConstructorProperties {
+
+        @ConfigProperty
+        final String host;
+
+        @ConfigProperty(optional = true)
+        final int port;
+
+        @ConfigProperty(immutable = true)
+        final List<Integer> ports;
+
+        @ConfigProperty(optional = true)
+        String name;
+
+        @Inject
+        ConstructorProperties(@Named("host") String host, @Named("port") int port,
+                              @Named("ports") List<Integer> ports) {
+            this.host = host;
+            this.port = port;
+            this.ports = ports;
+        }
+    }
+
+    static class NoArgConstructor {
+
+        @ConfigProperty
+        String host;
+
+        NoArgConstructor() {
+        }
+
+        @Inject
+        NoArgConstructor(@Named("host") String host) {
+            this.host = host;
+        }
+    }
+
+    @ConfigBean(injectConstructor = true)
+    static class InjectConstructor {
+
+        @ConfigProperty
+        String host;
+
+        InjectConstructor() {
+        }
+
+        @Inject
+        InjectConstructor(@Named("host") String host) {
+            this.host = host;
+        }
+    }
+
+    static class UnnamedConstructorProperty {
+
+        @ConfigProperty
+        final String host;
+
+        UnnamedConstructorProperty(String host) {
+            this.host = host;
+        }
+    }
+
+    static class InvalidImmutableProperty {
+
+        @ConfigProperty(immutable = true)
+        ArrayList<Integer> list;
+    }
+
     static class ListProperty {
 
         @ConfigProperty
@@ -359,6 +824,18 @@ public class ConfigInjectorTest {
 
     }
 
+    static class AccessedProperties {
+
+        @ConfigProperty
+        private long count;
+
+        @ConfigProperty
+        private final AtomicInteger port = new AtomicInteger();
+
+        @ConfigProperty
+        private String name = "x";
+    }
+
     static class InvalidAtomicProperties {
 
         @ConfigProperty
@@ -0,0 +1,40 @@
+package com.avast.syringe.config.internal;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConfigInternerTest {
+
+    @Test
+    public void testShortValuesAreShared() throws Exception {
+        Value value1 = Value.of(new String("true"));
+        Value value2 = Value.of(new String("true"));
+        Assert.assertSame(value1, value2);
+
+        String longLiteral = Strings.repeat("x", ConfigInterner.MAX_SHARED_LENGTH + 1);
+        Assert.assertNotSame(Value.of(longLiteral), Value.of(new String(longLiteral)));
+    }
+
+    @Test
+    public void testReferencesAreNotShared() throws Exception {
+        Value reference1 = Value.of("SampleC.xml", new String("com.avast.syringe.config.SampleC"));
+        Value reference2 = Value.of("SampleC.xml", new String("com.avast.syringe.config.SampleC"));
+        Assert.assertNotSame(reference1, reference2);
+        Assert.assertSame(reference1.getRefType(), reference2.getRefType());
+        Assert.assertSame(reference1.getValue(), reference2.getValue());
+        Assert.assertNotSame(Value.of("SampleC.xml"), reference1);
+    }
+
+    @Test
+    public void testNamesAreInterned() throws Exception {
+        Property property1 = new Property(new String("port"), ImmutableList.of(Value.of("8080")));
+        Property property2 = new Property(new String("port"));
+        Assert.assertSame(property1.getName(), property2.getName());
+
+        MapEntry entry1 = new MapEntry(new String("key"), "1");
+        MapEntry entry2 = new MapEntry(new String("key"), "2");
+        Assert.assertSame(entry1.getKey(), entry2.getKey());
+    }
+}
@@ -1,8 +1,16 @@
 package com.avast.syringe.config.internal;
 
+import com.avast.syringe.config.DataSize;
+import com.avast.syringe.config.TypeConverter;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
 public class TypeConversionTest {
 
     @Test
@@ -16,4 +24,90 @@ public class TypeConversionTest {
 
         Assert.assertEquals(TypeConversionTest.class, TypeConversion.convert("com.avast.syringe.config.internal.TypeConversionTest", Class.class));
     }
+
+    @Test
+    public void testBuiltInTypes() throws Exception {
+        Assert.assertEquals(0.5f, TypeConversion.convert("0.5", float.class), 0);
+        Assert.assertEquals((short) 7, TypeConversion.convert("7", Short.class).shortValue());
+        Assert.assertEquals((byte) -1, TypeConversion.convert("-1", byte.class).byteValue());
+        Assert.assertEquals('x', TypeConversion.convert("x", char.class).charValue());
+
+        Assert.assertEquals(TimeUnit.SECONDS, TypeConversion.convert("SECONDS", TimeUnit.class));
+        Assert.assertEquals("SECONDS", TypeConversion.convertToString(TimeUnit.SECONDS, TimeUnit.class));
+
+        Assert.assertEquals(Duration.ofMillis(1500), TypeConversion.convert("PT1.5S", Duration.class));
+        Assert.assertEquals(Duration.ofMillis(250), TypeConversion.convert("250", Duration.class));
+        Assert.assertEquals(Duration.ofMinutes(5), TypeConversion.convert("5m", Duration.class));
+
+        Assert.assertEquals(64 * 1024, TypeConversion.convert("64KB", DataSize.class).toBytes());
+        Assert.assertEquals(10L << 20, TypeConversion.convert("10MiB", DataSize.class).toBytes());
+        Assert.assertEquals("10MB", DataSize.parse("10m").toString());
+
+        Assert.assertEquals(URI.create("http://localhost/a"), TypeConversion.convert("http://localhost/a", URI.class));
+        InetSocketAddress address = TypeConversion.convert("127.0.0.1:8080", InetSocketAddress.class);
+        Assert.assertEquals(8080, address.getPort());
+        Assert.assertEquals("127.0.0.1:8080", TypeConversion.convertToString(address, InetSocketAddress.class));
+
+        Assert.assertEquals("xs:anyURI", TypeConversion.getXmlSchemaTypeName(URI.class));
+        Assert.assertEquals("xs:float", TypeConversion.getXmlSchemaTypeName(float.class));
+        Assert.assertFalse(TypeConversion.isConvertible(Runnable.class));
+    }
+
+    @Test
+    public void testSharedValues() throws Exception {
+        Pattern pattern = TypeConversion.convert("a+b", Pattern.class);
+        Assert.assertTrue(pattern.matcher("aab").matches());
+        Assert.assertSame(pattern, TypeConversion.convert(new String("a+b"), Pattern.class));
+    }
+
+    @Test
+    public void testServiceConverter() throws Exception {
+        Version version = TypeConversion.convert("1.2", Version.class);
+        Assert.assertEquals(1, version.major);
+        Assert.assertEquals(2, version.minor);
+        Assert.assertEquals("1.2", TypeConversion.convertToString(version, Version.class));
+        Assert.assertFalse(ReflectionInjectableProperty.isReference(Version.class));
+    }
+
+    public static class Version {
+        final int major;
+        final int minor;
+
+        Version(int major, int minor) {
+            this.major = major;
+            this.minor = minor;
+        }
+    }
+
+    /**
+     * Registered in META-INF/services of the test resources
+     */
+    public static class VersionConverter implements TypeConverter<Version> {
+
+        @Override
+        public Class<Version> getType() {
+            return Version.class;
+        }
+
+        @Override
+        public Version convert(String value, Class<? extends Version> type) {
+            int dot = value.indexOf('.');
+            return new Version(Integer.parseInt(value.substring(0, dot)), Integer.parseInt(value.substring(dot + 1)));
+        }
+
+        @Override
+        public String convertToString(Version value) {
+            return value.major + "." + value.minor;
+        }
+
+        @Override
+        public String getXmlSchemaTypeName() {
+            return "xs:string";
+        }
+
+        @Override
+        public boolean isShared() {
+            return true;
+        }
+    }
 }
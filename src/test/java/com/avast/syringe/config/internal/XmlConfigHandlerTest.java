@@ -1,5 +1,6 @@
 package com.avast.syringe.config.internal;
 
+import com.google.common.cache.CacheStats;
 import org.apache.xerces.impl.xs.XSComplexTypeDecl;
 import org.apache.xerces.jaxp.validation.XMLSchemaFactory;
 import org.apache.xerces.xs.XSAnnotation;
@@ -63,6 +64,19 @@ public class XmlConfigHandlerTest {
         parseAndAssertInstance(xmlInstance);
     }
 
+    @Test
+    public void testParseWithCachedSchema() throws Exception {
+        Schema schema = compileSchema();
+        parseAndAssertInstance(schema, CONFIG_TEST_2_XML);
+        CacheStats stats = XmlConfigHandler.getValueScopeHandlerTypeStats();
+
+        // the types of the second document are the ones of the same schema, so they are classified already
+        parseAndAssertInstance(schema, CONFIG_TEST_2_XML);
+        CacheStats secondStats = XmlConfigHandler.getValueScopeHandlerTypeStats().minus(stats);
+        Assert.assertEquals(0, secondStats.missCount());
+        Assert.assertTrue(secondStats.hitCount() >= 4);
+    }
+
     @Test
     public void testParseDecor() throws Exception {
         String xmlInstance = CONFIG_TEST_2_DECOR_XML;
@@ -75,11 +89,18 @@ public class XmlConfigHandlerTest {
     }
 
     private XmlConfigHandler parseAndAssertInstance(String xmlInstance) throws SAXException, IOException {
+        return parseAndAssertInstance(compileSchema(), xmlInstance);
+    }
+
+    private Schema compileSchema() throws SAXException {
         InputStream schemaStream = XmlConfigHandlerTest.class.getResourceAsStream(CONFIG_TEST_2_XSD);
 
         XMLSchemaFactory xmlSchemaFactory = new XMLSchemaFactory();
-        Schema schema = xmlSchemaFactory.newSchema(new StreamSource(schemaStream));
+        return xmlSchemaFactory.newSchema(new StreamSource(schemaStream));
+    }
 
+    private XmlConfigHandler parseAndAssertInstance(Schema schema, String xmlInstance)
+            throws SAXException, IOException {
         ValidatorHandler validatorHandler = schema.newValidatorHandler();
         final TypeInfoProvider typeInfoProvider = validatorHandler.getTypeInfoProvider();
         XmlConfigHandler xmlConfigHandler = new XmlConfigHandler(typeInfoProvider);
@@ -3,10 +3,12 @@ package com.avast.syringe.config.internal;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.xml.sax.SAXParseException;
 
 import com.google.common.collect.ImmutableList;
 
@@ -37,6 +39,14 @@ public class XmlConfigParserTest {
         Assert.assertEquals(ImmutableList.of(new MapEntry("key", "42")), map.getValues());
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadInvalidDocument() throws Exception {
+        parse("<config-test xmlns='http://www.avast.com/cloud/myavast'>" +
+              "   <port>8080</port>" +
+              "   <map><entry key='key'>forty-two</entry></map>" +
+              "</config-test>");
+    }
+
     @Test
     public void testLoadConfig() throws Exception {
         InputStream xmlStream = XmlConfigHandlerTest.class.getResourceAsStream(XmlConfigHandlerTest.CONFIG_TEST_2_XML);
@@ -55,6 +65,37 @@ public class XmlConfigParserTest {
         Assert.assertEquals(9, xmlConfig.getProperties().size());
     }
 
+    @Test
+    public void testLoadTrustedConfig() throws Exception {
+        XmlConfig validated = new XmlConfigParser().loadConfig(XmlConfigHandlerTest.class.getResourceAsStream(SAMPLE_XML));
+
+        XmlConfigParser parser = new XmlConfigParser();
+        parser.setValidation(XmlConfigParser.Validation.TRUSTED);
+        XmlConfig trusted = parser.loadConfig(XmlConfigHandlerTest.class.getResourceAsStream(SAMPLE_XML));
+
+        Assert.assertEquals("com.avast.syringe.config.SampleA", trusted.getClassName());
+        Assert.assertEquals(validated.getProperties().keySet(), trusted.getProperties().keySet());
+        for (Property property : validated.getProperties().values()) {
+            List<Value> values = property.getValues();
+            List<Value> trustedValues = trusted.getProperties().get(property.getName()).getValues();
+            Assert.assertEquals(property.getName(), values, trustedValues);
+            for (int i = 0; i < values.size(); i++) {
+                Assert.assertEquals(property.getName(), values.get(i).getClass(), trustedValues.get(i).getClass());
+                Assert.assertEquals(property.getName(), values.get(i).getRefType() != null,
+                        trustedValues.get(i).getRefType() != null);
+            }
+        }
+    }
+
+    @Test(expected = SAXParseException.class)
+    public void testLoadInvalidConfigStrictly() throws Exception {
+        // the unknown element is not declared by the schema of SampleC
+        XmlConfigParser parser = new XmlConfigParser();
+        parser.setValidation(XmlConfigParser.Validation.STRICT);
+        parser.loadConfig(toInputStream("<config xmlns=\"http://www.avast.com/schemas/com/avast/syringe/config/SampleC\">" +
+                "<unknown/></config>"));
+    }
+
     private Map<String, Property> parse(String xml) throws Exception {
         return new XmlConfigParser(XmlConfigParserTest.class.getResource("config-test.xsd")).loadProperties(toInputStream(xml));
     }
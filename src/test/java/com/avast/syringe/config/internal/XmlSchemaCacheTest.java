@@ -0,0 +1,54 @@
+package com.avast.syringe.config.internal;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.validation.Schema;
+
+public class XmlSchemaCacheTest {
+
+    private static final String SAMPLE_A_NS = "http://www.avast.com/schemas/com/avast/syringe/config/SampleA";
+    private static final String SAMPLE_B_NS = "http://www.avast.com/schemas/com/avast/syringe/config/SampleB";
+    private static final String MISSING_NS = "http://www.avast.com/schemas/com/avast/syringe/config/NoSuchSample";
+
+    @Before
+    public void setUp() {
+        XmlSchemaCache.invalidateAll();
+    }
+
+    @Test
+    public void testSchemaIsCompiledOnce() throws Exception {
+        Schema schema1 = XmlSchemaCache.getSchema(SAMPLE_A_NS);
+        Schema schema2 = XmlSchemaCache.getSchema(SAMPLE_A_NS);
+
+        Assert.assertSame(schema1, schema2);
+        Assert.assertEquals(1, XmlSchemaCache.getMissCount());
+        Assert.assertEquals(1, XmlSchemaCache.getHitCount());
+    }
+
+    @Test
+    public void testMissingSchemaIsRemembered() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            try {
+                XmlSchemaCache.getSchema(MISSING_NS);
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage().contains(MISSING_NS));
+            }
+        }
+
+        Assert.assertEquals(1, XmlSchemaCache.getMissCount());
+        Assert.assertEquals(1, XmlSchemaCache.getHitCount());
+    }
+
+    @Test
+    public void testPreload() throws Exception {
+        XmlSchemaCache.preload(SAMPLE_A_NS, SAMPLE_B_NS);
+        Assert.assertEquals(2, XmlSchemaCache.size());
+
+        XmlSchemaCache.getSchema(SAMPLE_B_NS);
+        Assert.assertEquals(0, XmlSchemaCache.getMissCount());
+        Assert.assertEquals(1, XmlSchemaCache.getHitCount());
+    }
+}
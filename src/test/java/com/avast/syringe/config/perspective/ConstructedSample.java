@@ -0,0 +1,41 @@
+package com.avast.syringe.config.perspective;
+
+import com.avast.syringe.config.ConfigProperty;
+
+import javax.inject.Named;
+
+/**
+ * The sample taking its properties through the constructor
+ */
+public class ConstructedSample implements Runnable {
+
+    @ConfigProperty
+    private final String sProp;
+
+    @ConfigProperty(optional = true)
+    private final Runnable rProp;
+
+    @ConfigProperty(optional = true)
+    private int iProp;
+
+    public ConstructedSample(@Named("sProp") String sProp, @Named("rProp") Runnable rProp) {
+        this.sProp = sProp;
+        this.rProp = rProp;
+    }
+
+    public String getsProp() {
+        return sProp;
+    }
+
+    public Runnable getrProp() {
+        return rProp;
+    }
+
+    public int getiProp() {
+        return iProp;
+    }
+
+    @Override
+    public void run() {
+    }
+}
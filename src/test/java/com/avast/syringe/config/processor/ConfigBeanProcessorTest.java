@@ -0,0 +1,108 @@
+package com.avast.syringe.config.processor;
+
+import com.avast.syringe.config.ConfigBean;
+import com.avast.syringe.config.ConfigProperty;
+import com.avast.syringe.config.XmlInstanceGenerator;
+import com.avast.syringe.config.internal.CompiledBeanAccess;
+import com.avast.syringe.config.internal.ConfigClassAnalyzer;
+import com.avast.syringe.config.internal.ConfigClassIndex;
+import com.avast.syringe.config.internal.InjectableProperty;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The test sources are compiled with the processor, so the config classes below have their compiled access.
+ */
+public class ConfigBeanProcessorTest {
+
+    @Test
+    public void testCompiledAccess() throws Exception {
+        CompiledBeanAccess access = CompiledBeanAccess.forClass(Bean.class);
+        Assert.assertNotNull(access);
+        Assert.assertTrue(access.isInstantiable());
+        Assert.assertNull(CompiledBeanAccess.forClass(ConfigBeanProcessorTest.class));
+
+        Field name = Bean.class.getDeclaredField("name");
+        Field ref = Bean.class.getDeclaredField("ref");
+        Field secret = Bean.class.getDeclaredField("secret");
+        Assert.assertTrue(access.isDirect(name));
+        Assert.assertTrue(access.isDirect(ref));
+        Assert.assertFalse(access.isDirect(secret));
+
+        Bean bean = (Bean) access.newInstance();
+        access.set(bean, access.getIndex(name), "abc");
+        access.set(bean, access.getIndex(ref), "xyz");
+        Assert.assertEquals("abc", bean.name);
+        Assert.assertEquals("xyz", bean.ref.get());
+        Assert.assertEquals("xyz", access.get(bean, access.getIndex(ref)));
+
+        access.preDestroy(bean);
+        Assert.assertTrue(bean.destroyed);
+
+        Assert.assertFalse(CompiledBeanAccess.forClass(AbstractBean.class).isInstantiable());
+    }
+
+    @Test
+    public void testPropertyTable() throws Exception {
+        List<InjectableProperty> properties = new ConfigClassAnalyzer(Bean.class, null, true).getConfigProperties();
+        Assert.assertEquals(5, properties.size());
+        // superclass properties first
+        Assert.assertEquals("base", properties.get(0).getName());
+        Assert.assertEquals("renamed", properties.get(1).getName());
+        Assert.assertTrue(properties.get(1).isOptional());
+        Assert.assertEquals("ref", properties.get(2).getName());
+        Assert.assertEquals("secret", properties.get(3).getName());
+        Assert.assertEquals("injected", properties.get(4).getName());
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        ConfigClassIndex index = ConfigClassIndex.forClassLoader(getClass().getClassLoader());
+        Assert.assertEquals(Bean.class.getName(),
+                index.getClassName(XmlInstanceGenerator.getNamespace(Bean.class)));
+        Assert.assertEquals(Bean.class.getName() + ConfigBeanProcessor.ACCESS_SUFFIX,
+                index.getAccessClassName(Bean.class.getName()));
+        Assert.assertNull(index.getAccessClassName(PrivateBean.class.getName()));
+    }
+
+    @ConfigBean
+    abstract static class AbstractBean {
+
+        @ConfigProperty(optional = true)
+        int base;
+    }
+
+    static class Bean extends AbstractBean {
+
+        @ConfigProperty(name = "renamed", optional = true)
+        String name;
+
+        @ConfigProperty
+        final AtomicReference<String> ref = new AtomicReference<String>();
+
+        @ConfigProperty
+        private String secret;
+
+        @Inject
+        Object injected;
+
+        boolean destroyed;
+
+        @PreDestroy
+        public void destroy() {
+            destroyed = true;
+        }
+    }
+
+    private static class PrivateBean {
+
+        @ConfigProperty
+        String value;
+    }
+}
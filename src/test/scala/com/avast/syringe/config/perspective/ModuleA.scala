@@ -71,4 +71,18 @@ trait ModuleA extends SyringeModule {
   }
 
   def newTestingInterceptor1 = new TestingInterceptor1Builder().initialize
+
+  class ConstructedSampleBuilder private[ModuleA]() extends SyringeBuilder[ConstructedSampleBuilder.instanceType](ConstructedSampleBuilder.instanceClass) {
+    def set(propertyName: String, value: => Any): this.type = inject(propertyName, value)
+    def sProp(value: String): this.type = inject("sProp", value)
+    def rProp(value: Builder[_]): this.type = inject("rProp", value)
+    def iProp(value: Int): this.type = inject("iProp", value)
+  }
+
+  object ConstructedSampleBuilder {
+    type instanceType = ConstructedSample
+    val instanceClass = classOf[instanceType]
+  }
+
+  def newConstructedSample = new ConstructedSampleBuilder().initialize
 }
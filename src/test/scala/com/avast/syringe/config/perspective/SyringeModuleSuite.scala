@@ -67,6 +67,21 @@ class SyringeModuleSuite extends FlatSpec with BeforeAndAfter {
     assert(r.asInstanceOf[DecoratorA].initOrder == 3)
   }
 
+  it must "create and inject the instance through the generated access" in {
+    val r: Runnable = App.newSampleA
+      .syringeGeneratedInjection
+      .sProp("abc")
+      .iProp(5)
+      .decorateWith(App.newDecoratorA)
+      .build
+
+    val a = r.asInstanceOf[DecoratorA].delegate.asInstanceOf[SampleA]
+    assert(a.getsProp == "abc")
+    assert(a.getiProp == 5)
+    assert(a.initOrder == 1)
+    assert(r.asInstanceOf[DecoratorA].initOrder == 2)
+  }
+
   it must "return always the same instance if decorated with SingletonBuilder trait" in {
     val aBuilder = App.newSingletonSampleA
       .sProp("abc")
@@ -267,4 +282,25 @@ class SyringeModuleSuite extends FlatSpec with BeforeAndAfter {
 
     assert(r.getsProp() === "def")
   }
+
+  it must "pass the properties to the constructor and inject the rest" in {
+    val r = App.newConstructedSample
+      .sProp("abc")
+      .rProp(App.newSampleA.sProp("def"))
+      .iProp(42)
+      .build
+
+    assert(r.getsProp === "abc")
+    assert(r.getrProp.asInstanceOf[SampleA].getsProp === "def")
+    assert(r.getiProp === 42)
+  }
+
+  it must "fail on a circular reference through a constructor" in {
+    val builder = App.newConstructedSample
+      .sProp("abc")
+    builder.rProp(builder)
+    intercept[InjectionException] {
+      builder.build
+    }
+  }
 }